@@ -92,6 +92,14 @@ public abstract class BankBuf implements Buf {
         return size_;
     }
 
+    /**
+     * Releases any resources, such as open files, held by this buf.
+     * The buf should not be used after this call.
+     * This implementation does nothing.
+     */
+    public void close() throws IOException {
+    }
+
     public int readUnsignedByte( Pointer ptr ) throws IOException {
         long pos = ptr.getAndIncrement( 1 );
         Bank bank = getBank( pos, 1 );
@@ -285,7 +293,8 @@ public abstract class BankBuf implements Buf {
     /**
      * Returns a BankBuf based on supplied file channel.
      *
-     * @param  channel   readable file containing data
+     * @param  channel   readable file containing data,
+     *                   closed by {@link #close}
      * @param  size    number of bytes in channel
      * @param  bankSize  maximum size for individual data banks
      * @param   isBit64  64bit-ness of buf
@@ -295,7 +304,34 @@ public abstract class BankBuf implements Buf {
     public static BankBuf createMultiBankBuf( FileChannel channel, long size,
                                               int bankSize, boolean isBit64,
                                               boolean isBigendian ) {
-        return new LazyMultiBankBuf( channel, size, bankSize,
+        return createMultiBankBuf( channel, size, bankSize, 0,
+                                   isBit64, isBigendian );
+    }
+
+    /**
+     * Returns a BankBuf based on supplied file channel, in which
+     * each bank also maps a given number of bytes from the start of
+     * the following one.
+     * Reads of up to <code>overlap</code> bytes that straddle a
+     * bank boundary can then be served directly from the mapped data
+     * rather than by copying into a temporary buffer.
+     *
+     * @param  channel   readable file containing data,
+     *                   closed by {@link #close}
+     * @param  size    number of bytes in channel
+     * @param  bankSize  size of the non-overlapping part of each data bank
+     * @param  overlap   number of bytes by which adjacent banks overlap;
+     *                   this is reduced if necessary so that
+     *                   bankSize+overlap does not exceed 2^31-1
+     * @param   isBit64  64bit-ness of buf
+     * @param   isBigendian   true for big-endian data, false for little-endian
+     * @return  new buf
+     */
+    public static BankBuf createMultiBankBuf( FileChannel channel, long size,
+                                              int bankSize, int overlap,
+                                              boolean isBit64,
+                                              boolean isBigendian ) {
+        return new LazyMultiBankBuf( channel, size, bankSize, overlap,
                                      isBit64, isBigendian );
     }
 
@@ -471,48 +507,68 @@ public abstract class BankBuf implements Buf {
         private final FileChannel channel_;
         private final long size_;
         private final long bankSize_;
+        private final int overlap_;
         private final Bank[] banks_;
+        private volatile Bank straddleBank_;
 
         /**
          * Constructor.
          *
          * @param  channel   readable file containing data
          * @param  size    number of bytes in channel
-         * @param  bankSize  maximum size for individual data banks
+         * @param  bankSize  size of the non-overlapping part of each bank
+         * @param  overlap   number of bytes by which adjacent banks overlap
          * @param   isBit64  64bit-ness of buf
          * @param   isBigendian   true for big-endian data,
          *                        false for little-endian
          */
         LazyMultiBankBuf( FileChannel channel, long size, int bankSize,
-                          boolean isBit64, boolean isBigendian ) {
+                          int overlap, boolean isBit64, boolean isBigendian ) {
             super( size, isBit64, isBigendian );
             channel_ = channel;
             size_ = size;
             bankSize_ = bankSize;
+            overlap_ = (int) Math.max( 0, Math.min( overlap,
+                                   (long) Integer.MAX_VALUE - bankSize ) );
             int nbank = (int) ( ( ( size - 1 ) / bankSize ) + 1 );
             banks_ = new Bank[ nbank ];
         }
 
+        @Override
+        public void close() throws IOException {
+            channel_.close();
+        }
+
         public Bank getBank( long offset, int count ) throws IOException {
 
             // Find out the index of the bank containing the starting offset.
             int ibank = (int) ( offset / bankSize_ );
 
             // If the requested read amount is fully contained in that bank,
+            // including its overlap with the next one,
             // lazily obtain and return it.
-            int over = (int) ( offset + count - ( ibank + 1 ) * bankSize_ );
-            if ( over <= 0 ) {
+            long over = offset + count - ( ibank + 1 ) * bankSize_;
+            if ( over <= overlap_ ) {
                 return getBankByIndex( ibank );
             }
 
             // Otherwise, the requested region straddles multiple banks.
             // This should be a fairly unusual occurrence.
-            // Build a temporary bank to satisfy the request and return it.
+            // If the most recent such request covered this region
+            // (likely for repeated reads of the same record) reuse it.
+            Bank sbank = straddleBank_;
+            if ( sbank != null && offset >= sbank.start_ &&
+                 offset + count <= sbank.start_ + sbank.size_ ) {
+                return sbank;
+            }
+
+            // Otherwise build a temporary bank to satisfy the request,
+            // and keep it for next time.
             else {
                 byte[] tmp = new byte[ count ];
-                int bankOff = (int) ( bankSize_ - count + over );
+                int bankOff = (int) ( offset - ibank * bankSize_ );
                 int tmpOff = 0;
-                int n = count - over;
+                int n = (int) ( bankSize_ - bankOff );
                 while ( count > 0 ){
                     ByteBuffer bbuf = getBankByIndex( ibank ).byteBuffer_;
                     synchronized ( bbuf ){
@@ -525,8 +581,10 @@ public abstract class BankBuf implements Buf {
                     ibank++;
                     n = (int) Math.min( count, bankSize_ );
                 }
-                return new Bank( ByteBuffer.wrap( tmp ), offset,
-                                 isBigendian() );
+                sbank = new Bank( ByteBuffer.wrap( tmp ), offset,
+                                  isBigendian() );
+                straddleBank_ = sbank;
+                return sbank;
             }
         }
 
@@ -538,6 +596,10 @@ public abstract class BankBuf implements Buf {
                     list.add( bank );
                 }
             }
+            Bank sbank = straddleBank_;
+            if ( sbank != null ) {
+                list.add( sbank );
+            }
             return list;
         }
 
@@ -549,7 +611,7 @@ public abstract class BankBuf implements Buf {
                 }
                 public Bank next() {
                     try {
-                        return getBankByIndex( ibank++ );
+                        return getIteratorBank( ibank++ );
                     }
                     catch ( IOException e ) {
                         logger_.log( Level.WARNING, "Error acquiring bank", e );
@@ -570,14 +632,35 @@ public abstract class BankBuf implements Buf {
         private Bank getBankByIndex( int ibank ) throws IOException {
             if ( banks_[ ibank ] == null ) {
                 long start = ibank * bankSize_;
-                long end = Math.min( ( ( ibank + 1 ) * bankSize_ ), size_ );
+                long end = Math.min( ( ibank + 1 ) * bankSize_ + overlap_,
+                                     size_ );
                 int leng = (int) ( end - start );
-                ByteBuffer bbuf =
-                    channel_.map( FileChannel.MapMode.READ_ONLY, start, leng );
+                ByteBuffer bbuf = Bufs.map( channel_, start, leng );
                 banks_[ ibank ] = new Bank( bbuf, start, isBigendian() );
             }
             return banks_[ ibank ];
         }
+
+        /**
+         * Returns a numbered bank without its overlap with the next one,
+         * for use in sequential iteration.
+         *
+         * @param  ibank  bank index
+         */
+        private Bank getIteratorBank( int ibank ) throws IOException {
+            Bank bank = getBankByIndex( ibank );
+            long start = ibank * bankSize_;
+            int leng = (int) ( Math.min( start + bankSize_, size_ ) - start );
+            if ( leng == bank.size_ ) {
+                return bank;
+            }
+            else {
+                ByteBuffer bbuf = bank.byteBuffer_.duplicate();
+                bbuf.position( 0 );
+                bbuf.limit( leng );
+                return new Bank( bbuf.slice(), start, isBigendian() );
+            }
+        }
     }
 
     /**
@@ -0,0 +1,298 @@
+package uk.ac.bristol.star.cdf.record;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Bounded least-recently-used cache of file data blocks,
+ * for use by {@link PrefetchBuf}.
+ *
+ * <p>A single cache may be shared between many bufs, in which case the
+ * total memory they use for file data is limited by the cache's
+ * byte budget, regardless of how many files are open.
+ * When adding a block would exceed the budget, the least recently
+ * used blocks are discarded.
+ * Note that blocks currently being read from by a buf remain in memory
+ * until the read completes even if they have been discarded from the
+ * cache, so the budget may be exceeded briefly by up to one block
+ * per reading thread.
+ *
+ * <p>Counts of cache hits and misses are maintained, which can be used
+ * to tune the block size and budget.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class BlockCache {
+
+    private final int blockSize_;
+    private final long maxBytes_;
+    private final Map<Key,Entry> map_;
+    private long cachedBytes_;
+    private long hitCount_;
+    private long missCount_;
+    private long evictCount_;
+
+    /**
+     * Constructor.
+     *
+     * @param  blockSize  size of each block in bytes
+     * @param  maxBytes   maximum total size of cached blocks in bytes;
+     *                    at least one block is always retained
+     */
+    public BlockCache( int blockSize, long maxBytes ) {
+        if ( blockSize <= 0 ) {
+            throw new IllegalArgumentException( "Bad block size "
+                                              + blockSize );
+        }
+        blockSize_ = blockSize;
+        maxBytes_ = maxBytes;
+        map_ = new LinkedHashMap<Key,Entry>( 16, 0.75f, true );
+    }
+
+    /**
+     * Returns the size of the blocks stored in this cache.
+     *
+     * @return  block size in bytes
+     */
+    public int getBlockSize() {
+        return blockSize_;
+    }
+
+    /**
+     * Returns the byte budget for this cache.
+     *
+     * @return  maximum cached bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes_;
+    }
+
+    /**
+     * Returns the total size of the blocks currently cached.
+     *
+     * @return  cached bytes
+     */
+    public synchronized long getCachedBytes() {
+        return cachedBytes_;
+    }
+
+    /**
+     * Returns the number of block requests that have been satisfied
+     * from the cache, including blocks that had been requested by
+     * read-ahead.
+     *
+     * @return  hit count
+     */
+    public synchronized long getHitCount() {
+        return hitCount_;
+    }
+
+    /**
+     * Returns the number of block requests that have required a
+     * block to be read from the file.
+     *
+     * @return  miss count
+     */
+    public synchronized long getMissCount() {
+        return missCount_;
+    }
+
+    /**
+     * Returns the number of blocks that have been discarded from
+     * the cache to keep within its byte budget.
+     *
+     * @return  eviction count
+     */
+    public synchronized long getEvictionCount() {
+        return evictCount_;
+    }
+
+    /**
+     * Discards all cached blocks.  Counters are not affected.
+     */
+    public synchronized void clear() {
+        map_.clear();
+        cachedBytes_ = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return new StringBuffer()
+            .append( "BlockCache(" )
+            .append( "blockSize=" )
+            .append( blockSize_ )
+            .append( ", cached=" )
+            .append( cachedBytes_ )
+            .append( "/" )
+            .append( maxBytes_ )
+            .append( ", hits=" )
+            .append( hitCount_ )
+            .append( ", misses=" )
+            .append( missCount_ )
+            .append( ", evictions=" )
+            .append( evictCount_ )
+            .append( ")" )
+            .toString();
+    }
+
+    /**
+     * Returns the cached value for a given block if present.
+     * If <code>isDemand</code> is true the hit or miss is counted.
+     *
+     * @param  owner  object identifying the data source
+     * @param  iblock  block index within the data source
+     * @param  isDemand  true if the block is required immediately,
+     *                   false for speculative reads
+     * @return  cached value, or null
+     */
+    synchronized Future<?> get( Object owner, int iblock, boolean isDemand ) {
+        Entry entry = map_.get( new Key( owner, iblock ) );
+        if ( isDemand ) {
+            if ( entry != null ) {
+                hitCount_++;
+            }
+            else {
+                missCount_++;
+            }
+        }
+        return entry == null ? null : entry.value_;
+    }
+
+    /**
+     * Inserts a value for a given block if none is already present.
+     * Least recently used entries are discarded as required to keep
+     * within the byte budget.
+     *
+     * @param  owner  object identifying the data source
+     * @param  iblock  block index within the data source
+     * @param  value   value to insert
+     * @param  nbyte   size of the block in bytes
+     * @return  existing value, or null if <code>value</code>
+     *          was inserted
+     */
+    synchronized Future<?> putIfAbsent( Object owner, int iblock,
+                                        Future<?> value, int nbyte ) {
+        Key key = new Key( owner, iblock );
+        Entry entry = map_.get( key );
+        if ( entry != null ) {
+            return entry.value_;
+        }
+        map_.put( key, new Entry( value, nbyte ) );
+        cachedBytes_ += nbyte;
+        for ( Iterator<Entry> it = map_.values().iterator();
+              cachedBytes_ > maxBytes_ && map_.size() > 1; ) {
+            cachedBytes_ -= it.next().nbyte_;
+            it.remove();
+            evictCount_++;
+        }
+        return null;
+    }
+
+    /**
+     * Removes a given value from the cache, if present.
+     *
+     * @param  owner  object identifying the data source
+     * @param  iblock  block index within the data source
+     * @param  value   value to remove
+     */
+    synchronized void remove( Object owner, int iblock, Future<?> value ) {
+        Key key = new Key( owner, iblock );
+        Entry entry = map_.get( key );
+        if ( entry != null && entry.value_ == value ) {
+            map_.remove( key );
+            cachedBytes_ -= entry.nbyte_;
+        }
+    }
+
+    /**
+     * Removes all the values belonging to a given owner.
+     *
+     * @param  owner  object identifying the data source
+     */
+    synchronized void removeAll( Object owner ) {
+        for ( Iterator<Map.Entry<Key,Entry>> it = map_.entrySet().iterator();
+              it.hasNext(); ) {
+            Map.Entry<Key,Entry> e = it.next();
+            if ( e.getKey().owner_ == owner ) {
+                cachedBytes_ -= e.getValue().nbyte_;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns all the cached values belonging to a given owner.
+     *
+     * @param  owner  object identifying the data source
+     * @return  list of cached values
+     */
+    synchronized List<Future<?>> getValues( Object owner ) {
+        List<Future<?>> list = new ArrayList<Future<?>>();
+        for ( Map.Entry<Key,Entry> e : map_.entrySet() ) {
+            if ( e.getKey().owner_ == owner ) {
+                list.add( e.getValue().value_ );
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Identifies a block from a given data source.
+     */
+    private static class Key {
+        final Object owner_;
+        final int iblock_;
+
+        /**
+         * Constructor.
+         *
+         * @param  owner  object identifying the data source
+         * @param  iblock  block index
+         */
+        Key( Object owner, int iblock ) {
+            owner_ = owner;
+            iblock_ = iblock;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode( owner_ ) * 23 + iblock_;
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+            if ( o instanceof Key ) {
+                Key other = (Key) o;
+                return this.owner_ == other.owner_
+                    && this.iblock_ == other.iblock_;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static class Entry {
+        final Future<?> value_;
+        final int nbyte_;
+
+        /**
+         * Constructor.
+         *
+         * @param  value  cached value
+         * @param  nbyte  block size in bytes
+         */
+        Entry( Future<?> value, int nbyte ) {
+            value_ = value;
+            nbyte_ = nbyte;
+        }
+    }
+}
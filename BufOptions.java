@@ -0,0 +1,348 @@
+package uk.ac.bristol.star.cdf.record;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+/**
+ * Configures how a Buf is created to access the bytes of a file.
+ *
+ * <p>The main choice is the {@link Strategy}, which determines whether
+ * the file is memory mapped, and if so whether all at once or only
+ * in the parts that are actually used, or whether it is read using
+ * explicit positional reads into a bounded cache.
+ * Mapping is usually fastest, but every mapped bank occupies
+ * virtual address space for as long as the buf is in use,
+ * which may be an issue for applications that keep very many
+ * or very large files open.
+ *
+ * <p>The default {@link Strategy#AUTO AUTO} strategy chooses according
+ * to file size and the access hint, and for default settings with
+ * the random access hint it behaves the same as
+ * {@link Bufs#createBuf(java.io.File,boolean,boolean)}.
+ *
+ * <p>Instances of this class are mutable, but the settings are only
+ * used at buf creation time, so the same instance can be used to
+ * create many bufs.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class BufOptions {
+
+    private Strategy strategy_;
+    private boolean isSequential_;
+    private int bankSize_;
+    private int bankOverlap_;
+    private long maxEagerSize_;
+    private BlockCache blockCache_;
+    private int readAhead_;
+
+    /** Default bank size for mapped files. */
+    public static final int DEFAULT_BANK_SIZE = 1 << 30;
+
+    /** Default overlap between adjacent mapped banks. */
+    public static final int DEFAULT_BANK_OVERLAP = 1 << 24;
+
+    private static final Logger logger_ =
+        Logger.getLogger( BufOptions.class.getName() );
+
+    /**
+     * Constructs an options object with default settings.
+     */
+    public BufOptions() {
+        strategy_ = Strategy.AUTO;
+        isSequential_ = false;
+        bankSize_ = DEFAULT_BANK_SIZE;
+        bankOverlap_ = DEFAULT_BANK_OVERLAP;
+        maxEagerSize_ = Integer.MAX_VALUE;
+        readAhead_ = PrefetchBuf.DEFAULT_READ_AHEAD;
+    }
+
+    /**
+     * Sets the strategy used to access file data.
+     *
+     * @param  strategy  access strategy
+     */
+    public void setStrategy( Strategy strategy ) {
+        strategy_ = strategy;
+    }
+
+    /**
+     * Returns the strategy used to access file data.
+     *
+     * @return  access strategy
+     */
+    public Strategy getStrategy() {
+        return strategy_;
+    }
+
+    /**
+     * Sets a hint about how the data will be accessed.
+     * If true, the data is expected to be read mostly in sequence,
+     * for instance by scanning through all the records of a variable.
+     * This affects the choice of strategy for large files if it is
+     * {@link Strategy#AUTO AUTO}, and whether read-ahead is done
+     * by the {@link Strategy#READ READ} strategy.
+     *
+     * @param  isSequential  true for mostly sequential access,
+     *                       false for random access
+     */
+    public void setSequential( boolean isSequential ) {
+        isSequential_ = isSequential;
+    }
+
+    /**
+     * Returns the access hint.
+     *
+     * @return  true for mostly sequential access, false for random access
+     */
+    public boolean isSequential() {
+        return isSequential_;
+    }
+
+    /**
+     * Sets the size of the banks into which files are divided
+     * when they are mapped in parts.
+     *
+     * @param  bankSize  bank size in bytes
+     */
+    public void setBankSize( int bankSize ) {
+        if ( bankSize <= 0 ) {
+            throw new IllegalArgumentException( "Bad bank size " + bankSize );
+        }
+        bankSize_ = bankSize;
+    }
+
+    /**
+     * Returns the size of the banks into which files are divided
+     * when they are mapped in parts.
+     *
+     * @return  bank size in bytes
+     */
+    public int getBankSize() {
+        return bankSize_;
+    }
+
+    /**
+     * Sets the number of bytes by which adjacent lazily mapped banks
+     * overlap.  Reads up to this size which straddle a bank boundary
+     * can be done without copying.
+     * If the bank size is later set to a value not larger than this,
+     * the overlap used is reduced to fit.
+     *
+     * @param  bankOverlap  overlap in bytes, at least zero and
+     *                      less than the bank size
+     */
+    public void setBankOverlap( int bankOverlap ) {
+        if ( bankOverlap < 0 || bankOverlap >= bankSize_ ) {
+            throw new IllegalArgumentException( "Bad bank overlap "
+                                              + bankOverlap
+                                              + " for bank size "
+                                              + bankSize_ );
+        }
+        bankOverlap_ = bankOverlap;
+    }
+
+    /**
+     * Returns the number of bytes by which adjacent lazily mapped banks
+     * overlap.
+     *
+     * @return  overlap in bytes
+     */
+    public int getBankOverlap() {
+        return bankOverlap_;
+    }
+
+    /**
+     * Sets the largest file size for which the {@link Strategy#AUTO AUTO}
+     * strategy will map the whole file at once.
+     * Larger files are mapped lazily or read in blocks,
+     * according to the access hint.
+     * Values greater than 2^31-1 have the same effect as that value.
+     *
+     * @param  maxEagerSize  maximum file size in bytes for eager mapping
+     */
+    public void setMaxEagerSize( long maxEagerSize ) {
+        maxEagerSize_ = maxEagerSize;
+    }
+
+    /**
+     * Returns the largest file size for which the AUTO strategy will
+     * map the whole file at once.
+     *
+     * @return  maximum file size in bytes for eager mapping
+     */
+    public long getMaxEagerSize() {
+        return maxEagerSize_;
+    }
+
+    /**
+     * Sets the block cache used by the {@link Strategy#READ READ} strategy.
+     * A cache may be shared between many bufs to limit their total
+     * memory use.  If null, each buf gets its own small cache.
+     *
+     * @param  blockCache  block cache, or null
+     */
+    public void setBlockCache( BlockCache blockCache ) {
+        blockCache_ = blockCache;
+    }
+
+    /**
+     * Returns the block cache used by the READ strategy.
+     *
+     * @return  block cache, or null
+     */
+    public BlockCache getBlockCache() {
+        return blockCache_;
+    }
+
+    /**
+     * Sets the maximum number of blocks read ahead by the
+     * {@link Strategy#READ READ} strategy when access is sequential.
+     * No read-ahead is done unless the sequential access hint is set.
+     *
+     * @param  readAhead  maximum read-ahead in blocks
+     */
+    public void setReadAhead( int readAhead ) {
+        readAhead_ = readAhead;
+    }
+
+    /**
+     * Returns the maximum number of blocks read ahead by the
+     * READ strategy when access is sequential.
+     *
+     * @return  maximum read-ahead in blocks
+     */
+    public int getReadAhead() {
+        return readAhead_;
+    }
+
+    /**
+     * Returns the strategy that will actually be used for a file
+     * of a given size.  This resolves the {@link Strategy#AUTO AUTO}
+     * strategy; other strategies are returned unchanged.
+     *
+     * @param  size  file size in bytes
+     * @return  strategy other than AUTO
+     */
+    public Strategy getEffectiveStrategy( long size ) {
+        if ( strategy_ != Strategy.AUTO ) {
+            return strategy_;
+        }
+        else if ( size <= Math.min( maxEagerSize_, Integer.MAX_VALUE ) ) {
+            return Strategy.MAP_EAGER;
+        }
+        else {
+            return isSequential_ ? Strategy.READ : Strategy.MAP_LAZY;
+        }
+    }
+
+    /**
+     * Creates a buf for a file according to the settings of this object.
+     * For the {@link Strategy#MAP_EAGER MAP_EAGER} strategy the file is
+     * closed before this method returns.
+     * For the other strategies the file remains open while the buf
+     * is in use; the returned buf is then a {@link BankBuf} whose
+     * {@link BankBuf#close close} method closes it.
+     *
+     * @param  file  file containing data
+     * @param   isBit64  64bit-ness of buf
+     * @param   isBigendian   true for big-endian data, false for little-endian
+     * @return  new buf
+     */
+    public Buf createBuf( File file, boolean isBit64, boolean isBigendian )
+            throws IOException {
+        FileChannel channel = new FileInputStream( file ).getChannel();
+        boolean keepOpen = false;
+        try {
+            long leng = file.length();
+            Strategy strategy = getEffectiveStrategy( leng );
+            logger_.config( "Accessing " + file + " using strategy "
+                          + strategy );
+            switch ( strategy ) {
+                case MAP_EAGER:
+                    if ( leng <= Integer.MAX_VALUE ) {
+                        ByteBuffer bbuf = Bufs.map( channel, 0, leng );
+                        return Bufs.createBuf( bbuf, isBit64, isBigendian );
+                    }
+                    else {
+                        int nbank = (int) ( ( leng - 1 ) / bankSize_ + 1 );
+                        ByteBuffer[] bbufs = new ByteBuffer[ nbank ];
+                        for ( int ib = 0; ib < nbank; ib++ ) {
+                            long start = ib * (long) bankSize_;
+                            long end = Math.min( start + bankSize_, leng );
+                            bbufs[ ib ] =
+                                Bufs.map( channel, start, end - start );
+                        }
+                        return BankBuf.createMultiBankBuf( bbufs, isBit64,
+                                                           isBigendian );
+                    }
+                case MAP_LAZY:
+                    keepOpen = true;
+                    int overlap = Math.min( bankOverlap_, bankSize_ - 1 );
+                    return BankBuf.createMultiBankBuf( channel, leng,
+                                                       bankSize_, overlap,
+                                                       isBit64, isBigendian );
+                case READ:
+                    keepOpen = true;
+                    int readAhead = isSequential_ ? readAhead_ : 0;
+                    return blockCache_ == null
+                         ? new PrefetchBuf( channel, leng,
+                                            PrefetchBuf.DEFAULT_BLOCK_SIZE,
+                                            readAhead, isBit64, isBigendian )
+                         : new PrefetchBuf( channel, leng, blockCache_,
+                                            readAhead, isBit64, isBigendian );
+                default:
+                    throw new AssertionError( strategy );
+            }
+        }
+
+        // Mapped buffers remain valid after the channel is closed.
+        finally {
+            if ( ! keepOpen ) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Strategy for accessing file data.
+     */
+    public static enum Strategy {
+
+        /**
+         * Chooses a strategy based on the file size and access hint:
+         * files no larger than the maximum eager size are mapped eagerly.
+         * Larger ones are mapped lazily for random access, or read
+         * with read-ahead for sequential access, which avoids
+         * mapping the whole of a large file as it is scanned.
+         */
+        AUTO,
+
+        /**
+         * The whole file is mapped at creation time.
+         */
+        MAP_EAGER,
+
+        /**
+         * The file is divided into banks, each of which is only mapped
+         * when data in it is first read.
+         * Banks that are never touched take up no address space.
+         */
+        MAP_LAZY,
+
+        /**
+         * No mapping is done; data is read using positional reads into
+         * a cache of fixed-size blocks
+         * (see {@link PrefetchBuf} and {@link BlockCache}).
+         * Memory use is bounded by the cache budget regardless of
+         * file size, and read-ahead is done if the sequential access hint
+         * is set.
+         */
+        READ;
+    }
+}
@@ -6,14 +6,19 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import uk.ac.bristol.star.cdf.record.BankBuf;
+import uk.ac.bristol.star.cdf.record.BlockCache;
 import uk.ac.bristol.star.cdf.record.Buf;
 import uk.ac.bristol.star.cdf.record.Pointer;
+import uk.ac.bristol.star.cdf.record.PrefetchBuf;
+import uk.ac.bristol.star.cdf.record.RecordingBuf;
+import uk.ac.bristol.star.cdf.record.RegionBuf;
 import uk.ac.bristol.star.cdf.record.SimpleNioBuf;
 
 public class BufTest {
@@ -89,8 +94,93 @@ public class BufTest {
             checkBuf( BankBuf.createMultiBankBuf( inchan, nbyte, banksize,
                                                   isBit64, isBigEndian ) );
         }
+        for ( int banksize : banksizes2 ) {
+            for ( int overlap : new int[] { 1, 7, blk_, nbyte } ) {
+                Buf obuf =
+                    BankBuf.createMultiBankBuf( inchan, nbyte, banksize,
+                                                overlap, isBit64,
+                                                isBigEndian );
+                checkBuf( obuf );
+                checkBuf( obuf );
+                checkStream( obuf, bytes );
+            }
+        }
+        for ( int banksize : banksizes2 ) {
+            for ( int readAhead = 0; readAhead < 4; readAhead++ ) {
+                PrefetchBuf pbuf =
+                    new PrefetchBuf( inchan, nbyte, banksize, readAhead,
+                                     isBit64, isBigEndian );
+                checkBuf( pbuf );
+                checkBuf( pbuf );
+                checkStream( pbuf, bytes );
+            }
+        }
+
+        // Share a small block cache between several bufs.
+        int blockSize = blk_ * 2;
+        BlockCache bcache = new BlockCache( blockSize, blockSize * 3 );
+        for ( int i = 0; i < 3; i++ ) {
+            checkBuf( new PrefetchBuf( inchan, nbyte, bcache, 0,
+                                       isBit64, isBigEndian ) );
+            assert bcache.getCachedBytes() <= blockSize * 3;
+        }
+        assert bcache.getMissCount() > 0;
+        assert bcache.getHitCount() > 0;
+        assert bcache.getEvictionCount() > 0;
+
+        // With a big enough cache, a second pass makes no misses.
+        bcache = new BlockCache( blockSize, nbyte );
+        PrefetchBuf cbuf = new PrefetchBuf( inchan, nbyte, bcache, 0,
+                                            isBit64, isBigEndian );
+        checkBuf( cbuf );
+        long nmiss = bcache.getMissCount();
+        checkBuf( cbuf );
+        assert bcache.getMissCount() == nmiss;
+        assert bcache.getEvictionCount() == 0;
+
+        // Long reads spanning many blocks, with items straddling
+        // block boundaries, are assembled correctly.
+        ByteBuffer bytebuf = ByteBuffer.wrap( bytes );
+        for ( int blockSize2 : new int[] { 23, blk_ * 2 } ) {
+            PrefetchBuf sbuf =
+                new PrefetchBuf( inchan, nbyte, blockSize2, 0,
+                                 isBit64, isBigEndian );
+            byte[] allBytes = new byte[ nbyte ];
+            sbuf.readDataBytes( 0, nbyte, allBytes );
+            assert Arrays.equals( allBytes, bytes );
+            int nint = ( nbyte - 3 ) / 4;
+            int[] allInts = new int[ nint ];
+            sbuf.readDataInts( 3, nint, allInts );
+            int ndbl = ( nbyte - 5 ) / 8;
+            double[] allDbls = new double[ ndbl ];
+            sbuf.readDataDoubles( 5, ndbl, allDbls );
+            for ( int i = 0; i < nint; i++ ) {
+                assert allInts[ i ] == bytebuf.getInt( 3 + i * 4 );
+            }
+            for ( int i = 0; i < ndbl; i++ ) {
+                assert Double.compare( allDbls[ i ],
+                                       bytebuf.getDouble( 5 + i * 8 ) )
+                       == 0;
+            }
+        }
         inchan.close();
 
+        // Closing a buf releases its cached blocks.
+        BlockCache ccache = new BlockCache( blockSize, nbyte );
+        PrefetchBuf fbuf =
+            PrefetchBuf.createPrefetchBuf( tmpFile, ccache, 0,
+                                           isBit64, isBigEndian );
+        checkBuf( fbuf );
+        assert ccache.getCachedBytes() > 0;
+        fbuf.close();
+        assert ccache.getCachedBytes() == 0;
+        try {
+            checkBuf( fbuf );
+            assert false;
+        }
+        catch ( IOException e ) {
+        }
+
         FileChannel copychan = new FileInputStream( tmpFile ).getChannel();
         assert copychan.size() == nbyte;
         ByteBuffer copybuf = ByteBuffer.allocate( nbyte );
@@ -100,6 +190,34 @@ public class BufTest {
         checkBuf( new SimpleNioBuf( copybuf, isBit64, isBigEndian ) );
 
         tmpFile.delete();
+
+        // Cache some ranges, including ones that straddle reads.
+        Buf base = new SimpleNioBuf( buf1, isBit64, isBigEndian );
+        long[][] ranges = { { 0, 3 }, { blk_ + 1, blk_ * 4 },
+                            { blk_ * 6 - 3, blk_ * 6 + 10 },
+                            { blk_ * 9, nbyte } };
+        ByteArrayOutputStream cout = new ByteArrayOutputStream();
+        for ( long[] range : ranges ) {
+            cout.write( bytes, (int) range[ 0 ],
+                        (int) ( range[ 1 ] - range[ 0 ] ) );
+        }
+        ByteBuffer cache = ByteBuffer.wrap( cout.toByteArray() );
+        checkBuf( new RegionBuf( base, ranges, cache ) );
+
+        // The cache is used in preference to the base buf.
+        byte[] zeros = new byte[ nbyte ];
+        Buf zbase = new SimpleNioBuf( ByteBuffer.wrap( zeros ),
+                                      isBit64, isBigEndian );
+        checkBuf( new RegionBuf( zbase, new long[][] { { 0, nbyte } },
+                                 ByteBuffer.wrap( bytes ) ) );
+
+        // Record reads and check the ranges are merged.
+        RecordingBuf rbuf = new RecordingBuf( base );
+        checkBuf( rbuf );
+        long[][] readRanges = rbuf.getRanges();
+        assert readRanges.length == 1;
+        assert readRanges[ 0 ][ 0 ] == 0;
+        assert readRanges[ 0 ][ 1 ] == blk_ * ( nn_ - 1 ) + 38 + 16;
     }
 
     private void checkBuf( Buf buf ) throws IOException {
@@ -139,6 +257,17 @@ public class BufTest {
         assert buf.readUnsignedByte( p ) == 1;
     }
 
+    private void checkStream( Buf buf, byte[] bytes ) throws IOException {
+        for ( int off = 0; off < bytes.length; off += blk_ * 7 + 3 ) {
+            InputStream in = buf.createInputStream( off );
+            for ( int i = off; i < bytes.length; i++ ) {
+                assert in.read() == ( bytes[ i ] & 0xff );
+            }
+            assert in.read() < 0;
+            in.close();
+        }
+    }
+
     private static boolean checkAssertions() {
         assertionsOn_ = true;
         return true;
@@ -2,7 +2,6 @@ package uk.ac.bristol.star.cdf.record;
 
 import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -17,8 +16,6 @@ import java.util.logging.Logger;
  */
 public class Bufs {
 
-    /** Preferred maximum size for a bank buffer.  */
-    private static final int BANK_SIZE = 1 << 30;
     private static Logger logger_ = Logger.getLogger( Bufs.class.getName() );
 
     /**
@@ -63,18 +60,7 @@ public class Bufs {
     public static Buf createBuf( File file,
                                  boolean isBit64, boolean isBigendian )
             throws IOException {
-        FileChannel channel = new FileInputStream( file ).getChannel();
-        long leng = file.length();
-        if ( leng <= Integer.MAX_VALUE ) {
-            int ileng = (int) leng;
-            ByteBuffer bbuf =
-                channel.map( FileChannel.MapMode.READ_ONLY, 0, ileng );
-            return createBuf( bbuf, isBit64, isBigendian );
-        }
-        else {
-            return BankBuf.createMultiBankBuf( channel, leng, BANK_SIZE,
-                                               isBit64, isBigendian );
-        }
+        return new BufOptions().createBuf( file, isBit64, isBigendian );
     }
 
     /**
@@ -93,15 +79,42 @@ public class Bufs {
             throws IOException {
         logger_.config( "Uncompressing CDF data to new " + outSize
                       + "-byte buffer" );
+        CdfMetrics metrics = Metrics.getInstance();
+        long start = metrics == null ? 0 : System.nanoTime();
         InputStream uin =
              compression
             .uncompressStream( new BufferedInputStream(
                                    inBuf.createInputStream( inOffset ) ) );
         Buf ubuf = inBuf.fillNewBuf( outSize, uin );
         uin.close();
+        if ( metrics != null ) {
+            metrics.decompressed( compression, outSize,
+                                  System.nanoTime() - start );
+        }
         return ubuf;
     }
 
+    /**
+     * Maps a region of a file read-only into memory.
+     * Use of this method rather than calling the channel directly
+     * ensures that the mapping is reported to any installed metrics.
+     *
+     * @param  channel  file channel
+     * @param  start   offset of region start
+     * @param  size   size of region in bytes
+     * @return   mapped buffer
+     */
+    static ByteBuffer map( FileChannel channel, long start, long size )
+            throws IOException {
+        ByteBuffer bbuf =
+            channel.map( FileChannel.MapMode.READ_ONLY, start, size );
+        CdfMetrics metrics = Metrics.getInstance();
+        if ( metrics != null ) {
+            metrics.bankMapped( size );
+        }
+        return bbuf;
+    }
+
     /**
      * Utility method to acquire the data from an NIO buffer in the form
      * of an InputStream.
@@ -309,7 +322,7 @@ public class Bufs {
 
         @Override
         public int read() {
-            return bbuf_.remaining() > 0 ? bbuf_.get() : -1;
+            return bbuf_.remaining() > 0 ? bbuf_.get() & 0xff : -1;
         }              
             
         @Override 
@@ -0,0 +1,273 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Represents a variable whose records are the concatenation of the records
+ * of same-named variables in each of the files of a {@link CdfCatalog}.
+ *
+ * <p>Records are addressed using a global record index, which runs from
+ * zero to {@link #getRecordCount}.  Since the total may exceed the range
+ * of an <code>int</code>, global indices are <code>long</code>s.
+ * Files are opened by the catalog as required to read their records.
+ *
+ * <p>The reading methods behave like the corresponding methods of
+ * {@link Variable}, and use the same workspace arrays.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class CatalogVariable {
+
+    private final CdfCatalog catalog_;
+    private final String name_;
+    private final DataType dataType_;
+    private final Shaper shaper_;
+    private final boolean recordVariance_;
+    private final String summary_;
+    private final long[] starts_;
+    private final int rvaleng_;
+
+    /**
+     * Constructor.
+     *
+     * @param  catalog  catalog
+     * @param  name   variable name
+     * @param  dataType  data type
+     * @param  shaper   shaper
+     * @param  recordVariance  record variance
+     * @param  summary   summary text
+     * @param  starts  array with one more element than the number of files
+     *                 in the catalog, giving the global index of the first
+     *                 record of each file, followed by the total
+     *                 record count
+     */
+    CatalogVariable( CdfCatalog catalog, String name, DataType dataType,
+                     Shaper shaper, boolean recordVariance, String summary,
+                     long[] starts ) {
+        catalog_ = catalog;
+        name_ = name;
+        dataType_ = dataType;
+        shaper_ = shaper;
+        recordVariance_ = recordVariance;
+        summary_ = summary;
+        starts_ = starts;
+        rvaleng_ = shaper.getRawItemCount() * dataType.getGroupSize();
+    }
+
+    /**
+     * Returns this variable's name.
+     *
+     * @return  variable name
+     */
+    public String getName() {
+        return name_;
+    }
+
+    /**
+     * Returns the data type of this variable.
+     *
+     * @return  data type
+     */
+    public DataType getDataType() {
+        return dataType_;
+    }
+
+    /**
+     * Returns an object that knows about the array dimensions
+     * of the data values.
+     *
+     * @return  shaper
+     */
+    public Shaper getShaper() {
+        return shaper_;
+    }
+
+    /**
+     * Indicates whether this variable has a value which is fixed for all
+     * records or can vary per record.
+     *
+     * @return   false for fixed, true for varying
+     */
+    public boolean getRecordVariance() {
+        return recordVariance_;
+    }
+
+    /**
+     * Returns a short text string describing the type, shape and variance
+     * of this variable, as taken from the first file containing it.
+     *
+     * @return  text summary of variable characteristics
+     */
+    public String getSummary() {
+        return summary_;
+    }
+
+    /**
+     * Returns the total number of records in all files.
+     *
+     * @return  record count
+     */
+    public long getRecordCount() {
+        return starts_[ starts_.length - 1 ];
+    }
+
+    /**
+     * Returns the index of the catalog file containing a given record.
+     *
+     * @param  irec  global record index
+     * @return  file index
+     * @throws  IndexOutOfBoundsException  if the record index is out of range
+     */
+    public int getFileIndex( long irec ) {
+        if ( irec < 0 || irec >= getRecordCount() ) {
+            throw new IndexOutOfBoundsException( "Record " + irec
+                                               + " out of range" );
+        }
+
+        // Several consecutive files may have the same start if some
+        // are empty; the one we want is the last of them.
+        int ix = Arrays.binarySearch( starts_, irec );
+        if ( ix >= 0 ) {
+            while ( starts_[ ix + 1 ] == irec ) {
+                ix++;
+            }
+            return ix;
+        }
+        else {
+            return -2 - ix;
+        }
+    }
+
+    /**
+     * Returns the global index of the first record in a given file.
+     *
+     * @param  ifile  file index
+     * @return  global record index of the file's first record
+     */
+    public long getFileStart( int ifile ) {
+        return starts_[ ifile ];
+    }
+
+    /**
+     * Creates a workspace array suitable for use with this variable's
+     * reading methods.
+     *
+     * @return  workspace array for data reading
+     */
+    public Object createRawValueArray() {
+        return createRawValueArray( 1 );
+    }
+
+    /**
+     * Creates a workspace array big enough to hold the raw values
+     * of a given number of records, suitable for use with the
+     * {@link #readRawRecords readRawRecords} method.
+     *
+     * @param  nrec  number of records
+     * @return  workspace array for bulk data reading
+     */
+    public Object createRawValueArray( int nrec ) {
+        return Array.newInstance( dataType_.getArrayElementClass(),
+                                  nrec * rvaleng_ );
+    }
+
+    /**
+     * Reads the data from a single record into a supplied raw value array.
+     *
+     * @param  irec  global record index
+     * @param  rawValueArray  workspace array, as created by the
+     *                        <code>createRawValueArray</code> method
+     * @see   Variable#readRawRecord
+     */
+    public void readRawRecord( long irec, Object rawValueArray )
+            throws IOException {
+        int ifile = getFileIndex( irec );
+        CdfCatalog.OpenFile ofile = catalog_.acquireFile( ifile );
+        try {
+            getFileVariable( ofile, ifile )
+               .readRawRecord( (int) ( irec - starts_[ ifile ] ),
+                               rawValueArray );
+        }
+        finally {
+            catalog_.releaseFile( ofile );
+        }
+    }
+
+    /**
+     * Reads the data from a run of consecutive records into a supplied
+     * raw value array.  The run does not extend beyond the end of the
+     * file containing the first record, so fewer records than requested
+     * may be read.
+     *
+     * @param  irec  global index of first record
+     * @param  nrec  maximum number of records to read
+     * @param  rawValueArray  workspace array, as created by the
+     *                        <code>createRawValueArray(int)</code> method
+     * @return   number of records read, at least 1
+     * @see   Variable#readRawRecords
+     */
+    public int readRawRecords( long irec, int nrec, Object rawValueArray )
+            throws IOException {
+        int ifile = getFileIndex( irec );
+        long fileEnd = starts_[ ifile + 1 ];
+        int n = (int) Math.min( nrec, fileEnd - irec );
+        CdfCatalog.OpenFile ofile = catalog_.acquireFile( ifile );
+        try {
+            return getFileVariable( ofile, ifile )
+                  .readRawRecords( (int) ( irec - starts_[ ifile ] ), n,
+                                   rawValueArray );
+        }
+        finally {
+            catalog_.releaseFile( ofile );
+        }
+    }
+
+    /**
+     * Reads the data from a single record and returns it as an object
+     * of a suitable type for this variable.
+     *
+     * @param  irec  global record index
+     * @param  rowMajor  required majority of output array; true for row major,
+     *                   false for column major; only has an effect for
+     *                   dimensionality &gt;=2
+     * @param  rawValueArrayWorkspace  workspace array, as created by the
+     *                                 <code>createRawValueArray</code> method
+     * @return   a new object containing the shaped result
+     * @see   Variable#readShapedRecord(int,boolean,Object)
+     */
+    public Object readShapedRecord( long irec, boolean rowMajor,
+                                    Object rawValueArrayWorkspace )
+            throws IOException {
+        int ifile = getFileIndex( irec );
+        CdfCatalog.OpenFile ofile = catalog_.acquireFile( ifile );
+        try {
+            return getFileVariable( ofile, ifile )
+                  .readShapedRecord( (int) ( irec - starts_[ ifile ] ),
+                                     rowMajor, rawValueArrayWorkspace );
+        }
+        finally {
+            catalog_.releaseFile( ofile );
+        }
+    }
+
+    /**
+     * Returns the variable from a given file.
+     *
+     * @param  ofile  open file
+     * @param  ifile  index of file
+     * @return  variable
+     */
+    private Variable getFileVariable( CdfCatalog.OpenFile ofile, int ifile )
+            throws CdfFormatException {
+        Variable var = ofile.getVariable( name_ );
+        if ( var == null ) {
+            throw new CdfFormatException( "Variable " + name_
+                                        + " has disappeared from "
+                                        + catalog_.getFile( ifile ) );
+        }
+        return var;
+    }
+}
@@ -0,0 +1,1130 @@
+package uk.ac.bristol.star.cdf.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import uk.ac.bristol.star.cdf.AttributeEntry;
+import uk.ac.bristol.star.cdf.CdfContent;
+import uk.ac.bristol.star.cdf.CdfReader;
+import uk.ac.bristol.star.cdf.DataType;
+import uk.ac.bristol.star.cdf.Tt2kConverter;
+import uk.ac.bristol.star.cdf.Variable;
+import uk.ac.bristol.star.cdf.VariableAttribute;
+
+/**
+ * Exports CDF variable data in the Apache Arrow columnar format.
+ * Each exported variable becomes one column, and each record one row.
+ * Data is read in bulk, a batch of records at a time, and written
+ * as Arrow IPC file format record batches, so that no per-record
+ * calls are required.
+ *
+ * <p>Data types are mapped as follows:
+ * <ul>
+ * <li>INT1, INT2, INT4, INT8, BYTE: signed integers of the same width</li>
+ * <li>UINT1, UINT2, UINT4: unsigned integers of the same width</li>
+ * <li>REAL4, FLOAT: single precision floating point</li>
+ * <li>REAL8, DOUBLE, EPOCH: double precision floating point</li>
+ * <li>EPOCH16: fixed-size list of two double precision values</li>
+ * <li>TIME_TT2000: nanosecond timestamp in UTC;
+ *     the CDF fill values for TT2000 are written as nulls,
+ *     and times during a leap second are not distinguished from
+ *     the following second</li>
+ * <li>CHAR, UCHAR: UTF-8 strings</li>
+ * </ul>
+ * Array-valued variables are written as fixed-size lists of items
+ * in the variable's raw (file) order.
+ * Records not present in the file, as reported by
+ * {@link Variable#hasRecord}, and rows beyond a variable's record count,
+ * are flagged as null in the column validity bitmaps.
+ * Variable attribute values are written as field metadata.
+ *
+ * <p>This class implements the required subset of the Arrow IPC format
+ * directly, so no Arrow library is required.
+ * Intended to be used either programmatically or from the commandline
+ * via the <code>main</code> method.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class CdfArrow {
+
+    private final Column[] columns_;
+    private final int nrow_;
+
+    private static final byte[] MAGIC = FlatBuilder.toUtf8( "ARROW1" );
+    private static final short METADATA_V5 = 4;
+    private static final byte HEADER_SCHEMA = 1;
+    private static final byte HEADER_RECORDBATCH = 3;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_FLOATINGPOINT = 3;
+    private static final byte TYPE_UTF8 = 5;
+    private static final byte TYPE_TIMESTAMP = 10;
+    private static final byte TYPE_FIXEDSIZELIST = 16;
+    private static final int BATCH_BYTES = 32 * 1024 * 1024;
+    private static final int MAX_BATCH_ROWS = 64 * 1024;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final ByteBuffer ZEROS =
+        ByteBuffer.allocate( 64 ).asReadOnlyBuffer();
+
+    /**
+     * Constructor.
+     *
+     * @param  cdf   CDF content
+     * @param  vars  variables to export; if null, all record-varying
+     *               variables are used
+     */
+    public CdfArrow( CdfContent cdf, Variable[] vars ) {
+        if ( vars == null ) {
+            List<Variable> varList = new ArrayList<Variable>();
+            Variable[] allVars = cdf.getVariables();
+            for ( int iv = 0; iv < allVars.length; iv++ ) {
+                if ( allVars[ iv ].getRecordVariance() ) {
+                    varList.add( allVars[ iv ] );
+                }
+            }
+            vars = varList.toArray( new Variable[ 0 ] );
+        }
+        VariableAttribute[] vAtts = cdf.getVariableAttributes();
+        columns_ = new Column[ vars.length ];
+        int nrow = 0;
+        for ( int iv = 0; iv < vars.length; iv++ ) {
+            Column col = new Column( vars[ iv ], vAtts );
+            columns_[ iv ] = col;
+            nrow = Math.max( nrow, col.nrec_ );
+        }
+        nrow_ = nrow;
+    }
+
+    /**
+     * Returns the number of rows that will be exported.
+     * This is the largest record count of the exported variables.
+     *
+     * @return  row count
+     */
+    public int getRowCount() {
+        return nrow_;
+    }
+
+    /**
+     * Returns a batch size suitable for the exported variables,
+     * chosen so that each batch occupies a few tens of megabytes.
+     *
+     * @return  default number of rows per record batch
+     */
+    public int getDefaultBatchSize() {
+        long rowBytes = 1;
+        for ( int ic = 0; ic < columns_.length; ic++ ) {
+            rowBytes += columns_[ ic ].var_.createRawByteArray().length;
+        }
+        return (int) Math.max( 1, Math.min( MAX_BATCH_ROWS,
+                                            BATCH_BYTES / rowBytes ) );
+    }
+
+    /**
+     * Writes the exported data to a file in Arrow IPC file format.
+     *
+     * @param  file  destination file
+     * @param  batchSize  maximum number of rows per record batch
+     */
+    public void writeFile( File file, int batchSize ) throws IOException {
+        FileOutputStream out = new FileOutputStream( file );
+        try {
+            write( out.getChannel(), batchSize );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the exported data to a channel in Arrow IPC file format.
+     * The channel is not closed.
+     *
+     * @param  chan  destination channel
+     * @param  batchSize  maximum number of rows per record batch
+     */
+    public void write( WritableByteChannel chan, int batchSize )
+            throws IOException {
+        if ( batchSize < 1 ) {
+            throw new IllegalArgumentException( "Bad batch size "
+                                              + batchSize );
+        }
+        ChannelWriter out = new ChannelWriter( chan );
+        out.writeBytes( MAGIC );
+        out.pad( 8 - MAGIC.length );
+
+        // Schema message.
+        FlatBuilder fb = new FlatBuilder( 1024 );
+        int schemaOff = createSchema( fb );
+        out.writeMessage( createMessage( fb, HEADER_SCHEMA, schemaOff, 0 ) );
+
+        // Record batch messages.
+        List<long[]> blocks = new ArrayList<long[]>();
+        List<long[]> nodes = new ArrayList<long[]>();
+        List<ByteBuffer> bufs = new ArrayList<ByteBuffer>();
+        for ( int ir0 = 0; ir0 < nrow_ || ir0 == 0; ir0 += batchSize ) {
+            int nr = Math.min( batchSize, nrow_ - ir0 );
+            nodes.clear();
+            bufs.clear();
+            for ( int ic = 0; ic < columns_.length; ic++ ) {
+                columns_[ ic ].addBatch( ir0, nr, batchSize, nodes, bufs );
+            }
+            long[][] bufSpecs = new long[ bufs.size() ][];
+            long bodyLeng = 0;
+            for ( int ib = 0; ib < bufSpecs.length; ib++ ) {
+                int leng = bufs.get( ib ).remaining();
+                bufSpecs[ ib ] = new long[] { bodyLeng, leng };
+                bodyLeng += align8( leng );
+            }
+            fb = new FlatBuilder( 1024 );
+            int nodesOff =
+                fb.createLongStructVector( nodes.toArray( new long[ 0 ][] ),
+                                           2 );
+            int bufsOff = fb.createLongStructVector( bufSpecs, 2 );
+            fb.startTable( 5 );
+            fb.addLong( 0, nr, 0 );
+            fb.addOffset( 1, nodesOff );
+            fb.addOffset( 2, bufsOff );
+            int batchOff = fb.endTable();
+            long blockPos = out.pos_;
+            int metaLeng =
+                out.writeMessage( createMessage( fb, HEADER_RECORDBATCH,
+                                                 batchOff, bodyLeng ) );
+            for ( ByteBuffer bbuf : bufs ) {
+                int leng = bbuf.remaining();
+                out.write( bbuf );
+                out.pad( align8( leng ) - leng );
+            }
+
+            // A Block struct is a long, an int padded to 8 bytes, and a long;
+            // since the int is non-negative, it can be written as a
+            // little-endian long.
+            blocks.add( new long[] { blockPos, metaLeng, bodyLeng } );
+        }
+
+        // End-of-stream marker.
+        out.writeInt( 0xffffffff );
+        out.writeInt( 0 );
+
+        // Footer.
+        fb = new FlatBuilder( 1024 );
+        schemaOff = createSchema( fb );
+        int dictsOff = fb.createLongStructVector( new long[ 0 ][], 3 );
+        int blocksOff =
+            fb.createLongStructVector( blocks.toArray( new long[ 0 ][] ), 3 );
+        fb.startTable( 5 );
+        fb.addShort( 0, METADATA_V5, (short) 0 );
+        fb.addOffset( 1, schemaOff );
+        fb.addOffset( 2, dictsOff );
+        fb.addOffset( 3, blocksOff );
+        byte[] footer = fb.finish( fb.endTable() );
+        out.writeBytes( footer );
+        out.writeInt( footer.length );
+        out.writeBytes( MAGIC );
+        out.flush();
+    }
+
+    /**
+     * Writes an Arrow Schema table describing the exported columns.
+     *
+     * @param  fb  flatbuffer builder
+     * @return  schema table offset
+     */
+    private int createSchema( FlatBuilder fb ) {
+        int[] fieldOffs = new int[ columns_.length ];
+        for ( int ic = 0; ic < columns_.length; ic++ ) {
+            fieldOffs[ ic ] = columns_[ ic ].createField( fb );
+        }
+        int fieldsOff = fb.createOffsetVector( fieldOffs );
+        fb.startTable( 4 );
+        fb.addOffset( 1, fieldsOff );
+        return fb.endTable();
+    }
+
+    /**
+     * Writes an Arrow Message table and finishes the buffer.
+     *
+     * @param  fb  flatbuffer builder
+     * @param  headerType  message header union type code
+     * @param  headerOff   offset of message header table
+     * @param  bodyLeng    length of message body in bytes
+     * @return   encoded message metadata
+     */
+    private static byte[] createMessage( FlatBuilder fb, byte headerType,
+                                         int headerOff, long bodyLeng ) {
+        fb.startTable( 5 );
+        fb.addShort( 0, METADATA_V5, (short) 0 );
+        fb.addByte( 1, headerType, (byte) 0 );
+        fb.addOffset( 2, headerOff );
+        fb.addLong( 3, bodyLeng, 0 );
+        return fb.finish( fb.endTable() );
+    }
+
+    /**
+     * Rounds a byte count up to a multiple of 8.
+     *
+     * @param  leng  byte count
+     * @return  aligned byte count
+     */
+    private static long align8( long leng ) {
+        return ( leng + 7 ) & ~7L;
+    }
+
+    /**
+     * Returns an encoder for a given CDF data type.
+     *
+     * @param  dataType  data type
+     * @return  encoder, or null if the type is not supported
+     */
+    private static Encoder getEncoder( DataType dataType ) {
+        if ( dataType == DataType.INT1 || dataType == DataType.BYTE ) {
+            return new IntEncoder( 8, true ) {
+                void encode( Object raw, int n, ByteBuffer bbuf ) {
+                    bbuf.duplicate().put( (byte[]) raw, 0, n );
+                }
+            };
+        }
+        else if ( dataType == DataType.INT2 ) {
+            return new IntEncoder( 16, true ) {
+                void encode( Object raw, int n, ByteBuffer bbuf ) {
+                    bbuf.asShortBuffer().put( (short[]) raw, 0, n );
+                }
+            };
+        }
+        else if ( dataType == DataType.INT4 ) {
+            return new IntEncoder( 32, true ) {
+                void encode( Object raw, int n, ByteBuffer bbuf ) {
+                    bbuf.asIntBuffer().put( (int[]) raw, 0, n );
+                }
+            };
+        }
+        else if ( dataType == DataType.INT8 ) {
+            return new IntEncoder( 64, true ) {
+                void encode( Object raw, int n, ByteBuffer bbuf ) {
+                    bbuf.asLongBuffer().put( (long[]) raw, 0, n );
+                }
+            };
+        }
+        else if ( dataType == DataType.UINT1 ) {
+            return new IntEncoder( 8, false ) {
+                void encode( Object raw, int n, ByteBuffer bbuf ) {
+                    short[] sarray = (short[]) raw;
+                    for ( int i = 0; i < n; i++ ) {
+                        bbuf.put( i, (byte) sarray[ i ] );
+                    }
+                }
+            };
+        }
+        else if ( dataType == DataType.UINT2 ) {
+            return new IntEncoder( 16, false ) {
+                void encode( Object raw, int n, ByteBuffer bbuf ) {
+                    int[] iarray = (int[]) raw;
+                    for ( int i = 0; i < n; i++ ) {
+                        bbuf.putShort( 2 * i, (short) iarray[ i ] );
+                    }
+                }
+            };
+        }
+        else if ( dataType == DataType.UINT4 ) {
+            return new IntEncoder( 32, false ) {
+                void encode( Object raw, int n, ByteBuffer bbuf ) {
+                    long[] larray = (long[]) raw;
+                    for ( int i = 0; i < n; i++ ) {
+                        bbuf.putInt( 4 * i, (int) larray[ i ] );
+                    }
+                }
+            };
+        }
+        else if ( dataType == DataType.REAL4 || dataType == DataType.FLOAT ) {
+            return new FloatEncoder( false );
+        }
+        else if ( dataType == DataType.REAL8 || dataType == DataType.DOUBLE ||
+                  dataType == DataType.EPOCH ||
+                  dataType == DataType.EPOCH16 ) {
+            return new FloatEncoder( true );
+        }
+        else if ( dataType.getName()
+                          .equals( DataType.TIME_TT2000.getName() ) ) {
+            return new Tt2kEncoder();
+        }
+        else if ( dataType == DataType.CHAR || dataType == DataType.UCHAR ) {
+            return new Utf8Encoder();
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Does the work for the command line tool, handling arguments.
+     * Sucess is indicated by the return value.
+     *
+     * @param  args   command-line arguments
+     * @return   0 for success, non-zero for failure
+     */
+    public static int runMain( String[] args ) throws IOException {
+
+        // Usage string.
+        String usage = new StringBuffer()
+           .append( "\n   Usage: " )
+           .append( CdfArrow.class.getName() )
+           .append( " [-help]" )
+           .append( " [-verbose]" )
+           .append( " [-batch <nrow>]" )
+           .append( " [-var <name> ...]" )
+           .append( " <cdf-file> <arrow-file>" )
+           .append( "\n" )
+           .toString();
+
+        // Process arguments.
+        List<String> argList = new ArrayList<String>( Arrays.asList( args ) );
+        File inFile = null;
+        File outFile = null;
+        List<String> varNames = new ArrayList<String>();
+        int batchSize = -1;
+        int verb = 0;
+        for ( Iterator<String> it = argList.iterator(); it.hasNext(); ) {
+            String arg = it.next();
+            if ( arg.startsWith( "-h" ) ) {
+                it.remove();
+                System.out.println( usage );
+                return 0;
+            }
+            else if ( arg.equals( "-verbose" ) || arg.equals( "-v" ) ) {
+                it.remove();
+                verb++;
+            }
+            else if ( arg.equals( "+verbose" ) || arg.equals( "+v" ) ) {
+                it.remove();
+                verb--;
+            }
+            else if ( arg.equals( "-batch" ) && it.hasNext() ) {
+                it.remove();
+                String sval = it.next();
+                it.remove();
+                try {
+                    batchSize = Integer.parseInt( sval );
+                }
+                catch ( NumberFormatException e ) {
+                    System.err.println( "Bad batch size: " + sval );
+                    return 1;
+                }
+            }
+            else if ( arg.equals( "-var" ) && it.hasNext() ) {
+                it.remove();
+                varNames.add( it.next() );
+                it.remove();
+            }
+            else if ( inFile == null ) {
+                it.remove();
+                inFile = new File( arg );
+            }
+            else if ( outFile == null ) {
+                it.remove();
+                outFile = new File( arg );
+            }
+        }
+
+        // Validate arguments.
+        if ( ! argList.isEmpty() ) {
+            System.err.println( "Unused args: " + argList );
+            System.err.println( usage );
+            return 1;
+        }
+        if ( inFile == null || outFile == null ) {
+            System.err.println( usage );
+            return 1;
+        }
+
+        // Configure and run.
+        LogUtil.setVerbosity( verb );
+        CdfContent cdf = new CdfContent( new CdfReader( inFile ) );
+        Variable[] vars = null;
+        if ( ! varNames.isEmpty() ) {
+            vars = new Variable[ varNames.size() ];
+            for ( int iv = 0; iv < vars.length; iv++ ) {
+                String name = varNames.get( iv );
+                vars[ iv ] = getVariable( cdf, name );
+                if ( vars[ iv ] == null ) {
+                    System.err.println( "No such variable: " + name );
+                    return 1;
+                }
+            }
+        }
+        CdfArrow exporter = new CdfArrow( cdf, vars );
+        exporter.writeFile( outFile, batchSize > 0
+                                   ? batchSize
+                                   : exporter.getDefaultBatchSize() );
+        return 0;
+    }
+
+    /**
+     * Returns the variable with a given name.
+     *
+     * @param  cdf  CDF content
+     * @param  name  variable name
+     * @return  variable, or null if none matches
+     */
+    private static Variable getVariable( CdfContent cdf, String name ) {
+        Variable[] vars = cdf.getVariables();
+        for ( int iv = 0; iv < vars.length; iv++ ) {
+            if ( vars[ iv ].getName().equals( name ) ) {
+                return vars[ iv ];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Main method.  Use -help for arguments.
+     */
+    public static void main( String[] args ) throws IOException {
+        int status = runMain( args );
+        if ( status != 0 ) {
+            System.exit( status );
+        }
+    }
+
+    /**
+     * Represents one exported column, corresponding to a CDF variable.
+     */
+    private static class Column {
+
+        final Variable var_;
+        final int nrec_;
+        private final Encoder encoder_;
+        private final String[][] metadata_;
+        private final int[] listSizes_;
+        private final int rvaleng_;
+        private final BufferPool pool_;
+        private Object work_;
+        private Object batchRaw_;
+        private boolean[] rowFlags_;
+        private boolean[] leafFlags_;
+
+        /**
+         * Constructor.
+         *
+         * @param  var  variable
+         * @param  vAtts  variable attributes, used for field metadata
+         */
+        Column( Variable var, VariableAttribute[] vAtts ) {
+            var_ = var;
+            DataType dataType = var.getDataType();
+            encoder_ = getEncoder( dataType );
+            if ( encoder_ == null ) {
+                throw new IllegalArgumentException( "Unsupported data type "
+                                                  + dataType + " for "
+                                                  + var.getName() );
+            }
+            nrec_ = var.getRecordVariance() ? var.getRecordCount() : 1;
+            rvaleng_ = Array.getLength( var.createRawValueArray() );
+            int groupSize = dataType.getGroupSize();
+            int nitem = rvaleng_ / groupSize;
+            List<Integer> sizeList = new ArrayList<Integer>();
+            if ( var.getShaper().getDimSizes().length > 0 ) {
+                sizeList.add( new Integer( nitem ) );
+            }
+            if ( groupSize > 1 ) {
+                sizeList.add( new Integer( groupSize ) );
+            }
+            listSizes_ = new int[ sizeList.size() ];
+            for ( int i = 0; i < listSizes_.length; i++ ) {
+                listSizes_[ i ] = sizeList.get( i ).intValue();
+            }
+            List<String[]> metaList = new ArrayList<String[]>();
+            for ( int ia = 0; ia < vAtts.length; ia++ ) {
+                AttributeEntry entry = vAtts[ ia ].getEntry( var );
+                if ( entry != null ) {
+                    metaList.add( new String[] { vAtts[ ia ].getName(),
+                                                 entry.toString() } );
+                }
+            }
+            metadata_ = metaList.toArray( new String[ 0 ][] );
+            pool_ = new BufferPool();
+        }
+
+        /**
+         * Writes an Arrow Field table describing this column.
+         *
+         * @param  fb  flatbuffer builder
+         * @return  field table offset
+         */
+        int createField( FlatBuilder fb ) {
+            int[] kvOffs = new int[ metadata_.length ];
+            for ( int im = 0; im < metadata_.length; im++ ) {
+                int keyOff = fb.createString( metadata_[ im ][ 0 ] );
+                int valueOff = fb.createString( metadata_[ im ][ 1 ] );
+                fb.startTable( 2 );
+                fb.addOffset( 0, keyOff );
+                fb.addOffset( 1, valueOff );
+                kvOffs[ im ] = fb.endTable();
+            }
+            int metaOff = fb.createOffsetVector( kvOffs );
+            return createField( fb, var_.getName(), 0, metaOff );
+        }
+
+        /**
+         * Recursively writes an Arrow Field table for a given
+         * list nesting level of this column.
+         *
+         * @param  fb  flatbuffer builder
+         * @param  name  field name
+         * @param  level  nesting level, 0 for the top level
+         * @param  metaOff  offset of metadata vector, or 0 for none
+         * @return  field table offset
+         */
+        private int createField( FlatBuilder fb, String name, int level,
+                                 int metaOff ) {
+            int nameOff = fb.createString( name );
+            final int[] childOffs;
+            final byte typeId;
+            final int typeOff;
+            if ( level < listSizes_.length ) {
+                childOffs = new int[] {
+                    createField( fb, "item", level + 1, 0 ),
+                };
+                fb.startTable( 1 );
+                fb.addInt( 0, listSizes_[ level ], 0 );
+                typeOff = fb.endTable();
+                typeId = TYPE_FIXEDSIZELIST;
+            }
+            else {
+                childOffs = new int[ 0 ];
+                typeOff = encoder_.createType( fb );
+                typeId = encoder_.typeId_;
+            }
+            int childrenOff = fb.createOffsetVector( childOffs );
+            fb.startTable( 7 );
+            fb.addOffset( 0, nameOff );
+            fb.addBoolean( 1, true, false );
+            fb.addByte( 2, typeId, (byte) 0 );
+            fb.addOffset( 3, typeOff );
+            fb.addOffset( 5, childrenOff );
+            if ( metaOff != 0 ) {
+                fb.addOffset( 6, metaOff );
+            }
+            return fb.endTable();
+        }
+
+        /**
+         * Reads a batch of rows for this column and appends the
+         * corresponding Arrow field nodes and buffers to supplied lists.
+         * The buffers remain valid until the next call of this method.
+         *
+         * @param  irow  index of first row
+         * @param  nrow  number of rows
+         * @param  batchSize  maximum number of rows in any batch
+         * @param  nodes  list of (length, nullCount) pairs to append to
+         * @param  bufs   list of buffers to append to
+         */
+        void addBatch( int irow, int nrow, int batchSize, List<long[]> nodes,
+                       List<ByteBuffer> bufs ) throws IOException {
+            if ( batchRaw_ == null ||
+                 Array.getLength( batchRaw_ ) < batchSize * rvaleng_ ) {
+                work_ = var_.createRawValueArray( batchSize );
+                batchRaw_ = var_.createRawValueArray( batchSize );
+                rowFlags_ = new boolean[ batchSize ];
+            }
+            pool_.reset();
+
+            // Read the data in runs, noting validity.
+            boolean isVar = var_.getRecordVariance();
+            int nr = 0;
+            while ( nr < nrow ) {
+                int ir = irow + nr;
+                if ( isVar && ir >= nrec_ ) {
+                    Arrays.fill( rowFlags_, nr, nrow, false );
+                    nr = nrow;
+                }
+                else {
+                    int nread = var_.readRawRecords( ir, nrow - nr,
+                                                     batchRaw_,
+                                                     nr * rvaleng_, work_ );
+                    boolean isValid = ! isVar || var_.hasRecord( ir );
+                    Arrays.fill( rowFlags_, nr, nr + nread, isValid );
+                    nr += nread;
+                }
+            }
+
+            // Top-level and intermediate list nodes.
+            int nleaf = nrow;
+            if ( listSizes_.length > 0 ) {
+                nodes.add( new long[] {
+                    nrow, addValidity( rowFlags_, nrow, bufs ),
+                } );
+                for ( int il = 0; il < listSizes_.length; il++ ) {
+                    nleaf *= listSizes_[ il ];
+                    if ( il < listSizes_.length - 1 ) {
+                        nodes.add( new long[] { nleaf, 0 } );
+                        bufs.add( pool_.next( 0 ) );
+                    }
+                }
+            }
+
+            // Leaf node.
+            final boolean[] leafFlags;
+            if ( listSizes_.length == 0 || encoder_.hasNulls() ) {
+                if ( leafFlags_ == null || leafFlags_.length < nleaf ) {
+                    leafFlags_ = new boolean[ nleaf ];
+                }
+                int nper = nleaf / Math.max( nrow, 1 );
+                for ( int i = 0; i < nleaf; i++ ) {
+                    leafFlags_[ i ] = ( listSizes_.length > 0 ||
+                                        rowFlags_[ i / nper ] )
+                                   && ! encoder_.isNull( batchRaw_, i );
+                }
+                leafFlags = leafFlags_;
+            }
+            else {
+                leafFlags = null;
+            }
+            nodes.add( new long[] {
+                nleaf, addValidity( leafFlags, nleaf, bufs ),
+            } );
+            encoder_.addBuffers( batchRaw_, nleaf, pool_, bufs );
+        }
+
+        /**
+         * Appends a validity bitmap buffer to a list.
+         * If there are no nulls, a zero-length buffer is used.
+         *
+         * @param  flags  per-element validity flags, or null for all valid
+         * @param  n   number of elements
+         * @param  bufs  list of buffers to append to
+         * @return   null count
+         */
+        private int addValidity( boolean[] flags, int n,
+                                 List<ByteBuffer> bufs ) {
+            int nnull = 0;
+            if ( flags != null ) {
+                for ( int i = 0; i < n; i++ ) {
+                    if ( ! flags[ i ] ) {
+                        nnull++;
+                    }
+                }
+            }
+            if ( nnull == 0 ) {
+                bufs.add( pool_.next( 0 ) );
+            }
+            else {
+                ByteBuffer bbuf = pool_.next( ( n + 7 ) / 8 );
+                for ( int ib = 0; ib < bbuf.limit(); ib++ ) {
+                    int bits = 0;
+                    for ( int j = 0; j < 8; j++ ) {
+                        int i = ib * 8 + j;
+                        if ( i < n && flags[ i ] ) {
+                            bits |= 1 << j;
+                        }
+                    }
+                    bbuf.put( ib, (byte) bits );
+                }
+                bufs.add( bbuf );
+            }
+            return nnull;
+        }
+    }
+
+    /**
+     * Converts raw CDF value arrays into Arrow leaf buffers.
+     */
+    private static abstract class Encoder {
+
+        final byte typeId_;
+
+        /**
+         * Constructor.
+         *
+         * @param  typeId  Arrow Type union code
+         */
+        Encoder( byte typeId ) {
+            typeId_ = typeId;
+        }
+
+        /**
+         * Writes the Arrow type table for this encoder.
+         *
+         * @param  fb  flatbuffer builder
+         * @return  type table offset
+         */
+        abstract int createType( FlatBuilder fb );
+
+        /**
+         * Appends the data buffers, excluding the validity bitmap,
+         * for a number of elements.
+         *
+         * @param  raw   raw value array
+         * @param  n   number of elements
+         * @param  pool  buffer source
+         * @param  bufs  list of buffers to append to
+         */
+        abstract void addBuffers( Object raw, int n, BufferPool pool,
+                                  List<ByteBuffer> bufs );
+
+        /**
+         * Indicates whether this encoder can ever represent elements
+         * as null.
+         *
+         * @return  true iff isNull may return true
+         */
+        boolean hasNulls() {
+            return false;
+        }
+
+        /**
+         * Indicates whether a given element represents a null value.
+         *
+         * @param  raw  raw value array
+         * @param  i   element index
+         * @return  true iff element is null
+         */
+        boolean isNull( Object raw, int i ) {
+            return false;
+        }
+    }
+
+    /**
+     * Encoder for fixed-width values.
+     */
+    private static abstract class FixedEncoder extends Encoder {
+        private final int byteWidth_;
+
+        /**
+         * Constructor.
+         *
+         * @param  typeId  Arrow Type union code
+         * @param  byteWidth  bytes per element
+         */
+        FixedEncoder( byte typeId, int byteWidth ) {
+            super( typeId );
+            byteWidth_ = byteWidth;
+        }
+
+        /**
+         * Writes raw values into a data buffer.
+         * The buffer position must not be changed.
+         *
+         * @param  raw  raw value array
+         * @param  n   number of elements
+         * @param  bbuf  little-endian buffer of the right size
+         */
+        abstract void encode( Object raw, int n, ByteBuffer bbuf );
+
+        void addBuffers( Object raw, int n, BufferPool pool,
+                         List<ByteBuffer> bufs ) {
+            ByteBuffer bbuf = pool.next( n * byteWidth_ );
+            encode( raw, n, bbuf );
+            bufs.add( bbuf );
+        }
+    }
+
+    /**
+     * Encoder for integer values.
+     */
+    private static abstract class IntEncoder extends FixedEncoder {
+        private final int bitWidth_;
+        private final boolean isSigned_;
+
+        /**
+         * Constructor.
+         *
+         * @param  bitWidth  bits per value
+         * @param  isSigned  true for signed, false for unsigned
+         */
+        IntEncoder( int bitWidth, boolean isSigned ) {
+            super( TYPE_INT, bitWidth / 8 );
+            bitWidth_ = bitWidth;
+            isSigned_ = isSigned;
+        }
+
+        int createType( FlatBuilder fb ) {
+            fb.startTable( 2 );
+            fb.addInt( 0, bitWidth_, 0 );
+            fb.addBoolean( 1, isSigned_, false );
+            return fb.endTable();
+        }
+    }
+
+    /**
+     * Encoder for floating point values.
+     */
+    private static class FloatEncoder extends FixedEncoder {
+        private final boolean isDouble_;
+
+        /**
+         * Constructor.
+         *
+         * @param  isDouble  true for double precision, false for single
+         */
+        FloatEncoder( boolean isDouble ) {
+            super( TYPE_FLOATINGPOINT, isDouble ? 8 : 4 );
+            isDouble_ = isDouble;
+        }
+
+        int createType( FlatBuilder fb ) {
+            fb.startTable( 1 );
+            fb.addShort( 0, (short) ( isDouble_ ? 2 : 1 ), (short) 0 );
+            return fb.endTable();
+        }
+
+        void encode( Object raw, int n, ByteBuffer bbuf ) {
+            if ( isDouble_ ) {
+                bbuf.asDoubleBuffer().put( (double[]) raw, 0, n );
+            }
+            else {
+                bbuf.asFloatBuffer().put( (float[]) raw, 0, n );
+            }
+        }
+    }
+
+    /**
+     * Encoder for TIME_TT2000 values, written as Unix timestamps.
+     * Not thread-safe.
+     */
+    private static class Tt2kEncoder extends FixedEncoder {
+        private final Tt2kConverter converter_;
+
+        Tt2kEncoder() {
+            super( TYPE_TIMESTAMP, 8 );
+            converter_ = new Tt2kConverter();
+        }
+
+        int createType( FlatBuilder fb ) {
+            int tzOff = fb.createString( "UTC" );
+            fb.startTable( 2 );
+            fb.addShort( 0, (short) 3, (short) 0 );
+            fb.addOffset( 1, tzOff );
+            return fb.endTable();
+        }
+
+        boolean hasNulls() {
+            return true;
+        }
+
+        boolean isNull( Object raw, int i ) {
+            return Tt2kConverter.isFill( ((long[]) raw)[ i ] );
+        }
+
+        void encode( Object raw, int n, ByteBuffer bbuf ) {
+            long[] larray = (long[]) raw;
+            for ( int i = 0; i < n; i++ ) {
+                long unixNanos = isNull( larray, i )
+                               ? 0
+                               : converter_.toUnixNanos( larray[ i ] );
+                bbuf.putLong( 8 * i, unixNanos );
+            }
+        }
+    }
+
+    /**
+     * Encoder for string values.
+     */
+    private static class Utf8Encoder extends Encoder {
+        private byte[][] work_;
+
+        Utf8Encoder() {
+            super( TYPE_UTF8 );
+        }
+
+        int createType( FlatBuilder fb ) {
+            fb.startTable( 0 );
+            return fb.endTable();
+        }
+
+        void addBuffers( Object raw, int n, BufferPool pool,
+                         List<ByteBuffer> bufs ) {
+            String[] sarray = (String[]) raw;
+            if ( work_ == null || work_.length < n ) {
+                work_ = new byte[ n ][];
+            }
+            int nbyte = 0;
+            for ( int i = 0; i < n; i++ ) {
+                String s = sarray[ i ];
+                work_[ i ] = s == null ? new byte[ 0 ] : FlatBuilder.toUtf8( s );
+                nbyte += work_[ i ].length;
+            }
+            ByteBuffer offBuf = pool.next( ( n + 1 ) * 4 );
+            ByteBuffer dataBuf = pool.next( nbyte );
+            int off = 0;
+            for ( int i = 0; i < n; i++ ) {
+                offBuf.putInt( 4 * i, off );
+                byte[] bytes = work_[ i ];
+                for ( int j = 0; j < bytes.length; j++ ) {
+                    dataBuf.put( off++, bytes[ j ] );
+                }
+                work_[ i ] = null;
+            }
+            offBuf.putInt( 4 * n, off );
+            bufs.add( offBuf );
+            bufs.add( dataBuf );
+        }
+    }
+
+    /**
+     * Supplies reusable direct buffers, so that buffer allocation
+     * is only required for the first batch.
+     */
+    private static class BufferPool {
+        private final List<ByteBuffer> bufs_ = new ArrayList<ByteBuffer>();
+        private int ibuf_;
+
+        /**
+         * Makes all buffers available for reuse.
+         */
+        void reset() {
+            ibuf_ = 0;
+        }
+
+        /**
+         * Returns the next buffer, with position zero and limit
+         * equal to the requested size.  The content is undefined.
+         *
+         * @param  size  required size in bytes
+         * @return  little-endian buffer
+         */
+        ByteBuffer next( int size ) {
+            ByteBuffer bbuf = ibuf_ < bufs_.size() ? bufs_.get( ibuf_ ) : null;
+            if ( bbuf == null || bbuf.capacity() < size ) {
+                bbuf = ByteBuffer.allocateDirect( size )
+                                 .order( ByteOrder.LITTLE_ENDIAN );
+                if ( ibuf_ < bufs_.size() ) {
+                    bufs_.set( ibuf_, bbuf );
+                }
+                else {
+                    bufs_.add( bbuf );
+                }
+            }
+            ibuf_++;
+            bbuf.clear();
+            bbuf.limit( size );
+            return bbuf;
+        }
+    }
+
+    /**
+     * Writes to a channel, keeping track of the number of bytes written.
+     * Small writes are accumulated in a direct buffer and passed to
+     * the channel in large chunks, so that they do not each incur
+     * a system call.  The {@link #flush} method must be called
+     * when writing is complete.
+     */
+    private static class ChannelWriter {
+        private final WritableByteChannel chan_;
+        private final ByteBuffer buf_;
+        long pos_;
+
+        /**
+         * Constructor.
+         *
+         * @param  chan  destination channel
+         */
+        ChannelWriter( WritableByteChannel chan ) {
+            chan_ = chan;
+            buf_ = ByteBuffer.allocateDirect( WRITE_BUFFER_BYTES )
+                             .order( ByteOrder.LITTLE_ENDIAN );
+        }
+
+        /**
+         * Writes the remaining content of a buffer.
+         * Large buffers are written directly to the channel.
+         *
+         * @param  bbuf  buffer
+         */
+        void write( ByteBuffer bbuf ) throws IOException {
+            int leng = bbuf.remaining();
+            if ( leng <= buf_.remaining() ) {
+                buf_.put( bbuf );
+            }
+            else {
+                flush();
+                if ( leng < buf_.capacity() ) {
+                    buf_.put( bbuf );
+                }
+                else {
+                    drain( bbuf );
+                }
+            }
+            pos_ += leng;
+        }
+
+        /**
+         * Writes a byte array.
+         *
+         * @param  bytes  bytes
+         */
+        void writeBytes( byte[] bytes ) throws IOException {
+            write( ByteBuffer.wrap( bytes ) );
+        }
+
+        /**
+         * Writes a little-endian int.
+         *
+         * @param  value  value
+         */
+        void writeInt( int value ) throws IOException {
+            if ( buf_.remaining() < 4 ) {
+                flush();
+            }
+            buf_.putInt( value );
+            pos_ += 4;
+        }
+
+        /**
+         * Writes zero bytes.
+         *
+         * @param  n  number of bytes
+         */
+        void pad( long n ) throws IOException {
+            while ( n > 0 ) {
+                ByteBuffer zbuf = ZEROS.duplicate();
+                zbuf.limit( (int) Math.min( n, zbuf.capacity() ) );
+                n -= zbuf.remaining();
+                write( zbuf );
+            }
+        }
+
+        /**
+         * Passes any buffered bytes to the channel.
+         */
+        void flush() throws IOException {
+            buf_.flip();
+            drain( buf_ );
+            buf_.clear();
+        }
+
+        /**
+         * Writes the remaining content of a buffer directly to the channel.
+         *
+         * @param  bbuf  buffer
+         */
+        private void drain( ByteBuffer bbuf ) throws IOException {
+            while ( bbuf.hasRemaining() ) {
+                chan_.write( bbuf );
+            }
+        }
+
+        /**
+         * Writes an encapsulated IPC message metadata block:
+         * continuation marker, length, and 8-byte-padded flatbuffer.
+         *
+         * @param  meta  message flatbuffer
+         * @return  number of bytes written
+         */
+        int writeMessage( byte[] meta ) throws IOException {
+            int paddedLeng = (int) align8( meta.length );
+            writeInt( 0xffffffff );
+            writeInt( paddedLeng );
+            writeBytes( meta );
+            pad( paddedLeng - meta.length );
+            return 8 + paddedLeng;
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import uk.ac.bristol.star.cdf.record.BankBuf;
+import uk.ac.bristol.star.cdf.record.Buf;
+import uk.ac.bristol.star.cdf.record.BufOptions;
+
+/**
+ * Provides access to a sequence of CDF files, such as a series of
+ * daily files, as a single dataset.
+ *
+ * <p>Variables with the same name in the different files can be
+ * accessed as a single {@link CatalogVariable}, whose records are the
+ * records of each file's variable concatenated in file order.
+ * Variables are required to have consistent data types and shapes
+ * in all the files in which they appear.  Variables with more than one
+ * varying dimension must also have the same majority in all those files,
+ * since their raw value arrays are read unchanged from each file.
+ *
+ * <p>Files are opened lazily as their content is required.
+ * A limited number of files is kept open at once, according to
+ * caps on the number of open files and the total size of open files;
+ * when a limit is exceeded the least recently used file is discarded,
+ * and closed once any reads in progress from it have completed.
+ * A short summary of each file's variables is retained after it is
+ * discarded, so that record counts and type checks do not require
+ * files to be re-read.
+ * If a valid sidecar index (see {@link CdfIndex}) is present for
+ * a file, it is used when the file is opened.
+ *
+ * The {@link #close} method should be called when the catalog is
+ * no longer required, to release the files that remain open.
+ *
+ * <p>Instances of this class are safe for use from multiple threads.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class CdfCatalog {
+
+    private final File[] files_;
+    private final int maxOpenFiles_;
+    private final long maxOpenBytes_;
+    private final BufOptions bufOptions_;
+    private final FileSummary[] summaries_;
+    private final Map<Integer,OpenFile> openFiles_;
+    private final Map<String,CatalogVariable> catVars_;
+    private long openBytes_;
+    private int openCount_;
+
+    private static final Logger logger_ =
+        Logger.getLogger( CdfCatalog.class.getName() );
+
+    /**
+     * Constructor.  No files are opened at construction time.
+     *
+     * @param  files  CDF files, in the order in which records are
+     *                to be concatenated
+     * @param  maxOpenFiles  maximum number of files to keep open at once
+     * @param  maxOpenBytes  maximum total size in bytes of files to keep
+     *                       open at once; at least one file is always
+     *                       kept open regardless of size
+     */
+    public CdfCatalog( File[] files, int maxOpenFiles, long maxOpenBytes ) {
+        this( files, maxOpenFiles, maxOpenBytes, new BufOptions() );
+    }
+
+    /**
+     * Constructor with configurable file access.
+     * No files are opened at construction time.
+     *
+     * <p>For catalogs with many large files, the
+     * {@link BufOptions.Strategy#MAP_LAZY MAP_LAZY} or
+     * {@link BufOptions.Strategy#READ READ} strategy with a shared
+     * {@link uk.ac.bristol.star.cdf.record.BlockCache}
+     * can reduce the address space or memory used by open files.
+     *
+     * @param  files  CDF files, in the order in which records are
+     *                to be concatenated
+     * @param  maxOpenFiles  maximum number of files to keep open at once
+     * @param  maxOpenBytes  maximum total size in bytes of files to keep
+     *                       open at once; at least one file is always
+     *                       kept open regardless of size
+     * @param  bufOptions   options for accessing the files
+     */
+    public CdfCatalog( File[] files, int maxOpenFiles, long maxOpenBytes,
+                       BufOptions bufOptions ) {
+        files_ = files.clone();
+        maxOpenFiles_ = Math.max( 1, maxOpenFiles );
+        maxOpenBytes_ = maxOpenBytes;
+        bufOptions_ = bufOptions;
+        summaries_ = new FileSummary[ files.length ];
+        openFiles_ = new LinkedHashMap<Integer,OpenFile>( 16, 0.75f, true );
+        catVars_ = new HashMap<String,CatalogVariable>();
+    }
+
+    /**
+     * Returns the number of files in this catalog.
+     *
+     * @return  file count
+     */
+    public int getFileCount() {
+        return files_.length;
+    }
+
+    /**
+     * Returns one of the files in this catalog.
+     *
+     * @param  ifile  file index
+     * @return  file
+     */
+    public File getFile( int ifile ) {
+        return files_[ ifile ];
+    }
+
+    /**
+     * Returns the names of all the variables that appear in at least
+     * one of the files.
+     * Calling this method requires a summary of every file, so may
+     * cause files to be opened.
+     *
+     * @return  variable names, in order of first appearance
+     */
+    public synchronized String[] getVariableNames() throws IOException {
+        List<String> names = new ArrayList<String>();
+        for ( int ifile = 0; ifile < files_.length; ifile++ ) {
+            for ( String name : getSummary( ifile ).varSummaries_.keySet() ) {
+                if ( ! names.contains( name ) ) {
+                    names.add( name );
+                }
+            }
+        }
+        return names.toArray( new String[ 0 ] );
+    }
+
+    /**
+     * Returns a variable representing the concatenation of the records
+     * of all the variables in this catalog's files with a given name.
+     * Files in which no variable of that name is present contribute
+     * no records.
+     * Calling this method requires a summary of every file, so may
+     * cause files to be opened.
+     *
+     * @param  name  variable name
+     * @return  concatenated variable, or null if no file contains it
+     * @throws  CdfFormatException  if the variable has inconsistent
+     *                              characteristics in different files
+     */
+    public synchronized CatalogVariable getVariable( String name )
+            throws IOException {
+        if ( ! catVars_.containsKey( name ) ) {
+            catVars_.put( name, createVariable( name ) );
+        }
+        return catVars_.get( name );
+    }
+
+    /**
+     * Returns the content of one of this catalog's files,
+     * opening it if necessary.
+     * The content may not be readable after the file has been
+     * discarded from this catalog's cache of open files.
+     *
+     * @param  ifile  file index
+     * @return  file content
+     */
+    public synchronized CdfContent getContent( int ifile )
+            throws IOException {
+        return getOpenFile( ifile ).content_;
+    }
+
+    /**
+     * Returns the number of files currently held open.
+     *
+     * @return  open file count
+     */
+    public synchronized int getOpenFileCount() {
+        return openFiles_.size();
+    }
+
+    /**
+     * Returns the total number of times that files have been opened
+     * by this catalog.  This is a measure of how effective the
+     * open file cache has been.
+     *
+     * @return  open operation count
+     */
+    public synchronized int getOpenCount() {
+        return openCount_;
+    }
+
+    /**
+     * Closes all the files currently held open by this catalog.
+     * Files will be reopened if their content is subsequently required.
+     * Files with reads in progress are closed when those reads complete.
+     */
+    public synchronized void close() throws IOException {
+        IOException error = null;
+        for ( OpenFile ofile : openFiles_.values() ) {
+            try {
+                discard( ofile );
+            }
+            catch ( IOException e ) {
+                error = e;
+            }
+        }
+        openFiles_.clear();
+        openBytes_ = 0;
+        if ( error != null ) {
+            throw error;
+        }
+    }
+
+    /**
+     * Returns one of this catalog's files, opening it if necessary,
+     * and marks it as in use.  The file will not be closed until
+     * a matching call to {@link #releaseFile} has been made.
+     *
+     * @param  ifile  file index
+     * @return   open file
+     */
+    synchronized OpenFile acquireFile( int ifile ) throws IOException {
+        OpenFile ofile = getOpenFile( ifile );
+        ofile.nuser_++;
+        return ofile;
+    }
+
+    /**
+     * Indicates that a file obtained from {@link #acquireFile}
+     * is no longer in use.  If it has been discarded in the mean time,
+     * it is closed.
+     *
+     * @param  ofile  file previously acquired
+     */
+    synchronized void releaseFile( OpenFile ofile ) throws IOException {
+        if ( --ofile.nuser_ == 0 && ofile.isDiscarded_ ) {
+            ofile.close();
+        }
+    }
+
+    /**
+     * Constructs a new concatenated variable.
+     *
+     * @param  name  variable name
+     * @return  new variable, or null if no file contains it
+     */
+    private CatalogVariable createVariable( String name ) throws IOException {
+        int nfile = files_.length;
+        long[] starts = new long[ nfile + 1 ];
+        VarSummary model = null;
+        int modelFile = -1;
+        for ( int ifile = 0; ifile < nfile; ifile++ ) {
+            VarSummary vsum = getSummary( ifile ).varSummaries_.get( name );
+            int nrec = 0;
+            if ( vsum != null ) {
+                if ( model == null ) {
+                    model = vsum;
+                    modelFile = ifile;
+                }
+                else if ( ! model.isCompatible( vsum ) ) {
+                    String msg = new StringBuffer()
+                        .append( "Variable " )
+                        .append( name )
+                        .append( " inconsistent: " )
+                        .append( model.summary_ )
+                        .append( " in " )
+                        .append( files_[ modelFile ] )
+                        .append( ", " )
+                        .append( vsum.summary_ )
+                        .append( " in " )
+                        .append( files_[ ifile ] )
+                        .toString();
+                    throw new CdfFormatException( msg );
+                }
+                nrec = vsum.recordCount_;
+            }
+            starts[ ifile + 1 ] = starts[ ifile ] + nrec;
+        }
+        return model == null
+             ? null
+             : new CatalogVariable( this, name, model.dataType_,
+                                    model.shaper_, model.recordVariance_,
+                                    model.summary_, starts );
+    }
+
+    /**
+     * Returns the summary for a given file, opening it if necessary.
+     *
+     * @param  ifile  file index
+     * @return  summary
+     */
+    private FileSummary getSummary( int ifile ) throws IOException {
+        if ( summaries_[ ifile ] == null ) {
+            summaries_[ ifile ] = new FileSummary( getContent( ifile ) );
+        }
+        return summaries_[ ifile ];
+    }
+
+    /**
+     * Returns an open file from the cache, opening it and evicting
+     * others as required.
+     *
+     * @param  ifile  file index
+     * @return  open file
+     */
+    private OpenFile getOpenFile( int ifile ) throws IOException {
+        Integer key = new Integer( ifile );
+        OpenFile ofile = openFiles_.get( key );
+        if ( ofile == null ) {
+            File file = files_[ ifile ];
+            logger_.config( "Opening catalog file " + file );
+            ofile = openFile( file );
+            openCount_++;
+            openFiles_.put( key, ofile );
+            openBytes_ += ofile.size_;
+            for ( Iterator<Map.Entry<Integer,OpenFile>> it =
+                      openFiles_.entrySet().iterator();
+                  openFiles_.size() > 1 &&
+                  ( openFiles_.size() > maxOpenFiles_ ||
+                    openBytes_ > maxOpenBytes_ ); ) {
+                Map.Entry<Integer,OpenFile> entry = it.next();
+                logger_.config( "Discarding catalog file "
+                              + files_[ entry.getKey().intValue() ] );
+                openBytes_ -= entry.getValue().size_;
+                it.remove();
+                try {
+                    discard( entry.getValue() );
+                }
+                catch ( IOException e ) {
+                    logger_.warning( "Failed to close catalog file "
+                                   + files_[ entry.getKey().intValue() ]
+                                   + ": " + e );
+                }
+            }
+        }
+        return ofile;
+    }
+
+    /**
+     * Opens a file.  If the content cannot be read, the file is closed.
+     *
+     * @param  file  file
+     * @return  new open file
+     */
+    private OpenFile openFile( File file ) throws IOException {
+        Buf buf = bufOptions_.createBuf( file, true, true );
+        boolean ok = false;
+        try {
+            OpenFile ofile =
+                new OpenFile( CdfIndex.readContent( file, buf ), buf,
+                              file.length() );
+            ok = true;
+            return ofile;
+        }
+        finally {
+            if ( ! ok ) {
+                closeBuf( buf );
+            }
+        }
+    }
+
+    /**
+     * Marks a file that has been removed from the cache as discarded,
+     * and closes it if it is not in use.
+     *
+     * @param  ofile  file
+     */
+    private static void discard( OpenFile ofile ) throws IOException {
+        ofile.isDiscarded_ = true;
+        if ( ofile.nuser_ == 0 ) {
+            ofile.close();
+        }
+    }
+
+    /**
+     * Releases any resources held by a buf created by
+     * {@link BufOptions#createBuf BufOptions.createBuf}.
+     *
+     * @param  buf  buf
+     */
+    private static void closeBuf( Buf buf ) throws IOException {
+        if ( buf instanceof BankBuf ) {
+            ((BankBuf) buf).close();
+        }
+    }
+
+    /**
+     * Holds the content of an open file.
+     * The mutable members are guarded by the owning catalog's lock.
+     */
+    static class OpenFile {
+        final CdfContent content_;
+        final Buf buf_;
+        final long size_;
+        final Map<String,Variable> varMap_;
+        int nuser_;
+        boolean isDiscarded_;
+
+        /**
+         * Constructor.
+         *
+         * @param  content  file content
+         * @param  buf    buf from which the content is read
+         * @param  size   file size in bytes
+         */
+        OpenFile( CdfContent content, Buf buf, long size ) {
+            content_ = content;
+            buf_ = buf;
+            size_ = size;
+            varMap_ = new HashMap<String,Variable>();
+            for ( Variable var : content.getVariables() ) {
+                varMap_.put( var.getName(), var );
+            }
+        }
+
+        /**
+         * Returns the variable in this file with a given name.
+         *
+         * @param  name  variable name
+         * @return   variable, or null if there is none with that name
+         */
+        Variable getVariable( String name ) {
+            return varMap_.get( name );
+        }
+
+        /**
+         * Releases the resources held by this file.
+         */
+        void close() throws IOException {
+            closeBuf( buf_ );
+        }
+    }
+
+    /**
+     * Retains the characteristics of the variables in a file
+     * required by the catalog.
+     */
+    private static class FileSummary {
+        final Map<String,VarSummary> varSummaries_;
+
+        /**
+         * Constructor.
+         *
+         * @param  content  file content
+         */
+        FileSummary( CdfContent content ) {
+            varSummaries_ = new LinkedHashMap<String,VarSummary>();
+            boolean rowMajor = content.getCdfInfo().getRowMajor();
+            for ( Variable var : content.getVariables() ) {
+                varSummaries_.put( var.getName(),
+                                   new VarSummary( var, rowMajor ) );
+            }
+        }
+    }
+
+    /**
+     * Retains the characteristics of a variable required by the catalog.
+     */
+    private static class VarSummary {
+        final DataType dataType_;
+        final Shaper shaper_;
+        final boolean recordVariance_;
+        final int numElems_;
+        final int recordCount_;
+        final String summary_;
+        final boolean rowMajor_;
+
+        /**
+         * Constructor.
+         *
+         * @param  var  variable
+         * @param  rowMajor  majority of the file containing the variable
+         */
+        VarSummary( Variable var, boolean rowMajor ) {
+            dataType_ = var.getDataType();
+            shaper_ = var.getShaper();
+            recordVariance_ = var.getRecordVariance();
+            numElems_ = var.getDescriptor().numElems;
+            recordCount_ = var.getRecordCount();
+            summary_ = var.getSummary();
+            rowMajor_ = rowMajor;
+        }
+
+        /**
+         * Indicates whether values of another variable can be treated
+         * in the same way as values of this one.
+         *
+         * @param  other  other variable summary
+         * @return  true iff data type and shape are the same,
+         *          and so is the majority if it affects the raw values
+         */
+        boolean isCompatible( VarSummary other ) {
+            return dataType_.getName().equals( other.dataType_.getName() )
+                && numElems_ == other.numElems_
+                && recordVariance_ == other.recordVariance_
+                && shaper_.getRawItemCount() == other.shaper_.getRawItemCount()
+                && Arrays.equals( shaper_.getDimSizes(),
+                                  other.shaper_.getDimSizes() )
+                && Arrays.equals( shaper_.getDimVarys(),
+                                  other.shaper_.getDimVarys() )
+                && ( rowMajor_ == other.rowMajor_ || ! isMajoritySensitive() );
+        }
+
+        /**
+         * Indicates whether the order of raw values within a record
+         * depends on the majority.  This is only the case if more than
+         * one dimension varies and has more than one element.
+         *
+         * @return  true iff raw value order depends on majority
+         */
+        boolean isMajoritySensitive() {
+            int[] dimSizes = shaper_.getDimSizes();
+            boolean[] dimVarys = shaper_.getDimVarys();
+            int nvary = 0;
+            for ( int id = 0; id < dimSizes.length; id++ ) {
+                if ( dimVarys[ id ] && dimSizes[ id ] > 1 ) {
+                    nvary++;
+                }
+            }
+            return nvary > 1;
+        }
+    }
+}
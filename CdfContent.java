@@ -4,7 +4,9 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import uk.ac.bristol.star.cdf.record.AttributeDescriptorRecord;
 import uk.ac.bristol.star.cdf.record.AttributeEntryDescriptorRecord;
 import uk.ac.bristol.star.cdf.record.Buf;
@@ -37,6 +39,20 @@ public class CdfContent {
      * @param  crdr  object which knows how to read CDF records
      */
     public CdfContent( CdfReader crdr ) throws IOException {
+        this( crdr, null );
+    }
+
+    /**
+     * Constructs a CdfContent from a CdfReader, reusing information
+     * from an earlier instance for the same file.
+     * This is intended for files that have been appended to since
+     * the earlier instance was created; the record maps of variables
+     * in the earlier instance are extended rather than rebuilt.
+     *
+     * @param  crdr  object which knows how to read CDF records
+     * @param  previous  earlier content for the same file, or null
+     */
+    CdfContent( CdfReader crdr, CdfContent previous ) throws IOException {
 
         // Get basic information from reader.
         Buf buf = crdr.getBuf();
@@ -64,9 +80,18 @@ public class CdfContent {
         // Turn the rVariable and zVariable records into a single list of
         // Variable objects.
         VariableDescriptorRecord[] vdrs = arrayConcat( rvdrs, zvdrs );
+        Map<String,Variable> prevVars = new HashMap<String,Variable>();
+        if ( previous != null ) {
+            Variable[] pvars = previous.getVariables();
+            for ( int iv = 0; iv < pvars.length; iv++ ) {
+                prevVars.put( pvars[ iv ].getName(), pvars[ iv ] );
+            }
+        }
         variables_ = new Variable[ vdrs.length ];
         for ( int iv = 0; iv < vdrs.length; iv++ ) {
-            variables_[ iv ] = new Variable( vdrs[ iv ], cdfInfo_, recordFact );
+            VariableDescriptorRecord vdr = vdrs[ iv ];
+            variables_[ iv ] = new Variable( vdr, cdfInfo_, recordFact,
+                                             prevVars.get( vdr.name ) );
         }
 
         // Read the attributes records (global and variable attributes
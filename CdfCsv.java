@@ -0,0 +1,717 @@
+package uk.ac.bristol.star.cdf.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import uk.ac.bristol.star.cdf.AttributeEntry;
+import uk.ac.bristol.star.cdf.CdfContent;
+import uk.ac.bristol.star.cdf.CdfReader;
+import uk.ac.bristol.star.cdf.DataType;
+import uk.ac.bristol.star.cdf.EpochFormatter;
+import uk.ac.bristol.star.cdf.Tt2kConverter;
+import uk.ac.bristol.star.cdf.Variable;
+import uk.ac.bristol.star.cdf.VariableAttribute;
+
+/**
+ * Utility to export record-varying CDF variables as a CSV or TSV table.
+ * The output has one row per record index and one column per
+ * variable item; array-valued variables occupy several columns.
+ * Rows may be restricted to a time window defined on an epoch variable.
+ * The epoch values are assumed to be non-decreasing, apart from
+ * fill values (the TIME_TT2000 fill and pad values, and -1e31 for
+ * EPOCH and EPOCH16), so that the window can be located by a binary
+ * search, and only the data inside it is read.
+ * Data is read in bulk a chunk of records at a time, and written
+ * through a large output buffer.
+ * Intended to be used from the commandline via the <code>main</code> method.
+ *
+ * <p>Values are formatted in the same way as by {@link CdfList};
+ * records not present in the file are written as empty cells.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class CdfCsv {
+
+    private final Column[] columns_;
+    private final Column timeColumn_;
+    private final double minMillis_;
+    private final double maxMillis_;
+    private final char separator_;
+    private final int nrow_;
+
+    private static final int CHUNK_ITEMS = 64 * 1024;
+    private static final double EPOCH_FILL = -1e31;
+    private static final int WRITE_BUFSIZE = 256 * 1024;
+    private static final String NEWLINE =
+        System.getProperty( "line.separator" );
+    private static final Pattern ISO_REGEX =
+        Pattern.compile( "([0-9]{4})-([0-9]{2})-([0-9]{2})"
+                       + "(?:[T ]([0-9]{2}):([0-9]{2})"
+                       + "(?::([0-9]{2})(\\.[0-9]+)?)?)?Z?" );
+
+    /**
+     * Constructor.
+     *
+     * @param  vars  variables to export as columns
+     * @param  timeVar  variable to use for time filtering, or null for
+     *                  no filtering; must have a time data type
+     *                  (EPOCH, EPOCH16 or TIME_TT2000)
+     * @param  minMillis  start of time window in Unix milliseconds
+     *                    (inclusive), may be negative infinity
+     * @param  maxMillis  end of time window in Unix milliseconds
+     *                    (inclusive), may be positive infinity
+     * @param  separator  field separator character;
+     *                    if it is a tab, TSV rules are used for cell content,
+     *                    otherwise CSV quoting rules
+     */
+    public CdfCsv( Variable[] vars, Variable timeVar, double minMillis,
+                   double maxMillis, char separator ) {
+        columns_ = new Column[ vars.length ];
+        int nrow = 0;
+        Column timeCol = null;
+        for ( int iv = 0; iv < vars.length; iv++ ) {
+            columns_[ iv ] = new Column( vars[ iv ] );
+            nrow = Math.max( nrow, columns_[ iv ].nrec_ );
+            if ( vars[ iv ] == timeVar ) {
+                timeCol = columns_[ iv ];
+            }
+        }
+        if ( timeVar != null && timeCol == null ) {
+            timeCol = new Column( timeVar );
+        }
+        if ( timeCol != null && ! isTimeType( timeVar.getDataType() ) ) {
+            throw new IllegalArgumentException( "Not a time variable: "
+                                              + timeVar.getName() );
+        }
+        timeColumn_ = timeCol;
+        minMillis_ = minMillis;
+        maxMillis_ = maxMillis;
+        separator_ = separator;
+        nrow_ = nrow;
+    }
+
+    /**
+     * Writes the table.
+     *
+     * @param  out  destination; it is flushed but not closed
+     */
+    public void write( Writer out ) throws IOException {
+        out = new BufferedWriter( out, WRITE_BUFSIZE );
+
+        // Header line.
+        StringBuffer sbuf = new StringBuffer();
+        sbuf.append( "record" );
+        for ( int ic = 0; ic < columns_.length; ic++ ) {
+            Column col = columns_[ ic ];
+            String name = col.var_.getName();
+            for ( int it = 0; it < col.nitem_; it++ ) {
+                sbuf.append( separator_ );
+                appendCell( sbuf, col.nitem_ == 1
+                                  ? name
+                                  : name + "[" + it + "]" );
+            }
+        }
+        sbuf.append( NEWLINE );
+        out.write( sbuf.toString() );
+
+        // Restrict the rows to the time window.  The time column is
+        // read first, and other columns only for chunks with rows
+        // in the window.
+        int irLo = 0;
+        int irHi = nrow_;
+        if ( timeColumn_ != null &&
+             timeColumn_.var_.getRecordVariance() ) {
+            irHi = Math.min( irHi, timeColumn_.nrec_ );
+            if ( minMillis_ > Double.NEGATIVE_INFINITY ) {
+                irLo = timeColumn_.searchTime( minMillis_, false, irHi );
+            }
+            if ( maxMillis_ < Double.POSITIVE_INFINITY ) {
+                irHi = timeColumn_.searchTime( maxMillis_, true, irHi );
+            }
+        }
+
+        // Data rows, a chunk at a time.
+        int maxleng = 1;
+        for ( int ic = 0; ic < columns_.length; ic++ ) {
+            maxleng = Math.max( maxleng, columns_[ ic ].rvaleng_ );
+        }
+        int chunkRecs = Math.max( 1, CHUNK_ITEMS / maxleng );
+        for ( int ir0 = irLo; ir0 < irHi; ir0 += chunkRecs ) {
+            int nr = Math.min( chunkRecs, irHi - ir0 );
+            boolean[] inWindow = null;
+            if ( timeColumn_ != null ) {
+                timeColumn_.read( ir0, nr, chunkRecs );
+                inWindow = timeColumn_.getTimeMask( minMillis_, maxMillis_ );
+                if ( ! hasTrue( inWindow ) ) {
+                    continue;
+                }
+            }
+            for ( int ic = 0; ic < columns_.length; ic++ ) {
+                if ( columns_[ ic ] != timeColumn_ ) {
+                    columns_[ ic ].read( ir0, nr, chunkRecs );
+                }
+            }
+            sbuf.setLength( 0 );
+            for ( int i = 0; i < nr; i++ ) {
+                if ( inWindow == null || inWindow[ i ] ) {
+                    sbuf.append( ir0 + i );
+                    for ( int ic = 0; ic < columns_.length; ic++ ) {
+                        columns_[ ic ].appendCells( sbuf, i );
+                    }
+                    sbuf.append( NEWLINE );
+                }
+            }
+            out.write( sbuf.toString() );
+        }
+        out.flush();
+    }
+
+    /**
+     * Appends a string value to a buffer as a cell, escaped or quoted
+     * if required.
+     *
+     * @param  sbuf  destination buffer
+     * @param  txt  cell content
+     */
+    private void appendCell( StringBuffer sbuf, String txt ) {
+        if ( separator_ == '\t' ) {
+            sbuf.append( txt.replace( '\t', ' ' )
+                            .replace( '\n', ' ' )
+                            .replace( '\r', ' ' ) );
+        }
+        else if ( txt.indexOf( separator_ ) >= 0 ||
+                  txt.indexOf( '"' ) >= 0 ||
+                  txt.indexOf( '\n' ) >= 0 ||
+                  txt.indexOf( '\r' ) >= 0 ) {
+            sbuf.append( '"' );
+            for ( int i = 0; i < txt.length(); i++ ) {
+                char c = txt.charAt( i );
+                if ( c == '"' ) {
+                    sbuf.append( '"' );
+                }
+                sbuf.append( c );
+            }
+            sbuf.append( '"' );
+        }
+        else {
+            sbuf.append( txt );
+        }
+    }
+
+    /**
+     * Indicates whether any element of a boolean array is true.
+     *
+     * @param  flags  array
+     * @return  true iff any element is true
+     */
+    private static boolean hasTrue( boolean[] flags ) {
+        for ( int i = 0; i < flags.length; i++ ) {
+            if ( flags[ i ] ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indicates whether a data type represents time values that can
+     * be used for filtering.
+     *
+     * @param  dataType  data type
+     * @return  true for EPOCH, EPOCH16 and TIME_TT2000
+     */
+    private static boolean isTimeType( DataType dataType ) {
+        return dataType == DataType.EPOCH
+            || dataType == DataType.EPOCH16
+            || dataType.getName().equals( DataType.TIME_TT2000.getName() );
+    }
+
+    /**
+     * Parses an ISO-8601 date as Unix milliseconds.
+     * The date part is required and the time part, including
+     * fractional seconds, is optional.  UTC is assumed.
+     *
+     * @param  txt  ISO-8601 string, for instance "2015-06-30T23:59:58.5"
+     * @return  milliseconds since the Unix epoch
+     * @throws  IllegalArgumentException  if the string is not understood
+     */
+    public static double parseIsoMillis( String txt ) {
+        Matcher matcher = ISO_REGEX.matcher( txt.trim() );
+        if ( ! matcher.matches() ) {
+            throw new IllegalArgumentException( "Bad ISO-8601 date: " + txt );
+        }
+        Calendar cal = Calendar.getInstance( TimeZone.getTimeZone( "UTC" ) );
+        cal.setLenient( false );
+        cal.clear();
+        cal.set( Integer.parseInt( matcher.group( 1 ) ),
+                 Integer.parseInt( matcher.group( 2 ) ) - 1,
+                 Integer.parseInt( matcher.group( 3 ) ),
+                 parseIntGroup( matcher, 4 ),
+                 parseIntGroup( matcher, 5 ),
+                 parseIntGroup( matcher, 6 ) );
+        long millis;
+        try {
+            millis = cal.getTimeInMillis();
+        }
+        catch ( IllegalArgumentException e ) {
+            throw (IllegalArgumentException)
+                  new IllegalArgumentException( "Bad ISO-8601 date: " + txt )
+                 .initCause( e );
+        }
+        String frac = matcher.group( 7 );
+        return millis
+             + ( frac == null ? 0 : Double.parseDouble( frac ) * 1000 );
+    }
+
+    /**
+     * Returns the integer value of an optional regex group.
+     *
+     * @param  matcher  matcher
+     * @param  igroup   group index
+     * @return  group value, or 0 if absent
+     */
+    private static int parseIntGroup( Matcher matcher, int igroup ) {
+        String txt = matcher.group( igroup );
+        return txt == null ? 0 : Integer.parseInt( txt );
+    }
+
+    /**
+     * Does the work for the command line tool, handling arguments.
+     * Sucess is indicated by the return value.
+     *
+     * @param  args   command-line arguments
+     * @return   0 for success, non-zero for failure
+     */
+    public static int runMain( String[] args ) throws IOException {
+
+        // Usage string.
+        String usage = new StringBuffer()
+           .append( "\n   Usage: " )
+           .append( CdfCsv.class.getName() )
+           .append( " [-help]" )
+           .append( " [-verbose]" )
+           .append( " [-tsv]" )
+           .append( " [-var <name> ...]" )
+           .append( "\n          " )
+           .append( " [-time <name>]" )
+           .append( " [-from <iso-date>]" )
+           .append( " [-to <iso-date>]" )
+           .append( " <cdf-file> [<out-file>]" )
+           .append( "\n" )
+           .toString();
+
+        // Process arguments.
+        List<String> argList = new ArrayList<String>( Arrays.asList( args ) );
+        File inFile = null;
+        File outFile = null;
+        List<String> varNames = new ArrayList<String>();
+        String timeName = null;
+        String fromTxt = null;
+        String toTxt = null;
+        char separator = ',';
+        int verb = 0;
+        for ( Iterator<String> it = argList.iterator(); it.hasNext(); ) {
+            String arg = it.next();
+            if ( arg.startsWith( "-h" ) ) {
+                it.remove();
+                System.out.println( usage );
+                return 0;
+            }
+            else if ( arg.equals( "-verbose" ) || arg.equals( "-v" ) ) {
+                it.remove();
+                verb++;
+            }
+            else if ( arg.equals( "+verbose" ) || arg.equals( "+v" ) ) {
+                it.remove();
+                verb--;
+            }
+            else if ( arg.equals( "-tsv" ) ) {
+                it.remove();
+                separator = '\t';
+            }
+            else if ( arg.equals( "-var" ) && it.hasNext() ) {
+                it.remove();
+                varNames.add( it.next() );
+                it.remove();
+            }
+            else if ( arg.equals( "-time" ) && it.hasNext() ) {
+                it.remove();
+                timeName = it.next();
+                it.remove();
+            }
+            else if ( arg.equals( "-from" ) && it.hasNext() ) {
+                it.remove();
+                fromTxt = it.next();
+                it.remove();
+            }
+            else if ( arg.equals( "-to" ) && it.hasNext() ) {
+                it.remove();
+                toTxt = it.next();
+                it.remove();
+            }
+            else if ( inFile == null ) {
+                it.remove();
+                inFile = new File( arg );
+            }
+            else if ( outFile == null ) {
+                it.remove();
+                outFile = new File( arg );
+            }
+        }
+
+        // Validate arguments.
+        if ( ! argList.isEmpty() ) {
+            System.err.println( "Unused args: " + argList );
+            System.err.println( usage );
+            return 1;
+        }
+        if ( inFile == null ) {
+            System.err.println( usage );
+            return 1;
+        }
+        double minMillis = Double.NEGATIVE_INFINITY;
+        double maxMillis = Double.POSITIVE_INFINITY;
+        try {
+            if ( fromTxt != null ) {
+                minMillis = parseIsoMillis( fromTxt );
+            }
+            if ( toTxt != null ) {
+                maxMillis = parseIsoMillis( toTxt );
+            }
+        }
+        catch ( IllegalArgumentException e ) {
+            System.err.println( e.getMessage() );
+            return 1;
+        }
+
+        // Identify variables.
+        LogUtil.setVerbosity( verb );
+        CdfContent cdf = new CdfContent( new CdfReader( inFile ) );
+        Variable[] allVars = cdf.getVariables();
+        List<Variable> varList = new ArrayList<Variable>();
+        if ( varNames.isEmpty() ) {
+            for ( int iv = 0; iv < allVars.length; iv++ ) {
+                if ( allVars[ iv ].getRecordVariance() ) {
+                    varList.add( allVars[ iv ] );
+                }
+            }
+        }
+        else {
+            for ( String name : varNames ) {
+                Variable var = getVariable( allVars, name );
+                if ( var == null ) {
+                    System.err.println( "No such variable: " + name );
+                    return 1;
+                }
+                varList.add( var );
+            }
+        }
+        Variable[] vars = varList.toArray( new Variable[ 0 ] );
+        Variable timeVar = null;
+        if ( timeName != null ) {
+            timeVar = getVariable( allVars, timeName );
+            if ( timeVar == null ) {
+                System.err.println( "No such variable: " + timeName );
+                return 1;
+            }
+        }
+        else if ( fromTxt != null || toTxt != null ) {
+            timeVar = guessTimeVariable( cdf, vars );
+            if ( timeVar == null ) {
+                System.err.println( "No time variable found; use -time" );
+                return 1;
+            }
+        }
+        if ( timeVar != null && ! isTimeType( timeVar.getDataType() ) ) {
+            System.err.println( "Not a time variable: " + timeVar.getName() );
+            return 1;
+        }
+
+        // Write output.
+        CdfCsv exporter =
+            new CdfCsv( vars, timeVar, minMillis, maxMillis, separator );
+        OutputStream out = outFile == null ? System.out
+                                           : new FileOutputStream( outFile );
+        try {
+            exporter.write( new OutputStreamWriter( out ) );
+        }
+        finally {
+            if ( outFile != null ) {
+                out.close();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the variable with a given name.
+     *
+     * @param  vars  variables
+     * @param  name  variable name
+     * @return  variable, or null if none matches
+     */
+    private static Variable getVariable( Variable[] vars, String name ) {
+        for ( int iv = 0; iv < vars.length; iv++ ) {
+            if ( vars[ iv ].getName().equals( name ) ) {
+                return vars[ iv ];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tries to identify the epoch variable for a set of exported variables.
+     * The DEPEND_0 attribute of the exported variables is used if present,
+     * otherwise the first record-varying variable with a time data type,
+     * preferring one of the exported variables.
+     *
+     * @param  cdf  CDF content
+     * @param  vars  exported variables
+     * @return  time variable, or null if none found
+     */
+    private static Variable guessTimeVariable( CdfContent cdf,
+                                               Variable[] vars ) {
+        Variable[] allVars = cdf.getVariables();
+        VariableAttribute[] vAtts = cdf.getVariableAttributes();
+        for ( int ia = 0; ia < vAtts.length; ia++ ) {
+            if ( "DEPEND_0".equalsIgnoreCase( vAtts[ ia ].getName() ) ) {
+                for ( int iv = 0; iv < vars.length; iv++ ) {
+                    AttributeEntry entry = vAtts[ ia ].getEntry( vars[ iv ] );
+                    if ( entry != null ) {
+                        Variable dep =
+                            getVariable( allVars, entry.toString().trim() );
+                        if ( dep != null &&
+                             isTimeType( dep.getDataType() ) ) {
+                            return dep;
+                        }
+                    }
+                }
+            }
+        }
+        for ( Variable[] candidates : new Variable[][] { vars, allVars } ) {
+            for ( int iv = 0; iv < candidates.length; iv++ ) {
+                Variable var = candidates[ iv ];
+                if ( var.getRecordVariance() &&
+                     isTimeType( var.getDataType() ) ) {
+                    return var;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Main method.  Use -help for arguments.
+     */
+    public static void main( String[] args ) throws IOException {
+        int status = runMain( args );
+        if ( status != 0 ) {
+            System.exit( status );
+        }
+    }
+
+    /**
+     * Holds a chunk of data read from one variable.
+     */
+    private class Column {
+
+        final Variable var_;
+        final int nrec_;
+        final int rvaleng_;
+        final int nitem_;
+        private final DataType dataType_;
+        private final int groupSize_;
+        private Object work_;
+        private Object raw_;
+        private Object raw1_;
+        private boolean[] valid_;
+        private Tt2kConverter ttConverter_;
+        int nread_;
+
+        /**
+         * Constructor.
+         *
+         * @param  var  variable
+         */
+        Column( Variable var ) {
+            var_ = var;
+            dataType_ = var.getDataType();
+            nrec_ = var.getRecordVariance() ? var.getRecordCount() : 1;
+            rvaleng_ = Array.getLength( var.createRawValueArray() );
+            groupSize_ = dataType_.getGroupSize();
+            nitem_ = rvaleng_ / groupSize_;
+        }
+
+        /**
+         * Reads a chunk of records.
+         *
+         * @param  irec0  first record index
+         * @param  nrec  number of records
+         * @param  chunkRecs   maximum number of records in a chunk
+         */
+        void read( int irec0, int nrec, int chunkRecs ) throws IOException {
+            if ( raw_ == null ) {
+                work_ = var_.createRawValueArray( chunkRecs );
+                raw_ = var_.createRawValueArray( chunkRecs );
+                valid_ = new boolean[ chunkRecs ];
+            }
+            boolean isVar = var_.getRecordVariance();
+            int nr = 0;
+            while ( nr < nrec ) {
+                int ir = irec0 + nr;
+                if ( isVar && ir >= nrec_ ) {
+                    Arrays.fill( valid_, nr, nrec, false );
+                    nr = nrec;
+                }
+                else {
+                    int nread = var_.readRawRecords( ir, nrec - nr, raw_,
+                                                     nr * rvaleng_, work_ );
+                    Arrays.fill( valid_, nr, nr + nread,
+                                 ! isVar || var_.hasRecord( ir ) );
+                    nr += nread;
+                }
+            }
+            nread_ = nrec;
+        }
+
+        /**
+         * Appends the cells for one record of the current chunk,
+         * each preceded by a separator.
+         *
+         * @param  sbuf  destination buffer
+         * @param  i   record index within the current chunk
+         */
+        void appendCells( StringBuffer sbuf, int i ) {
+            boolean isValid = valid_[ i ];
+            int off = i * rvaleng_;
+            for ( int j = 0; j < rvaleng_; j += groupSize_ ) {
+                sbuf.append( separator_ );
+                if ( isValid ) {
+                    appendCell( sbuf,
+                                dataType_.formatArrayValue( raw_, off + j ) );
+                }
+            }
+        }
+
+        /**
+         * Returns flags indicating which records in the current chunk
+         * have their first time value within a given window.
+         * Missing records and fill values are excluded.
+         *
+         * @param  minMillis  window start in Unix milliseconds
+         * @param  maxMillis  window end in Unix milliseconds
+         * @return  per-record inclusion flags
+         */
+        boolean[] getTimeMask( double minMillis, double maxMillis ) {
+            boolean[] mask = new boolean[ nread_ ];
+            for ( int i = 0; i < nread_; i++ ) {
+                if ( valid_[ i ] ) {
+                    double millis = toMillis( raw_, i * rvaleng_ );
+                    mask[ i ] = millis >= minMillis && millis <= maxMillis;
+                }
+            }
+            return mask;
+        }
+
+        /**
+         * Returns the index of the first record whose time value is
+         * not less than (or, if <code>after</code> is set, greater than)
+         * a given time, assuming time values are non-decreasing.
+         * Records with no time value, because they are missing or
+         * contain fill values, are skipped over.
+         * Only the records visited by a binary search are read.
+         *
+         * @param  millis  time in Unix milliseconds
+         * @param  after  false to locate the first record at or after
+         *                the given time, true for the first one after it
+         * @param  nrec  number of records to search
+         * @return  record index in the range 0..nrec
+         */
+        int searchTime( double millis, boolean after, int nrec )
+                throws IOException {
+            int lo = 0;
+            int hi = nrec;
+            while ( lo < hi ) {
+                int mid = ( lo + hi ) >>> 1;
+                int ir = mid;
+                double t = readMillis( ir );
+                while ( Double.isNaN( t ) && ++ir < hi ) {
+                    t = readMillis( ir );
+                }
+                if ( ir < hi && ( after ? t <= millis : t < millis ) ) {
+                    lo = ir + 1;
+                }
+                else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Reads the time value of a single record.
+         *
+         * @param  irec  record index
+         * @return  time in Unix milliseconds,
+         *          or NaN if the record is missing or contains a fill value
+         */
+        private double readMillis( int irec ) throws IOException {
+            if ( ! var_.hasRecord( irec ) ) {
+                return Double.NaN;
+            }
+            if ( raw1_ == null ) {
+                raw1_ = var_.createRawValueArray();
+            }
+            var_.readRawRecord( irec, raw1_ );
+            return toMillis( raw1_, 0 );
+        }
+
+        /**
+         * Converts a raw time value to Unix milliseconds.
+         *
+         * @param  raw  raw value array
+         * @param  off  index into raw of the value
+         * @return  time in Unix milliseconds, or NaN for fill values
+         */
+        private double toMillis( Object raw, int off ) {
+            if ( dataType_ == DataType.EPOCH ) {
+                double epoch = ((double[]) raw)[ off ];
+                return epoch == EPOCH_FILL
+                     ? Double.NaN
+                     : epoch + EpochFormatter.AD0_UNIX_MILLIS;
+            }
+            else if ( dataType_ == DataType.EPOCH16 ) {
+                double[] darray = (double[]) raw;
+                return darray[ off ] == EPOCH_FILL
+                     ? Double.NaN
+                     : darray[ off ] * 1000
+                     + EpochFormatter.AD0_UNIX_MILLIS
+                     + darray[ off + 1 ] * 1e-9;
+            }
+            else {
+                long tt2k = ((long[]) raw)[ off ];
+                if ( Tt2kConverter.isFill( tt2k ) ) {
+                    return Double.NaN;
+                }
+                if ( ttConverter_ == null ) {
+                    ttConverter_ = new Tt2kConverter();
+                }
+                return ttConverter_.toUnixMillis( tt2k );
+            }
+        }
+    }
+}
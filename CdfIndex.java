@@ -0,0 +1,346 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+import uk.ac.bristol.star.cdf.record.Buf;
+import uk.ac.bristol.star.cdf.record.BufOptions;
+import uk.ac.bristol.star.cdf.record.Bufs;
+import uk.ac.bristol.star.cdf.record.RecordingBuf;
+import uk.ac.bristol.star.cdf.record.RegionBuf;
+
+/**
+ * Reads and writes sidecar index files which allow a CDF to be opened
+ * without scattered reads.
+ *
+ * <p>Opening a CDF involves following linked lists of internal records
+ * (VDRs, ADRs, AEDRs, VXRs) which may be located anywhere in the file.
+ * On high-latency filesystems each of these hops is a random read.
+ * An index file contains copies of all the parts of the CDF file that
+ * are read when its metadata is loaded, including all the descriptor
+ * records, attribute entry values, and the index records from which
+ * variable record maps are built.
+ * When opening a CDF file with a valid index, the index is read
+ * sequentially in a single pass, and the metadata is then read from
+ * memory rather than from the CDF file; only record data is read
+ * from the file itself.
+ *
+ * <p>The index records the length and modification time of the CDF
+ * file at the time it was written, and it is only used if these still
+ * match.  Note that files using whole-file compression gain little
+ * benefit from an index, since the whole file has to be read and
+ * uncompressed anyway.
+ *
+ * <p>The index file format is a big-endian sequence of:
+ * an 8-byte magic number, a 4-byte format version,
+ * the 8-byte length and modification time of the CDF file,
+ * a 4-byte count of byte ranges followed by an 8-byte offset and
+ * 4-byte length for each range, and finally the bytes of
+ * each range in sequence.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class CdfIndex {
+
+    private static final byte[] MAGIC =
+        new byte[] { 'j', 'c', 'd', 'f', 'i', 'd', 'x', 0 };
+    private static final int VERSION = 1;
+
+    /** Filename suffix used for default index files. */
+    public static final String INDEX_SUFFIX = ".jcdfidx";
+
+    private static final Logger logger_ =
+        Logger.getLogger( CdfIndex.class.getName() );
+
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private CdfIndex() {
+    }
+
+    /**
+     * Returns the default location of the index file for a given CDF file.
+     * This is in the same directory with {@link #INDEX_SUFFIX} appended
+     * to the filename.
+     *
+     * @param  cdfFile  CDF file
+     * @return   default index file
+     */
+    public static File getDefaultIndexFile( File cdfFile ) {
+        return new File( cdfFile.getPath() + INDEX_SUFFIX );
+    }
+
+    /**
+     * Writes an index file for a given CDF file.
+     * This reads all the file's metadata, including the record maps
+     * for all variables.
+     *
+     * @param  cdfFile  CDF file
+     * @param  indexFile  destination index file
+     */
+    public static void writeIndex( File cdfFile, File indexFile )
+            throws IOException {
+        long leng = cdfFile.length();
+        long mtime = cdfFile.lastModified();
+
+        // Load all the metadata from the file, keeping track of
+        // which parts of it are read.
+        Buf fileBuf = Bufs.createBuf( cdfFile, true, true );
+        RecordingBuf rbuf = new RecordingBuf( fileBuf );
+        CdfContent content = new CdfContent( new CdfReader( rbuf ) );
+        Variable[] vars = content.getVariables();
+        for ( int iv = 0; iv < vars.length; iv++ ) {
+            vars[ iv ].prepareRecords();
+        }
+        long[][] ranges = rbuf.getRanges();
+        long total = 0;
+        for ( int ir = 0; ir < ranges.length; ir++ ) {
+            total += ranges[ ir ][ 1 ] - ranges[ ir ][ 0 ];
+        }
+        if ( total > Integer.MAX_VALUE ) {
+            throw new IOException( "Too much metadata for index" );
+        }
+
+        // Write the index.
+        OutputStream fout = new FileOutputStream( indexFile );
+        DataOutputStream out =
+            new DataOutputStream( new BufferedOutputStream( fout ) );
+        try {
+            out.write( MAGIC );
+            out.writeInt( VERSION );
+            out.writeLong( leng );
+            out.writeLong( mtime );
+            out.writeInt( ranges.length );
+            for ( int ir = 0; ir < ranges.length; ir++ ) {
+                long[] range = ranges[ ir ];
+                out.writeLong( range[ 0 ] );
+                out.writeInt( (int) ( range[ 1 ] - range[ 0 ] ) );
+            }
+            byte[] buf = new byte[ 64 * 1024 ];
+            for ( int ir = 0; ir < ranges.length; ir++ ) {
+                long off = ranges[ ir ][ 0 ];
+                long end = ranges[ ir ][ 1 ];
+                while ( off < end ) {
+                    int n = (int) Math.min( buf.length, end - off );
+                    fileBuf.readDataBytes( off, n, buf );
+                    out.write( buf, 0, n );
+                    off += n;
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+        logger_.config( "Wrote index " + indexFile + ": "
+                      + total + " bytes in " + ranges.length + " ranges" );
+    }
+
+    /**
+     * Indicates whether an index file is present and applies to
+     * the current state of a given CDF file.
+     * Only the index header is read.
+     *
+     * @param  cdfFile  CDF file
+     * @param  indexFile  index file
+     * @return  true iff the index file can be used for the CDF file
+     */
+    public static boolean isValid( File cdfFile, File indexFile ) {
+        if ( ! indexFile.isFile() ) {
+            return false;
+        }
+        try {
+            DataInputStream in =
+                new DataInputStream( new FileInputStream( indexFile ) );
+            try {
+                return readHeader( in, cdfFile );
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch ( IOException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a CdfReader for a CDF file using a given index file.
+     * If the index is not valid for the file, an exception is thrown.
+     *
+     * @param  cdfFile  CDF file
+     * @param  indexFile  index file
+     * @return   reader whose metadata reads are served from the index
+     */
+    public static CdfReader createReader( File cdfFile, File indexFile )
+            throws IOException {
+        Buf fileBuf = new BufOptions().createBuf( cdfFile, true, true );
+        CdfReader rdr = readIndex( cdfFile, indexFile, fileBuf );
+        if ( rdr == null ) {
+            throw new IOException( "Index " + indexFile
+                                 + " does not match " + cdfFile );
+        }
+        return rdr;
+    }
+
+    /**
+     * Returns the content of a CDF file, using its default index file
+     * if one is present and valid.
+     * Otherwise the CDF file is read in the usual way.
+     *
+     * @param  cdfFile  CDF file
+     * @return   CDF content
+     */
+    public static CdfContent readContent( File cdfFile ) throws IOException {
+        return readContent( cdfFile, new BufOptions() );
+    }
+
+    /**
+     * Returns the content of a CDF file accessed using given buf options,
+     * using its default index file if one is present and valid.
+     * Otherwise the CDF file is read in the usual way.
+     *
+     * @param  cdfFile  CDF file
+     * @param  options  file access options
+     * @return   CDF content
+     */
+    public static CdfContent readContent( File cdfFile, BufOptions options )
+            throws IOException {
+        Buf fileBuf = options.createBuf( cdfFile, true, true );
+        return readContent( cdfFile, fileBuf );
+    }
+
+    /**
+     * Returns the content of a CDF file whose bytes are supplied by
+     * a given buf, using its default index file if one is present
+     * and valid.
+     * Otherwise the CDF file is read in the usual way.
+     * This allows the caller to keep hold of the buf,
+     * for instance to close it when the content is no longer required.
+     *
+     * @param  cdfFile  CDF file
+     * @param  fileBuf  buf containing the bytes of the CDF file,
+     *                  as created by
+     *                  {@link BufOptions#createBuf BufOptions.createBuf}
+     * @return   CDF content
+     */
+    public static CdfContent readContent( File cdfFile, Buf fileBuf )
+            throws IOException {
+        File indexFile = getDefaultIndexFile( cdfFile );
+        if ( indexFile.isFile() ) {
+            try {
+                CdfReader rdr = readIndex( cdfFile, indexFile, fileBuf );
+                if ( rdr != null ) {
+                    CdfContent content = new CdfContent( rdr );
+                    logger_.config( "Using index " + indexFile );
+                    return content;
+                }
+            }
+
+            // An unusable index is not fatal, since the CDF file
+            // itself can still be read.
+            catch ( IOException e ) {
+                logger_.warning( "Failed to read index " + indexFile
+                               + ": " + e );
+            }
+            catch ( RuntimeException e ) {
+                logger_.warning( "Failed to read index " + indexFile
+                               + ": " + e );
+            }
+        }
+        return new CdfContent( new CdfReader( fileBuf ) );
+    }
+
+    /**
+     * Reads an index file and returns a CdfReader based on it.
+     *
+     * @param  cdfFile  CDF file
+     * @param  indexFile  index file
+     * @param  fileBuf  buf containing the bytes of the CDF file
+     * @return   reader whose metadata reads are served from the index,
+     *           or null if the index does not match the CDF file
+     *           or is truncated or corrupt
+     */
+    private static CdfReader readIndex( File cdfFile, File indexFile,
+                                        Buf fileBuf )
+            throws IOException {
+        InputStream fin = new FileInputStream( indexFile );
+        DataInputStream in =
+            new DataInputStream( new BufferedInputStream( fin, 64 * 1024 ) );
+        try {
+            if ( ! readHeader( in, cdfFile ) ) {
+                return null;
+            }
+
+            // Check counts against the lengths of the index and CDF files
+            // before allocating arrays, so that corrupt indexes are
+            // rejected cheaply.
+            long remain = indexFile.length()
+                        - ( MAGIC.length + 4 + 8 + 8 + 4 );
+            long cdfLeng = cdfFile.length();
+            int nrange = in.readInt();
+            if ( nrange < 0 || nrange > remain / ( 8 + 4 ) ) {
+                return null;
+            }
+            remain -= nrange * (long) ( 8 + 4 );
+            long[][] ranges = new long[ nrange ][];
+            long total = 0;
+            long end = 0;
+            for ( int ir = 0; ir < nrange; ir++ ) {
+                long start = in.readLong();
+                int count = in.readInt();
+                if ( count < 0 || start < end || start > cdfLeng - count ) {
+                    return null;
+                }
+                end = start + count;
+                ranges[ ir ] = new long[] { start, end };
+                total += count;
+            }
+            if ( total != remain || total > Integer.MAX_VALUE ) {
+                return null;
+            }
+            byte[] cache = new byte[ (int) total ];
+            in.readFully( cache );
+            ByteBuffer cacheBuf = ByteBuffer.wrap( cache );
+            return new CdfReader( new RegionBuf( fileBuf, ranges, cacheBuf ) );
+        }
+        catch ( EOFException e ) {
+            return null;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the header of an index file and checks whether it is
+     * applicable to a given CDF file.
+     *
+     * @param  in  input stream positioned at the start of the index
+     * @param  cdfFile  CDF file
+     * @return  true iff the header matches
+     */
+    private static boolean readHeader( DataInputStream in, File cdfFile )
+            throws IOException {
+        byte[] magic = new byte[ MAGIC.length ];
+        in.readFully( magic );
+        for ( int i = 0; i < magic.length; i++ ) {
+            if ( magic[ i ] != MAGIC[ i ] ) {
+                return false;
+            }
+        }
+        return in.readInt() == VERSION
+            && in.readLong() == cdfFile.length()
+            && in.readLong() == cdfFile.lastModified();
+    }
+}
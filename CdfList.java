@@ -1,13 +1,23 @@
 package uk.ac.bristol.star.cdf.util;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import uk.ac.bristol.star.cdf.AttributeEntry;
 import uk.ac.bristol.star.cdf.CdfContent;
 import uk.ac.bristol.star.cdf.CdfReader;
@@ -28,14 +38,19 @@ import uk.ac.bristol.star.cdf.VariableAttribute;
 public class CdfList {
 
     private final CdfContent cdf_;
-    private final PrintStream out_;
+    private final Writer out_;
     private final boolean writeData_;
+    private final int nthread_;
     private static final String[] NOVARY_MARKS = { "{ ", " }" };
     private static final String[] VIRTUAL_MARKS = { "[ ", " ]" };
     private static final String[] REAL_MARKS = { "  ", "" };
+    private static final String NEWLINE =
+        System.getProperty( "line.separator" );
+    private static final int CHUNK_ITEMS = 16 * 1024;
+    private static final int WRITE_BUFSIZE = 256 * 1024;
 
     /**
-     * Constructor.
+     * Constructor for serial output.
      *
      * @param   cdf   CDF content
      * @param   out   output stream for listing
@@ -43,119 +58,373 @@ public class CdfList {
      *                     be written
      */
     public CdfList( CdfContent cdf, PrintStream out, boolean writeData ) {
+        this( cdf, new OutputStreamWriter( out ), writeData, 1 );
+    }
+
+    /**
+     * Constructor with configurable parallelism.
+     * If more than one thread is used, record data is formatted
+     * in chunks on worker threads; the output is the same
+     * regardless of the number of threads.
+     *
+     * @param   cdf   CDF content
+     * @param   out   destination for listing; it is flushed but not closed
+     *                at the end of the {@link #run} method
+     * @param   writeData  true if data values as well as metadata are to
+     *                     be written
+     * @param   nthread   number of formatting threads;
+     *                    if &lt;=1, all work is done in the calling thread
+     */
+    public CdfList( CdfContent cdf, Writer out, boolean writeData,
+                    int nthread ) {
         cdf_ = cdf;
         out_ = out;
         writeData_ = writeData;
+        nthread_ = nthread;
     }
 
     /**
      * Does the work, writing output.
      */
     public void run() throws IOException {
+        Writer out = new BufferedWriter( out_, WRITE_BUFSIZE );
+        List<Chunk> chunks = createChunks();
+
+        // If formatting fails, the text up to the failure point is
+        // still written before the error is rethrown.
+        try {
+            if ( nthread_ <= 1 ) {
+                for ( Chunk chunk : chunks ) {
+                    chunk.formatSafe().write( out );
+                }
+            }
+            else {
+                writeParallel( chunks, out );
+            }
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Divides the output into a sequence of chunks, which can be
+     * formatted independently and concatenated to give the listing.
+     *
+     * @return  ordered list of output chunks
+     */
+    private List<Chunk> createChunks() {
+        List<Chunk> chunks = new ArrayList<Chunk>();
 
         // Read the CDF.
-        GlobalAttribute[] gAtts = cdf_.getGlobalAttributes();
-        VariableAttribute[] vAtts = cdf_.getVariableAttributes();
+        final GlobalAttribute[] gAtts = cdf_.getGlobalAttributes();
+        final VariableAttribute[] vAtts = cdf_.getVariableAttributes();
         Variable[] vars = cdf_.getVariables();
-        
+
         // Write global attribute information.
-        header( "Global Attributes" );
-        for ( int iga = 0; iga < gAtts.length; iga++ ) {
-            GlobalAttribute gAtt = gAtts[ iga ];
-            out_.println( "    " + gAtt.getName() );
-            AttributeEntry[] entries = gAtt.getEntries();
-            for ( int ie = 0; ie < entries.length; ie++ ) {
-                out_.println( "        " + entries[ ie ] );
+        chunks.add( new Chunk() {
+            void format( StringBuffer sbuf ) {
+                header( sbuf, "Global Attributes" );
+                for ( int iga = 0; iga < gAtts.length; iga++ ) {
+                    GlobalAttribute gAtt = gAtts[ iga ];
+                    println( sbuf, "    " + gAtt.getName() );
+                    AttributeEntry[] entries = gAtt.getEntries();
+                    for ( int ie = 0; ie < entries.length; ie++ ) {
+                        println( sbuf, "        " + entries[ ie ] );
+                    }
+                }
             }
-        }
+        } );
 
         // Write variable information.
         for ( int iv = 0; iv < vars.length; iv++ ) {
-            out_.println();
-            Variable var = vars[ iv ];
-            header( "Variable " + var.getNum() + ": " + var.getName()
-                  + "  ---  " + var.getSummary() );
-            for ( int ia = 0; ia < vAtts.length; ia++ ) {
-                VariableAttribute vAtt = vAtts[ ia ];
-                AttributeEntry entry = vAtt.getEntry( var );
-                if ( entry != null ) {
-                    out_.println( "    " + vAtt.getName() + ":\t" + entry );
+            final Variable var = vars[ iv ];
+            chunks.add( new Chunk() {
+                void format( StringBuffer sbuf ) {
+                    sbuf.append( NEWLINE );
+                    header( sbuf, "Variable " + var.getNum() + ": "
+                                + var.getName()
+                                + "  ---  " + var.getSummary() );
+                    for ( int ia = 0; ia < vAtts.length; ia++ ) {
+                        VariableAttribute vAtt = vAtts[ ia ];
+                        AttributeEntry entry = vAtt.getEntry( var );
+                        if ( entry != null ) {
+                            println( sbuf,
+                                     "    " + vAtt.getName() + ":\t" + entry );
+                        }
+                    }
                 }
-            }
+            } );
 
-            // Optionally write variable data as well.
+            // Optionally write variable data as well, in chunks of records.
             if ( writeData_ ) {
-                DataType dataType = var.getDataType();
-                Object abuf = var.createRawValueArray();
-                boolean isVar = var.getRecordVariance();
                 int nrec = var.getRecordCount();
-                int nrdigit = Integer.toString( nrec ).length();
-                for ( int ir = 0; ir < nrec; ir++ ) {
-                    var.readRawRecord( ir, abuf );
-                    final String[] marks;
-                    if ( ! isVar ) {
-                        marks = NOVARY_MARKS;
-                    }
-                    else if ( ! var.hasRecord( ir ) ) {
-                        marks = VIRTUAL_MARKS;
-                    }
-                    else {
-                        marks = REAL_MARKS;
-                    }
-                    String sir = Integer.toString( ir );
-                    StringBuffer sbuf = new StringBuffer()
-                        .append( marks[ 0 ] )
-                        .append( CdfDump.spaces( nrdigit - sir.length() ) )
-                        .append( sir )
-                        .append( ':' )
-                        .append( '\t' )
-                        .append( formatValues( abuf, dataType ) )
-                        .append( marks[ 1 ] );
-                    out_.println( sbuf.toString() );
+                int rvaleng = Array.getLength( var.createRawValueArray() );
+                int chunkRecs = Math.max( 1, CHUNK_ITEMS / rvaleng );
+                for ( int ir = 0; ir < nrec; ir += chunkRecs ) {
+                    chunks.add( new DataChunk( var, ir,
+                                               Math.min( chunkRecs,
+                                                         nrec - ir ) ) );
                 }
             }
         }
+        return chunks;
     }
 
     /**
-     * Applies string formatting to a value of a given data type.
+     * Formats chunks on a pool of worker threads and writes them in order.
+     * Only a limited number of chunks are in progress at any one time,
+     * so that memory usage is bounded.
      *
-     * @param  abuf   array buffer containing data
-     * @param  dataType  data type for data
-     * @return  string representation of value
+     * @param  chunks  ordered list of chunks
+     * @param  out   destination
      */
-    private String formatValues( Object abuf, DataType dataType ) {
-        StringBuffer sbuf = new StringBuffer();
-        if ( abuf == null ) {
-        }
-        else if ( abuf.getClass().isArray() ) {
-            int groupSize = dataType.getGroupSize();
-            int len = Array.getLength( abuf );
-            for ( int i = 0; i < len; i += groupSize ) {
-                if ( i > 0 ) {
-                    sbuf.append( ", " );
+    private void writeParallel( List<Chunk> chunks, Writer out )
+            throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool( nthread_ );
+        try {
+            int maxPending = nthread_ * 4;
+            LinkedList<Future<ChunkText>> pending =
+                new LinkedList<Future<ChunkText>>();
+            Iterator<Chunk> it = chunks.iterator();
+            while ( it.hasNext() || ! pending.isEmpty() ) {
+                while ( it.hasNext() && pending.size() < maxPending ) {
+                    final Chunk chunk = it.next();
+                    pending.add( executor.submit( new Callable<ChunkText>() {
+                        public ChunkText call() {
+                            return chunk.formatSafe();
+                        }
+                    } ) );
                 }
-                sbuf.append( dataType.formatArrayValue( abuf, i ) );
+                getResult( pending.removeFirst() ).write( out );
             }
         }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for and returns the result of a formatting task.
+     *
+     * @param  future  task result
+     * @return  formatted text
+     */
+    private static ChunkText getResult( Future<ChunkText> future )
+            throws IOException {
+        try {
+            return future.get();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw (IOException)
+                  new InterruptedIOException( "Interrupted" ).initCause( e );
+        }
+        catch ( ExecutionException e ) {
+            throw rethrow( e.getCause() );
+        }
+    }
+
+    /**
+     * Rethrows a formatting failure.
+     * Unchecked throwables and IOExceptions are thrown as they are,
+     * and anything else is wrapped in an IOException.
+     *
+     * @param  error  failure
+     * @return  never returns; declared for the benefit of callers
+     */
+    private static IOException rethrow( Throwable error ) throws IOException {
+        if ( error instanceof IOException ) {
+            throw (IOException) error;
+        }
+        else if ( error instanceof RuntimeException ) {
+            throw (RuntimeException) error;
+        }
+        else if ( error instanceof Error ) {
+            throw (Error) error;
+        }
         else {
-            sbuf.append( dataType.formatScalarValue( abuf ) );
+            throw (IOException) new IOException( "Formatting failed" )
+                               .initCause( error );
+        }
+    }
+
+    /**
+     * Appends the formatted values of a single record to a buffer.
+     *
+     * @param  sbuf   destination buffer
+     * @param  abuf   array buffer containing data for one or more records
+     * @param  off    index into abuf of the first element of the record
+     * @param  leng   number of array elements per record
+     * @param  dataType  data type for data
+     */
+    private static void formatValues( StringBuffer sbuf, Object abuf, int off,
+                                      int leng, DataType dataType ) {
+        int groupSize = dataType.getGroupSize();
+        for ( int i = 0; i < leng; i += groupSize ) {
+            if ( i > 0 ) {
+                sbuf.append( ", " );
+            }
+            sbuf.append( dataType.formatArrayValue( abuf, off + i ) );
         }
-        return sbuf.toString();
     }
 
     /**
-     * Writes a header to the output listing.
+     * Appends a header to an output buffer.
      *
+     * @param  sbuf  destination buffer
      * @param  txt  header text
      */
-    private void header( String txt ) {
-        out_.println( txt );
-        StringBuffer sbuf = new StringBuffer( txt.length() );
+    private static void header( StringBuffer sbuf, String txt ) {
+        println( sbuf, txt );
         for ( int i = 0; i < txt.length(); i++ ) {
             sbuf.append( '-' );
         }
-        out_.println( sbuf.toString() );
+        sbuf.append( NEWLINE );
+    }
+
+    /**
+     * Appends a line of text to an output buffer.
+     *
+     * @param  sbuf  destination buffer
+     * @param  line  line content, excluding line terminator
+     */
+    private static void println( StringBuffer sbuf, String line ) {
+        sbuf.append( line )
+            .append( NEWLINE );
+    }
+
+    /**
+     * Part of the output listing that can be formatted independently.
+     */
+    private static abstract class Chunk {
+
+        /**
+         * Appends this chunk's text to a buffer.
+         * If an exception is thrown, the buffer contains the text
+         * formatted before the failure.
+         *
+         * @param  sbuf  destination buffer
+         */
+        abstract void format( StringBuffer sbuf ) throws IOException;
+
+        /**
+         * Formats this chunk's text, capturing any failure
+         * instead of throwing it.
+         *
+         * @return  formatted text and failure status
+         */
+        ChunkText formatSafe() {
+            StringBuffer sbuf = new StringBuffer();
+            Throwable error = null;
+            try {
+                format( sbuf );
+            }
+            catch ( Throwable e ) {
+                error = e;
+            }
+            return new ChunkText( sbuf.toString(), error );
+        }
+    }
+
+    /**
+     * Result of formatting a chunk.
+     */
+    private static class ChunkText {
+        private final String text_;
+        private final Throwable error_;
+
+        /**
+         * Constructor.
+         *
+         * @param  text  formatted text, possibly incomplete
+         * @param  error  failure that interrupted formatting,
+         *                or null for success
+         */
+        ChunkText( String text, Throwable error ) {
+            text_ = text;
+            error_ = error;
+        }
+
+        /**
+         * Writes the text, and then rethrows any failure.
+         *
+         * @param  out  destination
+         */
+        void write( Writer out ) throws IOException {
+            out.write( text_ );
+            if ( error_ != null ) {
+                throw rethrow( error_ );
+            }
+        }
+    }
+
+    /**
+     * Chunk representing the listing of a range of records
+     * from a variable.
+     */
+    private static class DataChunk extends Chunk {
+        private final Variable var_;
+        private final int irec0_;
+        private final int nrec_;
+
+        /**
+         * Constructor.
+         *
+         * @param  var  variable
+         * @param  irec0  index of first record
+         * @param  nrec   number of records
+         */
+        DataChunk( Variable var, int irec0, int nrec ) {
+            var_ = var;
+            irec0_ = irec0;
+            nrec_ = nrec;
+        }
+
+        void format( StringBuffer sbuf ) throws IOException {
+            DataType dataType = var_.getDataType();
+            boolean isVar = var_.getRecordVariance();
+            int nrdigit = Integer.toString( var_.getRecordCount() ).length();
+            Object abuf = var_.createRawValueArray( nrec_ );
+            int rvaleng = Array.getLength( abuf ) / nrec_;
+            int ir = irec0_;
+            int irEnd = irec0_ + nrec_;
+            while ( ir < irEnd ) {
+                int nread = var_.readRawRecords( ir, irEnd - ir, abuf );
+                final String[] marks;
+                if ( ! isVar ) {
+                    marks = NOVARY_MARKS;
+                }
+                else if ( ! var_.hasRecord( ir ) ) {
+                    marks = VIRTUAL_MARKS;
+                }
+                else {
+                    marks = REAL_MARKS;
+                }
+                for ( int i = 0; i < nread; i++ ) {
+                    String sir = Integer.toString( ir + i );
+                    int leng0 = sbuf.length();
+                    sbuf.append( marks[ 0 ] )
+                        .append( CdfDump.spaces( nrdigit - sir.length() ) )
+                        .append( sir )
+                        .append( ':' )
+                        .append( '\t' );
+
+                    // Don't leave a partial line if formatting fails.
+                    try {
+                        formatValues( sbuf, abuf, i * rvaleng, rvaleng,
+                                      dataType );
+                    }
+                    catch ( RuntimeException e ) {
+                        sbuf.setLength( leng0 );
+                        throw e;
+                    }
+                    sbuf.append( marks[ 1 ] )
+                        .append( NEWLINE );
+                }
+                ir += nread;
+            }
+        }
     }
 
     /**
@@ -174,6 +443,7 @@ public class CdfList {
            .append( " [-help]" )
            .append( " [-verbose]" ) 
            .append( " [-data]" )
+           .append( " [-threads <n>]" )
            .append( " <cdf-file>" )
            .append( "\n" )
            .toString();
@@ -182,6 +452,7 @@ public class CdfList {
         List<String> argList = new ArrayList<String>( Arrays.asList( args ) );
         File file = null;
         boolean writeData = false;
+        int nthread = 1;
         int verb = 0;
         for ( Iterator<String> it = argList.iterator(); it.hasNext(); ) {
             String arg = it.next();
@@ -202,6 +473,18 @@ public class CdfList {
                 it.remove();
                 writeData = true;
             }
+            else if ( arg.equals( "-threads" ) && it.hasNext() ) {
+                it.remove();
+                String sval = it.next();
+                it.remove();
+                try {
+                    nthread = Integer.parseInt( sval );
+                }
+                catch ( NumberFormatException e ) {
+                    System.err.println( "Bad thread count: " + sval );
+                    return 1;
+                }
+            }
             else if ( file == null ) {
                 it.remove();
                 file = new File( arg );
@@ -222,7 +505,8 @@ public class CdfList {
         // Configure and run.
         LogUtil.setVerbosity( verb );
         new CdfList( new CdfContent( new CdfReader( file ) ),
-                     System.out, writeData ).run();
+                     new OutputStreamWriter( System.out ), writeData, nthread )
+           .run();
         return 0;
     }
 
@@ -0,0 +1,64 @@
+package uk.ac.bristol.star.cdf.record;
+
+/**
+ * Receives notification of performance-related events during CDF reading.
+ *
+ * <p>An implementation can be installed using
+ * {@link Metrics#setInstance Metrics.setInstance}, for instance to
+ * bridge to an external monitoring system;
+ * {@link CountingMetrics} is a simple implementation that just
+ * accumulates totals.
+ * When no instance is installed (the default), the library
+ * performs no timing, counting or allocation on behalf of metrics.
+ *
+ * <p>Methods may be called from multiple threads, and from
+ * performance-critical code, so implementations should be
+ * thread-safe and fast.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public interface CdfMetrics {
+
+    /**
+     * Reports that an internal record has been read from a CDF file.
+     *
+     * @param  rec  record that has been parsed
+     */
+    void recordParsed( Record rec );
+
+    /**
+     * Reports that a block of compressed data has been uncompressed.
+     *
+     * @param  compression  compression type
+     * @param  nbyte   number of uncompressed bytes produced
+     * @param  nanos   time taken in nanoseconds
+     */
+    void decompressed( Compression compression, long nbyte, long nanos );
+
+    /**
+     * Reports a lookup in a variable's record map.
+     * A hit means that the entry found was the same as for the
+     * previous lookup, so no search was required.
+     *
+     * @param  isHit  true for a cache hit, false for a miss
+     */
+    void recordMapLookup( boolean isHit );
+
+    /**
+     * Reports that part of a file has been memory mapped.
+     *
+     * @param  nbyte  size of the mapped region in bytes
+     */
+    void bankMapped( long nbyte );
+
+    /**
+     * Reports that record data has been read from the file
+     * for a variable.  Records which have no file-based value,
+     * for instance pad values, are not included.
+     *
+     * @param  varName  variable name
+     * @param  nbyte   number of bytes of stored data read
+     */
+    void variableRead( String varName, long nbyte );
+}
@@ -7,6 +7,7 @@ import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.util.logging.Logger;
 import uk.ac.bristol.star.cdf.record.Buf;
+import uk.ac.bristol.star.cdf.record.BufOptions;
 import uk.ac.bristol.star.cdf.record.Bufs;
 import uk.ac.bristol.star.cdf.record.CdfDescriptorRecord;
 import uk.ac.bristol.star.cdf.record.CompressedCdfRecord;
@@ -155,7 +156,36 @@ public class CdfReader {
      * @param  file  CDF file
      */
     public CdfReader( File file ) throws IOException {
-        this( Bufs.createBuf( file, true, true ) );
+        this( file, false );
+    }
+
+    /**
+     * Constructs a CdfReader from a readable file containing its byte data,
+     * with a choice of file access strategy.
+     * By default the file is memory mapped.  Alternatively, data can be
+     * read into memory using explicit reads with asynchronous read-ahead
+     * (see {@link uk.ac.bristol.star.cdf.record.PrefetchBuf});
+     * this may be faster for sequential access to files on
+     * slow or high-latency storage.
+     * This is a convenience method; for more control use
+     * {@link #CdfReader(java.io.File,BufOptions)}.
+     *
+     * @param  file  CDF file
+     * @param  isPrefetch  true to use read-ahead instead of mapping
+     */
+    public CdfReader( File file, boolean isPrefetch ) throws IOException {
+        this( file, isPrefetch ? createPrefetchOptions() : new BufOptions() );
+    }
+
+    /**
+     * Constructs a CdfReader from a readable file containing its byte data,
+     * using given options to configure how the file is accessed.
+     *
+     * @param  file  CDF file
+     * @param  options   file access options
+     */
+    public CdfReader( File file, BufOptions options ) throws IOException {
+        this( options.createBuf( file, true, true ) );
     }
 
     /**
@@ -203,6 +233,18 @@ public class CdfReader {
         return decodeMagic( readInt( intro, 0 ), readInt( intro, 4 ) ) != null;
     }
 
+    /**
+     * Returns buf options for reading with read-ahead instead of mapping.
+     *
+     * @return  new options
+     */
+    private static BufOptions createPrefetchOptions() {
+        BufOptions options = new BufOptions();
+        options.setStrategy( BufOptions.Strategy.READ );
+        options.setSequential( true );
+        return options;
+    }
+
     /**
      * Reads an 4-byte big-endian integer from a byte array.
      *
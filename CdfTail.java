@@ -0,0 +1,152 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import uk.ac.bristol.star.cdf.record.Buf;
+import uk.ac.bristol.star.cdf.record.BufOptions;
+import uk.ac.bristol.star.cdf.record.CdfDescriptorRecord;
+import uk.ac.bristol.star.cdf.record.FileMapping;
+import uk.ac.bristol.star.cdf.record.GlobalDescriptorRecord;
+
+/**
+ * Follows a CDF file which is being appended to by another process.
+ *
+ * <p>An instance of this class holds a current {@link CdfContent}
+ * snapshot of the file.  Calling {@link #refresh} checks whether the
+ * file has grown, and if so replaces the snapshot with a new one
+ * representing the file's current state.  The work done by a refresh
+ * is intended to be proportional to the amount of new data rather than
+ * the size of the file: only newly appended parts of the file are mapped,
+ * and the record maps of existing variables are extended using only
+ * the new entries in their index records where possible.
+ *
+ * <p>Snapshots are immutable, so content objects obtained before a
+ * refresh continue to represent the file as it was when they were
+ * created.  The records added by the most recent refresh can be
+ * identified using {@link #getPreviousRecordCount}.
+ *
+ * <p>Files using whole-file compression can be followed,
+ * but in that case each refresh that finds changes must re-read
+ * the whole file.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class CdfTail {
+
+    private final FileMapping mapping_;
+    private CdfContent content_;
+    private long fileLength_;
+    private long eof_;
+    private Map<String,Integer> prevCounts_;
+
+    private static final Logger logger_ =
+        Logger.getLogger( CdfTail.class.getName() );
+
+    /**
+     * Constructor.  The file is read in its current state.
+     *
+     * @param  file  CDF file
+     */
+    public CdfTail( File file ) throws IOException {
+        mapping_ = new FileMapping( file, BufOptions.DEFAULT_BANK_SIZE );
+        prevCounts_ = new HashMap<String,Integer>();
+        if ( ! readContent() ) {
+            throw new CdfFormatException( "No CDF content in " + file );
+        }
+    }
+
+    /**
+     * Returns the most recent snapshot of the file content.
+     *
+     * @return  current content
+     */
+    public synchronized CdfContent getContent() {
+        return content_;
+    }
+
+    /**
+     * Checks whether the file has grown since the last call,
+     * and if so updates the content accordingly.
+     * The file is considered to have changed only if both its length
+     * and the end-of-file offset recorded in its Global Descriptor Record
+     * have changed, so that a writer that has extended the file but
+     * not yet updated its metadata will not trigger an update.
+     *
+     * @return   true iff the content has changed
+     */
+    public synchronized boolean refresh() throws IOException {
+        return mapping_.getLength() != fileLength_ && readContent();
+    }
+
+    /**
+     * Returns the number of records that a given variable had in
+     * the snapshot preceding the current one.
+     * Records from this index up to the variable's current record count
+     * are those that were added by the most recent successful refresh.
+     * If no refresh has yet taken place, or the variable is new,
+     * zero is returned.
+     *
+     * @param   var  variable from the current content
+     * @return   record count before the last refresh
+     */
+    public synchronized int getPreviousRecordCount( Variable var ) {
+        Integer count = prevCounts_.get( var.getName() );
+        return count == null ? 0 : count.intValue();
+    }
+
+    /**
+     * Releases resources associated with this object.
+     * Content objects already obtained remain usable.
+     */
+    public void close() throws IOException {
+        mapping_.close();
+    }
+
+    /**
+     * Reads the current state of the file and updates the content
+     * if it has changed.
+     *
+     * @return  true iff the content has changed
+     */
+    private boolean readContent() throws IOException {
+        long leng = mapping_.getLength();
+        Buf buf = mapping_.createBuf( true, true );
+        CdfReader rdr = new CdfReader( buf );
+        Buf rbuf = rdr.getBuf();
+        CdfDescriptorRecord cdr = rdr.getCdr();
+        GlobalDescriptorRecord gdr =
+            rdr.getRecordFactory()
+               .createRecord( rbuf, cdr.gdrOffset,
+                              GlobalDescriptorRecord.class );
+        if ( content_ != null && gdr.eof == eof_ ) {
+            return false;
+        }
+
+        // The content can only be built incrementally if the buffer
+        // is the file itself, not an uncompressed copy of it.
+        boolean isIncremental = rbuf == buf;
+        CdfContent prevContent = content_ != null && isIncremental
+                               ? content_
+                               : null;
+        CdfContent content = new CdfContent( rdr, prevContent );
+        Map<String,Integer> prevCounts = new HashMap<String,Integer>();
+        if ( content_ != null ) {
+            Variable[] vars = content_.getVariables();
+            for ( int iv = 0; iv < vars.length; iv++ ) {
+                prevCounts.put( vars[ iv ].getName(),
+                                new Integer( vars[ iv ].getRecordCount() ) );
+            }
+        }
+        logger_.config( "CDF updated: eof " + eof_ + " -> " + gdr.eof
+                      + ( isIncremental ? "" : " (full re-read)" ) );
+        content_ = content;
+        fileLength_ = leng;
+        eof_ = gdr.eof;
+        prevCounts_ = prevCounts;
+        return true;
+    }
+}
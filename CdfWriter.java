@@ -0,0 +1,1204 @@
+package uk.ac.bristol.star.cdf.record;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+import uk.ac.bristol.star.cdf.CdfFormatException;
+import uk.ac.bristol.star.cdf.DataType;
+
+/**
+ * Writes a single-file version 3 CDF in a streaming fashion.
+ *
+ * <p>Variables are declared using {@link #addVariable addVariable},
+ * and records are then appended to each one in batches using
+ * {@link VariableWriter#appendRecords VariableWriter.appendRecords}.
+ * Records for different variables may be interleaved.
+ * Records are accumulated for each variable until its blocking factor
+ * is reached, and then written as a single Variable Values Record (VVR).
+ * The VVRs of each variable are indexed by a chain of Variable Index
+ * Records (VXRs), each with a fixed number of entries, which are
+ * written out as they fill up.  All output goes through a single
+ * buffer to a {@link java.nio.channels.FileChannel}, and each VVR
+ * whose size exceeds the buffer is written to the channel directly,
+ * so the cost of writing is dominated by the I/O itself.
+ *
+ * <p>The CDF Descriptor Record (CDR), the Global Descriptor Record (GDR)
+ * and each Variable Descriptor Record (VDR) are written when first
+ * known, and rewritten by {@link #close} when the final record counts,
+ * VXR positions and end of file offset are known.
+ * Attributes are held in memory and written on close.
+ * The file is not a complete CDF until it has been closed,
+ * unless {@link #flush} is called, which brings it up to date
+ * while allowing writing to continue.
+ * A file flushed in this way grows as a live file written by the
+ * CDF library does, and can be followed by a reader using
+ * {@link uk.ac.bristol.star.cdf.CdfTail}.
+ *
+ * <p>The file as a whole is not compressed, but the records of
+ * individual variables may be, see
+ * {@link VariableWriter#setGzipCompression
+ *         VariableWriter.setGzipCompression}.
+ * Each block of a compressed variable is written as a
+ * Compressed Variable Values Record (CVVR).
+ *
+ * <p>All variables are written as zVariables, and all numeric data
+ * uses the big-endian (network) encoding.
+ * Values are supplied as raw value arrays of the form returned by
+ * {@link uk.ac.bristol.star.cdf.Variable#readRawRecords
+ *         Variable.readRawRecords},
+ * with items in the file's majority.
+ * Character values shorter than a variable's element count are padded
+ * with spaces, and only the low byte of each character is written.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class CdfWriter {
+
+    private final RandomAccessFile raf_;
+    private final FileChannel channel_;
+    private final ByteBuffer obuf_;
+    private final boolean rowMajor_;
+    private final int vxrEntries_;
+    private final List<VariableWriter> vars_;
+    private final List<AttributeWriter> atts_;
+    private final long gdrOffset_;
+    private long flushedPos_;
+    private long adrHead_;
+    private boolean attsChanged_;
+    private boolean recsAdded_;
+    private long eof_;
+    private boolean closed_;
+
+    /** Default size of output buffer in bytes. */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    /** Default number of entries in each VXR. */
+    public static final int DEFAULT_VXR_ENTRIES = 64;
+
+    private static final int NAME_LENG = 256;
+    private static final int COPYRIGHT_LENG = 256;
+    private static final int HEADER_SIZE = 12;
+    private static final int CDR_SIZE = HEADER_SIZE + 44 + COPYRIGHT_LENG;
+    private static final int GDR_SIZE = HEADER_SIZE + 72;
+    private static final int ADR_SIZE = HEADER_SIZE + 56 + NAME_LENG;
+    private static final int AEDR_SIZE = HEADER_SIZE + 44;
+    private static final String COPYRIGHT =
+        "Common Data Format (CDF)\nWritten by JCDF\n";
+    private static final int[] TYPE_CODES = new int[] {
+        1, 2, 4, 8, 11, 12, 14, 21, 22, 31, 32, 33, 41, 44, 45, 51, 52,
+    };
+    private static final Map<String,Integer> typeCodeMap_ =
+        createTypeCodeMap();
+
+    /**
+     * Constructs a writer with default settings.
+     * The output is row major.
+     *
+     * @param  file  output file, overwritten if it exists
+     */
+    public CdfWriter( File file ) throws IOException {
+        this( file, true, DEFAULT_VXR_ENTRIES, DEFAULT_BUFFER_SIZE );
+    }
+
+    /**
+     * Constructs a writer with explicit settings.
+     *
+     * @param  file  output file, overwritten if it exists
+     * @param  rowMajor  true for row major, false for column major
+     *                   ordering of items within records
+     * @param  vxrEntries  number of entries in each VXR
+     * @param  bufferSize  size of output buffer in bytes
+     */
+    public CdfWriter( File file, boolean rowMajor, int vxrEntries,
+                      int bufferSize ) throws IOException {
+        if ( vxrEntries < 1 ) {
+            throw new IllegalArgumentException( "Bad VXR entry count "
+                                              + vxrEntries );
+        }
+        rowMajor_ = rowMajor;
+        vxrEntries_ = vxrEntries;
+        vars_ = new ArrayList<VariableWriter>();
+        atts_ = new ArrayList<AttributeWriter>();
+        obuf_ = ByteBuffer.allocateDirect( Math.max( 1024, bufferSize ) );
+        raf_ = new RandomAccessFile( file, "rw" );
+        raf_.setLength( 0 );
+        channel_ = raf_.getChannel();
+        flushedPos_ = 0;
+
+        // Magic numbers for an uncompressed V3 file, then the CDR
+        // and a placeholder GDR.
+        ByteBuffer magic = ByteBuffer.allocate( 8 );
+        magic.putInt( 0xcdf30001 );
+        magic.putInt( 0x0000ffff );
+        magic.flip();
+        writeBytes( magic );
+        gdrOffset_ = 8 + CDR_SIZE;
+        writeBytes( createCdr() );
+        assert getPosition() == gdrOffset_;
+        writeBytes( createGdr( 0, 0 ) );
+    }
+
+    /**
+     * Declares a new zVariable.
+     *
+     * @param  name  variable name
+     * @param  dataType  data type
+     * @param  numElems  number of characters per item for character
+     *                   types, 1 for other types
+     * @param  dimSizes  dimension sizes
+     * @param  dimVarys  dimension variances
+     * @param  recVary  record variance
+     * @param  blockingFactor  number of records written in each VVR
+     * @return  object for appending records to the variable
+     */
+    public VariableWriter addVariable( String name, DataType dataType,
+                                       int numElems, int[] dimSizes,
+                                       boolean[] dimVarys, boolean recVary,
+                                       int blockingFactor )
+            throws IOException {
+        checkOpen();
+        VariableWriter var =
+            new VariableWriter( name, dataType, numElems, dimSizes, dimVarys,
+                                recVary, blockingFactor, vars_.size(),
+                                getPosition() );
+        writeBytes( var.createVdr() );
+        vars_.add( var );
+        return var;
+    }
+
+    /**
+     * Declares a new attribute.  Its entries can be added at any time
+     * before this writer is closed.
+     *
+     * @param  name  attribute name
+     * @param  isGlobal  true for a global attribute,
+     *                   false for a variable attribute
+     * @return  object for adding entries to the attribute
+     */
+    public AttributeWriter addAttribute( String name, boolean isGlobal ) {
+        checkOpen();
+        checkName( name );
+        AttributeWriter att =
+            new AttributeWriter( name, isGlobal, atts_.size() );
+        atts_.add( att );
+        attsChanged_ = true;
+        return att;
+    }
+
+    /**
+     * Writes all the records appended so far and rewrites the descriptor
+     * records, so that the file is a valid CDF reflecting the current
+     * state of this writer.  Writing may continue afterwards.
+     *
+     * <p>The records of a partly filled block are written into a VVR
+     * with space reserved for the whole block, which later records of
+     * the block fill in place, extending the final entry of the index.
+     * Attributes are written at the end of the file if they have
+     * changed since they were last written.
+     * Since followers such as {@link uk.ac.bristol.star.cdf.CdfTail}
+     * detect changes by file growth, if records have been added but
+     * all of them fitted into reserved space, a minimal
+     * Unused Internal Record is appended so that the file still grows.
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        for ( VariableWriter var : vars_ ) {
+            var.reserveVvr();
+            if ( var.nent_ > 0 ) {
+                var.writeVxr();
+            }
+        }
+        if ( attsChanged_ ) {
+            writeAttributes();
+        }
+        if ( recsAdded_ && getPosition() == eof_ ) {
+            writeBytes( finishRecordBuffer( createRecordBuffer( HEADER_SIZE,
+                                                                -1 ) ) );
+        }
+        writeDescriptors();
+    }
+
+    /**
+     * Writes all outstanding data, rewrites the descriptor records
+     * to reflect the final state of the file, and closes it.
+     * Calling this method more than once has no effect.
+     */
+    public void close() throws IOException {
+        if ( closed_ ) {
+            return;
+        }
+        try {
+
+            // Write outstanding records and index entries.
+            for ( VariableWriter var : vars_ ) {
+                var.writeVvr();
+                if ( var.nent_ > 0 ) {
+                    var.writeVxr();
+                }
+            }
+            if ( attsChanged_ ) {
+                writeAttributes();
+            }
+            writeDescriptors();
+        }
+        finally {
+            closed_ = true;
+            channel_.close();
+            raf_.close();
+        }
+    }
+
+    /**
+     * Writes the attributes at the current position,
+     * each ADR followed by its entries.
+     */
+    private void writeAttributes() throws IOException {
+
+        // The sizes are all known, so the linking offsets can be
+        // calculated in advance.
+        adrHead_ = atts_.isEmpty() ? 0 : getPosition();
+        for ( int ia = 0; ia < atts_.size(); ia++ ) {
+            AttributeWriter att = atts_.get( ia );
+            long adrOff = getPosition();
+            long grOff = adrOff + ADR_SIZE;
+            long zOff = grOff + att.getEntriesSize( att.grEntries_ );
+            long next = zOff + att.getEntriesSize( att.zEntries_ );
+            writeBytes( att.createAdr( ia + 1 < atts_.size() ? next : 0,
+                                       grOff, zOff ) );
+            att.writeEntries( att.grEntries_, 5 );
+            att.writeEntries( att.zEntries_, 9 );
+            assert getPosition() == next;
+        }
+        attsChanged_ = false;
+    }
+
+    /**
+     * Flushes the output buffer and rewrites the descriptor records
+     * with their current values.  The GDR, which holds the end of file
+     * offset, is written last.
+     */
+    private void writeDescriptors() throws IOException {
+        long eof = getPosition();
+        flushBuffer();
+        for ( VariableWriter var : vars_ ) {
+            writeAt( var.createVdr(), var.vdrOffset_ );
+        }
+        writeAt( createGdr( adrHead_, eof ), gdrOffset_ );
+        eof_ = eof;
+        recsAdded_ = false;
+    }
+
+    /**
+     * Returns the current write position in the output file.
+     *
+     * @return  file offset of next byte written
+     */
+    private long getPosition() {
+        return flushedPos_ + obuf_.position();
+    }
+
+    /**
+     * Writes the remaining contents of a buffer at the current position.
+     *
+     * @param  bbuf  buffer, ready for reading
+     */
+    private void writeBytes( ByteBuffer bbuf ) throws IOException {
+        int n = bbuf.remaining();
+        if ( n > obuf_.remaining() ) {
+            flushBuffer();
+        }
+        if ( n >= obuf_.capacity() ) {
+            while ( bbuf.hasRemaining() ) {
+                channel_.write( bbuf );
+            }
+            flushedPos_ += n;
+        }
+        else {
+            obuf_.put( bbuf );
+        }
+    }
+
+    /**
+     * Writes the contents of the output buffer to the file.
+     */
+    private void flushBuffer() throws IOException {
+        obuf_.flip();
+        while ( obuf_.hasRemaining() ) {
+            flushedPos_ += channel_.write( obuf_ );
+        }
+        obuf_.clear();
+    }
+
+    /**
+     * Writes the remaining contents of a buffer at a given file position
+     * which has already been flushed.
+     *
+     * @param  bbuf  buffer, ready for reading
+     * @param  pos  file offset
+     */
+    private void writeAt( ByteBuffer bbuf, long pos ) throws IOException {
+        assert pos + bbuf.remaining() <= flushedPos_;
+        while ( bbuf.hasRemaining() ) {
+            pos += channel_.write( bbuf, pos );
+        }
+    }
+
+    /**
+     * Writes the remaining contents of a buffer at a given file position
+     * which has already been written, though perhaps not flushed.
+     *
+     * @param  bbuf  buffer, ready for reading
+     * @param  pos  file offset
+     */
+    private void overwrite( ByteBuffer bbuf, long pos ) throws IOException {
+        if ( pos + bbuf.remaining() > flushedPos_ ) {
+            flushBuffer();
+        }
+        writeAt( bbuf, pos );
+    }
+
+    /**
+     * Overwrites an 8-byte offset value already written to the file.
+     *
+     * @param  pos  file offset of the value
+     * @param  value  new value
+     */
+    private void patchOffset( long pos, long value ) throws IOException {
+        if ( pos >= flushedPos_ ) {
+            obuf_.putLong( (int) ( pos - flushedPos_ ), value );
+        }
+        else {
+            ByteBuffer bbuf = ByteBuffer.allocate( 8 );
+            bbuf.putLong( value );
+            bbuf.flip();
+            writeAt( bbuf, pos );
+        }
+    }
+
+    /**
+     * Throws an exception if this writer has been closed.
+     */
+    private void checkOpen() {
+        if ( closed_ ) {
+            throw new IllegalStateException( "Writer closed" );
+        }
+    }
+
+    /**
+     * Returns a buffer containing a CDF Descriptor Record.
+     *
+     * @return  CDR ready for writing
+     */
+    private ByteBuffer createCdr() {
+        ByteBuffer bbuf = createRecordBuffer( CDR_SIZE, 1 );
+        bbuf.putLong( gdrOffset_ );
+        bbuf.putInt( 3 );                         // version
+        bbuf.putInt( 4 );                         // release
+        bbuf.putInt( 1 );                         // encoding: network
+        bbuf.putInt( ( rowMajor_ ? 1 : 0 ) | 2 ); // flags: single file
+        bbuf.putInt( 0 );
+        bbuf.putInt( 0 );
+        bbuf.putInt( 0 );                         // increment
+        bbuf.putInt( -1 );
+        bbuf.putInt( -1 );
+        putAscii( bbuf, COPYRIGHT, COPYRIGHT_LENG );
+        return finishRecordBuffer( bbuf );
+    }
+
+    /**
+     * Returns a buffer containing a Global Descriptor Record.
+     *
+     * @param  adrHead  offset of first ADR, or 0
+     * @param  eof  end of file offset
+     * @return  GDR ready for writing
+     */
+    private ByteBuffer createGdr( long adrHead, long eof ) {
+        ByteBuffer bbuf = createRecordBuffer( GDR_SIZE, 2 );
+        bbuf.putLong( 0 );                                // rVDRhead
+        bbuf.putLong( vars_.isEmpty() ? 0 : vars_.get( 0 ).vdrOffset_ );
+        bbuf.putLong( adrHead );
+        bbuf.putLong( eof );
+        bbuf.putInt( 0 );                                 // NrVars
+        bbuf.putInt( atts_.size() );
+        bbuf.putInt( -1 );                                // rMaxRec
+        bbuf.putInt( 0 );                                 // rNumDims
+        bbuf.putInt( vars_.size() );
+        bbuf.putLong( 0 );                                // UIRhead
+        bbuf.putInt( 0 );
+        bbuf.putInt( -1 );                                // LeapSecond...
+        bbuf.putInt( -1 );
+        return finishRecordBuffer( bbuf );
+    }
+
+    /**
+     * Returns the CDF data type code for a data type.
+     *
+     * @param  dataType  data type
+     * @return  dataType field value for VDR or AEDR
+     */
+    public static int getTypeCode( DataType dataType ) {
+        Integer code = typeCodeMap_.get( dataType.getName() );
+        if ( code == null ) {
+            throw new IllegalArgumentException( "Unknown data type "
+                                              + dataType );
+        }
+        return code.intValue();
+    }
+
+    /**
+     * Encodes raw array values into a buffer.
+     * There must be enough space remaining.
+     *
+     * @param  bbuf  destination buffer
+     * @param  dataType  data type
+     * @param  numElems  characters per item for character types
+     * @param  array  raw value array
+     * @param  off  index of first array element
+     * @param  n  number of array elements
+     */
+    private static void encode( ByteBuffer bbuf, DataType dataType,
+                                int numElems, Object array, int off, int n ) {
+        int pos = bbuf.position();
+        int elSize = dataType.getByteCount() / dataType.getGroupSize();
+        if ( array instanceof double[] ) {
+            bbuf.asDoubleBuffer().put( (double[]) array, off, n );
+            bbuf.position( pos + 8 * n );
+        }
+        else if ( array instanceof float[] ) {
+            bbuf.asFloatBuffer().put( (float[]) array, off, n );
+            bbuf.position( pos + 4 * n );
+        }
+        else if ( array instanceof long[] ) {
+            long[] a = (long[]) array;
+            if ( elSize == 8 ) {
+                bbuf.asLongBuffer().put( a, off, n );
+                bbuf.position( pos + 8 * n );
+            }
+            else {
+                for ( int i = off; i < off + n; i++ ) {
+                    bbuf.putInt( (int) a[ i ] );
+                }
+            }
+        }
+        else if ( array instanceof int[] ) {
+            int[] a = (int[]) array;
+            if ( elSize == 4 ) {
+                bbuf.asIntBuffer().put( a, off, n );
+                bbuf.position( pos + 4 * n );
+            }
+            else {
+                for ( int i = off; i < off + n; i++ ) {
+                    bbuf.putShort( (short) a[ i ] );
+                }
+            }
+        }
+        else if ( array instanceof short[] ) {
+            short[] a = (short[]) array;
+            if ( elSize == 2 ) {
+                bbuf.asShortBuffer().put( a, off, n );
+                bbuf.position( pos + 2 * n );
+            }
+            else {
+                for ( int i = off; i < off + n; i++ ) {
+                    bbuf.put( (byte) a[ i ] );
+                }
+            }
+        }
+        else if ( array instanceof byte[] ) {
+            bbuf.put( (byte[]) array, off, n );
+        }
+        else if ( array instanceof String[] ) {
+            String[] a = (String[]) array;
+            for ( int i = off; i < off + n; i++ ) {
+                String s = a[ i ] == null ? "" : a[ i ];
+                int nc = Math.min( s.length(), numElems );
+                for ( int ic = 0; ic < nc; ic++ ) {
+                    bbuf.put( (byte) s.charAt( ic ) );
+                }
+                for ( int ic = nc; ic < numElems; ic++ ) {
+                    bbuf.put( (byte) ' ' );
+                }
+            }
+        }
+        else {
+            throw new IllegalArgumentException( "Unsupported array type" );
+        }
+    }
+
+    /**
+     * Checks that a raw value array is suitable for a data type.
+     *
+     * @param  dataType  data type
+     * @param  array  raw value array
+     * @param  nel   minimum required number of elements
+     */
+    private static void checkArray( DataType dataType, Object array,
+                                    int nel ) {
+        Class<?> clazz = array.getClass().getComponentType();
+        if ( clazz != dataType.getArrayElementClass() ) {
+            throw new IllegalArgumentException( "Array type " + clazz
+                                              + " unsuitable for "
+                                              + dataType );
+        }
+        if ( Array.getLength( array ) < nel ) {
+            throw new IllegalArgumentException( "Array too short" );
+        }
+    }
+
+    /**
+     * Checks that a name is legal for a variable or attribute.
+     *
+     * @param  name  name
+     */
+    private static void checkName( String name ) {
+        if ( name.length() == 0 || name.length() > NAME_LENG ) {
+            throw new IllegalArgumentException( "Bad name \"" + name
+                                              + "\"" );
+        }
+    }
+
+    /**
+     * Creates a buffer for a record and writes its header.
+     *
+     * @param  size  record size in bytes
+     * @param  recordType  record type code
+     * @return  buffer positioned after the header
+     */
+    private static ByteBuffer createRecordBuffer( int size, int recordType ) {
+        ByteBuffer bbuf = ByteBuffer.allocate( size );
+        bbuf.putLong( size );
+        bbuf.putInt( recordType );
+        return bbuf;
+    }
+
+    /**
+     * Prepares a filled record buffer for writing.
+     *
+     * @param  bbuf  buffer from {@link #createRecordBuffer}
+     * @return  bbuf, flipped
+     */
+    private static ByteBuffer finishRecordBuffer( ByteBuffer bbuf ) {
+        assert ! bbuf.hasRemaining();
+        bbuf.flip();
+        return bbuf;
+    }
+
+    /**
+     * Writes a string into a fixed-length null-padded field.
+     *
+     * @param  bbuf  destination buffer
+     * @param  txt  string
+     * @param  leng  field length in bytes
+     */
+    private static void putAscii( ByteBuffer bbuf, String txt, int leng ) {
+        int nc = Math.min( txt.length(), leng );
+        for ( int i = 0; i < nc; i++ ) {
+            bbuf.put( (byte) txt.charAt( i ) );
+        }
+        for ( int i = nc; i < leng; i++ ) {
+            bbuf.put( (byte) 0 );
+        }
+    }
+
+    /**
+     * Sets up the map from data type names to codes.
+     *
+     * @return  new map
+     */
+    private static Map<String,Integer> createTypeCodeMap() {
+        Map<String,Integer> map = new HashMap<String,Integer>();
+        for ( int code : TYPE_CODES ) {
+            try {
+                map.put( DataType.getDataType( code ).getName(),
+                         new Integer( code ) );
+            }
+            catch ( CdfFormatException e ) {
+                throw new AssertionError( e );
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Appends records to a single variable.
+     */
+    public class VariableWriter {
+
+        private final String name_;
+        private final DataType dataType_;
+        private final int typeCode_;
+        private final int numElems_;
+        private final int[] dimSizes_;
+        private final boolean[] dimVarys_;
+        private final boolean recVary_;
+        private final int blockingFactor_;
+        private final int num_;
+        private final long vdrOffset_;
+        private final int recSize_;
+        private final int recElems_;
+        private final ByteBuffer pending_;
+        private final int[] firsts_;
+        private final int[] lasts_;
+        private final long[] offsets_;
+        private int nent_;
+        private int nrec_;
+        private int nwritten_;
+        private long vxrHead_;
+        private long vxrTail_;
+        private boolean vxrPlaced_;
+        private long openVvr_;
+        private int gzipLevel_;
+        private long cprOffset_;
+
+        /**
+         * Constructor.
+         *
+         * @param  name  variable name
+         * @param  dataType  data type
+         * @param  numElems  characters per item for character types,
+         *                   otherwise 1
+         * @param  dimSizes  dimension sizes
+         * @param  dimVarys  dimension variances
+         * @param  recVary  record variance
+         * @param  blockingFactor  number of records per VVR
+         * @param  num  zVariable number
+         * @param  vdrOffset  file offset of the VDR
+         */
+        VariableWriter( String name, DataType dataType, int numElems,
+                        int[] dimSizes, boolean[] dimVarys, boolean recVary,
+                        int blockingFactor, int num, long vdrOffset ) {
+            checkName( name );
+            if ( dimSizes.length != dimVarys.length ) {
+                throw new IllegalArgumentException( "Dimension mismatch" );
+            }
+            if ( numElems < 1 ||
+                 ( numElems != 1 &&
+                   ! dataType.hasMultipleElementsPerItem() ) ) {
+                throw new IllegalArgumentException( "Bad numElems "
+                                                  + numElems );
+            }
+            if ( blockingFactor < 1 ) {
+                throw new IllegalArgumentException( "Bad blocking factor "
+                                                  + blockingFactor );
+            }
+            name_ = name;
+            dataType_ = dataType;
+            typeCode_ = getTypeCode( dataType );
+            numElems_ = numElems;
+            dimSizes_ = dimSizes.clone();
+            dimVarys_ = dimVarys.clone();
+            recVary_ = recVary;
+            blockingFactor_ = blockingFactor;
+            num_ = num;
+            vdrOffset_ = vdrOffset;
+            int nitem = 1;
+            for ( int id = 0; id < dimSizes.length; id++ ) {
+                if ( dimVarys[ id ] ) {
+                    nitem *= dimSizes[ id ];
+                }
+            }
+            recSize_ = nitem * dataType.getByteCount() * numElems;
+            recElems_ = nitem * dataType.getGroupSize();
+            pending_ = ByteBuffer.allocate( blockingFactor * recSize_ );
+            firsts_ = new int[ vxrEntries_ ];
+            lasts_ = new int[ vxrEntries_ ];
+            offsets_ = new long[ vxrEntries_ ];
+            openVvr_ = -1L;
+            cprOffset_ = -1L;
+        }
+
+        /**
+         * Returns the variable name.
+         *
+         * @return  name
+         */
+        public String getName() {
+            return name_;
+        }
+
+        /**
+         * Returns the number of records appended so far.
+         *
+         * @return  record count
+         */
+        public int getRecordCount() {
+            return nrec_;
+        }
+
+        /**
+         * Returns the number of raw value array elements per record.
+         *
+         * @return  elements per record
+         */
+        public int getRecordElementCount() {
+            return recElems_;
+        }
+
+        /**
+         * Arranges for the records of this variable to be written
+         * GZIP-compressed.  This must be called before any records
+         * are appended.
+         *
+         * <p>Since a compressed block cannot be updated in place,
+         * a flush ends the current block of a compressed variable,
+         * so frequent flushes lead to short blocks.
+         *
+         * @param  level  GZIP compression level, in the range 1..9
+         */
+        public void setGzipCompression( int level ) throws IOException {
+            checkOpen();
+            if ( level < 1 || level > 9 ) {
+                throw new IllegalArgumentException( "Bad GZIP level "
+                                                  + level );
+            }
+            if ( nrec_ > 0 || cprOffset_ >= 0 ) {
+                throw new IllegalStateException( "Too late to set "
+                                               + "compression" );
+            }
+            gzipLevel_ = level;
+            cprOffset_ = getPosition();
+            ByteBuffer bbuf = createRecordBuffer( HEADER_SIZE + 16, 11 );
+            bbuf.putInt( 5 );                  // cType: GZIP
+            bbuf.putInt( 0 );
+            bbuf.putInt( 1 );                  // pCount
+            bbuf.putInt( level );
+            writeBytes( finishRecordBuffer( bbuf ) );
+        }
+
+        /**
+         * Appends records to this variable.
+         *
+         * @param  rawValueArray  array containing the raw values for each
+         *                        record in sequence, of the type created by
+         *                        <code>Variable.createRawValueArray</code>
+         * @param  nrec  number of records to append
+         */
+        public void appendRecords( Object rawValueArray, int nrec )
+                throws IOException {
+            checkOpen();
+            checkArray( dataType_, rawValueArray, nrec * recElems_ );
+            int ir = 0;
+            while ( ir < nrec ) {
+                int npend = recSize_ == 0 ? 0
+                                          : pending_.position() / recSize_;
+                int n = Math.min( nrec - ir, blockingFactor_ - npend );
+                encode( pending_, dataType_, numElems_, rawValueArray,
+                        ir * recElems_, n * recElems_ );
+                ir += n;
+                nrec_ += n;
+                recsAdded_ = true;
+                if ( npend + n == blockingFactor_ ) {
+                    writeVvr();
+                }
+            }
+        }
+
+        /**
+         * Writes any pending records as a VVR, completing the current
+         * block.  If space for the block has been reserved by an
+         * earlier flush, the records are written into it.
+         */
+        void writeVvr() throws IOException {
+            if ( nrec_ == nwritten_ ) {
+                return;
+            }
+            if ( cprOffset_ >= 0 ) {
+                long off = getPosition();
+                writeBytes( createCvvr() );
+                addEntry( nwritten_, nrec_ - 1, off );
+            }
+            else if ( openVvr_ >= 0 ) {
+                writePendingAt( openVvr_ );
+            }
+            else {
+                long off = getPosition();
+                writeBytes( createVvrHeader( pending_.position() ) );
+                pending_.flip();
+                writeBytes( pending_ );
+                addEntry( nwritten_, nrec_ - 1, off );
+            }
+            pending_.clear();
+            nwritten_ = nrec_;
+            openVvr_ = -1L;
+        }
+
+        /**
+         * Makes any pending records readable from the file without
+         * completing the current block.  The first time this is done
+         * for a block, a VVR with room for the whole block is written
+         * and indexed; later calls update it in place.
+         * For a compressed variable, the block is ended instead.
+         */
+        void reserveVvr() throws IOException {
+            if ( nrec_ == nwritten_ ) {
+                return;
+            }
+            if ( cprOffset_ >= 0 ) {
+                writeVvr();
+            }
+            else if ( openVvr_ >= 0 ) {
+                writePendingAt( openVvr_ );
+            }
+            else {
+                long off = getPosition();
+                writeBytes( createVvrHeader( pending_.capacity() ) );
+                ByteBuffer data = pending_.duplicate();
+                data.flip();
+                writeBytes( data );
+                writeBytes( ByteBuffer.allocate( pending_.capacity()
+                                               - pending_.position() ) );
+                addEntry( nwritten_, nrec_ - 1, off );
+                openVvr_ = off;
+            }
+        }
+
+        /**
+         * Writes the pending records into a reserved VVR, and updates
+         * the index entry for it, which is the most recent one.
+         *
+         * @param  vvrOff  file offset of VVR
+         */
+        private void writePendingAt( long vvrOff ) throws IOException {
+            ByteBuffer data = pending_.duplicate();
+            data.flip();
+            overwrite( data, vvrOff + HEADER_SIZE );
+            lasts_[ nent_ - 1 ] = nrec_ - 1;
+        }
+
+        /**
+         * Returns a buffer containing a VVR header.
+         *
+         * @param  dataSize  number of bytes of record data
+         * @return  header ready for writing
+         */
+        private ByteBuffer createVvrHeader( int dataSize ) {
+            ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+            header.putLong( HEADER_SIZE + dataSize );
+            header.putInt( 7 );
+            header.flip();
+            return header;
+        }
+
+        /**
+         * Returns a buffer containing the pending records compressed
+         * into a CVVR.
+         *
+         * @return  CVVR ready for writing
+         */
+        private ByteBuffer createCvvr() throws IOException {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            OutputStream zout = new GZIPOutputStream( bout ) {
+                {
+                    def.setLevel( gzipLevel_ );
+                }
+            };
+            zout.write( pending_.array(), 0, pending_.position() );
+            zout.close();
+            byte[] cdata = bout.toByteArray();
+            ByteBuffer bbuf =
+                createRecordBuffer( HEADER_SIZE + 12 + cdata.length, 13 );
+            bbuf.putInt( 0 );
+            bbuf.putLong( cdata.length );      // cSize
+            bbuf.put( cdata );
+            return finishRecordBuffer( bbuf );
+        }
+
+        /**
+         * Adds an index entry.  If the current VXR is full, it is
+         * written out and a new one started.
+         *
+         * @param  first  first record index
+         * @param  last  last record index (inclusive)
+         * @param  off  file offset of VVR
+         */
+        private void addEntry( int first, int last, long off )
+                throws IOException {
+            if ( nent_ == vxrEntries_ ) {
+                writeVxr();
+                nent_ = 0;
+                vxrPlaced_ = false;
+            }
+            firsts_[ nent_ ] = first;
+            lasts_[ nent_ ] = last;
+            offsets_[ nent_ ] = off;
+            nent_++;
+        }
+
+        /**
+         * Writes the current index entries as a VXR.
+         * The first time this is done for a VXR, it is written at the
+         * current position and linked into the chain; later calls
+         * update it in place.
+         */
+        void writeVxr() throws IOException {
+            int nent = vxrEntries_;
+            ByteBuffer bbuf =
+                createRecordBuffer( HEADER_SIZE + 16 + 16 * nent, 6 );
+            bbuf.putLong( 0 );
+            bbuf.putInt( nent );
+            bbuf.putInt( nent_ );
+            for ( int ie = 0; ie < nent; ie++ ) {
+                bbuf.putInt( ie < nent_ ? firsts_[ ie ] : -1 );
+            }
+            for ( int ie = 0; ie < nent; ie++ ) {
+                bbuf.putInt( ie < nent_ ? lasts_[ ie ] : -1 );
+            }
+            for ( int ie = 0; ie < nent; ie++ ) {
+                bbuf.putLong( ie < nent_ ? offsets_[ ie ] : -1L );
+            }
+            finishRecordBuffer( bbuf );
+            if ( vxrPlaced_ ) {
+                overwrite( bbuf, vxrTail_ );
+            }
+            else {
+                long off = getPosition();
+                writeBytes( bbuf );
+                if ( vxrTail_ == 0 ) {
+                    vxrHead_ = off;
+                }
+                else {
+                    patchOffset( vxrTail_ + HEADER_SIZE, off );
+                }
+                vxrTail_ = off;
+                vxrPlaced_ = true;
+            }
+        }
+
+        /**
+         * Returns a buffer containing this variable's VDR in its
+         * current state.
+         *
+         * @return  VDR ready for writing
+         */
+        ByteBuffer createVdr() {
+            int ndim = dimSizes_.length;
+            ByteBuffer bbuf =
+                createRecordBuffer( HEADER_SIZE + 76 + NAME_LENG + 8 * ndim,
+                                    8 );
+            bbuf.putLong( num_ + 1 < vars_.size()
+                          ? vars_.get( num_ + 1 ).vdrOffset_
+                          : 0 );
+            bbuf.putInt( typeCode_ );
+            bbuf.putInt( nrec_ - 1 );
+            bbuf.putLong( vxrHead_ );
+            bbuf.putLong( vxrTail_ );
+            bbuf.putInt( ( recVary_ ? 1 : 0 )
+                       | ( cprOffset_ >= 0 ? 4 : 0 ) );
+            bbuf.putInt( 0 );                  // SRecords
+            bbuf.putInt( 0 );
+            bbuf.putInt( -1 );
+            bbuf.putInt( -1 );
+            bbuf.putInt( numElems_ );
+            bbuf.putInt( num_ );
+            bbuf.putLong( cprOffset_ );        // CPRorSPRoffset
+            bbuf.putInt( blockingFactor_ );
+            putAscii( bbuf, name_, NAME_LENG );
+            bbuf.putInt( ndim );
+            for ( int id = 0; id < ndim; id++ ) {
+                bbuf.putInt( dimSizes_[ id ] );
+            }
+            for ( int id = 0; id < ndim; id++ ) {
+                bbuf.putInt( dimVarys_[ id ] ? -1 : 0 );
+            }
+            return finishRecordBuffer( bbuf );
+        }
+    }
+
+    /**
+     * Accumulates the entries of a single attribute.
+     */
+    public class AttributeWriter {
+
+        private final String name_;
+        private final boolean isGlobal_;
+        private final int num_;
+        private final Map<Integer,Entry> grEntries_;
+        private final Map<Integer,Entry> zEntries_;
+
+        /**
+         * Constructor.
+         *
+         * @param  name  attribute name
+         * @param  isGlobal  true for global scope
+         * @param  num  attribute number
+         */
+        AttributeWriter( String name, boolean isGlobal, int num ) {
+            name_ = name;
+            isGlobal_ = isGlobal;
+            num_ = num;
+            grEntries_ = new TreeMap<Integer,Entry>();
+            zEntries_ = new TreeMap<Integer,Entry>();
+        }
+
+        /**
+         * Sets an entry of a global attribute.
+         *
+         * @param  ient  entry index
+         * @param  dataType  data type
+         * @param  rawValue  raw value array; for character types a
+         *                   one-element String array
+         */
+        public void setGlobalEntry( int ient, DataType dataType,
+                                    Object rawValue ) {
+            if ( ! isGlobal_ ) {
+                throw new IllegalStateException( "Not a global attribute" );
+            }
+            grEntries_.put( new Integer( ient ),
+                            new Entry( dataType, rawValue ) );
+            attsChanged_ = true;
+        }
+
+        /**
+         * Sets the entry of a variable attribute for a given variable.
+         *
+         * @param  var  variable from the same writer
+         * @param  dataType  data type
+         * @param  rawValue  raw value array; for character types a
+         *                   one-element String array
+         */
+        public void setVariableEntry( VariableWriter var, DataType dataType,
+                                      Object rawValue ) {
+            if ( isGlobal_ ) {
+                throw new IllegalStateException( "Not a variable attribute" );
+            }
+            zEntries_.put( new Integer( var.num_ ),
+                           new Entry( dataType, rawValue ) );
+            attsChanged_ = true;
+        }
+
+        /**
+         * Returns the number of bytes required to write some entries.
+         *
+         * @param  entries  entry map
+         * @return  total size of AEDRs
+         */
+        long getEntriesSize( Map<Integer,Entry> entries ) {
+            long size = 0;
+            for ( Entry entry : entries.values() ) {
+                size += AEDR_SIZE + entry.bytes_.length;
+            }
+            return size;
+        }
+
+        /**
+         * Returns a buffer containing this attribute's ADR.
+         *
+         * @param  next  offset of next ADR, or 0
+         * @param  grHead  offset of first gr entry
+         * @param  zHead  offset of first z entry
+         * @return  ADR ready for writing
+         */
+        ByteBuffer createAdr( long next, long grHead, long zHead ) {
+            ByteBuffer bbuf = createRecordBuffer( ADR_SIZE, 4 );
+            bbuf.putLong( next );
+            bbuf.putLong( grEntries_.isEmpty() ? 0 : grHead );
+            bbuf.putInt( isGlobal_ ? 1 : 2 );
+            bbuf.putInt( num_ );
+            bbuf.putInt( grEntries_.size() );
+            bbuf.putInt( getMaxEntry( grEntries_ ) );
+            bbuf.putInt( 0 );
+            bbuf.putLong( zEntries_.isEmpty() ? 0 : zHead );
+            bbuf.putInt( zEntries_.size() );
+            bbuf.putInt( getMaxEntry( zEntries_ ) );
+            bbuf.putInt( -1 );
+            putAscii( bbuf, name_, NAME_LENG );
+            return finishRecordBuffer( bbuf );
+        }
+
+        /**
+         * Writes a list of entries as a chain of AEDRs.
+         *
+         * @param  entries  entry map
+         * @param  recordType  AEDR record type code
+         */
+        void writeEntries( Map<Integer,Entry> entries, int recordType )
+                throws IOException {
+            int ie = 0;
+            for ( Map.Entry<Integer,Entry> me : entries.entrySet() ) {
+                Entry entry = me.getValue();
+                int size = AEDR_SIZE + entry.bytes_.length;
+                long next = ++ie < entries.size() ? getPosition() + size : 0;
+                ByteBuffer bbuf = createRecordBuffer( size, recordType );
+                bbuf.putLong( next );
+                bbuf.putInt( num_ );
+                bbuf.putInt( entry.typeCode_ );
+                bbuf.putInt( me.getKey().intValue() );
+                bbuf.putInt( entry.numElems_ );
+                bbuf.putInt( 0 );
+                bbuf.putInt( 0 );
+                bbuf.putInt( 0 );
+                bbuf.putInt( -1 );
+                bbuf.putInt( -1 );
+                bbuf.put( entry.bytes_ );
+                writeBytes( finishRecordBuffer( bbuf ) );
+            }
+        }
+
+        /**
+         * Returns the largest entry index in a map.
+         *
+         * @param  entries  entry map
+         * @return  maximum index, or -1 if empty
+         */
+        private int getMaxEntry( Map<Integer,Entry> entries ) {
+            int max = -1;
+            for ( Integer ient : entries.keySet() ) {
+                max = Math.max( max, ient.intValue() );
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Encoded attribute entry value.
+     */
+    private static class Entry {
+
+        final int typeCode_;
+        final int numElems_;
+        final byte[] bytes_;
+
+        /**
+         * Constructor.
+         *
+         * @param  dataType  data type
+         * @param  rawValue  raw value array
+         */
+        Entry( DataType dataType, Object rawValue ) {
+            typeCode_ = getTypeCode( dataType );
+            int nel = Array.getLength( rawValue );
+            if ( dataType.hasMultipleElementsPerItem() ) {
+                if ( nel != 1 ) {
+                    throw new IllegalArgumentException( "Need 1 string" );
+                }
+                checkArray( dataType, rawValue, 1 );
+                String s = ((String[]) rawValue)[ 0 ];
+                numElems_ = Math.max( 1, s == null ? 0 : s.length() );
+                bytes_ = new byte[ numElems_ * dataType.getByteCount() ];
+                encode( ByteBuffer.wrap( bytes_ ), dataType, numElems_,
+                        rawValue, 0, 1 );
+            }
+            else {
+                checkArray( dataType, rawValue, nel );
+                numElems_ = nel / dataType.getGroupSize();
+                bytes_ = new byte[ numElems_ * dataType.getByteCount() ];
+                encode( ByteBuffer.wrap( bytes_ ), dataType, 1, rawValue,
+                        0, numElems_ * dataType.getGroupSize() );
+            }
+        }
+    }
+}
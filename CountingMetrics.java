@@ -0,0 +1,203 @@
+package uk.ac.bristol.star.cdf.record;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Simple CdfMetrics implementation that accumulates totals.
+ *
+ * <p>Totals keyed by record type, compression type or variable name
+ * are available as maps; each call to one of the map-returning methods
+ * returns a new snapshot.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class CountingMetrics implements CdfMetrics {
+
+    private final Map<String,long[]> recordCounts_;
+    private final Map<String,long[]> decompressBytes_;
+    private final Map<String,long[]> decompressNanos_;
+    private final Map<String,long[]> variableBytes_;
+    private long mapHits_;
+    private long mapMisses_;
+    private long bankCount_;
+    private long bankBytes_;
+
+    /**
+     * Constructor.
+     */
+    public CountingMetrics() {
+        recordCounts_ = new TreeMap<String,long[]>();
+        decompressBytes_ = new TreeMap<String,long[]>();
+        decompressNanos_ = new TreeMap<String,long[]>();
+        variableBytes_ = new TreeMap<String,long[]>();
+    }
+
+    public synchronized void recordParsed( Record rec ) {
+        increment( recordCounts_, rec.getRecordTypeAbbreviation(), 1 );
+    }
+
+    public synchronized void decompressed( Compression compression,
+                                           long nbyte, long nanos ) {
+        String name = compression.getName();
+        increment( decompressBytes_, name, nbyte );
+        increment( decompressNanos_, name, nanos );
+    }
+
+    public synchronized void recordMapLookup( boolean isHit ) {
+        if ( isHit ) {
+            mapHits_++;
+        }
+        else {
+            mapMisses_++;
+        }
+    }
+
+    public synchronized void bankMapped( long nbyte ) {
+        bankCount_++;
+        bankBytes_ += nbyte;
+    }
+
+    public synchronized void variableRead( String varName, long nbyte ) {
+        increment( variableBytes_, varName, nbyte );
+    }
+
+    /**
+     * Returns the number of internal records parsed, by record type.
+     *
+     * @return  map from record type abbreviation to count
+     */
+    public synchronized Map<String,Long> getRecordCounts() {
+        return snapshot( recordCounts_ );
+    }
+
+    /**
+     * Returns the number of bytes uncompressed, by compression type.
+     *
+     * @return  map from compression name to uncompressed byte count
+     */
+    public synchronized Map<String,Long> getDecompressedBytes() {
+        return snapshot( decompressBytes_ );
+    }
+
+    /**
+     * Returns the time spent uncompressing data, by compression type.
+     *
+     * @return  map from compression name to time in nanoseconds
+     */
+    public synchronized Map<String,Long> getDecompressionNanos() {
+        return snapshot( decompressNanos_ );
+    }
+
+    /**
+     * Returns the number of bytes of record data read, by variable.
+     *
+     * @return  map from variable name to byte count
+     */
+    public synchronized Map<String,Long> getVariableBytes() {
+        return snapshot( variableBytes_ );
+    }
+
+    /**
+     * Returns the number of record map lookups that were satisfied
+     * without a search.
+     *
+     * @return  record map hit count
+     */
+    public synchronized long getRecordMapHits() {
+        return mapHits_;
+    }
+
+    /**
+     * Returns the number of record map lookups that required a search.
+     *
+     * @return  record map miss count
+     */
+    public synchronized long getRecordMapMisses() {
+        return mapMisses_;
+    }
+
+    /**
+     * Returns the number of file regions that have been memory mapped.
+     *
+     * @return  mapping count
+     */
+    public synchronized long getBankCount() {
+        return bankCount_;
+    }
+
+    /**
+     * Returns the total size of file regions that have been memory mapped.
+     *
+     * @return  mapped byte count
+     */
+    public synchronized long getBankBytes() {
+        return bankBytes_;
+    }
+
+    /**
+     * Resets all totals to zero.
+     */
+    public synchronized void reset() {
+        recordCounts_.clear();
+        decompressBytes_.clear();
+        decompressNanos_.clear();
+        variableBytes_.clear();
+        mapHits_ = 0;
+        mapMisses_ = 0;
+        bankCount_ = 0;
+        bankBytes_ = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return new StringBuffer()
+            .append( "records=" )
+            .append( getRecordCounts() )
+            .append( ", decompressed=" )
+            .append( getDecompressedBytes() )
+            .append( ", mapHits=" )
+            .append( mapHits_ )
+            .append( ", mapMisses=" )
+            .append( mapMisses_ )
+            .append( ", banks=" )
+            .append( bankCount_ )
+            .append( ", bankBytes=" )
+            .append( bankBytes_ )
+            .append( ", variableBytes=" )
+            .append( getVariableBytes() )
+            .toString();
+    }
+
+    /**
+     * Adds a value to the total for a given key in a map.
+     *
+     * @param  map  map of totals
+     * @param  key  key
+     * @param  inc  increment
+     */
+    private static void increment( Map<String,long[]> map, String key,
+                                   long inc ) {
+        long[] total = map.get( key );
+        if ( total == null ) {
+            total = new long[ 1 ];
+            map.put( key, total );
+        }
+        total[ 0 ] += inc;
+    }
+
+    /**
+     * Returns a copy of a map of totals.
+     *
+     * @param  map  map of totals
+     * @return  new map with Long values
+     */
+    private static Map<String,Long> snapshot( Map<String,long[]> map ) {
+        Map<String,Long> copy = new TreeMap<String,Long>();
+        for ( Map.Entry<String,long[]> entry : map.entrySet() ) {
+            copy.put( entry.getKey(), new Long( entry.getValue()[ 0 ] ) );
+        }
+        return copy;
+    }
+}
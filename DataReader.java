@@ -56,6 +56,26 @@ public class DataReader {
         dataType_.readValues( buf, offset, nelPerItem_, valueArray, nItem_ );
     }
 
+    /**
+     * Reads values for a run of consecutive records from a data buffer
+     * into a workspace array.
+     * The records must be stored contiguously in the buffer.
+     *
+     * @param  buf  data buffer
+     * @param  offset  byte offset into buf of first record start
+     * @param  nrec   number of records to read
+     * @param  valueArray  array with room for at least <code>nrec</code>
+     *                     times as many elements as an array created by
+     *                     <code>createValueArray</code>,
+     *                     into which results will be read
+     */
+    public void readValues( Buf buf, long offset, int nrec,
+                            Object valueArray )
+            throws IOException {
+        dataType_.readValues( buf, offset, nelPerItem_, valueArray,
+                              nItem_ * nrec );
+    }
+
     /**
      * Returns the size in bytes of one record as stored in the data buffer.
      *
@@ -511,6 +511,17 @@ public abstract class DataType {
      * Output is as numElem-character String.
      */
     private static class CharDataType extends DataType {
+        private static final int MAX_SCRATCH = 64 * 1024;
+
+        // Per-thread scratch buffer, so that reads do not need to
+        // allocate a new byte array each time.
+        private final ThreadLocal<byte[]> scratch_ =
+                new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[ 256 ];
+            }
+        };
         CharDataType( String name ) {
             super( name, 1, 1, String.class, String.class,
                    new String[] { null }, true );
@@ -518,8 +529,17 @@ public abstract class DataType {
         public void readValues( Buf buf, long offset, int nelPerItem,
                                 Object array, int n ) throws IOException {
             String[] sarray = (String[]) array;
-            byte[] cbuf = new byte[ nelPerItem * n ];
-            buf.readDataBytes( offset, nelPerItem * n, cbuf );
+            int nbyte = nelPerItem * n;
+            byte[] cbuf = scratch_.get();
+            if ( cbuf.length < nbyte ) {
+                cbuf = new byte[ nbyte ];
+
+                // Don't hang on to very large buffers indefinitely.
+                if ( nbyte <= MAX_SCRATCH ) {
+                    scratch_.set( cbuf );
+                }
+            }
+            buf.readDataBytes( offset, nbyte, cbuf );
             for ( int i = 0; i < n; i++ ) {
                 @SuppressWarnings("deprecation")
                 String s = new String( cbuf, i * nelPerItem, nelPerItem );
@@ -0,0 +1,405 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Time-bucketed decimation of a data variable for plotting.
+ *
+ * <p>A time interval is divided into a fixed number of equal-width
+ * buckets, and for each bucket the first, last, minimum and maximum
+ * data values (with their times) are recorded.
+ * This is the M4 aggregation, which is sufficient to draw a line plot
+ * at a horizontal resolution of one bucket per pixel that is
+ * indistinguishable from one drawn using all the data.
+ * The size of the result depends only on the bucket count,
+ * not on the number of records.
+ *
+ * <p>The time variable may be any scalar numeric variable
+ * (usually of type EPOCH or TIME_TT2000), or of type EPOCH16.
+ * Time values are used in the units of the variable's data type,
+ * that is milliseconds for EPOCH, nanoseconds for TIME_TT2000,
+ * and seconds for EPOCH16; the time range is given in the same units.
+ * The time variable is assumed to be non-decreasing, apart from
+ * fill values;
+ * this is used to locate the records in the time range without
+ * reading the whole variable.
+ * Records whose time is equal to the time variable's fill value
+ * (its <code>FILLVAL</code>, and for TIME_TT2000 also the special
+ * fill and pad values) are ignored.
+ *
+ * <p>The data variable must be scalar and numeric.
+ * Data values that are NaN, equal to the fill value, or outside the
+ * valid range are ignored.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class Decimation {
+
+    private final double tmin_;
+    private final double tmax_;
+    private final int nbucket_;
+    private final long[] counts_;
+    private final double[] firstTimes_;
+    private final double[] firstValues_;
+    private final double[] lastTimes_;
+    private final double[] lastValues_;
+    private final double[] minTimes_;
+    private final double[] minValues_;
+    private final double[] maxTimes_;
+    private final double[] maxValues_;
+
+    /** Maximum number of records read at once. */
+    private static final int READ_CHUNK = 16 * 1024;
+
+    /** Maximum number of records read at once when skipping fill times. */
+    private static final int SEARCH_CHUNK = 256;
+
+    /**
+     * Constructs an empty decimation.
+     *
+     * @param  tmin  start of time range (inclusive)
+     * @param  tmax  end of time range (exclusive)
+     * @param  nbucket  number of buckets
+     */
+    private Decimation( double tmin, double tmax, int nbucket ) {
+        tmin_ = tmin;
+        tmax_ = tmax;
+        nbucket_ = nbucket;
+        counts_ = new long[ nbucket ];
+        firstTimes_ = new double[ nbucket ];
+        firstValues_ = new double[ nbucket ];
+        lastTimes_ = new double[ nbucket ];
+        lastValues_ = new double[ nbucket ];
+        minTimes_ = new double[ nbucket ];
+        minValues_ = new double[ nbucket ];
+        maxTimes_ = new double[ nbucket ];
+        maxValues_ = new double[ nbucket ];
+    }
+
+    /**
+     * Returns the number of buckets.
+     *
+     * @return  bucket count
+     */
+    public int getBucketCount() {
+        return nbucket_;
+    }
+
+    /**
+     * Returns the start time of a given bucket.
+     *
+     * @param  ibucket  bucket index
+     * @return  bucket lower bound (inclusive)
+     */
+    public double getBucketStart( int ibucket ) {
+        return tmin_ + ( tmax_ - tmin_ ) * ibucket / nbucket_;
+    }
+
+    /**
+     * Returns the number of valid data values in a given bucket.
+     * If this is zero, the other per-bucket values are meaningless.
+     *
+     * @param  ibucket  bucket index
+     * @return  value count
+     */
+    public long getCount( int ibucket ) {
+        return counts_[ ibucket ];
+    }
+
+    /**
+     * Returns the time of the first value in a given bucket.
+     *
+     * @param  ibucket  bucket index
+     * @return  time
+     */
+    public double getFirstTime( int ibucket ) {
+        return firstTimes_[ ibucket ];
+    }
+
+    /**
+     * Returns the first value in a given bucket.
+     *
+     * @param  ibucket  bucket index
+     * @return  data value
+     */
+    public double getFirstValue( int ibucket ) {
+        return firstValues_[ ibucket ];
+    }
+
+    /**
+     * Returns the time of the last value in a given bucket.
+     *
+     * @param  ibucket  bucket index
+     * @return  time
+     */
+    public double getLastTime( int ibucket ) {
+        return lastTimes_[ ibucket ];
+    }
+
+    /**
+     * Returns the last value in a given bucket.
+     *
+     * @param  ibucket  bucket index
+     * @return  data value
+     */
+    public double getLastValue( int ibucket ) {
+        return lastValues_[ ibucket ];
+    }
+
+    /**
+     * Returns the time of the minimum value in a given bucket.
+     *
+     * @param  ibucket  bucket index
+     * @return  time
+     */
+    public double getMinTime( int ibucket ) {
+        return minTimes_[ ibucket ];
+    }
+
+    /**
+     * Returns the minimum value in a given bucket.
+     *
+     * @param  ibucket  bucket index
+     * @return  data value
+     */
+    public double getMinValue( int ibucket ) {
+        return minValues_[ ibucket ];
+    }
+
+    /**
+     * Returns the time of the maximum value in a given bucket.
+     *
+     * @param  ibucket  bucket index
+     * @return  time
+     */
+    public double getMaxTime( int ibucket ) {
+        return maxTimes_[ ibucket ];
+    }
+
+    /**
+     * Returns the maximum value in a given bucket.
+     *
+     * @param  ibucket  bucket index
+     * @return  data value
+     */
+    public double getMaxValue( int ibucket ) {
+        return maxValues_[ ibucket ];
+    }
+
+    /**
+     * Calculates a decimation.
+     *
+     * @param  timeVar  time variable
+     * @param  dataVar  scalar numeric data variable
+     * @param  vatts   variable attributes from the CDF containing
+     *                 the variables, used to determine their fill values
+     *                 and the data variable's valid range
+     * @param  tmin   start of time range (inclusive)
+     * @param  tmax   end of time range (exclusive)
+     * @param  nbucket  number of buckets
+     * @param  nthread  number of threads to use
+     * @return  decimation
+     * @throws  IllegalArgumentException  if the variables are not suitable
+     */
+    public static Decimation calculate( final Variable timeVar,
+                                        final Variable dataVar,
+                                        VariableAttribute[] vatts,
+                                        final double tmin, final double tmax,
+                                        final int nbucket, int nthread )
+            throws IOException {
+        if ( ! isScalarNumeric( timeVar ) &&
+             timeVar.getDataType() != DataType.EPOCH16 ) {
+            throw new IllegalArgumentException( "Not a time variable: "
+                                              + timeVar.getName() );
+        }
+        if ( ! isScalarNumeric( dataVar ) ) {
+            throw new IllegalArgumentException( "Not scalar numeric: "
+                                              + dataVar.getName() );
+        }
+        if ( nbucket <= 0 || ! ( tmax > tmin ) ) {
+            throw new IllegalArgumentException( "Bad bucket range" );
+        }
+        final VariableStats validity =
+            VariableStats.createAccumulator( dataVar, vatts );
+
+        // Locate the records in the time range.
+        int nrec = Math.min( timeVar.getRecordCount(),
+                             dataVar.getRecordCount() );
+        TimeReader trdr = new TimeReader( timeVar, vatts, SEARCH_CHUNK );
+        int irec0 = trdr.search( tmin, nrec );
+        int irec1 = trdr.search( tmax, nrec );
+
+        // Accumulate contiguous chunks of records, concurrently
+        // if required, and merge the results in record order.
+        int ntot = irec1 - irec0;
+        int nchunk = nthread <= 1 ? 1 : Math.min( ntot, nthread * 4 );
+        if ( nchunk <= 1 ) {
+            Decimation dec = new Decimation( tmin, tmax, nbucket );
+            dec.accumulate( timeVar, dataVar, vatts, validity, irec0, irec1 );
+            return dec;
+        }
+        List<Callable<Decimation>> tasks =
+            new ArrayList<Callable<Decimation>>();
+        for ( int ic = 0; ic < nchunk; ic++ ) {
+            final int ir0 = irec0 + (int) ( (long) ntot * ic / nchunk );
+            final int ir1 =
+                irec0 + (int) ( (long) ntot * ( ic + 1 ) / nchunk );
+            tasks.add( new Callable<Decimation>() {
+                public Decimation call() throws IOException {
+                    Decimation dec = new Decimation( tmin, tmax, nbucket );
+                    dec.accumulate( timeVar, dataVar, vatts, validity,
+                                    ir0, ir1 );
+                    return dec;
+                }
+            } );
+        }
+        ExecutorService executor = Executors.newFixedThreadPool( nthread );
+        try {
+            Decimation dec = new Decimation( tmin, tmax, nbucket );
+            List<Future<Decimation>> futures = executor.invokeAll( tasks );
+            for ( Future<Decimation> future : futures ) {
+                dec.merge( future.get() );
+            }
+            return dec;
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw (IOException)
+                  new IOException( "Interrupted" ).initCause( e );
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            else {
+                throw (IOException) new IOException( "Decimation failed" )
+                                   .initCause( cause );
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Accumulates data from a range of records into this decimation.
+     *
+     * @param  timeVar  time variable
+     * @param  dataVar  data variable
+     * @param  vatts   variable attributes, used to determine the
+     *                 time variable's fill value
+     * @param  validity  accumulator defining valid data values
+     * @param  irec0   first record (inclusive)
+     * @param  irec1   last record (exclusive)
+     */
+    private void accumulate( Variable timeVar, Variable dataVar,
+                             VariableAttribute[] vatts,
+                             VariableStats validity, int irec0, int irec1 )
+            throws IOException {
+        int nwork = Math.max( 1, Math.min( READ_CHUNK, irec1 - irec0 ) );
+        TimeReader trdr = new TimeReader( timeVar, vatts, nwork );
+        Object dwork = dataVar.createRawValueArray( nwork );
+        double[] times = new double[ nwork ];
+        double[] values = new double[ nwork ];
+        double scale = nbucket_ / ( tmax_ - tmin_ );
+        for ( int irec = irec0; irec < irec1; ) {
+
+            // Read a run of times and the corresponding data values;
+            // the runs may have different lengths if the two variables
+            // have different block boundaries, in which case use the
+            // shorter one.
+            int nt = trdr.readTimes( irec, Math.min( nwork, irec1 - irec ),
+                                     times );
+            int n = dataVar.readRawRecords( irec, nt, dwork );
+            TimeReader.toDoubles( dwork, n, values );
+            for ( int i = 0; i < n; i++ ) {
+                double t = times[ i ];
+                double v = values[ i ];
+
+                // Fill times are read as NaN, so fail the range test.
+                if ( t >= tmin_ && t < tmax_ && validity.isValid( v ) ) {
+                    int ib = Math.min( (int) ( ( t - tmin_ ) * scale ),
+                                       nbucket_ - 1 );
+                    if ( counts_[ ib ]++ == 0 ) {
+                        firstTimes_[ ib ] = t;
+                        firstValues_[ ib ] = v;
+                        minTimes_[ ib ] = t;
+                        minValues_[ ib ] = v;
+                        maxTimes_[ ib ] = t;
+                        maxValues_[ ib ] = v;
+                    }
+                    else if ( v < minValues_[ ib ] ) {
+                        minTimes_[ ib ] = t;
+                        minValues_[ ib ] = v;
+                    }
+                    else if ( v > maxValues_[ ib ] ) {
+                        maxTimes_[ ib ] = t;
+                        maxValues_[ ib ] = v;
+                    }
+                    lastTimes_[ ib ] = t;
+                    lastValues_[ ib ] = v;
+                }
+            }
+            irec += n;
+        }
+    }
+
+    /**
+     * Merges another decimation, calculated from records following
+     * those used for this one, into this one.
+     *
+     * @param  other  decimation for later records
+     */
+    private void merge( Decimation other ) {
+        for ( int ib = 0; ib < nbucket_; ib++ ) {
+            long c0 = counts_[ ib ];
+            long c1 = other.counts_[ ib ];
+            if ( c1 > 0 ) {
+                if ( c0 == 0 ) {
+                    firstTimes_[ ib ] = other.firstTimes_[ ib ];
+                    firstValues_[ ib ] = other.firstValues_[ ib ];
+                    minTimes_[ ib ] = other.minTimes_[ ib ];
+                    minValues_[ ib ] = other.minValues_[ ib ];
+                    maxTimes_[ ib ] = other.maxTimes_[ ib ];
+                    maxValues_[ ib ] = other.maxValues_[ ib ];
+                }
+                else {
+                    if ( other.minValues_[ ib ] < minValues_[ ib ] ) {
+                        minTimes_[ ib ] = other.minTimes_[ ib ];
+                        minValues_[ ib ] = other.minValues_[ ib ];
+                    }
+                    if ( other.maxValues_[ ib ] > maxValues_[ ib ] ) {
+                        maxTimes_[ ib ] = other.maxTimes_[ ib ];
+                        maxValues_[ ib ] = other.maxValues_[ ib ];
+                    }
+                }
+                lastTimes_[ ib ] = other.lastTimes_[ ib ];
+                lastValues_[ ib ] = other.lastValues_[ ib ];
+                counts_[ ib ] = c0 + c1;
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a variable has scalar numeric values.
+     *
+     * @param  var  variable
+     * @return  true iff var is numeric and has one item per record
+     */
+    private static boolean isScalarNumeric( Variable var ) {
+        return VariableStats.isNumeric( var )
+            && var.getShaper().getRawItemCount() == 1;
+    }
+}
@@ -24,7 +24,7 @@ public class EpochFormatter {
     private final DateFormat epochSecFormat_ =
         createDateFormat( "yyyy-MM-dd'T'HH:mm:ss" );
     private final int iMaxValidTtScaler_;
-    private int iLastTtScaler_ = -1;
+    private final Tt2kConverter ttConverter_ = new Tt2kConverter();
 
     private static final TimeZone UTC = TimeZone.getTimeZone( "UTC" );
     private static final long HALF_DAY = 1000 * 60 * 60 * 12;
@@ -88,7 +88,8 @@ public class EpochFormatter {
         if ( lastDataLeapUnixMillis > 0 ) {
             long lastDataLeapTt2kMillis =
                 lastDataLeapUnixMillis - (long) TtScaler.J2000_UNIXMILLIS;
-            iMaxValidTtScaler_ = getScalerIndex( lastDataLeapTt2kMillis );
+            iMaxValidTtScaler_ =
+                ttConverter_.getScalerIndex( lastDataLeapTt2kMillis );
         }
         else {
             iMaxValidTtScaler_ = TT_SCALERS.length - 1;
@@ -152,15 +153,11 @@ public class EpochFormatter {
 
         // Split the raw long value into a millisecond base and
         // nanosecond adjustment.
-        long tt2kMillis = timeTt2k / 1000000;
-        int plusNanos = (int) ( timeTt2k % 1000000 );
-        if ( plusNanos < 0 ) {
-            tt2kMillis--;
-            plusNanos += 1000000;
-        }
+        long tt2kMillis = Tt2kConverter.getTt2kMillis( timeTt2k );
+        int plusNanos = Tt2kConverter.getPlusNanos( timeTt2k );
 
         // Get the appropriate TT scaler object for this epoch.
-        int scalerIndex = getScalerIndex( tt2kMillis );
+        int scalerIndex = ttConverter_.getScalerIndex( tt2kMillis );
         if ( scalerIndex > iMaxValidTtScaler_ ) {
             String msg = new StringBuffer()
                .append( "CDF TIME_TT2000 date formatting failed" )
@@ -207,23 +204,6 @@ public class EpochFormatter {
         return txt + prePadWithZeros( plusNanos, 6 );
     }
 
-    /**
-     * Returns the index into the TT_SCALERS array of the TtScaler
-     * instance that is valid for a given time.
-     *
-     * @param  tt2kMillis  TT time since J2000 in milliseconds
-     * @return  index into TT_SCALERS
-     */
-    private int getScalerIndex( long tt2kMillis ) {
-
-        // Use the most recently used value as the best guess.
-        // There's a good chance it's the right one.
-        int index = TtScaler
-                   .getScalerIndex( tt2kMillis, TT_SCALERS, iLastTtScaler_ );
-        iLastTtScaler_ = index;
-        return index;
-    }
-
     /**
      * Constructs a DateFormat object for a given pattern for UTC.
      *
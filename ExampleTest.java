@@ -1,17 +1,64 @@
 package uk.ac.bristol.star.cdf.test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import uk.ac.bristol.star.cdf.AttributeEntry;
+import uk.ac.bristol.star.cdf.CatalogVariable;
+import uk.ac.bristol.star.cdf.CdfCatalog;
 import uk.ac.bristol.star.cdf.CdfContent;
+import uk.ac.bristol.star.cdf.CdfFormatException;
+import uk.ac.bristol.star.cdf.CdfIndex;
 import uk.ac.bristol.star.cdf.CdfReader;
+import uk.ac.bristol.star.cdf.CdfTail;
+import uk.ac.bristol.star.cdf.DataType;
+import uk.ac.bristol.star.cdf.Decimation;
 import uk.ac.bristol.star.cdf.GlobalAttribute;
+import uk.ac.bristol.star.cdf.Hyperslab;
+import uk.ac.bristol.star.cdf.RecordFilter;
+import uk.ac.bristol.star.cdf.RecordPublisher;
+import uk.ac.bristol.star.cdf.RecordSplit;
+import uk.ac.bristol.star.cdf.RowBatchReader;
+import uk.ac.bristol.star.cdf.Shaper;
+import uk.ac.bristol.star.cdf.StringDecoder;
+import uk.ac.bristol.star.cdf.TimeAlignment;
+import uk.ac.bristol.star.cdf.Tt2kConverter;
 import uk.ac.bristol.star.cdf.Variable;
 import uk.ac.bristol.star.cdf.VariableAttribute;
+import uk.ac.bristol.star.cdf.VariableStats;
+import uk.ac.bristol.star.cdf.ZoneMap;
 import uk.ac.bristol.star.cdf.EpochFormatter;
+import uk.ac.bristol.star.cdf.record.BankBuf;
+import uk.ac.bristol.star.cdf.record.BlockCache;
+import uk.ac.bristol.star.cdf.record.Buf;
+import uk.ac.bristol.star.cdf.record.BufOptions;
+import uk.ac.bristol.star.cdf.record.CdfWriter;
+import uk.ac.bristol.star.cdf.record.CountingMetrics;
+import uk.ac.bristol.star.cdf.record.GlobalDescriptorRecord;
+import uk.ac.bristol.star.cdf.record.Metrics;
+import uk.ac.bristol.star.cdf.util.CdfArrow;
+import uk.ac.bristol.star.cdf.util.CdfCsv;
+import uk.ac.bristol.star.cdf.util.CdfList;
 
 /**
  * Tests the contents of three of the example files
@@ -237,6 +284,17 @@ public class ExampleTest {
         assert "Name".equals( nameVar.getName() );
         assert Arrays.equals( new String[] { "123456789 ", "13579     " },
                               (String[]) readShapedRecord( nameVar, 0, true ) );
+        StringDecoder decoder = new StringDecoder( 16 );
+        byte[] nameBytes = nameVar.createRawByteArray();
+        String[] names = new String[ 2 ];
+        for ( int i = 0; i < 3; i++ ) {
+            nameVar.readRawBytes( 0, nameBytes );
+            decoder.decodeItems( nameBytes, 10, names, 2 );
+            assert Arrays.equals( new String[] { "123456789 ", "13579     " },
+                                  names );
+        }
+        assert decoder.getMissCount() == 2;
+        assert decoder.getHitCount() == 4;
 
         Variable tempVar = vars[ 9 ];
         assert "Temp".equals( tempVar.getName() );
@@ -268,12 +326,2624 @@ public class ExampleTest {
         assert "2015-07-01T00:00:00.123456789"
               .equals( epf.formatTimeTt2000( (Long)
                                              readShapedRecord( ttVar, 3 ) ) );
+
+        for ( Variable var : vars ) {
+            checkBulkRead( var );
+        }
+    }
+
+    public void testTail( File testFile ) throws IOException {
+        File tmpFile = File.createTempFile( "tail", ".cdf" );
+        tmpFile.deleteOnExit();
+        copyFile( testFile, tmpFile );
+        CdfTail tail = new CdfTail( tmpFile );
+        CdfContent content0 = tail.getContent();
+        Variable[] vars0 = content0.getVariables();
+        for ( int iv = 0; iv < vars0.length; iv++ ) {
+            Variable var = vars0[ iv ];
+            assert tail.getPreviousRecordCount( var ) == 0;
+            if ( var.getRecordCount() > 0 ) {
+                var.readShapedRecord( 0, true, var.createRawValueArray() );
+            }
+        }
+        assert ! tail.refresh();
+
+        // Extending the file without updating the GDR is not a change.
+        RandomAccessFile raf = new RandomAccessFile( tmpFile, "rw" );
+        long leng0 = raf.length();
+        raf.setLength( leng0 + 64 );
+        assert ! tail.refresh();
+        assert tail.getContent() == content0;
+
+        // Updating the GDR end-of-file marker is.
+        CdfReader rdr = new CdfReader( tmpFile );
+        long gdrOff = rdr.getCdr().gdrOffset;
+        GlobalDescriptorRecord gdr =
+            rdr.getRecordFactory()
+               .createRecord( rdr.getBuf(), gdrOff,
+                              GlobalDescriptorRecord.class );
+        long eofOff = gdrOff + 8 + 4 + 3 * 8;
+        raf.seek( eofOff );
+        assert raf.readLong() == gdr.eof;
+        raf.seek( eofOff );
+        raf.writeLong( leng0 + 64 );
+        raf.close();
+        assert tail.refresh();
+        CdfContent content1 = tail.getContent();
+        assert content1 != content0;
+        Variable[] vars1 = content1.getVariables();
+        assert vars1.length == vars0.length;
+        for ( int iv = 0; iv < vars1.length; iv++ ) {
+            Variable var0 = vars0[ iv ];
+            Variable var1 = vars1[ iv ];
+            int nrec = var1.getRecordCount();
+            assert nrec == var0.getRecordCount();
+            assert tail.getPreviousRecordCount( var1 ) == nrec;
+            for ( int irec = 0; irec < nrec; irec++ ) {
+                Object v0 =
+                    var0.readShapedRecord( irec, true,
+                                           var0.createRawValueArray() );
+                Object v1 =
+                    var1.readShapedRecord( irec, true,
+                                           var1.createRawValueArray() );
+                assert Arrays.deepEquals( new Object[] { v0 },
+                                          new Object[] { v1 } );
+            }
+        }
+        assert ! tail.refresh();
+        tail.close();
+        checkTailWriter();
+    }
+
+    /**
+     * Follows a file as CdfWriter appends records to it.
+     * One variable gets a new VVR, and hence new VXR entries, for each
+     * record, and the other has partly filled blocks that are extended
+     * in place, so its final entry changes between refreshes.
+     */
+    private void checkTailWriter() throws IOException {
+        File tmpFile = File.createTempFile( "tail", ".cdf" );
+        tmpFile.deleteOnExit();
+        CdfWriter writer = new CdfWriter( tmpFile, true, 2, 100 );
+        CdfWriter.VariableWriter nw =
+            writer.addVariable( "n", DataType.INT4, 1, new int[ 0 ],
+                                new boolean[ 0 ], true, 1 );
+        CdfWriter.VariableWriter xw =
+            writer.addVariable( "x", DataType.DOUBLE, 1, new int[] { 2 },
+                                new boolean[] { true }, true, 5 );
+        writer.addAttribute( "TITLE", true )
+              .setGlobalEntry( 0, DataType.CHAR, new String[] { "tail" } );
+        appendTailRecords( nw, xw, 3, 3 );
+        writer.flush();
+        CdfTail tail = new CdfTail( tmpFile );
+        checkTailRecords( tail, 0, 0, 3, 3 );
+
+        // New n entries, including a new VXR; x extends its open block.
+        appendTailRecords( nw, xw, 2, 1 );
+        writer.flush();
+        assert tail.refresh();
+        checkTailRecords( tail, 3, 3, 5, 4 );
+
+        // Only x changes, filling its block in place.
+        appendTailRecords( nw, xw, 0, 1 );
+        writer.flush();
+        assert tail.refresh();
+        checkTailRecords( tail, 5, 4, 5, 5 );
+
+        // Nothing changes.
+        writer.flush();
+        assert ! tail.refresh();
+
+        // A complete x block and an open one.
+        appendTailRecords( nw, xw, 4, 7 );
+        writer.flush();
+        assert tail.refresh();
+        checkTailRecords( tail, 5, 5, 9, 12 );
+        writer.close();
+        assert ! tail.refresh();
+        tail.close();
+        CdfContent content = new CdfContent( new CdfReader( tmpFile ) );
+        assert content.getVariables()[ 0 ].getRecordCount() == 9;
+        assert content.getVariables()[ 1 ].getRecordCount() == 12;
+        assert "tail".equals( content.getGlobalAttributes()[ 0 ]
+                                     .getEntries()[ 0 ].getShapedValue() );
+    }
+
+    /**
+     * Appends records with predictable values to the variables
+     * used by checkTailWriter.
+     */
+    private void appendTailRecords( CdfWriter.VariableWriter nw,
+                                    CdfWriter.VariableWriter xw,
+                                    int nn, int nx ) throws IOException {
+        int n0 = nw.getRecordCount();
+        int[] ns = new int[ nn ];
+        for ( int i = 0; i < nn; i++ ) {
+            ns[ i ] = ( n0 + i ) * 3;
+        }
+        nw.appendRecords( ns, nn );
+        int x0 = xw.getRecordCount();
+        double[] xs = new double[ nx * 2 ];
+        for ( int i = 0; i < nx; i++ ) {
+            xs[ i * 2 + 0 ] = x0 + i;
+            xs[ i * 2 + 1 ] = -0.5 * ( x0 + i );
+        }
+        xw.appendRecords( xs, nx );
+    }
+
+    /**
+     * Checks the current state of a tail following a file written by
+     * checkTailWriter.
+     */
+    private void checkTailRecords( CdfTail tail, int prevN, int prevX,
+                                   int nN, int nX ) throws IOException {
+        Variable[] vars = tail.getContent().getVariables();
+        Variable nvar = vars[ 0 ];
+        Variable xvar = vars[ 1 ];
+        assert nvar.getRecordCount() == nN;
+        assert xvar.getRecordCount() == nX;
+        assert tail.getPreviousRecordCount( nvar ) == prevN;
+        assert tail.getPreviousRecordCount( xvar ) == prevX;
+        for ( int irec = 0; irec < nN; irec++ ) {
+            Object val = nvar.readShapedRecord( irec, true,
+                                                nvar.createRawValueArray() );
+            assert ((Integer) val).intValue() == irec * 3;
+        }
+        for ( int irec = 0; irec < nX; irec++ ) {
+            Object val = xvar.readShapedRecord( irec, true,
+                                                xvar.createRawValueArray() );
+            assert Arrays.equals( (double[]) val,
+                                  new double[] { irec, -0.5 * irec } );
+        }
+    }
+
+    public void testIndex( File cdfFile ) throws IOException {
+        File indexFile = File.createTempFile( "test", CdfIndex.INDEX_SUFFIX );
+        indexFile.deleteOnExit();
+        assert ! CdfIndex.isValid( cdfFile, indexFile );
+        CdfIndex.writeIndex( cdfFile, indexFile );
+        assert CdfIndex.isValid( cdfFile, indexFile );
+        assert indexFile.length() < cdfFile.length();
+        CdfContent content0 = new CdfContent( new CdfReader( cdfFile ) );
+        CdfContent content1 =
+            new CdfContent( CdfIndex.createReader( cdfFile, indexFile ) );
+        GlobalAttribute[] gatts0 = content0.getGlobalAttributes();
+        GlobalAttribute[] gatts1 = content1.getGlobalAttributes();
+        assert gatts1.length == gatts0.length;
+        for ( int ia = 0; ia < gatts0.length; ia++ ) {
+            assert gatts1[ ia ].getName().equals( gatts0[ ia ].getName() );
+            assert Arrays.deepEquals(
+                       getEntryShapedValues( gatts0[ ia ].getEntries() ),
+                       getEntryShapedValues( gatts1[ ia ].getEntries() ) );
+        }
+        Variable[] vars0 = content0.getVariables();
+        Variable[] vars1 = content1.getVariables();
+        assert vars1.length == vars0.length;
+        for ( int iv = 0; iv < vars0.length; iv++ ) {
+            Variable var0 = vars0[ iv ];
+            Variable var1 = vars1[ iv ];
+            assert var1.getSummary().equals( var0.getSummary() );
+            int nrec = var0.getRecordCount();
+            assert var1.getRecordCount() == nrec;
+            for ( int irec = 0; irec < nrec; irec++ ) {
+                Object v0 =
+                    var0.readShapedRecord( irec, true,
+                                           var0.createRawValueArray() );
+                Object v1 =
+                    var1.readShapedRecord( irec, true,
+                                           var1.createRawValueArray() );
+                assert Arrays.deepEquals( new Object[] { v0 },
+                                          new Object[] { v1 } );
+            }
+        }
+        indexFile.delete();
+        checkCorruptIndex( cdfFile, content0 );
+    }
+
+    /**
+     * Checks that a corrupt or truncated default index is not used,
+     * and that the CDF file is read normally instead.
+     */
+    private void checkCorruptIndex( File cdfFile, CdfContent content0 )
+            throws IOException {
+        File copyFile = File.createTempFile( "test", ".cdf" );
+        copyFile.deleteOnExit();
+        copyFile( cdfFile, copyFile );
+        File indexFile = CdfIndex.getDefaultIndexFile( copyFile );
+        indexFile.deleteOnExit();
+        CdfIndex.writeIndex( copyFile, indexFile );
+        int nrangePos = 8 + 4 + 8 + 8;
+        RandomAccessFile raf = new RandomAccessFile( indexFile, "rw" );
+        try {
+            raf.seek( nrangePos );
+            int nrange = raf.readInt();
+            raf.seek( nrangePos + 4 + 8 );
+            int count0 = raf.readInt();
+            int[][] corruptions = {
+                { nrangePos, -1 },
+                { nrangePos, Integer.MAX_VALUE },
+                { nrangePos, nrange + 1 },
+                { nrangePos + 4 + 8, -1 },
+                { nrangePos + 4 + 8, Integer.MAX_VALUE },
+            };
+            for ( int[] corruption : corruptions ) {
+                raf.seek( corruption[ 0 ] );
+                raf.writeInt( corruption[ 1 ] );
+                checkCorruptIndex( copyFile, indexFile, content0 );
+                raf.seek( nrangePos );
+                raf.writeInt( nrange );
+                raf.seek( nrangePos + 4 + 8 );
+                raf.writeInt( count0 );
+            }
+            assert CdfIndex.createReader( copyFile, indexFile ) != null;
+            raf.setLength( raf.length() - 1 );
+            checkCorruptIndex( copyFile, indexFile, content0 );
+        }
+        finally {
+            raf.close();
+        }
+        indexFile.delete();
+        copyFile.delete();
+    }
+
+    /**
+     * Checks that a given index file is rejected for a CDF file,
+     * but that the CDF can still be read.
+     */
+    private void checkCorruptIndex( File cdfFile, File indexFile,
+                                    CdfContent content0 )
+            throws IOException {
+        try {
+            CdfIndex.createReader( cdfFile, indexFile );
+            assert false;
+        }
+        catch ( IOException e ) {
+        }
+        checkSameData( content0, CdfIndex.readContent( cdfFile ) );
+    }
+
+    public void testCatalog( File testFile ) throws IOException {
+        int nf = 3;
+        File[] files = new File[ nf ];
+        Arrays.fill( files, testFile );
+        CdfCatalog catalog = new CdfCatalog( files, 1, Long.MAX_VALUE );
+        assert catalog.getOpenFileCount() == 0;
+        CdfContent content = new CdfContent( new CdfReader( testFile ) );
+        Variable[] vars = content.getVariables();
+        assert catalog.getVariableNames().length == vars.length;
+        for ( int iv = 0; iv < vars.length; iv++ ) {
+            Variable var = vars[ iv ];
+            CatalogVariable cvar = catalog.getVariable( var.getName() );
+            int nrec = var.getRecordCount();
+            assert cvar.getRecordCount() == nf * (long) nrec;
+            assert cvar.getDataType().getName()
+                  .equals( var.getDataType().getName() );
+            Object work = var.createRawValueArray();
+            Object cwork = cvar.createRawValueArray();
+            assert Array.getLength( cwork ) == Array.getLength( work );
+            for ( long irec = 0; irec < cvar.getRecordCount(); irec++ ) {
+                assert cvar.getFileIndex( irec ) == irec / nrec;
+                Object v = var.readShapedRecord( (int) ( irec % nrec ), true,
+                                                 work );
+                Object cv = cvar.readShapedRecord( irec, true, cwork );
+                assert Arrays.deepEquals( new Object[] { v },
+                                          new Object[] { cv } );
+            }
+        }
+        assert catalog.getVariable( "not-a-variable" ) == null;
+        assert catalog.getOpenFileCount() == 1;
+        catalog.close();
+        assert catalog.getOpenFileCount() == 0;
+        checkCatalogClose( testFile );
+        checkCatalogMajority();
+    }
+
+    /**
+     * Checks that files discarded from a catalog's cache, and files
+     * still open when the catalog is closed, have their bufs closed.
+     */
+    private void checkCatalogClose( File testFile ) throws IOException {
+        BlockCache bcache = new BlockCache( 1024, Long.MAX_VALUE );
+        BufOptions options = new BufOptions();
+        options.setStrategy( BufOptions.Strategy.READ );
+        options.setBlockCache( bcache );
+        CdfCatalog catalog =
+            new CdfCatalog( new File[] { testFile, testFile }, 1,
+                            Long.MAX_VALUE, options );
+        Variable var0 = getRecordVariable( catalog.getContent( 0 ) );
+        Object work = var0.createRawValueArray();
+        var0.readRawRecord( 0, work );
+        Variable var1 = getRecordVariable( catalog.getContent( 1 ) );
+        var1.readRawRecord( 0, work );
+        assert catalog.getOpenFileCount() == 1;
+        try {
+            var0.readRawRecord( 0, work );
+            assert false;
+        }
+        catch ( IOException e ) {
+        }
+        catalog.close();
+        assert catalog.getOpenFileCount() == 0;
+        assert bcache.getCachedBytes() == 0;
+        try {
+            var1.readRawRecord( 0, work );
+            assert false;
+        }
+        catch ( IOException e ) {
+        }
+
+        // Files are reopened as required after closing.
+        CatalogVariable cvar = catalog.getVariable( var0.getName() );
+        cvar.readRawRecord( 0, cvar.createRawValueArray() );
+        assert catalog.getOpenFileCount() == 1;
+        catalog.close();
+    }
+
+    /**
+     * Returns the first variable in a CDF with record data in the file.
+     *
+     * @param  content  CDF content
+     * @return  variable with at least one non-virtual record
+     */
+    private static Variable getRecordVariable( CdfContent content )
+            throws IOException {
+        for ( Variable var : content.getVariables() ) {
+            if ( var.getRecordCount() > 0 && var.hasRecord( 0 ) ) {
+                return var;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * Checks a catalog of files with different majorities.
+     * Variables whose raw values do not depend on majority can be
+     * concatenated, but a 2-d one cannot.
+     */
+    private void checkCatalogMajority() throws IOException {
+        File rowFile = writeMajorityFile( true );
+        File colFile = writeMajorityFile( false );
+        CdfCatalog sameCat =
+            new CdfCatalog( new File[] { colFile, colFile }, 1,
+                            Long.MAX_VALUE );
+        CatalogVariable sameVar = sameCat.getVariable( "m" );
+        assert sameVar.getRecordCount() == 4;
+        for ( long irec = 0; irec < 4; irec++ ) {
+            checkMajorityRecord( sameVar, irec );
+        }
+        CdfCatalog mixCat =
+            new CdfCatalog( new File[] { rowFile, colFile }, 1,
+                            Long.MAX_VALUE );
+        for ( String name : new String[] { "s", "v" } ) {
+            CatalogVariable cvar = mixCat.getVariable( name );
+            assert cvar.getRecordCount() == 4;
+            Object work = cvar.createRawValueArray();
+            for ( long irec = 0; irec < 4; irec++ ) {
+                cvar.readRawRecord( irec, work );
+                int base = (int) ( irec % 2 ) * 10;
+                assert Array.getLength( work ) == ( "s".equals( name ) ? 1
+                                                                       : 3 );
+                for ( int i = 0; i < Array.getLength( work ); i++ ) {
+                    assert ((double[]) work)[ i ] == base + i;
+                }
+            }
+        }
+        try {
+            mixCat.getVariable( "m" );
+            assert false;
+        }
+        catch ( CdfFormatException e ) {
+            assert e.getMessage().indexOf( "inconsistent" ) >= 0;
+        }
+    }
+
+    /**
+     * Checks a record of the 2-d variable written by writeMajorityFile.
+     */
+    private void checkMajorityRecord( CatalogVariable cvar, long irec )
+            throws IOException {
+        Object work = cvar.createRawValueArray();
+        int[] vals = (int[]) cvar.readShapedRecord( irec, true, work );
+        int base = (int) ( irec % 2 ) * 10;
+        for ( int i = 0; i < 2; i++ ) {
+            for ( int j = 0; j < 3; j++ ) {
+                assert vals[ i * 3 + j ] == base + i * 3 + j;
+            }
+        }
+    }
+
+    /**
+     * Writes a two-record file with a scalar, a 1-d and a 2-d variable.
+     * The values of record <code>r</code> are <code>10*r</code>
+     * plus the row-major item index.
+     *
+     * @param  rowMajor  majority of the file
+     * @return  new temporary file
+     */
+    private File writeMajorityFile( boolean rowMajor ) throws IOException {
+        File file = File.createTempFile( "jcdf", ".cdf" );
+        file.deleteOnExit();
+        CdfWriter writer =
+            new CdfWriter( file, rowMajor, CdfWriter.DEFAULT_VXR_ENTRIES,
+                           CdfWriter.DEFAULT_BUFFER_SIZE );
+        CdfWriter.VariableWriter sw =
+            writer.addVariable( "s", DataType.DOUBLE, 1, new int[ 0 ],
+                                new boolean[ 0 ], true, 1 );
+        CdfWriter.VariableWriter vw =
+            writer.addVariable( "v", DataType.DOUBLE, 1, new int[] { 3 },
+                                new boolean[] { true }, true, 1 );
+        CdfWriter.VariableWriter mw =
+            writer.addVariable( "m", DataType.INT4, 1, new int[] { 2, 3 },
+                                new boolean[] { true, true }, true, 1 );
+        for ( int irec = 0; irec < 2; irec++ ) {
+            int base = irec * 10;
+            sw.appendRecords( new double[] { base }, 1 );
+            vw.appendRecords( new double[] { base, base + 1, base + 2 }, 1 );
+            int[] m = new int[ 6 ];
+            for ( int i = 0; i < 2; i++ ) {
+                for ( int j = 0; j < 3; j++ ) {
+                    m[ rowMajor ? i * 3 + j : j * 2 + i ] = base + i * 3 + j;
+                }
+            }
+            mw.appendRecords( m, 1 );
+        }
+        writer.close();
+        return file;
+    }
+
+    public void testPrefetch( File cdfFile ) throws IOException {
+        CdfContent content0 = new CdfContent( new CdfReader( cdfFile ) );
+        CdfContent content1 =
+            new CdfContent( new CdfReader( cdfFile, true ) );
+        checkSameData( content0, content1 );
+    }
+
+    public void testBufOptions( File cdfFile ) throws IOException {
+        CdfContent content0 = new CdfContent( new CdfReader( cdfFile ) );
+        for ( BufOptions.Strategy strategy : BufOptions.Strategy.values() ) {
+            for ( boolean isSeq : new boolean[] { false, true } ) {
+                BufOptions options = new BufOptions();
+                options.setStrategy( strategy );
+                options.setSequential( isSeq );
+                options.setBankSize( 1000 );
+                options.setBankOverlap( 100 );
+                options.setMaxEagerSize( 0 );
+                assert options.getEffectiveStrategy( cdfFile.length() )
+                       != BufOptions.Strategy.AUTO;
+                checkSameData( content0,
+                               new CdfContent( new CdfReader( cdfFile,
+                                                              options ) ) );
+            }
+        }
+
+        // Bank overlap must be less than the bank size.
+        BufOptions options = new BufOptions();
+        options.setBankSize( 1000 );
+        for ( int overlap : new int[] { -1, 1000 } ) {
+            try {
+                options.setBankOverlap( overlap );
+                assert false;
+            }
+            catch ( IllegalArgumentException e ) {
+            }
+        }
+        assert options.getBankOverlap() == BufOptions.DEFAULT_BANK_OVERLAP;
+
+        // Bufs which keep the file open can be closed.
+        options.setBankOverlap( 10 );
+        options.setStrategy( BufOptions.Strategy.MAP_LAZY );
+        Buf buf = options.createBuf( cdfFile, true, true );
+        assert buf instanceof BankBuf;
+        byte[] head = new byte[ 8 ];
+        buf.readDataBytes( 0, 8, head );
+        ((BankBuf) buf).close();
+        try {
+            buf.readDataBytes( buf.getLength() - 8, 8, head );
+            assert buf.getLength() <= 1010;
+        }
+        catch ( IOException e ) {
+        }
+    }
+
+    public void testMetrics( File cdfFile ) throws IOException {
+        CountingMetrics metrics = new CountingMetrics();
+        Metrics.setInstance( metrics );
+        try {
+            CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+            assert metrics.getRecordCounts().get( "CDR" ).longValue() == 1;
+            assert metrics.getRecordCounts().get( "GDR" ).longValue() == 1;
+            assert metrics.getBankCount() == 1;
+            assert metrics.getBankBytes() == cdfFile.length();
+            for ( Variable var : content.getVariables() ) {
+                Object work = var.createRawValueArray();
+                int nrec = var.getRecordCount();
+                for ( int irec = 0; irec < nrec; irec++ ) {
+                    var.readRawRecord( irec, work );
+                }
+            }
+            long total = 0;
+            for ( Long nb : metrics.getVariableBytes().values() ) {
+                total += nb.longValue();
+            }
+            assert total > 0;
+            assert metrics.getRecordMapHits() > 0;
+        }
+        finally {
+            Metrics.setInstance( null );
+        }
+    }
+
+    public void testStats( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        VariableAttribute[] vatts = content.getVariableAttributes();
+        int nvar = 0;
+        for ( Variable var : content.getVariables() ) {
+            if ( VariableStats.isNumeric( var ) ) {
+                nvar++;
+                VariableStats stats1 = VariableStats.calculate( var, vatts, 1 );
+                VariableStats stats3 = VariableStats.calculate( var, vatts, 3 );
+                VariableStats raw =
+                    VariableStats.calculate( var, Double.NaN,
+                                             Double.NEGATIVE_INFINITY,
+                                             Double.POSITIVE_INFINITY, 2 );
+
+                // Brute force calculation using unfiltered accumulator.
+                VariableStats brute =
+                    new VariableStats( Double.NaN, Double.NEGATIVE_INFINITY,
+                                       Double.POSITIVE_INFINITY );
+                Object work = var.createRawValueArray();
+                int nel = Array.getLength( work );
+                for ( int irec = 0; irec < var.getRecordCount(); irec++ ) {
+                    if ( var.hasRecord( irec ) ||
+                         ( irec == 0 && ! var.getRecordVariance() ) ) {
+                        var.readRawRecord( irec, work );
+                        for ( int i = 0; i < nel; i++ ) {
+                            brute.add( ( (Number) Array.get( work, i ) )
+                                      .doubleValue() );
+                        }
+                    }
+                }
+                checkSameStats( raw, brute );
+                checkSameStats( stats1, stats3 );
+                assert stats1.getCount() + stats1.getFillCount()
+                     + stats1.getInvalidCount()
+                    == brute.getCount();
+                assert stats1.getNanCount() == brute.getNanCount();
+            }
+        }
+        assert nvar > 0;
+        checkStatsNoVary();
+    }
+
+    /**
+     * Checks that the single stored value of a non-record-varying
+     * variable is counted, whatever its nominal record count.
+     */
+    private void checkStatsNoVary() throws IOException {
+        File file = File.createTempFile( "jcdf", ".cdf" );
+        file.deleteOnExit();
+        CdfWriter writer = new CdfWriter( file );
+        CdfWriter.VariableWriter nrw =
+            writer.addVariable( "nrv", DataType.DOUBLE, 1, new int[] { 3 },
+                                new boolean[] { true }, false, 1 );
+        nrw.appendRecords( new double[] { 2.5, -1, -1e31 }, 1 );
+        writer.addAttribute( "FILLVAL", false )
+              .setVariableEntry( nrw, DataType.DOUBLE,
+                                 new double[] { -1e31 } );
+        writer.close();
+        CdfContent content = new CdfContent( new CdfReader( file ) );
+        Variable var = content.getVariables()[ 0 ];
+        assert ! var.getRecordVariance();
+        assert ! var.hasRecord( 0 );
+        VariableAttribute[] vatts = content.getVariableAttributes();
+        for ( int nthread = 1; nthread <= 3; nthread++ ) {
+            VariableStats stats = VariableStats.calculate( var, vatts,
+                                                           nthread );
+            assert stats.getCount() == 2;
+            assert stats.getFillCount() == 1;
+            assert stats.getMin() == -1;
+            assert stats.getMax() == 2.5;
+            assert stats.getMean() == 0.75;
+        }
+        ZoneMap zmap = ZoneMap.createZoneMap( var, vatts );
+        assert zmap.getZoneCount() == 1;
+        assert zmap.getMin( 0 ) == -1;
+        assert zmap.getMax( 0 ) == 2.5;
+    }
+
+    public void testZoneMap( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        VariableAttribute[] vatts = content.getVariableAttributes();
+        List<ZoneMap> zmapList = new ArrayList<ZoneMap>();
+        for ( Variable var : content.getVariables() ) {
+            if ( VariableStats.isNumeric( var ) ) {
+                ZoneMap zmap = ZoneMap.createZoneMap( var, vatts );
+                assert zmap.matches( var );
+                zmapList.add( zmap );
+                VariableStats stats = VariableStats.calculate( var, vatts, 1 );
+                if ( stats.getCount() > 0 ) {
+                    double lo = stats.getMin();
+                    double hi = stats.getMax();
+                    double mid = lo + 0.5 * ( hi - lo );
+                    checkZoneMap( zmap, var, vatts, lo, hi );
+                    checkZoneMap( zmap, var, vatts, mid, mid );
+                    checkZoneMap( zmap, var, vatts, lo, lo );
+                    assert zmap.getCandidateRanges( hi + Math.abs( hi ) + 1,
+                                                    Double.POSITIVE_INFINITY )
+                               .length == 0;
+                }
+            }
+        }
+        ZoneMap[] zmaps = zmapList.toArray( new ZoneMap[ 0 ] );
+        File zfile = File.createTempFile( "jcdf", ZoneMap.ZONEMAP_SUFFIX );
+        zfile.deleteOnExit();
+        try {
+            ZoneMap.writeZoneMaps( cdfFile, zmaps, zfile );
+            ZoneMap[] zmaps2 = ZoneMap.readZoneMaps( cdfFile, zfile );
+            assert zmaps2.length == zmaps.length;
+            for ( int im = 0; im < zmaps.length; im++ ) {
+                ZoneMap z1 = zmaps[ im ];
+                ZoneMap z2 = zmaps2[ im ];
+                assert z1.getVariableName().equals( z2.getVariableName() );
+                assert z1.getZoneCount() == z2.getZoneCount();
+                for ( int iz = 0; iz < z1.getZoneCount(); iz++ ) {
+                    assert z1.getFirstRecord( iz ) == z2.getFirstRecord( iz );
+                    assert z1.getLastRecord( iz ) == z2.getLastRecord( iz );
+                    assert Double.compare( z1.getMin( iz ), z2.getMin( iz ) )
+                           == 0;
+                    assert Double.compare( z1.getMax( iz ), z2.getMax( iz ) )
+                           == 0;
+                }
+            }
+            assert ZoneMap.readZoneMaps( zfile, zfile ) == null;
+
+            // Corrupt or truncated files are treated as not matching.
+            RandomAccessFile raf = new RandomAccessFile( zfile, "rw" );
+            try {
+                int nmapPos = 8 + 4 + 8 + 8;
+                for ( int nmap : new int[] { -1, Integer.MAX_VALUE } ) {
+                    raf.seek( nmapPos );
+                    raf.writeInt( nmap );
+                    assert ZoneMap.readZoneMaps( cdfFile, zfile ) == null;
+                }
+                raf.seek( nmapPos );
+                raf.writeInt( zmaps.length );
+                if ( zmaps.length > 0 ) {
+                    raf.seek( nmapPos + 4 );
+                    int nzPos = nmapPos + 4 + 2 + raf.readUnsignedShort();
+                    for ( int nz : new int[] { -1, Integer.MAX_VALUE / 2 } ) {
+                        raf.seek( nzPos );
+                        raf.writeInt( nz );
+                        assert ZoneMap.readZoneMaps( cdfFile, zfile ) == null;
+                    }
+                    raf.seek( nzPos );
+                    raf.writeInt( zmaps[ 0 ].getZoneCount() );
+                }
+                assert ZoneMap.readZoneMaps( cdfFile, zfile ).length
+                    == zmaps.length;
+                raf.setLength( raf.length() - 1 );
+                assert ZoneMap.readZoneMaps( cdfFile, zfile ) == null;
+            }
+            finally {
+                raf.close();
+            }
+        }
+        finally {
+            zfile.delete();
+        }
+        checkZoneMapCompressed();
+    }
+
+    private void checkZoneMapCompressed() throws IOException {
+
+        // Write a compressed variable with increasing values, flushing
+        // part way through to end one block early.
+        File file = File.createTempFile( "jcdf", ".cdf" );
+        file.deleteOnExit();
+        CdfWriter writer = new CdfWriter( file );
+        CdfWriter.VariableWriter xw =
+            writer.addVariable( "x", DataType.DOUBLE, 1, new int[ 0 ],
+                                new boolean[ 0 ], true, 10 );
+        xw.setGzipCompression( 6 );
+        int nrec = 100;
+        double[] xs = new double[ nrec ];
+        for ( int irec = 0; irec < nrec; irec++ ) {
+            xs[ irec ] = irec;
+        }
+        double[] xs1 = new double[ 35 ];
+        double[] xs2 = new double[ nrec - 35 ];
+        System.arraycopy( xs, 0, xs1, 0, xs1.length );
+        System.arraycopy( xs, 35, xs2, 0, xs2.length );
+        xw.appendRecords( xs1, xs1.length );
+        writer.flush();
+        xw.appendRecords( xs2, xs2.length );
+        try {
+            xw.setGzipCompression( 6 );
+            assert false;
+        }
+        catch ( IllegalStateException e ) {
+        }
+        writer.close();
+
+        // Blocks are 0-9, 10-19, 20-29, 30-34, 35-44, ..., 95-99.
+        CdfContent content = new CdfContent( new CdfReader( file ) );
+        VariableAttribute[] vatts = content.getVariableAttributes();
+        ZoneMap zmap =
+            ZoneMap.createZoneMap( content.getVariables()[ 0 ], vatts );
+        assert zmap.getZoneCount() == 11;
+        int[][] ranges = zmap.getCandidateRanges( 52, 54 );
+        assert ranges.length == 1;
+        assert ranges[ 0 ][ 0 ] == 45 && ranges[ 0 ][ 1 ] == 55;
+
+        // Reading only the candidate records from a fresh reader
+        // uncompresses only the one block that contains them.
+        CountingMetrics metrics = new CountingMetrics();
+        Metrics.setInstance( metrics );
+        try {
+            Variable xvar =
+                new CdfContent( new CdfReader( file ) ).getVariables()[ 0 ];
+            double[] work = new double[ 1 ];
+            for ( int irec = ranges[ 0 ][ 0 ]; irec < ranges[ 0 ][ 1 ];
+                  irec++ ) {
+                xvar.readRawRecord( irec, work );
+                assert work[ 0 ] == irec;
+            }
+            assert metrics.getDecompressedBytes().get( "GZIP" ).longValue()
+                   == 10 * 8;
+            xvar.readRawRecord( 32, work );
+            assert work[ 0 ] == 32;
+            assert metrics.getDecompressedBytes().get( "GZIP" ).longValue()
+                   == 15 * 8;
+        }
+        finally {
+            Metrics.setInstance( null );
+        }
+    }
+
+    private void checkZoneMap( ZoneMap zmap, Variable var,
+                               VariableAttribute[] vatts,
+                               double lo, double hi )
+            throws IOException {
+        VariableStats validity = VariableStats.createAccumulator( var, vatts );
+        int[][] ranges = zmap.getCandidateRanges( lo, hi );
+        Object work = var.createRawValueArray();
+        int nel = Array.getLength( work );
+        for ( int irec = 0; irec < var.getRecordCount(); irec++ ) {
+            if ( var.hasRecord( irec ) ) {
+                var.readRawRecord( irec, work );
+                boolean isMatch = false;
+                for ( int i = 0; i < nel; i++ ) {
+                    double v = ( (Number) Array.get( work, i ) ).doubleValue();
+                    isMatch = isMatch
+                           || ( validity.isValid( v ) && v >= lo && v <= hi );
+                }
+                if ( isMatch ) {
+                    boolean isCandidate = false;
+                    for ( int[] range : ranges ) {
+                        isCandidate = isCandidate
+                                   || ( irec >= range[ 0 ] &&
+                                        irec < range[ 1 ] );
+                    }
+                    assert isCandidate;
+                }
+            }
+        }
+    }
+
+    public void testFilter( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        VariableAttribute[] vatts = content.getVariableAttributes();
+        Variable prevVar = null;
+        for ( Variable var : content.getVariables() ) {
+            int nrec = var.getRecordCount();
+            if ( nrec == 0 ) {
+                continue;
+            }
+            if ( RecordFilter.isNumeric( var ) ) {
+                double[][] values = readFilterValues( var );
+                double lo = Double.POSITIVE_INFINITY;
+                double hi = Double.NEGATIVE_INFINITY;
+                for ( double[] recValues : values ) {
+                    for ( double v : recValues ) {
+                        if ( ! Double.isNaN( v ) ) {
+                            lo = Math.min( lo, v );
+                            hi = Math.max( hi, v );
+                        }
+                    }
+                }
+                double mid = lo + 0.5 * ( hi - lo );
+                double v0 = values[ 0 ][ 0 ];
+
+                // Large integer values are compared exactly by the filter,
+                // but not by the double precision brute force check.
+                boolean isExact = Math.max( Math.abs( lo ), Math.abs( hi ) )
+                                < 1L << 53;
+                RecordFilter f1 = new RecordFilter();
+                f1.addRange( var, lo, mid );
+                BitSet m1 = f1.evaluate();
+                RecordFilter f2 = new RecordFilter();
+                f2.addValid( var, vatts );
+                f2.addEquals( var, v0 );
+                BitSet m2 = f2.evaluate();
+                VariableStats validity =
+                    VariableStats.createAccumulator( var, vatts );
+                for ( int irec = 0; irec < nrec; irec++ ) {
+                    boolean in1 = false;
+                    boolean in2 = false;
+                    for ( double v : values[ irec ] ) {
+                        in1 = in1 || ( v >= lo && v <= mid );
+                        in2 = in2 || ( validity.isValid( v ) && v == v0 );
+                    }
+                    assert m1.get( irec ) == in1 || ! isExact;
+                    assert m2.get( irec ) == in2 || ! isExact;
+                }
+                checkProjection( var, m1 );
+
+                // Conditions on two variables.
+                if ( prevVar != null ) {
+                    RecordFilter f3 = new RecordFilter();
+                    f3.addRange( var, lo, mid );
+                    f3.addValid( prevVar, vatts );
+                    BitSet m3 = f3.evaluate();
+                    int nrec3 = Math.min( nrec, prevVar.getRecordCount() );
+                    assert f3.getRecordCount() == nrec3;
+                    RecordFilter f4 = new RecordFilter();
+                    f4.addValid( prevVar, vatts );
+                    BitSet m4 = f4.evaluate();
+                    m4.and( m1 );
+                    m4.clear( nrec3, Math.max( nrec3, m4.length() ) );
+                    assert m3.equals( m4 );
+                    checkProjection( prevVar, m3 );
+                }
+                prevVar = var;
+            }
+            else {
+                Object work = var.createRawValueArray();
+                var.readRawRecord( 0, work );
+                String s0 = (String) Array.get( work, 0 );
+                if ( s0 != null ) {
+                    RecordFilter f = new RecordFilter();
+                    f.addEquals( var, s0 );
+                    BitSet m = f.evaluate();
+                    assert m.get( 0 );
+                    checkProjection( var, m );
+                }
+            }
+        }
+        checkFilterLong();
+    }
+
+    private void checkFilterLong() throws IOException {
+
+        // Write TIME_TT2000 and INT8 variables with values beyond 2^53,
+        // where adjacent integers are not distinct as doubles.
+        long big = 1L << 53;
+        long[] times = new long[] {
+            Long.MIN_VALUE, Long.MIN_VALUE + 1, big, big + 1, big + 2, big + 3,
+        };
+        long[] counts = new long[] {
+            big, big + 1, big + 2, big + 3, big + 1, big,
+        };
+        File file = File.createTempFile( "jcdf", ".cdf" );
+        file.deleteOnExit();
+        CdfWriter writer = new CdfWriter( file );
+        CdfWriter.VariableWriter tw =
+            writer.addVariable( "t", DataType.TIME_TT2000, 1, new int[ 0 ],
+                                new boolean[ 0 ], true, 4 );
+        tw.appendRecords( times, times.length );
+        CdfWriter.VariableWriter nw =
+            writer.addVariable( "n", DataType.INT8, 1, new int[ 0 ],
+                                new boolean[ 0 ], true, 4 );
+        nw.appendRecords( counts, counts.length );
+        writer.addAttribute( "FILLVAL", false )
+              .setVariableEntry( tw, DataType.TIME_TT2000,
+                                 new long[] { Long.MIN_VALUE + 1 } );
+        writer.addAttribute( "VALIDMAX", false )
+              .setVariableEntry( tw, DataType.TIME_TT2000,
+                                 new long[] { big + 2 } );
+        writer.addAttribute( "VALIDMIN", false )
+              .setVariableEntry( nw, DataType.INT8, new long[] { big + 1 } );
+        writer.close();
+        CdfContent content = new CdfContent( new CdfReader( file ) );
+        VariableAttribute[] vatts = content.getVariableAttributes();
+        Variable tvar = content.getVariables()[ 0 ];
+        Variable nvar = content.getVariables()[ 1 ];
+
+        RecordFilter f1 = new RecordFilter();
+        f1.addEquals( tvar, big + 1 );
+        assert f1.evaluate().equals( createBitSet( 3 ) );
+        RecordFilter f2 = new RecordFilter();
+        f2.addRange( tvar, big + 1, big + 2 );
+        assert f2.evaluate().equals( createBitSet( 3, 4 ) );
+        RecordFilter f3 = new RecordFilter();
+        f3.addValid( tvar, vatts );
+        assert f3.evaluate().equals( createBitSet( 0, 2, 3, 4 ) );
+        RecordFilter f4 = new RecordFilter();
+        f4.addValid( nvar, vatts );
+        assert f4.evaluate().equals( createBitSet( 1, 2, 3, 4 ) );
+        RecordFilter f5 = new RecordFilter();
+        f5.addEquals( nvar, big + 1 );
+        f5.addValid( tvar, vatts );
+        assert f5.evaluate().equals( createBitSet( 4 ) );
+    }
+
+    private static BitSet createBitSet( int... ibits ) {
+        BitSet bits = new BitSet();
+        for ( int ib : ibits ) {
+            bits.set( ib );
+        }
+        return bits;
+    }
+
+    private double[][] readFilterValues( Variable var ) throws IOException {
+        boolean isEpoch16 = var.getDataType() == DataType.EPOCH16;
+        Object work = var.createRawValueArray();
+        int nel = Array.getLength( work );
+        int nv = isEpoch16 ? nel / 2 : nel;
+        double[][] values = new double[ var.getRecordCount() ][ nv ];
+        for ( int irec = 0; irec < values.length; irec++ ) {
+            var.readRawRecord( irec, work );
+            for ( int iv = 0; iv < nv; iv++ ) {
+                values[ irec ][ iv ] = isEpoch16
+                    ? ((double[]) work)[ 2 * iv ]
+                      + ((double[]) work)[ 2 * iv + 1 ] * 1e-12
+                    : ( (Number) Array.get( work, iv ) ).doubleValue();
+            }
+        }
+        return values;
+    }
+
+    private void checkProjection( Variable var, BitSet mask )
+            throws IOException {
+        Object proj = RecordFilter.project( var, mask );
+        Object work = var.createRawValueArray();
+        int nel = Array.getLength( work );
+        assert Array.getLength( proj ) == mask.cardinality() * nel;
+        int ipos = 0;
+        for ( int irec = mask.nextSetBit( 0 ); irec >= 0;
+              irec = mask.nextSetBit( irec + 1 ) ) {
+            var.readRawRecord( irec, work );
+            for ( int i = 0; i < nel; i++ ) {
+                Object v1 = Array.get( work, i );
+                Object v2 = Array.get( proj, ipos++ );
+                assert v1 == null ? v2 == null : v1.equals( v2 );
+            }
+        }
+    }
+
+    public void testRecordRanges( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        for ( Variable var : content.getVariables() ) {
+            int[][] ranges = var.getRecordRanges();
+            int nrec = var.getRecordCount();
+            boolean[] flags = new boolean[ nrec ];
+            int nstored = 0;
+            int prevLast = -2;
+            for ( int[] range : ranges ) {
+                assert range[ 0 ] > prevLast + 1;
+                assert range[ 1 ] >= range[ 0 ];
+                for ( int irec = range[ 0 ]; irec <= range[ 1 ]; irec++ ) {
+                    flags[ irec ] = true;
+                    nstored++;
+                }
+                prevLast = range[ 1 ];
+            }
+            for ( int irec = 0; irec < nrec; irec++ ) {
+                assert var.hasRecord( irec ) == flags[ irec ];
+            }
+            assert var.getStoredRecordCount() == nstored;
+        }
+    }
+
+    public void testSplit( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        ExecutorService executor = Executors.newFixedThreadPool( 3 );
+        try {
+            for ( Variable var : content.getVariables() ) {
+                int nrec = var.getRecordCount();
+                int nel = Array.getLength( var.createRawValueArray() );
+                for ( int ns : new int[] { 1, 2, 5, 20 } ) {
+                    RecordSplit[] splits = RecordSplit.split( var, ns );
+                    assert splits.length
+                        == Math.min( ns, Math.max( nrec, 1 ) );
+                    int irec = 0;
+                    for ( RecordSplit split : splits ) {
+                        assert split.getStart() == irec;
+                        irec = split.getEnd();
+                    }
+                    assert irec == nrec;
+                    Object all = var.createRawValueArray( nrec );
+                    boolean[] stored = new boolean[ nrec ];
+                    readSplits( splits, all, stored, executor );
+                    Object work = var.createRawValueArray();
+                    for ( int ir = 0; ir < nrec; ir++ ) {
+                        var.readRawRecord( ir, work );
+                        assert stored[ ir ] == var.hasRecord( ir );
+                        for ( int i = 0; i < nel; i++ ) {
+                            Object v1 = Array.get( work, i );
+                            Object v2 = Array.get( all, ir * nel + i );
+                            assert v1 == null ? v2 == null : v1.equals( v2 );
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private void readSplits( RecordSplit[] splits, final Object all,
+                             final boolean[] stored,
+                             ExecutorService executor )
+            throws IOException {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for ( final RecordSplit split : splits ) {
+            final int nel =
+                Array.getLength( split.getVariable().createRawValueArray() );
+            final RecordSplit.BlockHandler handler =
+                    new RecordSplit.BlockHandler() {
+                public void handleBlock( int irec, int nrec, Object work,
+                                         boolean isStored ) {
+                    System.arraycopy( work, 0, all, irec * nel, nrec * nel );
+                    Arrays.fill( stored, irec, irec + nrec, isStored );
+                }
+            };
+            tasks.add( new Callable<Object>() {
+                public Object call() throws IOException {
+                    split.forEachBlock( handler );
+                    return null;
+                }
+            } );
+        }
+        try {
+            for ( Future<Object> future : executor.invokeAll( tasks ) ) {
+                future.get();
+            }
+        }
+        catch ( Exception e ) {
+            throw (IOException) new IOException( "Split read failed" )
+                               .initCause( e );
+        }
+    }
+
+    public void testPublisher( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try {
+            for ( Variable var : content.getVariables() ) {
+                int nrec = var.getRecordCount();
+                int nel = Array.getLength( var.createRawValueArray() );
+                for ( int bs : new int[] { 1, 3, 1000 } ) {
+                    RecordPublisher pub =
+                        new RecordPublisher( var, bs, executor );
+                    Object all = var.createRawValueArray( nrec );
+                    boolean[] stored = new boolean[ nrec ];
+                    int nb = readPublisher( pub, all, stored, -1 );
+                    assert nb == ( nrec + bs - 1 ) / bs;
+                    Object work = var.createRawValueArray();
+                    for ( int ir = 0; ir < nrec; ir++ ) {
+                        var.readRawRecord( ir, work );
+                        assert stored[ ir ]
+                            == ( ! var.getRecordVariance() ||
+                                 var.hasRecord( ir ) );
+                        for ( int i = 0; i < nel; i++ ) {
+                            Object v1 = Array.get( work, i );
+                            Object v2 = Array.get( all, ir * nel + i );
+                            assert v1 == null ? v2 == null : v1.equals( v2 );
+                        }
+                    }
+                    if ( nrec > bs ) {
+                        assert readPublisher( pub, all, stored, 1 ) == 1;
+                    }
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Subscribes to a publisher, requesting batches a few at a time,
+     * and waits until it finishes.
+     *
+     * @param  pub  publisher
+     * @param  all  array into which all raw values are copied
+     * @param  stored  array into which record presence flags are copied
+     * @param  maxBatch  number of batches after which to cancel,
+     *                   or -1 to read all
+     * @return   number of batches received
+     */
+    private int readPublisher( RecordPublisher pub, final Object all,
+                               final boolean[] stored, final int maxBatch )
+            throws IOException {
+        final int nel =
+            Array.getLength( pub.getVariable().createRawValueArray() );
+        final CountDownLatch latch = new CountDownLatch( 1 );
+        final Throwable[] error = new Throwable[ 1 ];
+        final int[] counts = new int[ 2 ];
+        final boolean[] isComplete = new boolean[ 1 ];
+        pub.subscribe( new RecordPublisher.Subscriber() {
+            private RecordPublisher.Subscription sub_;
+            private int outstanding_;
+            public void onSubscribe( RecordPublisher.Subscription sub ) {
+                sub_ = sub;
+                outstanding_ = 2;
+                sub.request( 2 );
+            }
+            public void onNext( RecordPublisher.Batch batch ) {
+                assert outstanding_-- > 0;
+                int irec = batch.getStart();
+                int n = batch.getRecordCount();
+                assert irec == counts[ 1 ];
+                System.arraycopy( batch.getRawArray(), 0, all, irec * nel,
+                                  n * nel );
+                for ( int i = 0; i < n; i++ ) {
+                    stored[ irec + i ] = batch.hasRecord( i );
+                }
+                counts[ 1 ] += n;
+                if ( ++counts[ 0 ] == maxBatch ) {
+                    sub_.cancel();
+                    latch.countDown();
+                }
+                else {
+                    outstanding_++;
+                    sub_.request( 1 );
+                }
+            }
+            public void onError( Throwable e ) {
+                error[ 0 ] = e;
+                latch.countDown();
+            }
+            public void onComplete() {
+                isComplete[ 0 ] = true;
+                latch.countDown();
+            }
+        } );
+        try {
+            if ( ! latch.await( 60, TimeUnit.SECONDS ) ) {
+                throw new IOException( "Publisher timed out" );
+            }
+        }
+        catch ( InterruptedException e ) {
+            throw (IOException) new IOException( "Interrupted" )
+                               .initCause( e );
+        }
+        if ( error[ 0 ] != null ) {
+            throw (IOException) new IOException( "Publisher failed" )
+                               .initCause( error[ 0 ] );
+        }
+        assert isComplete[ 0 ] == ( maxBatch < 0 );
+        return counts[ 0 ];
+    }
+
+    public void testHyperslab( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        int nslab = 0;
+        for ( Variable var : content.getVariables() ) {
+            int[] dimSizes = var.getShaper().getDimSizes();
+            int ndim = dimSizes.length;
+            int nrec = var.getRecordCount();
+            int[] zeros = new int[ ndim ];
+            checkHyperslab( var, 0, nrec, 1, zeros, dimSizes );
+            if ( nrec > 2 ) {
+                int[] starts = new int[ ndim ];
+                int[] counts = new int[ ndim ];
+                int[] ones = new int[ ndim ];
+                for ( int id = 0; id < ndim; id++ ) {
+                    starts[ id ] = dimSizes[ id ] / 2;
+                    counts[ id ] = ( dimSizes[ id ] + 1 ) / 2;
+                    ones[ id ] = 1;
+                }
+                checkHyperslab( var, 1, ( nrec - 1 ) / 2, 2, starts, counts );
+                checkHyperslab( var, 0, nrec, 1, starts, ones );
+                checkHyperslab( var, nrec - 1, 1, 1, zeros, ones );
+                nslab++;
+            }
+        }
+        assert nslab > 0;
+    }
+
+    private void checkHyperslab( Variable var, int recStart, int recCount,
+                                 int recStride, int[] starts, int[] counts )
+            throws IOException {
+        Hyperslab slab = new Hyperslab( var, starts, counts );
+        Object result = var.readHyperslab( recStart, recCount, recStride,
+                                           starts, counts );
+        Shaper vshaper = var.getShaper();
+        Shaper sshaper = slab.getShaper();
+        boolean[] dimVarys = vshaper.getDimVarys();
+        int ndim = starts.length;
+        int grp = var.getDataType().getGroupSize();
+        int nel = slab.getRawItemCount() * grp;
+        assert Array.getLength( result ) == recCount * nel;
+        assert sshaper.getRawItemCount() == slab.getRawItemCount();
+        Object work = var.createRawValueArray();
+        for ( int ir = 0; ir < recCount; ir++ ) {
+            var.readRawRecord( recStart + ir * recStride, work );
+            int[] subCoords = new int[ ndim ];
+            int[] coords = new int[ ndim ];
+            for ( boolean done = slab.getRawItemCount() == 0; ! done; ) {
+                for ( int id = 0; id < ndim; id++ ) {
+                    coords[ id ] = dimVarys[ id ]
+                                 ? starts[ id ] + subCoords[ id ]
+                                 : 0;
+                }
+                int iv = vshaper.getArrayIndex( coords );
+                int is = ir * nel + sshaper.getArrayIndex( subCoords );
+                for ( int ig = 0; ig < grp; ig++ ) {
+                    Object v1 = Array.get( work, iv + ig );
+                    Object v2 = Array.get( result, is + ig );
+                    assert v1 == null ? v2 == null : v1.equals( v2 );
+                }
+                done = true;
+                for ( int id = 0; id < ndim && done; id++ ) {
+                    if ( dimVarys[ id ] && ++subCoords[ id ] < counts[ id ] ) {
+                        done = false;
+                    }
+                    else {
+                        subCoords[ id ] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    public void testRowBatch( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        Variable[] vars = content.getVariables();
+        for ( int batchSize : new int[] { 1, 3, 1000 } ) {
+            RowBatchReader rdr = new RowBatchReader( vars, batchSize );
+            assert rdr.getColumnCount() == vars.length;
+            int irow = 0;
+            while ( rdr.next() ) {
+                assert rdr.getBatchStart() == irow;
+                int nr = rdr.getBatchRowCount();
+                assert nr > 0 && nr <= batchSize;
+                for ( int ic = 0; ic < vars.length; ic++ ) {
+                    checkRowBatchColumn( rdr, ic, irow, nr );
+                }
+                irow += nr;
+            }
+            assert irow == rdr.getRowCount();
+        }
+        if ( vars.length > 0 ) {
+            String name = vars[ vars.length - 1 ].getName();
+            RowBatchReader rdr =
+                new RowBatchReader( content, new String[] { name }, 2 );
+            assert rdr.getVariable( 0 ) == vars[ vars.length - 1 ];
+        }
+    }
+
+    private void checkRowBatchColumn( RowBatchReader rdr, int ic,
+                                      int irow0, int nrow )
+            throws IOException {
+        Variable var = rdr.getVariable( ic );
+        Object work = var.createRawValueArray();
+        int nel = rdr.getElementCount( ic );
+        Class<?> clazz = var.getDataType().getArrayElementClass();
+        for ( int ir = 0; ir < nrow; ir++ ) {
+            int irec = irow0 + ir;
+            boolean isVar = var.getRecordVariance();
+            boolean exists = ! isVar || irec < var.getRecordCount();
+            assert rdr.hasValue( ic, ir )
+                == ( exists && ( ! isVar || var.hasRecord( irec ) ) );
+            if ( exists ) {
+                var.readRawRecord( irec, work );
+                for ( int iel = 0; iel < nel; iel++ ) {
+                    Object v = Array.get( work, iel );
+                    if ( clazz == String.class ) {
+                        String s = rdr.getString( ic, ir, iel );
+                        assert v == null ? s == null : v.equals( s );
+                    }
+                    else {
+                        double d = ( (Number) v ).doubleValue();
+                        double d1 = rdr.getDouble( ic, ir, iel );
+                        assert Double.isNaN( d ) ? Double.isNaN( d1 )
+                                                 : d == d1;
+                        if ( clazz == long.class || clazz == int.class ||
+                             clazz == short.class || clazz == byte.class ) {
+                            assert rdr.getLong( ic, ir, iel )
+                                == ( (Number) v ).longValue();
+                        }
+                    }
+                }
+                Object s1 = var.readShapedRecord( irec, true, work );
+                Object s2 = rdr.getShapedValue( ic, ir, true, null );
+                assert s1 == null
+                     ? s2 == null
+                     : ( s1.getClass().isArray()
+                         ? arrayEquals( s1, s2 )
+                         : s1.equals( s2 ) );
+            }
+        }
+    }
+
+    private static boolean arrayEquals( Object a1, Object a2 ) {
+        int n = Array.getLength( a1 );
+        if ( Array.getLength( a2 ) != n ) {
+            return false;
+        }
+        for ( int i = 0; i < n; i++ ) {
+            Object v1 = Array.get( a1, i );
+            Object v2 = Array.get( a2, i );
+            if ( v1 == null ? v2 != null : ! v1.equals( v2 ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void testAlignment( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        VariableAttribute[] vatts = content.getVariableAttributes();
+        Variable[] vars = content.getVariables();
+        for ( Variable tvar : vars ) {
+            DataType ttype = tvar.getDataType();
+            if ( ( ttype == DataType.EPOCH || ttype == DataType.TIME_TT2000 ||
+                   ttype == DataType.EPOCH16 ) &&
+                 tvar.getRecordCount() > 0 ) {
+                int nt = tvar.getRecordCount();
+                double[] times = new double[ nt ];
+                Object twork = tvar.createRawValueArray();
+                boolean isSorted = true;
+                for ( int irec = 0; irec < nt; irec++ ) {
+                    tvar.readRawRecord( irec, twork );
+                    times[ irec ] = ttype == DataType.EPOCH16
+                        ? ((double[]) twork)[ 0 ]
+                          + ((double[]) twork)[ 1 ] * 1e-12
+                        : ( (Number) Array.get( twork, 0 ) ).doubleValue();
+                    isSorted = isSorted &&
+                               ( irec == 0 ||
+                                 times[ irec ] >= times[ irec - 1 ] );
+                }
+                for ( Variable dvar : isSorted ? vars : new Variable[ 0 ] ) {
+                    if ( VariableStats.isNumeric( dvar ) &&
+                         dvar.getShaper().getRawItemCount() == 1 &&
+                         dvar.getRecordVariance() ) {
+                        checkAlignment( tvar, dvar, vatts, times );
+                    }
+                }
+            }
+        }
+        for ( Variable dvar : vars ) {
+            Variable tvar = TimeAlignment.getDependVariable( content, dvar );
+            if ( tvar != null && dvar.getDataType() != DataType.EPOCH16 &&
+                 VariableStats.isNumeric( dvar ) &&
+                 dvar.getShaper().getRawItemCount() == 1 ) {
+                Variable[] dvars = new Variable[] { dvar };
+                TimeAlignment align =
+                    TimeAlignment.createAlignment( content, dvars,
+                                                   TimeAlignment.Method
+                                                                .PREVIOUS,
+                                                   0 );
+                assert align.getVariableCount() == 1;
+            }
+        }
+        checkAlignmentFill();
+    }
+
+    private void checkAlignmentFill() throws IOException {
+
+        // Write an EPOCH time variable with fill times, and data values
+        // at those records that would show up if they were used.
+        int nrec = 300;
+        double[] epochs = new double[ nrec ];
+        double[] values = new double[ nrec ];
+        boolean[] isFill = new boolean[ nrec ];
+        for ( int irec = 0; irec < nrec; irec++ ) {
+            isFill[ irec ] = ( irec >= 100 && irec < 140 ) || irec % 7 == 3;
+            epochs[ irec ] = isFill[ irec ] ? -1e31 : 10. * irec;
+            values[ irec ] = isFill[ irec ] ? 1e6 : irec;
+        }
+        File file = File.createTempFile( "jcdf", ".cdf" );
+        file.deleteOnExit();
+        CdfWriter writer = new CdfWriter( file );
+        CdfWriter.VariableWriter ew =
+            writer.addVariable( "epoch", DataType.EPOCH, 1, new int[ 0 ],
+                                new boolean[ 0 ], true, 32 );
+        ew.appendRecords( epochs, nrec );
+        CdfWriter.VariableWriter vw =
+            writer.addVariable( "value", DataType.DOUBLE, 1, new int[ 0 ],
+                                new boolean[ 0 ], true, 50 );
+        vw.appendRecords( values, nrec );
+        writer.addAttribute( "FILLVAL", false )
+              .setVariableEntry( ew, DataType.EPOCH, new double[] { -1e31 } );
+        writer.close();
+        CdfContent content = new CdfContent( new CdfReader( file ) );
+        Variable[] vars = content.getVariables();
+        Variable[] tvars = new Variable[] { vars[ 0 ] };
+        Variable[] dvars = new Variable[] { vars[ 1 ] };
+        VariableAttribute[] vatts = content.getVariableAttributes();
+
+        // Targets every 2.5 time units; the expected values are the
+        // index of the latest and the next non-fill record, or NaN.
+        int ntarget = nrec * 4;
+        double[] targets = new double[ ntarget ];
+        for ( int it = 0; it < ntarget; it++ ) {
+            targets[ it ] = 2.5 * it - 5;
+        }
+        TimeAlignment prevAlign =
+            new TimeAlignment( dvars, tvars, vatts,
+                               TimeAlignment.Method.PREVIOUS,
+                               Double.POSITIVE_INFINITY );
+        TimeAlignment linAlign =
+            new TimeAlignment( dvars, tvars, vatts,
+                               TimeAlignment.Method.LINEAR,
+                               Double.POSITIVE_INFINITY );
+        double[][] prevResults = new double[ 1 ][ ntarget ];
+        double[][] linResults = new double[ 1 ][ ntarget ];
+        prevAlign.align( targets, ntarget, prevResults );
+        linAlign.align( targets, ntarget, linResults );
+        for ( int it = 0; it < ntarget; it++ ) {
+            double t = targets[ it ];
+            int ip = -1;
+            int in = -1;
+            for ( int irec = 0; irec < nrec; irec++ ) {
+                if ( ! isFill[ irec ] ) {
+                    if ( 10. * irec <= t ) {
+                        ip = irec;
+                    }
+                    else if ( in < 0 ) {
+                        in = irec;
+                    }
+                }
+            }
+            double prev = prevResults[ 0 ][ it ];
+            double lin = linResults[ 0 ][ it ];
+            assert ip >= 0 ? prev == ip : Double.isNaN( prev );
+            if ( ip >= 0 && 10. * ip == t ) {
+                assert lin == ip;
+            }
+            else if ( ip >= 0 && in >= 0 ) {
+                assert lin == ip + ( t - 10. * ip ) / ( 10. * ( in - ip ) )
+                                   * ( in - ip );
+            }
+            else {
+                assert Double.isNaN( lin );
+            }
+        }
+    }
+
+    private void checkAlignment( Variable tvar, Variable dvar,
+                                 VariableAttribute[] vatts, double[] times )
+            throws IOException {
+
+        // Get the valid source samples by reading records one at a time.
+        VariableStats validity =
+            VariableStats.createAccumulator( dvar, vatts );
+        int nrec = Math.min( times.length, dvar.getRecordCount() );
+        double[] ts = new double[ nrec ];
+        double[] vs = new double[ nrec ];
+        int ns = 0;
+        Object dwork = dvar.createRawValueArray();
+        for ( int irec = 0; irec < nrec; irec++ ) {
+            dvar.readRawRecord( irec, dwork );
+            double v = ( (Number) Array.get( dwork, 0 ) ).doubleValue();
+            if ( dvar.hasRecord( irec ) && tvar.hasRecord( irec ) &&
+                 ! Double.isNaN( times[ irec ] ) && validity.isValid( v ) ) {
+                ts[ ns ] = times[ irec ];
+                vs[ ns ] = v;
+                ns++;
+            }
+        }
+
+        // Targets at, between, before and after the source times.
+        int ntarget = nrec * 2 + 2;
+        double[] targets = new double[ ntarget ];
+        targets[ 0 ] = times[ 0 ] - 1;
+        for ( int irec = 0; irec < nrec; irec++ ) {
+            double t = times[ irec ];
+            double tnext = irec + 1 < nrec ? times[ irec + 1 ] : t + 1;
+            targets[ 1 + 2 * irec ] = t;
+            targets[ 2 + 2 * irec ] = t + 0.5 * ( tnext - t );
+        }
+        targets[ ntarget - 1 ] = times[ Math.max( 0, nrec - 1 ) ] + 2;
+        Arrays.sort( targets );
+
+        for ( TimeAlignment.Method method : TimeAlignment.Method.values() ) {
+            for ( double maxGap : new double[] { Double.POSITIVE_INFINITY,
+                                                 0.75 } ) {
+                TimeAlignment align =
+                    new TimeAlignment( new Variable[] { dvar },
+                                       new Variable[] { tvar },
+                                       vatts, method, maxGap );
+
+                // Align in two chunks to check state is kept between calls.
+                double[][] results = new double[][] { new double[ ntarget ] };
+                int n1 = ntarget / 2;
+                double[] targets2 = new double[ ntarget - n1 ];
+                System.arraycopy( targets, n1, targets2, 0, ntarget - n1 );
+                double[][] results2 = new double[ 1 ][ ntarget - n1 ];
+                align.align( targets, n1, results );
+                align.align( targets2, ntarget - n1, results2 );
+                System.arraycopy( results2[ 0 ], 0, results[ 0 ], n1,
+                                  ntarget - n1 );
+                for ( int it = 0; it < ntarget; it++ ) {
+                    double t = targets[ it ];
+                    int ip = -1;
+                    while ( ip + 1 < ns && ts[ ip + 1 ] <= t ) {
+                        ip++;
+                    }
+                    int in = ip + 1 < ns ? ip + 1 : -1;
+                    double dp = ip >= 0 ? t - ts[ ip ] : Double.NaN;
+                    double dn = in >= 0 ? ts[ in ] - t : Double.NaN;
+                    final double expect;
+                    switch ( method ) {
+                        case PREVIOUS:
+                            expect = dp <= maxGap ? vs[ ip ] : Double.NaN;
+                            break;
+                        case NEAREST:
+                            expect = ip >= 0 && ! ( dn < dp )
+                                   ? ( dp <= maxGap ? vs[ ip ] : Double.NaN )
+                                   : ( dn <= maxGap ? vs[ in ] : Double.NaN );
+                            break;
+                        case LINEAR:
+                            if ( dp == 0 ) {
+                                expect = vs[ ip ];
+                            }
+                            else if ( ip >= 0 && in >= 0 &&
+                                      ts[ in ] - ts[ ip ] <= maxGap ) {
+                                expect = vs[ ip ]
+                                       + dp / ( ts[ in ] - ts[ ip ] )
+                                       * ( vs[ in ] - vs[ ip ] );
+                            }
+                            else {
+                                expect = Double.NaN;
+                            }
+                            break;
+                        default:
+                            throw new AssertionError();
+                    }
+                    double got = results[ 0 ][ it ];
+                    assert Double.isNaN( expect ) ? Double.isNaN( got )
+                                                  : expect == got;
+                }
+
+                // Decreasing targets are rejected.
+                try {
+                    align.align( new double[] { targets[ 0 ] - 1 }, 1,
+                                 results );
+                    assert false;
+                }
+                catch ( IllegalArgumentException e ) {
+                }
+            }
+        }
+    }
+
+    public void testWriter( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        Variable[] vars = content.getVariables();
+        GlobalAttribute[] gatts = content.getGlobalAttributes();
+        VariableAttribute[] vatts = content.getVariableAttributes();
+        File outFile = File.createTempFile( "jcdf", ".cdf" );
+        outFile.deleteOnExit();
+
+        // Copy the file, with small VXRs, blocking factor and buffer
+        // to exercise the index chaining and flushing.
+        CdfWriter writer =
+            new CdfWriter( outFile, content.getCdfInfo().getRowMajor(),
+                           2, 100 );
+        CdfWriter.VariableWriter[] vws =
+            new CdfWriter.VariableWriter[ vars.length ];
+        for ( int iv = 0; iv < vars.length; iv++ ) {
+            Variable var = vars[ iv ];
+            Shaper shaper = var.getShaper();
+            vws[ iv ] = writer.addVariable( var.getName(), var.getDataType(),
+                                            var.getDescriptor().numElems,
+                                            shaper.getDimSizes(),
+                                            shaper.getDimVarys(),
+                                            var.getRecordVariance(), 3 );
+        }
+        for ( GlobalAttribute gatt : gatts ) {
+            CdfWriter.AttributeWriter aw =
+                writer.addAttribute( gatt.getName(), true );
+            AttributeEntry[] ents = gatt.getEntries();
+            for ( int ie = 0; ie < ents.length; ie++ ) {
+                if ( ents[ ie ] != null ) {
+                    aw.setGlobalEntry( ie, ents[ ie ].getDataType(),
+                                       ents[ ie ].getRawValue() );
+                }
+            }
+        }
+        for ( VariableAttribute vatt : vatts ) {
+            CdfWriter.AttributeWriter aw =
+                writer.addAttribute( vatt.getName(), false );
+            for ( int iv = 0; iv < vars.length; iv++ ) {
+                AttributeEntry ent = vatt.getEntry( vars[ iv ] );
+                if ( ent != null ) {
+                    aw.setVariableEntry( vws[ iv ], ent.getDataType(),
+                                         ent.getRawValue() );
+                }
+            }
+        }
+
+        // Interleave batches of different sizes from each variable.
+        int[] batchSizes = new int[] { 1, 5, 2, 7 };
+        int[] nexts = new int[ vars.length ];
+        for ( boolean done = false; ! done; ) {
+            done = true;
+            for ( int iv = 0; iv < vars.length; iv++ ) {
+                Variable var = vars[ iv ];
+                int irec = nexts[ iv ];
+                int nrec = Math.min( batchSizes[ ( irec + iv ) % 4 ],
+                                     var.getRecordCount() - irec );
+                if ( nrec > 0 ) {
+                    Object work = var.createRawValueArray( nrec );
+                    int nr = 0;
+                    while ( nr < nrec ) {
+                        Object w1 = var.createRawValueArray( nrec - nr );
+                        int n = var.readRawRecords( irec + nr, nrec - nr,
+                                                    w1 );
+                        System.arraycopy( w1, 0, work,
+                                          nr * vws[ iv ]
+                                              .getRecordElementCount(),
+                                          n * vws[ iv ]
+                                              .getRecordElementCount() );
+                        nr += n;
+                    }
+                    vws[ iv ].appendRecords( work, nrec );
+                    nexts[ iv ] += nrec;
+                    done = false;
+                }
+            }
+        }
+        writer.close();
+
+        // Read it back and compare.
+        CdfContent content2 = new CdfContent( new CdfReader( outFile ) );
+        Variable[] vars2 = content2.getVariables();
+        assert vars2.length == vars.length;
+        for ( int iv = 0; iv < vars.length; iv++ ) {
+            Variable v1 = vars[ iv ];
+            Variable v2 = vars2[ iv ];
+            assert v1.getName().equals( v2.getName() );
+            assert v1.getDataType().getName()
+                     .equals( v2.getDataType().getName() );
+            assert v1.getRecordCount() == v2.getRecordCount();
+            assert v1.getRecordVariance() == v2.getRecordVariance();
+            assert Arrays.equals( v1.getShaper().getDimSizes(),
+                                  v2.getShaper().getDimSizes() );
+            Object w1 = v1.createRawValueArray();
+            Object w2 = v2.createRawValueArray();
+            for ( int irec = 0; irec < v1.getRecordCount(); irec++ ) {
+                v1.readRawRecord( irec, w1 );
+                v2.readRawRecord( irec, w2 );
+                assert arrayEquals( w1, w2 );
+                assert v2.hasRecord( irec ) == v2.getRecordVariance();
+            }
+            for ( int iatt = 0; iatt < vatts.length; iatt++ ) {
+                assert entryEquals( vatts[ iatt ].getEntry( v1 ),
+                                    content2.getVariableAttributes()[ iatt ]
+                                            .getEntry( v2 ) );
+            }
+        }
+        GlobalAttribute[] gatts2 = content2.getGlobalAttributes();
+        assert gatts2.length == gatts.length;
+        for ( int ia = 0; ia < gatts.length; ia++ ) {
+            assert gatts[ ia ].getName().equals( gatts2[ ia ].getName() );
+            AttributeEntry[] ents1 = gatts[ ia ].getEntries();
+            AttributeEntry[] ents2 = gatts2[ ia ].getEntries();
+            for ( int ie = 0; ie < ents1.length; ie++ ) {
+                assert entryEquals( ents1[ ie ],
+                                    ie < ents2.length ? ents2[ ie ]
+                                                      : null );
+            }
+        }
+        outFile.delete();
+    }
+
+    private static boolean entryEquals( AttributeEntry e1,
+                                        AttributeEntry e2 ) {
+        if ( e1 == null || e2 == null ) {
+            return e1 == e2;
+        }
+        return e1.getItemCount() == e2.getItemCount()
+            && e1.getDataType().getName()
+                 .equals( e2.getDataType().getName() )
+            && arrayEquals( e1.getRawValue(), e2.getRawValue() );
+    }
+
+    public void testList( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        PrintStream pout = new PrintStream( bout );
+        new CdfList( content, pout, true ).run();
+        pout.flush();
+        String serial = bout.toString();
+        assert serial.indexOf( "Variable 0: " ) > 0;
+        for ( int nthread = 0; nthread <= 6; nthread++ ) {
+            StringWriter sout = new StringWriter();
+            new CdfList( content, sout, true, nthread ).run();
+            assert serial.equals( sout.toString() );
+        }
+    }
+
+    public void testCsv( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        List<Variable> varList = new ArrayList<Variable>();
+        for ( Variable var : content.getVariables() ) {
+            if ( var.getRecordVariance() ) {
+                varList.add( var );
+            }
+        }
+        Variable[] vars = varList.toArray( new Variable[ 0 ] );
+        double inf = Double.POSITIVE_INFINITY;
+
+        // Unfiltered export.
+        String[] lines = writeCsv( new CdfCsv( vars, null, -inf, inf, '\t' ) );
+        int nrow = 0;
+        int ncol = 1;
+        for ( Variable var : vars ) {
+            nrow = Math.max( nrow, var.getRecordCount() );
+            ncol += Array.getLength( var.createRawValueArray() )
+                  / var.getDataType().getGroupSize();
+        }
+        assert lines.length == nrow + 1;
+        assert lines[ 0 ].startsWith( "record\t" );
+        for ( int ir = 0; ir < nrow; ir++ ) {
+            String[] cells = lines[ ir + 1 ].split( "\t", -1 );
+            assert cells.length == ncol;
+            assert cells[ 0 ].equals( Integer.toString( ir ) );
+            int icol = 1;
+            for ( Variable var : vars ) {
+                Object raw = var.createRawValueArray();
+                int rvaleng = Array.getLength( raw );
+                DataType dtype = var.getDataType();
+                boolean hasRec = ir < var.getRecordCount()
+                              && var.hasRecord( ir );
+                if ( hasRec ) {
+                    var.readRawRecord( ir, raw );
+                }
+                for ( int j = 0; j < rvaleng; j += dtype.getGroupSize() ) {
+                    String cell = cells[ icol++ ];
+                    if ( hasRec ) {
+                        assert cell.equals( dtype.formatArrayValue( raw, j )
+                                                 .replace( '\t', ' ' )
+                                                 .replace( '\n', ' ' )
+                                                 .replace( '\r', ' ' ) );
+                    }
+                    else {
+                        assert cell.length() == 0;
+                    }
+                }
+            }
+        }
+
+        // Time windows, for time variables with non-decreasing values.
+        Tt2kConverter ttConverter = new Tt2kConverter();
+        for ( Variable tvar : vars ) {
+            DataType dtype = tvar.getDataType();
+            boolean isTt = dtype.getName()
+                          .equals( DataType.TIME_TT2000.getName() );
+            if ( dtype != DataType.EPOCH && dtype != DataType.EPOCH16 &&
+                 ! isTt ) {
+                continue;
+            }
+            int ntrec = tvar.getRecordCount();
+            double[] millis = new double[ ntrec ];
+            Object raw = tvar.createRawValueArray();
+            boolean isMonotonic = true;
+            double last = -inf;
+            for ( int ir = 0; ir < ntrec; ir++ ) {
+                tvar.readRawRecord( ir, raw );
+                double t;
+                if ( ! tvar.hasRecord( ir ) ) {
+                    t = Double.NaN;
+                }
+                else if ( isTt ) {
+                    long tt2k = ((long[]) raw)[ 0 ];
+                    t = Tt2kConverter.isFill( tt2k )
+                      ? Double.NaN
+                      : ttConverter.toUnixMillis( tt2k );
+                }
+                else {
+                    double[] draw = (double[]) raw;
+                    t = draw[ 0 ] == -1e31
+                      ? Double.NaN
+                      : dtype == DataType.EPOCH
+                        ? draw[ 0 ] + EpochFormatter.AD0_UNIX_MILLIS
+                        : draw[ 0 ] * 1000 + EpochFormatter.AD0_UNIX_MILLIS
+                                           + draw[ 1 ] * 1e-9;
+                }
+                millis[ ir ] = t;
+                if ( t < last ) {
+                    isMonotonic = false;
+                }
+                if ( ! Double.isNaN( t ) ) {
+                    last = t;
+                }
+            }
+            if ( ! isMonotonic ) {
+                continue;
+            }
+            for ( int i0 = 0; i0 < ntrec; i0++ ) {
+                for ( int i1 = i0; i1 < ntrec; i1++ ) {
+                    if ( ! Double.isNaN( millis[ i0 ] ) &&
+                         ! Double.isNaN( millis[ i1 ] ) ) {
+                        checkCsvWindow( vars, tvar, millis[ i0 ],
+                                        millis[ i1 ], lines, millis );
+                        checkCsvWindow( vars, tvar, millis[ i0 ] + 0.5,
+                                        millis[ i1 ] - 0.5, lines, millis );
+                    }
+                }
+            }
+            checkCsvWindow( vars, tvar, -inf, inf, lines, millis );
+            checkCsvWindow( vars, tvar, -inf, -1e20, lines, millis );
+            checkCsvWindow( vars, tvar, 1e20, inf, lines, millis );
+        }
+
+        // Spot check a window including a leap second.
+        if ( "test.cdf".equals( cdfFile.getName() ) ) {
+            Variable tvar = content.getVariables()[ 18 ];
+            assert "tt2000".equals( tvar.getName() );
+            String[] wlines = writeCsv(
+                new CdfCsv( new Variable[] { tvar }, tvar,
+                            CdfCsv.parseIsoMillis( "2015-06-30T23:59:59" ),
+                            CdfCsv.parseIsoMillis( "2015-07-01T00:00:01" ),
+                            ',' ) );
+            assert Arrays.equals( wlines, new String[] {
+                "record,tt2000",
+                "1,2015-06-30T23:59:59.123456789",
+                "2,2015-06-30T23:59:60.123456789",
+                "3,2015-07-01T00:00:00.123456789",
+            } );
+        }
+
+        // Out-of-range fields are rejected rather than rolled over.
+        assert CdfCsv.parseIsoMillis( "1970-01-02" ) == 86400000;
+        String[] badDates = {
+            "2020-13-01", "2020-02-30", "2020-01-01T25:00:00",
+            "2020-13-40T25:61:00",
+        };
+        for ( int i = 0; i < badDates.length; i++ ) {
+            try {
+                CdfCsv.parseIsoMillis( badDates[ i ] );
+                assert false : badDates[ i ];
+            }
+            catch ( IllegalArgumentException e ) {
+            }
+        }
+    }
+
+    /**
+     * Checks that exporting with a time window gives the rows of an
+     * unfiltered export whose times fall in the window.
+     */
+    private void checkCsvWindow( Variable[] vars, Variable tvar,
+                                 double minMillis, double maxMillis,
+                                 String[] allLines, double[] millis )
+            throws IOException {
+        String[] lines =
+            writeCsv( new CdfCsv( vars, tvar, minMillis, maxMillis, '\t' ) );
+        List<String> expected = new ArrayList<String>();
+        expected.add( allLines[ 0 ] );
+        for ( int ir = 0; ir < millis.length; ir++ ) {
+            if ( millis[ ir ] >= minMillis && millis[ ir ] <= maxMillis ) {
+                expected.add( allLines[ ir + 1 ] );
+            }
+        }
+        assert Arrays.equals( lines, expected.toArray( new String[ 0 ] ) );
+    }
+
+    private String[] writeCsv( CdfCsv exporter ) throws IOException {
+        StringWriter out = new StringWriter();
+        exporter.write( out );
+        String txt = out.toString();
+        String nl = System.getProperty( "line.separator" );
+        assert txt.endsWith( nl );
+        return txt.substring( 0, txt.length() - nl.length() ).split( nl, -1 );
+    }
+
+    public void testArrow( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        List<Variable> varList = new ArrayList<Variable>();
+        for ( Variable var : content.getVariables() ) {
+            if ( var.getRecordVariance() ) {
+                varList.add( var );
+            }
+        }
+        Variable[] vars = varList.toArray( new Variable[ 0 ] );
+        CdfArrow arrow = new CdfArrow( content, null );
+        int nrow = arrow.getRowCount();
+        File arrowFile = File.createTempFile( "jcdf", ".arrow" );
+        arrowFile.deleteOnExit();
+        int[] batchSizes = { 1, 2, arrow.getDefaultBatchSize() };
+        for ( int batchSize : batchSizes ) {
+            arrow.writeFile( arrowFile, batchSize );
+            byte[] bytes = new byte[ (int) arrowFile.length() ];
+            RandomAccessFile raf = new RandomAccessFile( arrowFile, "r" );
+            raf.readFully( bytes );
+            raf.close();
+            checkArrow( ByteBuffer.wrap( bytes )
+                                  .order( ByteOrder.LITTLE_ENDIAN ),
+                        vars, nrow, batchSize );
+        }
+        arrowFile.delete();
+    }
+
+    /**
+     * Decodes an Arrow IPC file and checks it against the CDF variables
+     * it was written from.
+     */
+    private void checkArrow( ByteBuffer bb, Variable[] vars, int nrow,
+                             int batchSize ) throws IOException {
+        int leng = bb.limit();
+
+        // Framing.
+        byte[] magic = "ARROW1".getBytes( "UTF-8" );
+        for ( int i = 0; i < magic.length; i++ ) {
+            assert bb.get( i ) == magic[ i ];
+            assert bb.get( leng - magic.length + i ) == magic[ i ];
+        }
+        assert bb.get( 6 ) == 0 && bb.get( 7 ) == 0;
+        int footLeng = bb.getInt( leng - magic.length - 4 );
+        int footStart = leng - magic.length - 4 - footLeng;
+        assert footLeng > 0 && footStart > 8;
+        assert bb.getInt( footStart - 8 ) == 0xffffffff;
+        assert bb.getInt( footStart - 4 ) == 0;
+
+        // Footer, and the schema message that starts the file.
+        int footer = flatTable( bb, footStart );
+        assert bb.getShort( flatField( bb, footer, 0 ) ) == 4;
+        checkArrowSchema( bb, flatTable( bb, flatField( bb, footer, 1 ) ),
+                          vars );
+        assert flatVectorLength( bb, flatField( bb, footer, 2 ) ) == 0;
+        assert bb.getInt( 8 ) == 0xffffffff;
+        int schemaMsg = flatTable( bb, 16 );
+        assert bb.getShort( flatField( bb, schemaMsg, 0 ) ) == 4;
+        assert bb.get( flatField( bb, schemaMsg, 1 ) ) == 1;
+        checkArrowSchema( bb, flatTable( bb, flatField( bb, schemaMsg, 2 ) ),
+                          vars );
+
+        // Record batches.
+        int blocksPos = flatField( bb, footer, 3 );
+        int nblock = flatVectorLength( bb, blocksPos );
+        assert nblock == Math.max( 1, ( nrow + batchSize - 1 ) / batchSize );
+        int blocks = flatTable( bb, blocksPos ) + 4;
+        for ( int ib = 0; ib < nblock; ib++ ) {
+            int blockPos = blocks + 24 * ib;
+            int msgPos = (int) bb.getLong( blockPos );
+            int metaLeng = bb.getInt( blockPos + 8 );
+            long bodyLeng = bb.getLong( blockPos + 16 );
+            assert msgPos % 8 == 0 && metaLeng % 8 == 0;
+            assert bb.getInt( msgPos ) == 0xffffffff;
+            assert bb.getInt( msgPos + 4 ) == metaLeng - 8;
+            int msg = flatTable( bb, msgPos + 8 );
+            assert bb.getShort( flatField( bb, msg, 0 ) ) == 4;
+            assert bb.get( flatField( bb, msg, 1 ) ) == 3;
+            assert bb.getLong( flatField( bb, msg, 3 ) ) == bodyLeng;
+            int batch = flatTable( bb, flatField( bb, msg, 2 ) );
+            int irow0 = ib * batchSize;
+            int nr = Math.min( batchSize, nrow - irow0 );
+            int lengPos = flatField( bb, batch, 0 );
+            assert ( lengPos < 0 ? 0 : bb.getLong( lengPos ) ) == nr;
+            int nodesPos = flatField( bb, batch, 1 );
+            int bufsPos = flatField( bb, batch, 2 );
+            long[][] nodes = new long[ flatVectorLength( bb, nodesPos ) ][];
+            int nodes0 = flatTable( bb, nodesPos ) + 4;
+            for ( int in = 0; in < nodes.length; in++ ) {
+                nodes[ in ] = new long[] { bb.getLong( nodes0 + 16 * in ),
+                                           bb.getLong( nodes0 + 16 * in
+                                                              + 8 ) };
+            }
+            int body = msgPos + metaLeng;
+            int[][] bufs = new int[ flatVectorLength( bb, bufsPos ) ][];
+            int bufs0 = flatTable( bb, bufsPos ) + 4;
+            for ( int ibuf = 0; ibuf < bufs.length; ibuf++ ) {
+                long off = bb.getLong( bufs0 + 16 * ibuf );
+                long len = bb.getLong( bufs0 + 16 * ibuf + 8 );
+                assert off % 8 == 0 && off + len <= bodyLeng;
+                bufs[ ibuf ] = new int[] { body + (int) off, (int) len };
+            }
+            int[] counts = new int[ 2 ];
+            for ( int iv = 0; iv < vars.length; iv++ ) {
+                checkArrowColumn( bb, vars[ iv ], irow0, nr, nodes, bufs,
+                                  counts );
+            }
+            assert counts[ 0 ] == nodes.length;
+            assert counts[ 1 ] == bufs.length;
+        }
+    }
+
+    /**
+     * Checks the field definitions of an Arrow Schema table.
+     */
+    private void checkArrowSchema( ByteBuffer bb, int schema,
+                                   Variable[] vars ) throws IOException {
+        int fieldsPos = flatField( bb, schema, 1 );
+        assert flatVectorLength( bb, fieldsPos ) == vars.length;
+        for ( int iv = 0; iv < vars.length; iv++ ) {
+            Variable var = vars[ iv ];
+            int field = flatVectorTable( bb, fieldsPos, iv );
+            assert var.getName()
+                  .equals( flatString( bb, flatField( bb, field, 0 ) ) );
+            int[] listSizes = getArrowListSizes( var );
+            for ( int il = 0; il < listSizes.length; il++ ) {
+                assert bb.get( flatField( bb, field, 1 ) ) == 1;
+                assert bb.get( flatField( bb, field, 2 ) ) == 16;
+                int type = flatTable( bb, flatField( bb, field, 3 ) );
+                int sizePos = flatField( bb, type, 0 );
+                assert bb.getInt( sizePos ) == listSizes[ il ];
+                int childrenPos = flatField( bb, field, 5 );
+                assert flatVectorLength( bb, childrenPos ) == 1;
+                field = flatVectorTable( bb, childrenPos, 0 );
+                assert "item"
+                      .equals( flatString( bb, flatField( bb, field, 0 ) ) );
+            }
+            assert bb.get( flatField( bb, field, 1 ) ) == 1;
+            assert flatVectorLength( bb, flatField( bb, field, 5 ) ) == 0;
+            int typeId = bb.get( flatField( bb, field, 2 ) );
+            int type = flatTable( bb, flatField( bb, field, 3 ) );
+            DataType dtype = var.getDataType();
+            int[] intSpec = getArrowIntSpec( dtype );
+            if ( intSpec != null ) {
+                assert typeId == 2;
+                assert bb.getInt( flatField( bb, type, 0 ) ) == intSpec[ 0 ];
+                int signedPos = flatField( bb, type, 1 );
+                assert ( signedPos >= 0 && bb.get( signedPos ) == 1 )
+                    == ( intSpec[ 1 ] == 1 );
+            }
+            else if ( isArrowTt2000( dtype ) ) {
+                assert typeId == 10;
+                assert bb.getShort( flatField( bb, type, 0 ) ) == 3;
+                assert "UTC"
+                      .equals( flatString( bb, flatField( bb, type, 1 ) ) );
+            }
+            else if ( dtype == DataType.CHAR || dtype == DataType.UCHAR ) {
+                assert typeId == 5;
+            }
+            else {
+                assert typeId == 3;
+                int precision = bb.getShort( flatField( bb, type, 0 ) );
+                assert precision == ( dtype == DataType.REAL4 ||
+                                      dtype == DataType.FLOAT ? 1 : 2 );
+            }
+        }
+    }
+
+    /**
+     * Checks the field nodes and buffers of one column of an Arrow
+     * record batch against the values read from a variable.
+     * The counts array holds the indices of the next node and buffer,
+     * and is updated.
+     */
+    private void checkArrowColumn( ByteBuffer bb, Variable var, int irow0,
+                                   int nr, long[][] nodes, int[][] bufs,
+                                   int[] counts ) throws IOException {
+        int[] listSizes = getArrowListSizes( var );
+        DataType dtype = var.getDataType();
+        boolean isTt = isArrowTt2000( dtype );
+        Object rec = var.createRawValueArray();
+        int rvaleng = Array.getLength( rec );
+        boolean[] rowValid = new boolean[ nr ];
+        int nRowNull = 0;
+        for ( int i = 0; i < nr; i++ ) {
+            int irow = irow0 + i;
+            rowValid[ i ] = irow < var.getRecordCount()
+                         && var.hasRecord( irow );
+            if ( ! rowValid[ i ] ) {
+                nRowNull++;
+            }
+        }
+
+        // List levels.
+        long nel = nr;
+        if ( listSizes.length > 0 ) {
+            long[] node = nodes[ counts[ 0 ]++ ];
+            assert node[ 0 ] == nr && node[ 1 ] == nRowNull;
+            checkArrowValidity( bb, bufs[ counts[ 1 ]++ ], rowValid );
+            for ( int il = 0; il < listSizes.length; il++ ) {
+                nel *= listSizes[ il ];
+                if ( il < listSizes.length - 1 ) {
+                    node = nodes[ counts[ 0 ]++ ];
+                    assert node[ 0 ] == nel && node[ 1 ] == 0;
+                    assert bufs[ counts[ 1 ]++ ][ 1 ] == 0;
+                }
+            }
+        }
+        assert nel == (long) nr * rvaleng;
+
+        // Leaf level.
+        int nleaf = (int) nel;
+        boolean[] leafValid = new boolean[ nleaf ];
+        Object[] leafVals = new Object[ nleaf ];
+        int nLeafNull = 0;
+        for ( int i = 0; i < nr; i++ ) {
+            int irow = irow0 + i;
+            if ( irow < var.getRecordCount() ) {
+                var.readRawRecord( irow, rec );
+            }
+            for ( int j = 0; j < rvaleng; j++ ) {
+                int k = i * rvaleng + j;
+                leafVals[ k ] = Array.get( rec, j );
+                boolean isFill =
+                    isTt && ((Number) leafVals[ k ]).longValue()
+                            <= Long.MIN_VALUE + 1;
+                leafValid[ k ] = ( listSizes.length > 0 || rowValid[ i ] )
+                              && ! isFill;
+                if ( ! leafValid[ k ] ) {
+                    nLeafNull++;
+                }
+            }
+        }
+        long[] leafNode = nodes[ counts[ 0 ]++ ];
+        assert leafNode[ 0 ] == nleaf && leafNode[ 1 ] == nLeafNull;
+        checkArrowValidity( bb, bufs[ counts[ 1 ]++ ], leafValid );
+
+        // Leaf data.
+        int[] intSpec = getArrowIntSpec( dtype );
+        if ( dtype == DataType.CHAR || dtype == DataType.UCHAR ) {
+            int[] offBuf = bufs[ counts[ 1 ]++ ];
+            int[] dataBuf = bufs[ counts[ 1 ]++ ];
+            assert offBuf[ 1 ] == 4 * ( nleaf + 1 );
+            assert bb.getInt( offBuf[ 0 ] ) == 0;
+            assert bb.getInt( offBuf[ 0 ] + 4 * nleaf ) == dataBuf[ 1 ];
+            for ( int k = 0; k < nleaf; k++ ) {
+                if ( leafValid[ k ] && rowValid[ k / rvaleng ] ) {
+                    int off0 = bb.getInt( offBuf[ 0 ] + 4 * k );
+                    int off1 = bb.getInt( offBuf[ 0 ] + 4 * k + 4 );
+                    byte[] sbuf = new byte[ off1 - off0 ];
+                    for ( int ic = 0; ic < sbuf.length; ic++ ) {
+                        sbuf[ ic ] = bb.get( dataBuf[ 0 ] + off0 + ic );
+                    }
+                    String s = (String) leafVals[ k ];
+                    assert new String( sbuf, "UTF-8" )
+                          .equals( s == null ? "" : s );
+                }
+            }
+        }
+        else {
+            int[] dataBuf = bufs[ counts[ 1 ]++ ];
+            int width = intSpec != null ? intSpec[ 0 ] / 8
+                      : dtype == DataType.REAL4 || dtype == DataType.FLOAT
+                      ? 4 : 8;
+            assert dataBuf[ 1 ] == nleaf * width;
+            for ( int k = 0; k < nleaf; k++ ) {
+                if ( leafValid[ k ] && rowValid[ k / rvaleng ] ) {
+                    int pos = dataBuf[ 0 ] + k * width;
+                    Number rawVal = (Number) leafVals[ k ];
+                    if ( intSpec != null ) {
+                        long v = width == 1 ? bb.get( pos )
+                               : width == 2 ? bb.getShort( pos )
+                               : width == 4 ? bb.getInt( pos )
+                               : bb.getLong( pos );
+                        if ( intSpec[ 1 ] == 0 ) {
+                            v &= 0xffffffffffffffffL >>> ( 64 - 8 * width );
+                        }
+                        assert v == rawVal.longValue();
+                    }
+                    else if ( isTt ) {
+                        long unixNanos = bb.getLong( pos );
+                        long tt2k = rawVal.longValue();
+                        assert ( unixNanos - tt2k ) % 1000000 == 0;
+                    }
+                    else {
+                        double v = width == 4 ? bb.getFloat( pos )
+                                              : bb.getDouble( pos );
+                        assert Double.compare( v, rawVal.doubleValue() ) == 0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks an Arrow validity bitmap buffer.
+     */
+    private void checkArrowValidity( ByteBuffer bb, int[] buf,
+                                     boolean[] valid ) {
+        boolean allValid = true;
+        for ( int i = 0; i < valid.length; i++ ) {
+            allValid = allValid && valid[ i ];
+        }
+        if ( allValid ) {
+            assert buf[ 1 ] == 0;
+        }
+        else {
+            assert buf[ 1 ] == ( valid.length + 7 ) / 8;
+            for ( int i = 0; i < valid.length; i++ ) {
+                boolean bit = ( bb.get( buf[ 0 ] + i / 8 ) & ( 1 << i % 8 ) )
+                           != 0;
+                assert bit == valid[ i ];
+            }
+        }
+    }
+
+    /**
+     * Returns the FixedSizeList sizes with which CdfArrow represents
+     * a variable, outermost first.
+     */
+    private static int[] getArrowListSizes( Variable var ) {
+        int rvaleng = Array.getLength( var.createRawValueArray() );
+        int groupSize = var.getDataType().getGroupSize();
+        boolean hasDims = var.getShaper().getDimSizes().length > 0;
+        if ( hasDims && groupSize > 1 ) {
+            return new int[] { rvaleng / groupSize, groupSize };
+        }
+        else if ( hasDims ) {
+            return new int[] { rvaleng };
+        }
+        else if ( groupSize > 1 ) {
+            return new int[] { groupSize };
+        }
+        else {
+            return new int[ 0 ];
+        }
+    }
+
+    /**
+     * Returns the Arrow (bitWidth, isSigned) integer type corresponding
+     * to a CDF data type, or null for non-integer types.
+     */
+    private static int[] getArrowIntSpec( DataType dtype ) {
+        if ( dtype == DataType.INT1 || dtype == DataType.BYTE ) {
+            return new int[] { 8, 1 };
+        }
+        else if ( dtype == DataType.INT2 ) {
+            return new int[] { 16, 1 };
+        }
+        else if ( dtype == DataType.INT4 ) {
+            return new int[] { 32, 1 };
+        }
+        else if ( dtype == DataType.INT8 ) {
+            return new int[] { 64, 1 };
+        }
+        else if ( dtype == DataType.UINT1 ) {
+            return new int[] { 8, 0 };
+        }
+        else if ( dtype == DataType.UINT2 ) {
+            return new int[] { 16, 0 };
+        }
+        else if ( dtype == DataType.UINT4 ) {
+            return new int[] { 32, 0 };
+        }
+        else {
+            return null;
+        }
+    }
+
+    private static boolean isArrowTt2000( DataType dtype ) {
+        return dtype.getName().equals( DataType.TIME_TT2000.getName() );
+    }
+
+    /**
+     * Returns the position of an object referenced by an offset
+     * stored at a given position.
+     */
+    private static int flatTable( ByteBuffer bb, int pos ) {
+        int off = bb.getInt( pos );
+        assert off > 0 && pos + off < bb.limit();
+        return pos + off;
+    }
+
+    /**
+     * Returns the position of a table field, or -1 if it is absent,
+     * checking the table's vtable on the way.
+     */
+    private static int flatField( ByteBuffer bb, int table, int islot ) {
+        int vtable = table - bb.getInt( table );
+        assert vtable >= 0 && vtable % 2 == 0;
+        int vtSize = bb.getShort( vtable );
+        int tSize = bb.getShort( vtable + 2 );
+        assert vtSize >= 4 && vtSize % 2 == 0;
+        assert tSize >= 4 && table + tSize <= bb.limit();
+        for ( int i = 4; i < vtSize; i += 2 ) {
+            int foff = bb.getShort( vtable + i );
+            assert foff == 0 || ( foff >= 4 && foff < tSize );
+        }
+        int ioff = 4 + 2 * islot;
+        int foff = ioff < vtSize ? bb.getShort( vtable + ioff ) : 0;
+        return foff == 0 ? -1 : table + foff;
+    }
+
+    private static int flatVectorLength( ByteBuffer bb, int fieldPos ) {
+        return fieldPos < 0 ? 0 : bb.getInt( flatTable( bb, fieldPos ) );
+    }
+
+    private static int flatVectorTable( ByteBuffer bb, int fieldPos,
+                                        int index ) {
+        return flatTable( bb, flatTable( bb, fieldPos ) + 4 + 4 * index );
+    }
+
+    private static String flatString( ByteBuffer bb, int fieldPos )
+            throws IOException {
+        int pos = flatTable( bb, fieldPos );
+        byte[] sbuf = new byte[ bb.getInt( pos ) ];
+        for ( int i = 0; i < sbuf.length; i++ ) {
+            sbuf[ i ] = bb.get( pos + 4 + i );
+        }
+        assert bb.get( pos + 4 + sbuf.length ) == 0;
+        return new String( sbuf, "UTF-8" );
+    }
+
+    public void testDecimation( File cdfFile ) throws IOException {
+        CdfContent content = new CdfContent( new CdfReader( cdfFile ) );
+        VariableAttribute[] vatts = content.getVariableAttributes();
+        Variable[] vars = content.getVariables();
+        for ( Variable tvar : vars ) {
+            DataType ttype = tvar.getDataType();
+            if ( ( ttype == DataType.EPOCH || ttype == DataType.TIME_TT2000 ||
+                   ttype == DataType.EPOCH16 ) &&
+                 tvar.getRecordCount() > 0 ) {
+                int nt = tvar.getRecordCount();
+                double[] times = new double[ nt ];
+                Object twork = tvar.createRawValueArray();
+                for ( int irec = 0; irec < nt; irec++ ) {
+                    tvar.readRawRecord( irec, twork );
+                    times[ irec ] = ttype == DataType.EPOCH16
+                        ? ((double[]) twork)[ 0 ]
+                          + ((double[]) twork)[ 1 ] * 1e-12
+                        : ( (Number) Array.get( twork, 0 ) ).doubleValue();
+                }
+                boolean isSorted = true;
+                for ( int irec = 1; irec < nt; irec++ ) {
+                    isSorted = isSorted && times[ irec ] >= times[ irec - 1 ];
+                }
+                double tmin = times[ 0 ];
+                double tlast = times[ nt - 1 ];
+                double tmax = tlast + Math.max( 1, Math.abs( tlast ) * 1e-9 );
+                for ( Variable dvar : isSorted ? vars : new Variable[ 0 ] ) {
+                    if ( VariableStats.isNumeric( dvar ) &&
+                         dvar.getShaper().getRawItemCount() == 1 &&
+                         dvar.getRecordVariance() ) {
+                        checkDecimation( tvar, dvar, vatts, times,
+                                         tmin, tmax );
+                    }
+                }
+            }
+        }
+        checkDecimationFill();
+    }
+
+    private void checkDecimationFill() throws IOException {
+
+        // Write an EPOCH and a TIME_TT2000 time variable with fill times
+        // scattered and in a long run, and data values at those records
+        // that would show up if they were used.
+        int nrec = 1000;
+        double[] epochs = new double[ nrec ];
+        long[] tt2ks = new long[ nrec ];
+        double[] values = new double[ nrec ];
+        boolean[] isFill = new boolean[ nrec ];
+        for ( int irec = 0; irec < nrec; irec++ ) {
+            isFill[ irec ] = ( irec >= 400 && irec < 720 ) || irec % 97 == 5;
+            epochs[ irec ] = isFill[ irec ] ? -1e31 : 1000. * irec;
+            tt2ks[ irec ] = isFill[ irec ]
+                          ? Long.MIN_VALUE + irec % 2
+                          : 1000000000L * irec;
+            values[ irec ] = isFill[ irec ] ? 1e6 : ( irec * 37 ) % 101;
+        }
+        File file = File.createTempFile( "jcdf", ".cdf" );
+        file.deleteOnExit();
+        CdfWriter writer = new CdfWriter( file );
+        CdfWriter.VariableWriter ew =
+            writer.addVariable( "epoch", DataType.EPOCH, 1, new int[ 0 ],
+                                new boolean[ 0 ], true, 64 );
+        ew.appendRecords( epochs, nrec );
+        CdfWriter.VariableWriter tw =
+            writer.addVariable( "tt2000", DataType.TIME_TT2000, 1,
+                                new int[ 0 ], new boolean[ 0 ], true, 64 );
+        tw.appendRecords( tt2ks, nrec );
+        CdfWriter.VariableWriter vw =
+            writer.addVariable( "value", DataType.DOUBLE, 1, new int[ 0 ],
+                                new boolean[ 0 ], true, 100 );
+        vw.appendRecords( values, nrec );
+        writer.addAttribute( "FILLVAL", false )
+              .setVariableEntry( ew, DataType.EPOCH, new double[] { -1e31 } );
+        writer.close();
+        CdfContent content = new CdfContent( new CdfReader( file ) );
+        VariableAttribute[] vatts = content.getVariableAttributes();
+        Variable[] vars = content.getVariables();
+        Variable evar = vars[ 0 ];
+        Variable tvar = vars[ 1 ];
+        Variable dvar = vars[ 2 ];
+        double[][] ranges = new double[][] {
+            { 0, 1e3 * nrec },
+            { 450e3, 800e3 },
+            { 100e3, 405e3 },
+            { -1e300, 1e300 },
+        };
+        for ( double[] range : ranges ) {
+            checkDecimationFill( evar, dvar, vatts, isFill, values,
+                                 range[ 0 ], range[ 1 ], 1e3 );
+            checkDecimationFill( tvar, dvar, vatts, isFill, values,
+                                 range[ 0 ] * 1e6, range[ 1 ] * 1e6, 1e9 );
+        }
+    }
+
+    private void checkDecimationFill( Variable tvar, Variable dvar,
+                                      VariableAttribute[] vatts,
+                                      boolean[] isFill, double[] values,
+                                      double tmin, double tmax, double step )
+            throws IOException {
+        for ( int nb : new int[] { 1, 4 } ) {
+            for ( int nthread : new int[] { 1, 3 } ) {
+                Decimation dec = Decimation.calculate( tvar, dvar, vatts,
+                                                       tmin, tmax, nb,
+                                                       nthread );
+                long[] counts = new long[ nb ];
+                double[] mins = new double[ nb ];
+                double[] maxs = new double[ nb ];
+                double[] firsts = new double[ nb ];
+                double[] lasts = new double[ nb ];
+                for ( int irec = 0; irec < isFill.length; irec++ ) {
+                    double t = step * irec;
+                    if ( ! isFill[ irec ] && t >= tmin && t < tmax ) {
+                        double v = values[ irec ];
+                        int ib = Math.min( (int) ( ( t - tmin ) * nb
+                                                   / ( tmax - tmin ) ),
+                                           nb - 1 );
+                        if ( counts[ ib ]++ == 0 ) {
+                            firsts[ ib ] = v;
+                            mins[ ib ] = v;
+                            maxs[ ib ] = v;
+                        }
+                        mins[ ib ] = Math.min( mins[ ib ], v );
+                        maxs[ ib ] = Math.max( maxs[ ib ], v );
+                        lasts[ ib ] = v;
+                    }
+                }
+                for ( int ib = 0; ib < nb; ib++ ) {
+                    assert dec.getCount( ib ) == counts[ ib ];
+                    if ( counts[ ib ] > 0 ) {
+                        assert dec.getFirstValue( ib ) == firsts[ ib ];
+                        assert dec.getLastValue( ib ) == lasts[ ib ];
+                        assert dec.getMinValue( ib ) == mins[ ib ];
+                        assert dec.getMaxValue( ib ) == maxs[ ib ];
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkDecimation( Variable tvar, Variable dvar,
+                                  VariableAttribute[] vatts, double[] times,
+                                  double tmin, double tmax )
+            throws IOException {
+        VariableStats validity =
+            VariableStats.createAccumulator( dvar, vatts );
+        int nrec = Math.min( times.length, dvar.getRecordCount() );
+        Object dwork = dvar.createRawValueArray();
+        for ( int nb : new int[] { 1, 3, 7 } ) {
+            Decimation d1 =
+                Decimation.calculate( tvar, dvar, vatts, tmin, tmax, nb, 1 );
+            Decimation d3 =
+                Decimation.calculate( tvar, dvar, vatts, tmin, tmax, nb, 3 );
+            assert d1.getBucketCount() == nb;
+            long[] counts = new long[ nb ];
+            double[] mins = new double[ nb ];
+            double[] maxs = new double[ nb ];
+            double[] lasts = new double[ nb ];
+            for ( int irec = 0; irec < nrec; irec++ ) {
+                dvar.readRawRecord( irec, dwork );
+                double v = ( (Number) Array.get( dwork, 0 ) ).doubleValue();
+                double t = times[ irec ];
+                if ( validity.isValid( v ) ) {
+                    int ib = Math.min( (int) ( ( t - tmin ) * nb
+                                               / ( tmax - tmin ) ), nb - 1 );
+                    if ( counts[ ib ]++ == 0 ) {
+                        assert d1.getFirstValue( ib ) == v;
+                        assert d1.getFirstTime( ib ) == t;
+                        mins[ ib ] = v;
+                        maxs[ ib ] = v;
+                    }
+                    mins[ ib ] = Math.min( mins[ ib ], v );
+                    maxs[ ib ] = Math.max( maxs[ ib ], v );
+                    lasts[ ib ] = v;
+                }
+            }
+            for ( int ib = 0; ib < nb; ib++ ) {
+                assert d1.getCount( ib ) == counts[ ib ];
+                assert d3.getCount( ib ) == counts[ ib ];
+                if ( counts[ ib ] > 0 ) {
+                    assert d1.getMinValue( ib ) == mins[ ib ];
+                    assert d1.getMaxValue( ib ) == maxs[ ib ];
+                    assert d1.getLastValue( ib ) == lasts[ ib ];
+                    assert d3.getMinValue( ib ) == mins[ ib ];
+                    assert d3.getMaxValue( ib ) == maxs[ ib ];
+                    assert d3.getLastValue( ib ) == lasts[ ib ];
+                    assert d3.getFirstValue( ib ) == d1.getFirstValue( ib );
+                    assert d3.getMinTime( ib ) == d1.getMinTime( ib );
+                }
+            }
+        }
+    }
+
+    private void checkSameStats( VariableStats s1, VariableStats s2 ) {
+        assert s1.getCount() == s2.getCount();
+        assert s1.getNanCount() == s2.getNanCount();
+        assert s1.getFillCount() == s2.getFillCount();
+        assert s1.getInvalidCount() == s2.getInvalidCount();
+        assert Double.compare( s1.getMin(), s2.getMin() ) == 0;
+        assert Double.compare( s1.getMax(), s2.getMax() ) == 0;
+        double m1 = s1.getMean();
+        double m2 = s2.getMean();
+        double scale = Math.max( Math.abs( s1.getMin() ),
+                                 Math.abs( s1.getMax() ) );
+        assert Double.isNaN( m1 ) ? Double.isNaN( m2 )
+                                  : Math.abs( m1 - m2 )
+                                    <= 1e-9 * Math.max( 1, scale );
+    }
+
+    private void checkSameData( CdfContent content0, CdfContent content1 )
+            throws IOException {
+        Variable[] vars0 = content0.getVariables();
+        Variable[] vars1 = content1.getVariables();
+        assert vars1.length == vars0.length;
+        for ( int iv = 0; iv < vars0.length; iv++ ) {
+            Variable var0 = vars0[ iv ];
+            Variable var1 = vars1[ iv ];
+            int nrec = var0.getRecordCount();
+            assert var1.getRecordCount() == nrec;
+            Object work0 = var0.createRawValueArray();
+            Object work1 = var1.createRawValueArray();
+            for ( int irec = 0; irec < nrec; irec++ ) {
+                Object v0 = var0.readShapedRecord( irec, true, work0 );
+                Object v1 = var1.readShapedRecord( irec, true, work1 );
+                assert Arrays.deepEquals( new Object[] { v0 },
+                                          new Object[] { v1 } );
+            }
+        }
+    }
+
+    public void testShapers() {
+        int[] dims = new int[] { 3, 4, 5 };
+        boolean[][] varyss = new boolean[][] {
+            { true, true, true },
+            { true, false, true },
+            { false, true, false },
+        };
+        for ( boolean[] varys : varyss ) {
+            for ( boolean rawRowMajor : new boolean[] { true, false } ) {
+                Shaper shaper =
+                    Shaper.createShaper( DataType.INT4, dims, varys,
+                                         rawRowMajor );
+                int nraw = shaper.getRawItemCount();
+                int[] raw = intSequence( 100, 1, nraw );
+                for ( boolean rowMajor : new boolean[] { true, false } ) {
+                    int[] shaped = (int[]) shaper.shape( raw, rowMajor );
+                    int[] work = (int[]) shaper.createShapedArray();
+                    assert shaper.shape( raw, rowMajor, work ) == work;
+                    assert Arrays.equals( shaped, work );
+                    int ix = 0;
+                    int[] coords = new int[ 3 ];
+                    for ( int i = 0; i < dims[ rowMajor ? 0 : 2 ]; i++ ) {
+                        for ( int j = 0; j < dims[ 1 ]; j++ ) {
+                            for ( int k = 0; k < dims[ rowMajor ? 2 : 0 ];
+                                  k++ ) {
+                                coords[ 0 ] = rowMajor ? i : k;
+                                coords[ 1 ] = j;
+                                coords[ 2 ] = rowMajor ? k : i;
+                                assert shaped[ ix++ ] ==
+                                       raw[ shaper.getArrayIndex( coords ) ];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        Shaper scalar = Shaper.createShaper( DataType.REAL8, new int[ 0 ],
+                                             new boolean[ 0 ], true );
+        assert scalar.createShapedArray() == null;
+        assert new Double( 2.5 )
+              .equals( scalar.shape( new double[] { 2.5 }, true, null ) );
     }
 
     private Object readShapedRecord( Variable var, int irec, boolean rowMajor )
             throws IOException {
-        return var.readShapedRecord( irec, rowMajor,
-                                     var.createRawValueArray() );
+        Object shaped = var.readShapedRecord( irec, rowMajor,
+                                              var.createRawValueArray() );
+        Object dest = var.createShapedValueArray();
+        Object shaped2 = var.readShapedRecord( irec, rowMajor,
+                                               var.createRawValueArray(),
+                                               dest );
+        assert Arrays.deepEquals( new Object[] { shaped },
+                                  new Object[] { shaped2 } );
+        assert dest == null || shaped == null || shaped2 == dest;
+        return shaped;
     }
 
     private Object readShapedRecord( Variable var, int irec )
@@ -281,6 +2951,52 @@ public class ExampleTest {
         return readShapedRecord( var, irec, true );
     }
 
+    private void checkBulkRead( Variable var ) throws IOException {
+        int nrec = var.getRecordCount() + 3;
+        Object rec = var.createRawValueArray();
+        int rvaleng = Array.getLength( rec );
+        for ( int nbatch : new int[] { 1, 2, 5, nrec } ) {
+            Object bulk = var.createRawValueArray( nbatch );
+            int irec = 0;
+            while ( irec < nrec ) {
+                int nread = var.readRawRecords( irec, nbatch, bulk );
+                assert nread >= 1 && nread <= nbatch;
+                boolean hasRec = var.hasRecord( irec );
+                for ( int i = 0; i < nread; i++ ) {
+                    assert var.hasRecord( irec + i ) == hasRec;
+                    var.readRawRecord( irec + i, rec );
+                    Object[] recVals = new Object[ rvaleng ];
+                    Object[] bulkVals = new Object[ rvaleng ];
+                    for ( int j = 0; j < rvaleng; j++ ) {
+                        recVals[ j ] = Array.get( rec, j );
+                        bulkVals[ j ] = Array.get( bulk, i * rvaleng + j );
+                    }
+                    assert Arrays.equals( recVals, bulkVals );
+                }
+                irec += nread;
+            }
+        }
+
+        // Assemble all the records in one array using offset reads,
+        // and compare with single-record reads.
+        Object all = var.createRawValueArray( nrec );
+        Object allWork = var.createRawValueArray( nrec );
+        int nr = 0;
+        while ( nr < nrec ) {
+            nr += var.readRawRecords( nr, nrec - nr, all, nr * rvaleng,
+                                      allWork );
+        }
+        assert nr == nrec;
+        for ( int irec = 0; irec < nrec; irec++ ) {
+            var.readRawRecord( irec, rec );
+            for ( int j = 0; j < rvaleng; j++ ) {
+                Object v1 = Array.get( rec, j );
+                Object v2 = Array.get( all, irec * rvaleng + j );
+                assert v1 == null ? v2 == null : v1.equals( v2 );
+            }
+        }
+    }
+
     private short[] shortSequence( int start, int step, int count ) {
         short[] array = new short[ count ];
         for ( int i = 0; i < count; i++ ) {
@@ -307,6 +3023,17 @@ public class ExampleTest {
         return vals;
     }
 
+    private static void copyFile( File in, File out ) throws IOException {
+        FileInputStream fin = new FileInputStream( in );
+        FileOutputStream fout = new FileOutputStream( out );
+        byte[] buf = new byte[ 8192 ];
+        for ( int n; ( n = fin.read( buf ) ) >= 0; ) {
+            fout.write( buf, 0, n );
+        }
+        fin.close();
+        fout.close();
+    }
+
     private static boolean checkAssertions() {
         assertionsOn_ = true;
         return true;
@@ -351,5 +3078,62 @@ public class ExampleTest {
         extest.testExample1( ex1 );
         extest.testExample2( ex2 );
         extest.testTest( test );
+        extest.testTail( test );
+        extest.testIndex( ex1 );
+        extest.testIndex( ex2 );
+        extest.testIndex( test );
+        extest.testCatalog( test );
+        extest.testPrefetch( ex1 );
+        extest.testPrefetch( ex2 );
+        extest.testPrefetch( test );
+        extest.testBufOptions( ex1 );
+        extest.testBufOptions( ex2 );
+        extest.testBufOptions( test );
+        extest.testMetrics( ex1 );
+        extest.testMetrics( ex2 );
+        extest.testMetrics( test );
+        extest.testStats( ex1 );
+        extest.testStats( ex2 );
+        extest.testStats( test );
+        extest.testDecimation( ex1 );
+        extest.testDecimation( ex2 );
+        extest.testDecimation( test );
+        extest.testZoneMap( ex1 );
+        extest.testZoneMap( ex2 );
+        extest.testZoneMap( test );
+        extest.testFilter( ex1 );
+        extest.testFilter( ex2 );
+        extest.testFilter( test );
+        extest.testRecordRanges( ex1 );
+        extest.testRecordRanges( ex2 );
+        extest.testRecordRanges( test );
+        extest.testSplit( ex1 );
+        extest.testSplit( ex2 );
+        extest.testSplit( test );
+        extest.testPublisher( ex1 );
+        extest.testPublisher( ex2 );
+        extest.testPublisher( test );
+        extest.testHyperslab( ex1 );
+        extest.testHyperslab( ex2 );
+        extest.testHyperslab( test );
+        extest.testRowBatch( ex1 );
+        extest.testRowBatch( ex2 );
+        extest.testRowBatch( test );
+        extest.testAlignment( ex1 );
+        extest.testAlignment( ex2 );
+        extest.testAlignment( test );
+        extest.testWriter( ex1 );
+        extest.testWriter( ex2 );
+        extest.testWriter( test );
+        extest.testList( ex1 );
+        extest.testList( ex2 );
+        extest.testList( test );
+        extest.testCsv( ex1 );
+        extest.testCsv( ex2 );
+        extest.testCsv( test );
+        extest.testArrow( ex1 );
+        extest.testArrow( ex2 );
+        extest.testArrow( test );
+        extest.testShapers();
     }
 }
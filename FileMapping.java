@@ -0,0 +1,90 @@
+package uk.ac.bristol.star.cdf.record;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the content of a file which may be growing into Bufs.
+ * The file is mapped in fixed-size banks.
+ * Each call to {@link #createBuf} returns a Buf covering the whole
+ * of the file at its current length; banks that were already complete
+ * at the time of an earlier call are reused, so only the final partial
+ * bank and any data appended since then need to be mapped again.
+ *
+ * <p>Bufs returned by earlier calls remain usable,
+ * and continue to cover the file as it was at the time they were created.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class FileMapping {
+
+    private final FileInputStream in_;
+    private final FileChannel channel_;
+    private final int bankSize_;
+    private final List<ByteBuffer> fullBanks_;
+
+    /**
+     * Constructor.
+     *
+     * @param  file  file to map
+     * @param  bankSize  size of each mapped bank in bytes
+     */
+    public FileMapping( File file, int bankSize ) throws IOException {
+        in_ = new FileInputStream( file );
+        channel_ = in_.getChannel();
+        bankSize_ = bankSize;
+        fullBanks_ = new ArrayList<ByteBuffer>();
+    }
+
+    /**
+     * Returns the current length of the mapped file.
+     *
+     * @return   file length in bytes
+     */
+    public long getLength() throws IOException {
+        return channel_.size();
+    }
+
+    /**
+     * Returns a Buf covering the current content of the file.
+     * If the file has shrunk since the last call, all banks are
+     * mapped afresh.
+     *
+     * @param   isBit64  64bit-ness of buf
+     * @param   isBigendian   true for big-endian data, false for little-endian
+     * @return  new buf
+     */
+    public synchronized Buf createBuf( boolean isBit64, boolean isBigendian )
+            throws IOException {
+        long leng = channel_.size();
+        long mapped = fullBanks_.size() * (long) bankSize_;
+        if ( leng < mapped ) {
+            fullBanks_.clear();
+            mapped = 0;
+        }
+        while ( leng - mapped >= bankSize_ ) {
+            fullBanks_.add( Bufs.map( channel_, mapped, bankSize_ ) );
+            mapped += bankSize_;
+        }
+        List<ByteBuffer> banks = new ArrayList<ByteBuffer>( fullBanks_ );
+        if ( leng > mapped ) {
+            banks.add( Bufs.map( channel_, mapped, leng - mapped ) );
+        }
+        return Bufs.createBuf( banks.toArray( new ByteBuffer[ 0 ] ),
+                               isBit64, isBigendian );
+    }
+
+    /**
+     * Closes the underlying file.
+     * Existing mappings remain valid.
+     */
+    public void close() throws IOException {
+        in_.close();
+    }
+}
@@ -0,0 +1,354 @@
+package uk.ac.bristol.star.cdf.util;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Minimal builder for FlatBuffers-encoded byte arrays.
+ * This provides just enough of the FlatBuffers wire format to write
+ * the metadata structures required by the Arrow IPC format,
+ * so that no external library is required.
+ *
+ * <p>As with the reference FlatBuffers implementation, the buffer is
+ * written back to front, so that child objects (strings, vectors and
+ * tables) must be completed before the table that refers to them is
+ * started.  Offsets returned by the <code>create*</code>,
+ * <code>end*</code> methods are measured from the end of the buffer,
+ * and are only meaningful to the builder instance that returned them.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+class FlatBuilder {
+
+    private byte[] buf_;
+    private int space_;
+    private int minAlign_;
+    private int[] vtable_;
+    private int objectStart_;
+    private int vectorCount_;
+
+    /**
+     * Constructor.
+     *
+     * @param  initSize  initial buffer size in bytes; grows as required
+     */
+    public FlatBuilder( int initSize ) {
+        buf_ = new byte[ Math.max( initSize, 16 ) ];
+        space_ = buf_.length;
+        minAlign_ = 1;
+    }
+
+    /**
+     * Returns the current offset, measured from the end of the buffer.
+     *
+     * @return  offset of the most recently written byte
+     */
+    public int offset() {
+        return buf_.length - space_;
+    }
+
+    /**
+     * Writes a string.
+     *
+     * @param  txt  string content
+     * @return  offset of string
+     */
+    public int createString( String txt ) {
+        byte[] bytes = toUtf8( txt );
+        addByte( (byte) 0 );
+        startVector( 1, bytes.length, 1 );
+        space_ -= bytes.length;
+        System.arraycopy( bytes, 0, buf_, space_, bytes.length );
+        return endVector();
+    }
+
+    /**
+     * Writes a vector of offsets to previously written objects.
+     *
+     * @param  offsets  object offsets, in vector order
+     * @return  offset of vector
+     */
+    public int createOffsetVector( int[] offsets ) {
+        startVector( 4, offsets.length, 4 );
+        for ( int i = offsets.length - 1; i >= 0; i-- ) {
+            addOffset( offsets[ i ] );
+        }
+        return endVector();
+    }
+
+    /**
+     * Writes a vector of structs each consisting of a fixed number
+     * of 8-byte integer fields.
+     *
+     * @param  structs  array of structs, each an array of field values
+     *                  in declaration order
+     * @param  nfield   number of long fields per struct
+     * @return  offset of vector
+     */
+    public int createLongStructVector( long[][] structs, int nfield ) {
+        int size = 8 * nfield;
+        startVector( size, structs.length, 8 );
+        for ( int is = structs.length - 1; is >= 0; is-- ) {
+            prep( 8, size );
+            for ( int jf = nfield - 1; jf >= 0; jf-- ) {
+                putLong( structs[ is ][ jf ] );
+            }
+        }
+        return endVector();
+    }
+
+    /**
+     * Starts a vector.  The caller must write exactly <code>n</code>
+     * elements, last element first, and then call {@link #endVector}.
+     *
+     * @param  elSize  size of each element in bytes
+     * @param  n   number of elements
+     * @param  alignment  alignment required for elements
+     */
+    public void startVector( int elSize, int n, int alignment ) {
+        prep( 4, elSize * n );
+        prep( alignment, elSize * n );
+        vectorCount_ = n;
+    }
+
+    /**
+     * Ends a vector started with {@link #startVector}.
+     *
+     * @return  offset of vector
+     */
+    public int endVector() {
+        putInt( vectorCount_ );
+        return offset();
+    }
+
+    /**
+     * Starts a table.
+     *
+     * @param  nfield  number of fields (slots) declared in the table schema
+     */
+    public void startTable( int nfield ) {
+        vtable_ = new int[ nfield ];
+        objectStart_ = offset();
+    }
+
+    /**
+     * Adds a boolean field to the current table, unless it has the
+     * default value.
+     *
+     * @param  islot  field index
+     * @param  value  value
+     * @param  dflt   schema default value
+     */
+    public void addBoolean( int islot, boolean value, boolean dflt ) {
+        if ( value != dflt ) {
+            addByte( (byte) ( value ? 1 : 0 ) );
+            vtable_[ islot ] = offset();
+        }
+    }
+
+    /**
+     * Adds a byte field to the current table, unless it has the
+     * default value.
+     *
+     * @param  islot  field index
+     * @param  value  value
+     * @param  dflt   schema default value
+     */
+    public void addByte( int islot, byte value, byte dflt ) {
+        if ( value != dflt ) {
+            addByte( value );
+            vtable_[ islot ] = offset();
+        }
+    }
+
+    /**
+     * Adds a short field to the current table, unless it has the
+     * default value.
+     *
+     * @param  islot  field index
+     * @param  value  value
+     * @param  dflt   schema default value
+     */
+    public void addShort( int islot, short value, short dflt ) {
+        if ( value != dflt ) {
+            addShort( value );
+            vtable_[ islot ] = offset();
+        }
+    }
+
+    /**
+     * Adds an int field to the current table, unless it has the
+     * default value.
+     *
+     * @param  islot  field index
+     * @param  value  value
+     * @param  dflt   schema default value
+     */
+    public void addInt( int islot, int value, int dflt ) {
+        if ( value != dflt ) {
+            addInt( value );
+            vtable_[ islot ] = offset();
+        }
+    }
+
+    /**
+     * Adds a long field to the current table, unless it has the
+     * default value.
+     *
+     * @param  islot  field index
+     * @param  value  value
+     * @param  dflt   schema default value
+     */
+    public void addLong( int islot, long value, long dflt ) {
+        if ( value != dflt ) {
+            prep( 8, 0 );
+            putLong( value );
+            vtable_[ islot ] = offset();
+        }
+    }
+
+    /**
+     * Adds a reference to a previously written object as a field
+     * of the current table.
+     *
+     * @param  islot  field index
+     * @param  off   object offset
+     */
+    public void addOffset( int islot, int off ) {
+        addOffset( off );
+        vtable_[ islot ] = offset();
+    }
+
+    /**
+     * Ends the current table, writing its vtable.
+     *
+     * @return  offset of table
+     */
+    public int endTable() {
+        addInt( 0 );
+        int tableOff = offset();
+        int nslot = vtable_.length;
+        while ( nslot > 0 && vtable_[ nslot - 1 ] == 0 ) {
+            nslot--;
+        }
+        for ( int i = nslot - 1; i >= 0; i-- ) {
+            int fieldOff = vtable_[ i ];
+            addShort( (short) ( fieldOff == 0 ? 0 : tableOff - fieldOff ) );
+        }
+        addShort( (short) ( tableOff - objectStart_ ) );
+        addShort( (short) ( ( nslot + 2 ) * 2 ) );
+        int vtableOff = offset();
+        writeIntAt( buf_.length - tableOff, vtableOff - tableOff );
+        vtable_ = null;
+        return tableOff;
+    }
+
+    /**
+     * Finishes the buffer by writing the root table reference.
+     * No further writes may be made after this call.
+     *
+     * @param  rootTable  offset of root table
+     * @return   encoded buffer contents
+     */
+    public byte[] finish( int rootTable ) {
+        prep( minAlign_, 4 );
+        addOffset( rootTable );
+        byte[] out = new byte[ offset() ];
+        System.arraycopy( buf_, space_, out, 0, out.length );
+        return out;
+    }
+
+    /**
+     * Prepares to write an item of a given size, after a given number
+     * of additional bytes, by adding padding so that the item will
+     * be aligned.
+     *
+     * @param  size  size of item to be written, also its alignment
+     * @param  additional  number of bytes to be written after the padding
+     *                     and before the item
+     */
+    private void prep( int size, int additional ) {
+        if ( size > minAlign_ ) {
+            minAlign_ = size;
+        }
+        int npad = ( ~( offset() + additional ) + 1 ) & ( size - 1 );
+        while ( space_ < npad + size + additional ) {
+            grow();
+        }
+        space_ -= npad;
+    }
+
+    /**
+     * Doubles the size of the buffer, keeping the written content at
+     * the end.
+     */
+    private void grow() {
+        int oldSize = buf_.length;
+        byte[] buf = new byte[ oldSize * 2 ];
+        System.arraycopy( buf_, 0, buf, oldSize, oldSize );
+        buf_ = buf;
+        space_ += oldSize;
+    }
+
+    private void addByte( byte value ) {
+        prep( 1, 0 );
+        buf_[ --space_ ] = value;
+    }
+
+    private void addShort( short value ) {
+        prep( 2, 0 );
+        space_ -= 2;
+        buf_[ space_ ] = (byte) value;
+        buf_[ space_ + 1 ] = (byte) ( value >> 8 );
+    }
+
+    private void addInt( int value ) {
+        prep( 4, 0 );
+        putInt( value );
+    }
+
+    private void addOffset( int off ) {
+        prep( 4, 0 );
+        putInt( offset() - off + 4 );
+    }
+
+    private void putInt( int value ) {
+        space_ -= 4;
+        writeIntAt( space_, value );
+    }
+
+    private void putLong( long value ) {
+        space_ -= 8;
+        writeIntAt( space_, (int) value );
+        writeIntAt( space_ + 4, (int) ( value >> 32 ) );
+    }
+
+    /**
+     * Writes a little-endian int at a given absolute position
+     * in the buffer.
+     *
+     * @param  pos  buffer index
+     * @param  value  value
+     */
+    private void writeIntAt( int pos, int value ) {
+        buf_[ pos ] = (byte) value;
+        buf_[ pos + 1 ] = (byte) ( value >> 8 );
+        buf_[ pos + 2 ] = (byte) ( value >> 16 );
+        buf_[ pos + 3 ] = (byte) ( value >> 24 );
+    }
+
+    /**
+     * Encodes a string as UTF-8.
+     *
+     * @param  txt  string
+     * @return  UTF-8 bytes
+     */
+    static byte[] toUtf8( String txt ) {
+        try {
+            return txt.getBytes( "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e ) {
+            throw new AssertionError( e );
+        }
+    }
+}
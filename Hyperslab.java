@@ -0,0 +1,286 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import uk.ac.bristol.star.cdf.record.Buf;
+import uk.ac.bristol.star.cdf.record.CdfMetrics;
+import uk.ac.bristol.star.cdf.record.Metrics;
+import uk.ac.bristol.star.cdf.record.RecordMap;
+
+/**
+ * Reads a rectangular sub-array of the values of a dimensioned variable
+ * from a regular selection of its records.
+ *
+ * <p>The selection within each record is given by a start index and
+ * count for each dimension.  The offsets of the selected items within
+ * a stored record are worked out from the variable's {@link Shaper},
+ * taking account of majority and dimension variance, and merged into
+ * runs of items that are contiguous in the file.  Only those runs are
+ * read from the data buffer, so for instance extracting a single channel
+ * from each record of a large 3-d variable reads only a small fraction
+ * of its bytes.
+ *
+ * <p>The values for each record are returned in the raw form
+ * used by {@link Variable#readRawRecord Variable.readRawRecord},
+ * as if the variable had dimension sizes given by the counts
+ * (and the same dimension variances and majority).
+ * The shaper from {@link #getShaper} can be used to turn them
+ * into shaped values.
+ *
+ * <p>Records which are not stored in the file (for instance
+ * sparse records) are read in full using <code>readRawRecord</code>,
+ * which supplies the appropriate pad or previous value,
+ * and the selected items are copied from that.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class Hyperslab {
+
+    private final Variable var_;
+    private final int[] dimStarts_;
+    private final int[] dimCounts_;
+    private final DataType dataType_;
+    private final int numElems_;
+    private final int grpSize_;
+    private final int itemSize_;
+    private final int nitem_;
+    private final int[] runStarts_;
+    private final int[] runLengths_;
+    private final int maxRun_;
+    private final Shaper shaper_;
+
+    /**
+     * Constructor.
+     *
+     * @param  var  variable
+     * @param  dimStarts  index of first selected item in each dimension
+     * @param  dimCounts  number of selected items in each dimension
+     * @throws  IllegalArgumentException  if the selection is out of range
+     */
+    public Hyperslab( Variable var, int[] dimStarts, int[] dimCounts ) {
+        Shaper vshaper = var.getShaper();
+        int[] dimSizes = vshaper.getDimSizes();
+        boolean[] dimVarys = vshaper.getDimVarys();
+        int ndim = dimSizes.length;
+        if ( dimStarts.length != ndim || dimCounts.length != ndim ) {
+            throw new IllegalArgumentException( "Dimensionality mismatch" );
+        }
+        for ( int id = 0; id < ndim; id++ ) {
+            int start = dimStarts[ id ];
+            int count = dimCounts[ id ];
+            if ( start < 0 || count < 0 || start + count > dimSizes[ id ] ) {
+                throw new IllegalArgumentException( "Selection out of range"
+                                                  + " in dimension " + id );
+            }
+        }
+        var_ = var;
+        dimStarts_ = dimStarts.clone();
+        dimCounts_ = dimCounts.clone();
+        dataType_ = var.getDataType();
+        numElems_ = var.getDescriptor().numElems;
+        grpSize_ = dataType_.getGroupSize();
+        itemSize_ = dataType_.getByteCount() * numElems_;
+
+        // Find the raw stride of each dimension along which the raw
+        // values actually vary, and order them fastest first.
+        int[] strides = new int[ ndim ];
+        List<Integer> idims = new ArrayList<Integer>();
+        for ( int id = 0; id < ndim; id++ ) {
+            if ( dimVarys[ id ] && dimSizes[ id ] > 1 ) {
+                int[] unit = new int[ ndim ];
+                unit[ id ] = 1;
+                strides[ id ] = vshaper.getArrayIndex( unit ) / grpSize_;
+                int ipos = 0;
+                while ( ipos < idims.size() &&
+                        strides[ idims.get( ipos ).intValue() ]
+                        < strides[ id ] ) {
+                    ipos++;
+                }
+                idims.add( ipos, new Integer( id ) );
+            }
+        }
+        int nvd = idims.size();
+        boolean rowMajor = nvd < 2 || idims.get( 0 ).intValue() >
+                                      idims.get( 1 ).intValue();
+        shaper_ = Shaper.createShaper( dataType_, dimCounts_, dimVarys,
+                                       rowMajor );
+        int nitem = 1;
+        for ( int id = 0; id < ndim; id++ ) {
+            if ( dimVarys[ id ] ) {
+                nitem *= dimCounts_[ id ];
+            }
+        }
+        nitem_ = nitem;
+
+        // Work out the runs of contiguous raw items to read from each
+        // record, by iterating over the selected coordinates in raw order
+        // with the fastest varying dimension covered by each run.
+        int[] starts = new int[ nitem ];
+        int[] lengths = new int[ nitem ];
+        int nrun = 0;
+        if ( nitem > 0 ) {
+            int runLeng = nvd > 0 ? dimCounts_[ idims.get( 0 ).intValue() ]
+                                  : 1;
+            assert nvd == 0 || strides[ idims.get( 0 ).intValue() ] == 1;
+            int[] coords = new int[ ndim ];
+            for ( int id = 0; id < ndim; id++ ) {
+                coords[ id ] = dimVarys[ id ] ? dimStarts_[ id ] : 0;
+            }
+            for ( boolean done = false; ! done; ) {
+                int start = vshaper.getArrayIndex( coords ) / grpSize_;
+                if ( nrun > 0 &&
+                     starts[ nrun - 1 ] + lengths[ nrun - 1 ] == start ) {
+                    lengths[ nrun - 1 ] += runLeng;
+                }
+                else {
+                    starts[ nrun ] = start;
+                    lengths[ nrun ] = runLeng;
+                    nrun++;
+                }
+
+                // Advance the coordinates of the slower dimensions.
+                done = true;
+                for ( int iv = 1; iv < nvd && done; iv++ ) {
+                    int id = idims.get( iv ).intValue();
+                    int end = dimStarts_[ id ] + dimCounts_[ id ];
+                    if ( ++coords[ id ] < end ) {
+                        done = false;
+                    }
+                    else {
+                        coords[ id ] = dimStarts_[ id ];
+                    }
+                }
+            }
+        }
+        runStarts_ = new int[ nrun ];
+        runLengths_ = new int[ nrun ];
+        System.arraycopy( starts, 0, runStarts_, 0, nrun );
+        System.arraycopy( lengths, 0, runLengths_, 0, nrun );
+        int maxRun = 0;
+        for ( int ir = 0; ir < nrun; ir++ ) {
+            maxRun = Math.max( maxRun, runLengths_[ ir ] );
+        }
+        maxRun_ = maxRun;
+    }
+
+    /**
+     * Returns the variable this hyperslab reads from.
+     *
+     * @return  variable
+     */
+    public Variable getVariable() {
+        return var_;
+    }
+
+    /**
+     * Returns the number of raw items read for each record.
+     *
+     * @return  raw item count per record
+     */
+    public int getRawItemCount() {
+        return nitem_;
+    }
+
+    /**
+     * Returns the number of separate runs of items read from
+     * each stored record.
+     *
+     * @return  run count per record
+     */
+    public int getRunCount() {
+        return runStarts_.length;
+    }
+
+    /**
+     * Returns a shaper which can turn the values read for one record
+     * into a shaped array with dimensions given by the selection counts.
+     *
+     * @return  shaper for selected values
+     */
+    public Shaper getShaper() {
+        return shaper_;
+    }
+
+    /**
+     * Creates an array big enough to hold the selected values for
+     * a given number of records.
+     *
+     * @param  nrec  number of records
+     * @return  new raw value array
+     */
+    public Object createValueArray( int nrec ) {
+        return Array.newInstance( dataType_.getArrayElementClass(),
+                                  nrec * nitem_ * grpSize_ );
+    }
+
+    /**
+     * Reads the selected values from a regular sequence of records.
+     * The values for each record are written one after another
+     * starting at element zero of the array.
+     *
+     * @param  recStart  index of first record
+     * @param  recCount  number of records
+     * @param  recStride  step between record indices, at least 1
+     * @param  valueArray  array as obtained from {@link #createValueArray}
+     *                     with an argument of at least <code>recCount</code>
+     */
+    public void readRecords( int recStart, int recCount, int recStride,
+                             Object valueArray ) throws IOException {
+        if ( recStride < 1 ) {
+            throw new IllegalArgumentException( "Bad stride " + recStride );
+        }
+        RecordMap recMap = var_.readRecordMap();
+        boolean isVarying = var_.getRecordVariance();
+        int nel = nitem_ * grpSize_;
+        Object runWork =
+            Array.newInstance( dataType_.getArrayElementClass(),
+                               maxRun_ * grpSize_ );
+        Object recWork = null;
+        long nbyte = 0;
+        for ( int ir = 0; ir < recCount; ir++ ) {
+            int irec = recStart + ir * recStride;
+            int ipos = ir * nel;
+            int ient = isVarying && var_.hasRecord( irec )
+                     ? recMap.getEntryIndex( irec )
+                     : -1;
+
+            // Stored record: read just the required runs.
+            if ( ient >= 0 ) {
+                Buf buf = recMap.getBuf( ient );
+                long recOffset = recMap.getOffset( ient, irec );
+                for ( int iu = 0; iu < runStarts_.length; iu++ ) {
+                    int leng = runLengths_[ iu ];
+                    long off = recOffset
+                             + runStarts_[ iu ] * (long) itemSize_;
+                    dataType_.readValues( buf, off, numElems_, runWork, leng );
+                    System.arraycopy( runWork, 0, valueArray, ipos,
+                                      leng * grpSize_ );
+                    ipos += leng * grpSize_;
+                    nbyte += leng * (long) itemSize_;
+                }
+            }
+
+            // Virtual record: get the whole record and copy the required
+            // runs from that.
+            else {
+                if ( recWork == null ) {
+                    recWork = var_.createRawValueArray();
+                }
+                var_.readRawRecord( irec, recWork );
+                for ( int iu = 0; iu < runStarts_.length; iu++ ) {
+                    int nc = runLengths_[ iu ] * grpSize_;
+                    System.arraycopy( recWork, runStarts_[ iu ] * grpSize_,
+                                      valueArray, ipos, nc );
+                    ipos += nc;
+                }
+            }
+        }
+        CdfMetrics metrics = Metrics.getInstance();
+        if ( metrics != null && nbyte > 0 ) {
+            metrics.variableRead( var_.getName(), nbyte );
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package uk.ac.bristol.star.cdf.record;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Buf implementation representing the uncompressed content of a
+ * compressed region of another buf.
+ * The uncompression is not done until the data is first read,
+ * so that compressed blocks which are never used cost nothing
+ * beyond their description.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+class LazyUncompressBuf implements Buf {
+
+    private final Compression compression_;
+    private final Buf inBuf_;
+    private final long inOffset_;
+    private final long outSize_;
+    private boolean isBit64_;
+    private boolean isBigendian_;
+    private volatile Buf base_;
+
+    /**
+     * Constructor.
+     *
+     * @param  compression  compression type
+     * @param  inBuf   buffer containing the compressed data
+     * @param  inOffset  offset into <code>inBuf</code> at which the
+     *                   compressed data starts
+     * @param  outSize   byte count of the uncompressed data
+     */
+    public LazyUncompressBuf( Compression compression, Buf inBuf,
+                              long inOffset, long outSize ) {
+        compression_ = compression;
+        inBuf_ = inBuf;
+        inOffset_ = inOffset;
+        outSize_ = outSize;
+        isBit64_ = inBuf.isBit64();
+        isBigendian_ = inBuf.isBigendian();
+    }
+
+    /**
+     * Returns the buffer containing the compressed data.
+     *
+     * @return  input buf
+     */
+    Buf getInputBuf() {
+        return inBuf_;
+    }
+
+    /**
+     * Returns a buf with the same content as this one, but which
+     * reads its compressed data from a different input buffer.
+     * Any uncompressed data already held by this object is shared.
+     *
+     * @param  inBuf  buffer with the same content as this one's input buf
+     * @return  new buf
+     */
+    synchronized LazyUncompressBuf withInputBuf( Buf inBuf ) {
+        LazyUncompressBuf lbuf =
+            new LazyUncompressBuf( compression_, inBuf, inOffset_, outSize_ );
+        lbuf.isBit64_ = isBit64_;
+        lbuf.isBigendian_ = isBigendian_;
+        lbuf.base_ = base_;
+        return lbuf;
+    }
+
+    /**
+     * Indicates whether the uncompression has yet been done.
+     *
+     * @return  true iff the uncompressed data is available
+     */
+    public boolean isUncompressed() {
+        return base_ != null;
+    }
+
+    /**
+     * Returns the buf containing the uncompressed data,
+     * uncompressing it if required.
+     * Only the first call takes the lock, so that concurrent reads
+     * of an uncompressed buf do not contend.
+     *
+     * @return  uncompressed buf
+     */
+    private Buf getBase() throws IOException {
+        Buf base = base_;
+        if ( base == null ) {
+            synchronized ( this ) {
+                if ( base_ == null ) {
+                    Buf b = Bufs.uncompress( compression_, inBuf_, inOffset_,
+                                             outSize_ );
+                    b.setBit64( isBit64_ );
+                    b.setEncoding( isBigendian_ );
+                    base_ = b;
+                }
+                base = base_;
+            }
+        }
+        return base;
+    }
+
+    public long getLength() {
+        return outSize_;
+    }
+
+    public int readUnsignedByte( Pointer ptr ) throws IOException {
+        return getBase().readUnsignedByte( ptr );
+    }
+
+    public int readInt( Pointer ptr ) throws IOException {
+        return getBase().readInt( ptr );
+    }
+
+    public long readOffset( Pointer ptr ) throws IOException {
+        return getBase().readOffset( ptr );
+    }
+
+    public String readAsciiString( Pointer ptr, int nbyte ) throws IOException {
+        return getBase().readAsciiString( ptr, nbyte );
+    }
+
+    public synchronized void setBit64( boolean isBit64 ) {
+        isBit64_ = isBit64;
+        if ( base_ != null ) {
+            base_.setBit64( isBit64 );
+        }
+    }
+
+    public synchronized boolean isBit64() {
+        return isBit64_;
+    }
+
+    public synchronized void setEncoding( boolean isBigendian ) {
+        isBigendian_ = isBigendian;
+        if ( base_ != null ) {
+            base_.setEncoding( isBigendian );
+        }
+    }
+
+    public synchronized boolean isBigendian() {
+        return isBigendian_;
+    }
+
+    public void readDataBytes( long offset, int count, byte[] array )
+            throws IOException {
+        getBase().readDataBytes( offset, count, array );
+    }
+
+    public void readDataShorts( long offset, int count, short[] array )
+            throws IOException {
+        getBase().readDataShorts( offset, count, array );
+    }
+
+    public void readDataInts( long offset, int count, int[] array )
+            throws IOException {
+        getBase().readDataInts( offset, count, array );
+    }
+
+    public void readDataLongs( long offset, int count, long[] array )
+            throws IOException {
+        getBase().readDataLongs( offset, count, array );
+    }
+
+    public void readDataFloats( long offset, int count, float[] array )
+            throws IOException {
+        getBase().readDataFloats( offset, count, array );
+    }
+
+    public void readDataDoubles( long offset, int count, double[] array )
+            throws IOException {
+        getBase().readDataDoubles( offset, count, array );
+    }
+
+    public InputStream createInputStream( final long offset ) {
+
+        // This method cannot declare an IOException, so defer the
+        // uncompression until the stream is first read from.
+        return new InputStream() {
+            private InputStream in_;
+            private InputStream getStream() throws IOException {
+                if ( in_ == null ) {
+                    in_ = getBase().createInputStream( offset );
+                }
+                return in_;
+            }
+            public int read() throws IOException {
+                return getStream().read();
+            }
+            @Override
+            public int read( byte[] b, int off, int len ) throws IOException {
+                return getStream().read( b, off, len );
+            }
+            @Override
+            public long skip( long n ) throws IOException {
+                return getStream().skip( n );
+            }
+            @Override
+            public int available() throws IOException {
+                return in_ == null ? 0 : in_.available();
+            }
+            @Override
+            public void close() throws IOException {
+                if ( in_ != null ) {
+                    in_.close();
+                }
+            }
+        };
+    }
+
+    public Buf fillNewBuf( long count, InputStream in ) throws IOException {
+        return getBase().fillNewBuf( count, in );
+    }
+}
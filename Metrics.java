@@ -0,0 +1,42 @@
+package uk.ac.bristol.star.cdf.record;
+
+/**
+ * Manages the global {@link CdfMetrics} instance.
+ *
+ * <p>Instrumented code obtains the current instance with
+ * {@link #getInstance} and does nothing further if it is null,
+ * so the cost of instrumentation when no instance is installed
+ * is a single volatile read.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class Metrics {
+
+    private static volatile CdfMetrics instance_;
+
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Installs a metrics instance which will receive notification of
+     * subsequent events from all CDF reading in this JVM.
+     *
+     * @param  metrics  metrics instance, or null to disable metrics
+     */
+    public static void setInstance( CdfMetrics metrics ) {
+        instance_ = metrics;
+    }
+
+    /**
+     * Returns the currently installed metrics instance.
+     *
+     * @return  metrics instance, or null if metrics are disabled
+     */
+    public static CdfMetrics getInstance() {
+        return instance_;
+    }
+}
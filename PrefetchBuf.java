@@ -0,0 +1,612 @@
+package uk.ac.bristol.star.cdf.record;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * BankBuf implementation that reads file data into memory blocks
+ * using explicit positional reads rather than memory mapping,
+ * and reads ahead in a background thread when sequential access
+ * is detected.
+ *
+ * <p>This may perform better than mapped access for files on slow or
+ * high-latency storage, such as network filesystems or spinning disks,
+ * since a forward scan through the data does not have to stall on
+ * a page fault for each newly accessed region.
+ *
+ * <p>The file is divided into fixed-size blocks aligned on multiples
+ * of the block size.  Blocks are read on demand in the calling thread,
+ * and are retained for reuse in a {@link BlockCache}.
+ * A cache may be shared between many bufs to impose a memory limit
+ * on all of them together.
+ * When a run of data reads (<code>readData*</code> calls) are found to
+ * be progressing forwards through the file, the following few blocks are
+ * read asynchronously so that they are ready when required.
+ * Streams obtained from {@link #createInputStream createInputStream},
+ * as used for reading compressed data, always read ahead.
+ * If the read-ahead count is zero, this class simply serves reads
+ * from the block cache.
+ * Data reads spanning several blocks are copied block by block into
+ * the caller's array, so no storage is allocated for them.
+ *
+ * <p>Since the block cache refers to the bufs whose blocks it holds,
+ * {@link #close} should be called when a buf is no longer required,
+ * especially if the cache is shared.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class PrefetchBuf extends BankBuf {
+
+    private final FileChannel channel_;
+    private final long size_;
+    private final int blockSize_;
+    private final int nblock_;
+    private final int readAhead_;
+    private final BlockCache cache_;
+    private long lastEnd_;
+    private int streak_;
+    private int lastPrefetch_;
+    private volatile boolean closed_;
+
+    /** Default block size in bytes. */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    /** Default number of blocks to read ahead. */
+    public static final int DEFAULT_READ_AHEAD = 8;
+
+    /** Number of consecutive sequential reads that triggers read-ahead. */
+    private static final int SEQUENTIAL_THRESHOLD = 3;
+
+    private static ExecutorService executor_;
+    private static final Logger logger_ =
+        Logger.getLogger( PrefetchBuf.class.getName() );
+
+    /**
+     * Constructs a buf with its own block cache.
+     * The cache is big enough to hold the read-ahead blocks
+     * and a few more.
+     *
+     * @param  channel   readable file containing data,
+     *                   closed by {@link #close}
+     * @param  size    number of bytes in channel
+     * @param  blockSize   size of each block in bytes
+     * @param  readAhead   maximum number of blocks to read ahead;
+     *                     if zero, no read-ahead is done
+     * @param  isBit64  64bit-ness of buf
+     * @param  isBigendian   true for big-endian data, false for little-endian
+     */
+    public PrefetchBuf( FileChannel channel, long size, int blockSize,
+                        int readAhead, boolean isBit64, boolean isBigendian ) {
+        this( channel, size,
+              new BlockCache( blockSize, ( 2L * readAhead + 2 ) * blockSize ),
+              readAhead, isBit64, isBigendian );
+    }
+
+    /**
+     * Constructs a buf using a given block cache, which may be shared.
+     *
+     * @param  channel   readable file containing data,
+     *                   closed by {@link #close}
+     * @param  size    number of bytes in channel
+     * @param  cache   block cache, which also determines block size
+     * @param  readAhead   maximum number of blocks to read ahead;
+     *                     if zero, no read-ahead is done
+     * @param  isBit64  64bit-ness of buf
+     * @param  isBigendian   true for big-endian data, false for little-endian
+     */
+    public PrefetchBuf( FileChannel channel, long size, BlockCache cache,
+                        int readAhead, boolean isBit64, boolean isBigendian ) {
+        super( size, isBit64, isBigendian );
+        int blockSize = cache.getBlockSize();
+        long nblock = ( size + blockSize - 1 ) / blockSize;
+        if ( nblock > Integer.MAX_VALUE ) {
+            throw new IllegalArgumentException( "Block size too small" );
+        }
+        channel_ = channel;
+        size_ = size;
+        cache_ = cache;
+        blockSize_ = blockSize;
+        nblock_ = (int) nblock;
+        readAhead_ = readAhead;
+        lastPrefetch_ = -1;
+    }
+
+    /**
+     * Returns a PrefetchBuf for a file with default block size and
+     * read-ahead settings.
+     *
+     * @param  file  file
+     * @param  isBit64  64bit-ness of buf
+     * @param  isBigendian   true for big-endian data, false for little-endian
+     * @return  new buf
+     */
+    public static PrefetchBuf createPrefetchBuf( File file, boolean isBit64,
+                                                 boolean isBigendian )
+            throws IOException {
+        FileChannel channel = new FileInputStream( file ).getChannel();
+        return new PrefetchBuf( channel, channel.size(), DEFAULT_BLOCK_SIZE,
+                                DEFAULT_READ_AHEAD, isBit64, isBigendian );
+    }
+
+    /**
+     * Returns a PrefetchBuf for a file using a given block cache.
+     *
+     * @param  file  file
+     * @param  cache  block cache, which may be shared with other bufs
+     * @param  readAhead   maximum number of blocks to read ahead;
+     *                     if zero, no read-ahead is done
+     * @param  isBit64  64bit-ness of buf
+     * @param  isBigendian   true for big-endian data, false for little-endian
+     * @return  new buf
+     */
+    public static PrefetchBuf createPrefetchBuf( File file, BlockCache cache,
+                                                 int readAhead,
+                                                 boolean isBit64,
+                                                 boolean isBigendian )
+            throws IOException {
+        FileChannel channel = new FileInputStream( file ).getChannel();
+        return new PrefetchBuf( channel, channel.size(), cache, readAhead,
+                                isBit64, isBigendian );
+    }
+
+    /**
+     * Releases the resources held by this buf.
+     * Its blocks are removed from the block cache and the channel
+     * is closed.  The buf cannot be read after this call.
+     */
+    @Override
+    public void close() throws IOException {
+        closed_ = true;
+        cache_.removeAll( this );
+        channel_.close();
+    }
+
+    /**
+     * Returns the block size used by this buf.
+     *
+     * @return  block size in bytes
+     */
+    public int getBlockSize() {
+        return blockSize_;
+    }
+
+    /**
+     * Returns the block cache used by this buf.
+     *
+     * @return  block cache
+     */
+    public BlockCache getBlockCache() {
+        return cache_;
+    }
+
+    @Override
+    public void readDataBytes( long offset, int count, byte[] array )
+            throws IOException {
+        dataRead( offset, count );
+        if ( isSingleBlock( offset, count ) ) {
+            super.readDataBytes( offset, count, array );
+        }
+        else {
+            readItems( offset, count, 1, array );
+        }
+    }
+
+    @Override
+    public void readDataShorts( long offset, int count, short[] array )
+            throws IOException {
+        dataRead( offset, count * 2L );
+        if ( isSingleBlock( offset, count * 2L ) ) {
+            super.readDataShorts( offset, count, array );
+        }
+        else {
+            readItems( offset, count, 2, array );
+        }
+    }
+
+    @Override
+    public void readDataInts( long offset, int count, int[] array )
+            throws IOException {
+        dataRead( offset, count * 4L );
+        if ( isSingleBlock( offset, count * 4L ) ) {
+            super.readDataInts( offset, count, array );
+        }
+        else {
+            readItems( offset, count, 4, array );
+        }
+    }
+
+    @Override
+    public void readDataLongs( long offset, int count, long[] array )
+            throws IOException {
+        dataRead( offset, count * 8L );
+        if ( isSingleBlock( offset, count * 8L ) ) {
+            super.readDataLongs( offset, count, array );
+        }
+        else {
+            readItems( offset, count, 8, array );
+        }
+    }
+
+    @Override
+    public void readDataFloats( long offset, int count, float[] array )
+            throws IOException {
+        dataRead( offset, count * 4L );
+        if ( isSingleBlock( offset, count * 4L ) ) {
+            super.readDataFloats( offset, count, array );
+        }
+        else {
+            readItems( offset, count, 4, array );
+        }
+    }
+
+    @Override
+    public void readDataDoubles( long offset, int count, double[] array )
+            throws IOException {
+        dataRead( offset, count * 8L );
+        if ( isSingleBlock( offset, count * 8L ) ) {
+            super.readDataDoubles( offset, count, array );
+        }
+        else {
+            readItems( offset, count, 8, array );
+        }
+    }
+
+    protected Bank getBank( long offset, int count ) throws IOException {
+        int iblock = (int) ( offset / blockSize_ );
+        long blockEnd = ( iblock + 1L ) * blockSize_;
+
+        // If the requested read is contained in a single block, return it.
+        if ( offset + count <= blockEnd ) {
+            return getBlock( iblock ).bank_;
+        }
+
+        // Otherwise, build a temporary bank to satisfy the request.
+        // Data reads do not come here (see readItems), so this is
+        // only used for short reads of record fields.
+        else {
+            byte[] tmp = new byte[ count ];
+            int blockOff = (int) ( offset - iblock * (long) blockSize_ );
+            int tmpOff = 0;
+            while ( tmpOff < count ) {
+                ByteBuffer bbuf = getBlock( iblock++ ).byteBuffer_;
+                int n = Math.min( count - tmpOff, bbuf.capacity() - blockOff );
+                synchronized ( bbuf ) {
+                    bbuf.position( blockOff );
+                    bbuf.get( tmp, tmpOff, n );
+                }
+                tmpOff += n;
+                blockOff = 0;
+            }
+            return new Bank( ByteBuffer.wrap( tmp ), offset, isBigendian() );
+        }
+    }
+
+    protected List<Bank> getExistingBanks() {
+        List<Bank> list = new ArrayList<Bank>();
+        for ( Future<?> future : cache_.getValues( this ) ) {
+            if ( future.isDone() ) {
+                try {
+                    list.add( ( (Block) future.get() ).bank_ );
+                }
+                catch ( Exception e ) {
+                    // failed read, no bank
+                }
+            }
+        }
+        return list;
+    }
+
+    protected Iterator<Bank> getBankIterator( final long offset ) {
+        return new Iterator<Bank>() {
+            int iblock = (int) ( offset / blockSize_ );
+            public boolean hasNext() {
+                return iblock < nblock_;
+            }
+            public Bank next() {
+                prefetch( iblock + 1 );
+                try {
+                    return getBlock( iblock++ ).bank_;
+                }
+                catch ( IOException e ) {
+                    logger_.log( Level.WARNING, "Error acquiring bank", e );
+                    return null;
+                }
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Indicates whether a byte range lies within a single block.
+     *
+     * @param  offset  start of range
+     * @param  nbyte   number of bytes in range
+     * @return  true iff the range does not cross a block boundary
+     */
+    private boolean isSingleBlock( long offset, long nbyte ) {
+        return offset / blockSize_ == ( offset + nbyte - 1 ) / blockSize_;
+    }
+
+    /**
+     * Reads data items spanning more than one block into an array.
+     * Runs of whole items are copied directly from each block,
+     * and any item straddling a block boundary is assembled from
+     * its parts.
+     *
+     * @param  offset  file offset of first item
+     * @param  count   number of items
+     * @param  itemSize  size of each item in bytes
+     * @param  array   primitive array of a type matching itemSize,
+     *                 into which items are read starting at element 0
+     */
+    private void readItems( long offset, int count, int itemSize,
+                            Object array ) throws IOException {
+        ByteOrder order = isBigendian() ? ByteOrder.BIG_ENDIAN
+                                        : ByteOrder.LITTLE_ENDIAN;
+        int iblock = (int) ( offset / blockSize_ );
+        int blockOff = (int) ( offset - iblock * (long) blockSize_ );
+        int ia = 0;
+        while ( ia < count ) {
+            ByteBuffer bbuf = getBlock( iblock ).byteBuffer_.duplicate();
+            bbuf.order( order );
+            int nfit = ( bbuf.capacity() - blockOff ) / itemSize;
+            int n = Math.min( count - ia, nfit );
+            bbuf.position( blockOff );
+            copyItems( bbuf, array, ia, n );
+            ia += n;
+            blockOff += n * itemSize;
+            if ( ia < count ) {
+                int nhead = bbuf.capacity() - blockOff;
+                iblock++;
+                blockOff = 0;
+                if ( nhead > 0 ) {
+                    ByteBuffer item = ByteBuffer.allocate( itemSize );
+                    item.order( order );
+                    bbuf.position( bbuf.capacity() - nhead );
+                    bbuf.get( item.array(), 0, nhead );
+                    ByteBuffer next = getBlock( iblock ).byteBuffer_
+                                                        .duplicate();
+                    next.position( 0 );
+                    next.get( item.array(), nhead, itemSize - nhead );
+                    copyItems( item, array, ia, 1 );
+                    ia++;
+                    blockOff = itemSize - nhead;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies items from the current position of a byte buffer
+     * into an array.
+     *
+     * @param  bbuf  buffer positioned at the first item,
+     *               with the required byte order
+     * @param  array  primitive array
+     * @param  ia   index of first array element to write
+     * @param  n    number of items
+     */
+    private static void copyItems( ByteBuffer bbuf, Object array,
+                                   int ia, int n ) {
+        if ( array instanceof byte[] ) {
+            bbuf.get( (byte[]) array, ia, n );
+        }
+        else if ( array instanceof short[] ) {
+            bbuf.asShortBuffer().get( (short[]) array, ia, n );
+        }
+        else if ( array instanceof int[] ) {
+            bbuf.asIntBuffer().get( (int[]) array, ia, n );
+        }
+        else if ( array instanceof long[] ) {
+            bbuf.asLongBuffer().get( (long[]) array, ia, n );
+        }
+        else if ( array instanceof float[] ) {
+            bbuf.asFloatBuffer().get( (float[]) array, ia, n );
+        }
+        else if ( array instanceof double[] ) {
+            bbuf.asDoubleBuffer().get( (double[]) array, ia, n );
+        }
+        else {
+            throw new IllegalArgumentException( "Not primitive array" );
+        }
+    }
+
+    /**
+     * Takes note of a data read, and initiates read-ahead if the
+     * access pattern looks sequential.
+     *
+     * @param  offset  start of data read
+     * @param  nbyte   number of bytes read
+     */
+    private void dataRead( long offset, long nbyte ) {
+        if ( readAhead_ > 0 ) {
+            int iprefetch = -1;
+            synchronized ( this ) {
+                boolean isSequential = offset >= lastEnd_ - blockSize_
+                                    && offset <= lastEnd_ + blockSize_;
+                streak_ = isSequential ? streak_ + 1 : 0;
+                lastEnd_ = offset + nbyte;
+                if ( streak_ >= SEQUENTIAL_THRESHOLD ) {
+                    int iblock = (int) ( lastEnd_ / blockSize_ ) + 1;
+                    if ( iblock != lastPrefetch_ ) {
+                        lastPrefetch_ = iblock;
+                        iprefetch = iblock;
+                    }
+                }
+            }
+            if ( iprefetch >= 0 ) {
+                prefetch( iprefetch );
+            }
+        }
+    }
+
+    /**
+     * Initiates asynchronous reads for blocks starting at a given index,
+     * if they are not already present.
+     *
+     * @param  iblock0  index of first block to read
+     */
+    private void prefetch( int iblock0 ) {
+        int iblock1 = Math.min( iblock0 + readAhead_, nblock_ );
+        for ( int ib = iblock0; ib < iblock1 && ! closed_; ib++ ) {
+            if ( cache_.get( this, ib, false ) == null ) {
+                FutureTask<Block> task = createBlockTask( ib );
+                if ( cache_.putIfAbsent( this, ib, task,
+                                         getBlockLength( ib ) ) == null ) {
+                    if ( closed_ ) {
+                        cache_.remove( this, ib, task );
+                    }
+                    else {
+                        getExecutor().execute( task );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a numbered block, reading it in the current thread if it
+     * is not already present or in progress.  Will not return null.
+     *
+     * @param  iblock  block index
+     * @return  block
+     */
+    private Block getBlock( int iblock ) throws IOException {
+        if ( closed_ ) {
+            throw new IOException( "Buf closed" );
+        }
+        Future<?> future = cache_.get( this, iblock, true );
+        if ( future == null ) {
+            FutureTask<Block> task = createBlockTask( iblock );
+            future = cache_.putIfAbsent( this, iblock, task,
+                                         getBlockLength( iblock ) );
+            if ( future == null ) {
+                task.run();
+                future = task;
+            }
+        }
+        try {
+            return (Block) future.get();
+        }
+        catch ( InterruptedException e ) {
+            throw (IOException)
+                  new InterruptedIOException( "Interrupted" ).initCause( e );
+        }
+        catch ( ExecutionException e ) {
+
+            // Don't cache the failure.
+            cache_.remove( this, iblock, future );
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            else {
+                throw (IOException) new IOException( "Read error" )
+                                   .initCause( cause );
+            }
+        }
+    }
+
+    /**
+     * Returns a task that will read a given block.
+     *
+     * @param  iblock  block index
+     * @return  task which reads the block when run
+     */
+    private FutureTask<Block> createBlockTask( final int iblock ) {
+        return new FutureTask<Block>( new Callable<Block>() {
+            public Block call() throws IOException {
+                return readBlock( iblock );
+            }
+        } );
+    }
+
+    /**
+     * Reads a block from the file.
+     *
+     * @param  iblock  block index
+     * @return  new block
+     */
+    private Block readBlock( int iblock ) throws IOException {
+        long start = iblock * (long) blockSize_;
+        ByteBuffer bbuf = ByteBuffer.allocate( getBlockLength( iblock ) );
+        while ( bbuf.hasRemaining() ) {
+            int nr = channel_.read( bbuf, start + bbuf.position() );
+            if ( nr < 0 ) {
+                throw new EOFException( "File truncated?" );
+            }
+        }
+        return new Block( bbuf, new Bank( bbuf, start, isBigendian() ) );
+    }
+
+    /**
+     * Returns the number of bytes in a given block.
+     * This is the block size except for the last block in the file.
+     *
+     * @param  iblock  block index
+     * @return  block length in bytes
+     */
+    private int getBlockLength( int iblock ) {
+        long start = iblock * (long) blockSize_;
+        return (int) Math.min( blockSize_, size_ - start );
+    }
+
+    /**
+     * Returns the executor service used for asynchronous reads.
+     * This uses daemon threads which expire when not in use.
+     *
+     * @return  executor service
+     */
+    private static synchronized ExecutorService getExecutor() {
+        if ( executor_ == null ) {
+            executor_ = Executors.newCachedThreadPool( new ThreadFactory() {
+                public Thread newThread( Runnable r ) {
+                    Thread thread = new Thread( r, "CDF read-ahead" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        }
+        return executor_;
+    }
+
+    /**
+     * Aggregates a block's buffer and the corresponding bank.
+     */
+    private static class Block {
+        final ByteBuffer byteBuffer_;
+        final Bank bank_;
+
+        /**
+         * Constructor.
+         *
+         * @param  byteBuffer  buffer containing block data
+         * @param  bank   bank based on byteBuffer
+         */
+        Block( ByteBuffer byteBuffer, Bank bank ) {
+            byteBuffer_ = byteBuffer;
+            bank_ = bank;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import uk.ac.bristol.star.cdf.CdfFormatException;
 
@@ -50,16 +51,22 @@ public class RecordFactory {
         }
         else {
             Record rec = tfact.createRecord( plan );
-            String msg = new StringBuffer()
-               .append( "CDF Record:\t" )
-               .append( "0x" )
-               .append( Long.toHexString( offset ) )
-               .append( "\t+" )
-               .append( recSize )
-               .append( "\t" )
-               .append( rec.getRecordTypeAbbreviation() )
-               .toString();
-            logger_.config( msg );
+            if ( logger_.isLoggable( Level.CONFIG ) ) {
+                String msg = new StringBuffer()
+                   .append( "CDF Record:\t" )
+                   .append( "0x" )
+                   .append( Long.toHexString( offset ) )
+                   .append( "\t+" )
+                   .append( recSize )
+                   .append( "\t" )
+                   .append( rec.getRecordTypeAbbreviation() )
+                   .toString();
+                logger_.config( msg );
+            }
+            CdfMetrics metrics = Metrics.getInstance();
+            if ( metrics != null ) {
+                metrics.recordParsed( rec );
+            }
             return rec;
         }
     }
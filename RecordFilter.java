@@ -0,0 +1,554 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Selects records of a CDF by evaluating simple predicates on the
+ * values of one or more variables.
+ *
+ * <p>Conditions are added to a filter, and the {@link #evaluate evaluate}
+ * method then returns a bitmap of the record indices satisfying all
+ * of them.  Data is read in bulk and tested in loops over primitive
+ * arrays, and records already excluded by earlier conditions are not
+ * read when testing later ones, so it is a good idea to add the most
+ * selective condition first.
+ * The {@link #project project} method can then be used to read the
+ * values of any variable at just the selected records.
+ *
+ * <p>For variables with more than one item per record, a record
+ * satisfies a condition if any of its items does.
+ * Numeric conditions can be applied to variables of any non-character
+ * data type.  Values of unsigned types are compared using their
+ * widened values, EPOCH16 values are compared as seconds
+ * (the first element plus the second multiplied by 1e-12),
+ * and integer types are compared exactly.
+ * Bounds for integer types, including TIME_TT2000, can be given as
+ * <code>long</code> values, since <code>double</code> bounds cannot
+ * represent every integer beyond 2<sup>53</sup>.
+ * NaN values never satisfy a numeric condition.
+ * Character variables can be tested for string equality.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class RecordFilter {
+
+    private final List<Condition> conditions_;
+
+    /** Maximum number of values read in a single chunk. */
+    private static final int READ_CHUNK = 64 * 1024;
+
+    /**
+     * Constructs a filter with no conditions.
+     */
+    public RecordFilter() {
+        conditions_ = new ArrayList<Condition>();
+    }
+
+    /**
+     * Adds a condition that a variable has a value in a given range.
+     *
+     * @param  var  non-character variable
+     * @param  lo   lower bound (inclusive)
+     * @param  hi   upper bound (inclusive)
+     */
+    public void addRange( Variable var, double lo, double hi ) {
+        addRange( var, lo, hi, Double.NaN );
+    }
+
+    /**
+     * Adds a condition that a variable has a value, other than a given
+     * fill value, in a given range.
+     *
+     * @param  var  non-character variable
+     * @param  lo   lower bound (inclusive)
+     * @param  hi   upper bound (inclusive)
+     * @param  fill  value to exclude, or NaN for none
+     */
+    public void addRange( Variable var, double lo, double hi, double fill ) {
+        checkNumeric( var );
+        conditions_.add( new NumericCondition( var, lo, hi, fill ) );
+    }
+
+    /**
+     * Adds a condition that a variable has a value in a given integer
+     * range.  Values of integer types are compared exactly with
+     * the bounds.
+     *
+     * @param  var  non-character variable
+     * @param  lo   lower bound (inclusive)
+     * @param  hi   upper bound (inclusive)
+     */
+    public void addRange( Variable var, long lo, long hi ) {
+        checkNumeric( var );
+        conditions_.add( new NumericCondition( var, lo, hi, lo, hi,
+                                               Double.NaN, false, 0 ) );
+    }
+
+    /**
+     * Adds a condition that a variable has a value equal to a given one.
+     *
+     * @param  var  non-character variable
+     * @param  value  required value
+     */
+    public void addEquals( Variable var, double value ) {
+        addRange( var, value, value );
+    }
+
+    /**
+     * Adds a condition that a variable has a value equal to a given
+     * integer.  Values of integer types are compared exactly.
+     *
+     * @param  var  non-character variable
+     * @param  value  required value
+     */
+    public void addEquals( Variable var, long value ) {
+        addRange( var, value, value );
+    }
+
+    /**
+     * Adds a condition that a character variable has a value equal
+     * to a given string.
+     *
+     * @param  var  character variable
+     * @param  value  required value
+     */
+    public void addEquals( Variable var, String value ) {
+        if ( isNumeric( var ) ) {
+            throw new IllegalArgumentException( "Variable " + var.getName()
+                                              + " not character" );
+        }
+        conditions_.add( new StringCondition( var, value ) );
+    }
+
+    /**
+     * Adds a condition that a variable has a valid value, that is
+     * one which is not NaN, is not equal to the variable's
+     * <code>FILLVAL</code> and is within its
+     * <code>VALIDMIN</code>..<code>VALIDMAX</code> range,
+     * where those attributes are present.
+     * For integer types, integer attribute values are used exactly.
+     *
+     * @param  var  non-character variable
+     * @param  vatts  variable attributes from the same CDF
+     */
+    public void addValid( Variable var, VariableAttribute[] vatts ) {
+        checkNumeric( var );
+        VariableStats limits = VariableStats.createAccumulator( var, vatts );
+        double lo = limits.getValidMin();
+        double hi = limits.getValidMax();
+        double fill = limits.getFill();
+        long loLong = toLongBound( lo, true );
+        long hiLong = toLongBound( hi, false );
+        long fillLong = (long) fill;
+        boolean hasFillLong = ! Double.isNaN( fill ) && fillLong == fill;
+        if ( isIntegerArray( var.createRawValueArray() ) ) {
+            for ( VariableAttribute vatt : vatts ) {
+                String name = vatt.getName();
+                Number value = getIntegerValue( vatt.getEntry( var ) );
+                if ( value != null ) {
+                    if ( "FILLVAL".equals( name ) ) {
+                        fillLong = value.longValue();
+                        hasFillLong = true;
+                    }
+                    else if ( "VALIDMIN".equals( name ) ) {
+                        loLong = value.longValue();
+                    }
+                    else if ( "VALIDMAX".equals( name ) ) {
+                        hiLong = value.longValue();
+                    }
+                }
+            }
+        }
+        conditions_.add( new NumericCondition( var, lo, hi, loLong, hiLong,
+                                               fill, hasFillLong,
+                                               fillLong ) );
+    }
+
+    /**
+     * Returns the number of records which this filter considers.
+     * This is the smallest record count of the variables with conditions.
+     *
+     * @return  record count
+     */
+    public int getRecordCount() {
+        int nrec = Integer.MAX_VALUE;
+        for ( Condition cond : conditions_ ) {
+            nrec = Math.min( nrec, cond.var_.getRecordCount() );
+        }
+        return nrec;
+    }
+
+    /**
+     * Returns a bitmap of the record indices satisfying all
+     * of this filter's conditions.
+     *
+     * @return  bitmap with a bit set for each selected record
+     * @throws  IllegalStateException  if there are no conditions
+     */
+    public BitSet evaluate() throws IOException {
+        if ( conditions_.isEmpty() ) {
+            throw new IllegalStateException( "No conditions" );
+        }
+        int nrec = getRecordCount();
+        BitSet mask = new BitSet( nrec );
+        mask.set( 0, nrec );
+        for ( Condition cond : conditions_ ) {
+            cond.apply( mask );
+        }
+        return mask;
+    }
+
+    /**
+     * Reads the raw values of a variable at selected records.
+     * Contiguous runs of selected records are read in bulk.
+     *
+     * @param  var  variable
+     * @param  mask  bitmap with a bit set for each record to read
+     * @return  raw value array, as created by
+     *          {@link Variable#createRawValueArray(int)}, containing
+     *          the raw values of each selected record in sequence
+     */
+    public static Object project( Variable var, BitSet mask )
+            throws IOException {
+        int nsel = mask.cardinality();
+        Object result = var.createRawValueArray( nsel );
+        int nel = Array.getLength( var.createRawValueArray() );
+        int nwork = getChunkRecords( nel, nsel );
+        Object work = var.createRawValueArray( nwork );
+        int ipos = 0;
+        for ( int irec = mask.nextSetBit( 0 ); irec >= 0;
+              irec = mask.nextSetBit( irec ) ) {
+            int end = mask.nextClearBit( irec );
+            while ( irec < end ) {
+                int n = var.readRawRecords( irec,
+                                            Math.min( nwork, end - irec ),
+                                            work );
+                System.arraycopy( work, 0, result, ipos * nel, n * nel );
+                ipos += n;
+                irec += n;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks that numeric conditions can be applied to a variable.
+     *
+     * @param  var  variable
+     * @throws  IllegalArgumentException  if not
+     */
+    private static void checkNumeric( Variable var ) {
+        if ( ! isNumeric( var ) ) {
+            throw new IllegalArgumentException( "Variable " + var.getName()
+                                              + " not numeric" );
+        }
+    }
+
+    /**
+     * Indicates whether a raw value array holds integer values.
+     *
+     * @param  array  raw value array
+     * @return  true for long, int, short and byte arrays
+     */
+    private static boolean isIntegerArray( Object array ) {
+        return array instanceof long[]
+            || array instanceof int[]
+            || array instanceof short[]
+            || array instanceof byte[];
+    }
+
+    /**
+     * Returns the value of a scalar attribute entry if it is an integer.
+     *
+     * @param  entry  attribute entry, may be null
+     * @return  integer value, or null if absent or not an integer
+     */
+    private static Number getIntegerValue( AttributeEntry entry ) {
+        if ( entry != null && entry.getItemCount() == 1 ) {
+            Object item = entry.getItem( 0 );
+            if ( item instanceof Long || item instanceof Integer ||
+                 item instanceof Short || item instanceof Byte ) {
+                return (Number) item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts a floating point bound to the equivalent bound for
+     * integer values.  The conversion saturates for infinite or out of
+     * range bounds, and a NaN bound excludes all values.
+     *
+     * @param  bound  floating point bound
+     * @param  isLower  true for a lower bound, false for an upper bound
+     * @return  integer bound
+     */
+    private static long toLongBound( double bound, boolean isLower ) {
+        if ( Double.isNaN( bound ) ) {
+            return isLower ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+        else {
+            return isLower ? (long) Math.ceil( bound )
+                           : (long) Math.floor( bound );
+        }
+    }
+
+    /**
+     * Indicates whether numeric conditions can be applied to a variable.
+     *
+     * @param  var  variable
+     * @return  true for non-character variables
+     */
+    public static boolean isNumeric( Variable var ) {
+        return var.getDataType().getArrayElementClass().isPrimitive();
+    }
+
+    /**
+     * Returns the number of records to read in each chunk.
+     *
+     * @param  nel  number of array elements per record
+     * @param  nrec  total number of records required
+     * @return  chunk size in records
+     */
+    private static int getChunkRecords( int nel, int nrec ) {
+        int maxrec = Math.max( 1, READ_CHUNK / Math.max( 1, nel ) );
+        return Math.max( 1, Math.min( maxrec, nrec ) );
+    }
+
+    /**
+     * Condition on the values of one variable.
+     */
+    private static abstract class Condition {
+
+        final Variable var_;
+        final int nel_;
+
+        /**
+         * Constructor.
+         *
+         * @param  var  variable
+         */
+        Condition( Variable var ) {
+            var_ = var;
+            nel_ = Array.getLength( var.createRawValueArray() );
+        }
+
+        /**
+         * Clears the bits of a mask for records which do not satisfy
+         * this condition.  Records whose bits are already clear
+         * are not read.
+         *
+         * @param  mask  record mask to update
+         */
+        void apply( BitSet mask ) throws IOException {
+            int nwork = getChunkRecords( nel_, mask.length() );
+            Object work = var_.createRawValueArray( nwork );
+            for ( int irec = mask.nextSetBit( 0 ); irec >= 0;
+                  irec = mask.nextSetBit( irec ) ) {
+                int end = mask.nextClearBit( irec );
+                while ( irec < end ) {
+                    int n = var_.readRawRecords( irec,
+                                                 Math.min( nwork, end - irec ),
+                                                 work );
+                    for ( int i = 0; i < n; i++ ) {
+                        if ( ! matches( work, i * nel_, nel_ ) ) {
+                            mask.clear( irec + i );
+                        }
+                    }
+                    irec += n;
+                }
+            }
+        }
+
+        /**
+         * Indicates whether any of a run of raw values satisfies
+         * this condition.
+         *
+         * @param  array  raw value array
+         * @param  off   index of first element
+         * @param  nel   number of elements
+         * @return  true iff any element matches
+         */
+        abstract boolean matches( Object array, int off, int nel );
+    }
+
+    /**
+     * Condition that a numeric value is in range and not equal to a
+     * fill value.
+     */
+    private static class NumericCondition extends Condition {
+
+        private final double lo_;
+        private final double hi_;
+        private final double fill_;
+        private final boolean hasFill_;
+        private final long loLong_;
+        private final long hiLong_;
+        private final long fillLong_;
+        private final boolean hasFillLong_;
+
+        /**
+         * Constructs a condition with floating point bounds.
+         *
+         * @param  var  variable
+         * @param  lo   lower bound (inclusive)
+         * @param  hi   upper bound (inclusive)
+         * @param  fill  value to exclude, or NaN for none
+         */
+        NumericCondition( Variable var, double lo, double hi, double fill ) {
+            this( var, lo, hi, toLongBound( lo, true ),
+                  toLongBound( hi, false ), fill,
+                  ! Double.isNaN( fill ) && (long) fill == fill,
+                  (long) fill );
+        }
+
+        /**
+         * Constructs a condition with separate bounds for floating point
+         * and for integer values.
+         *
+         * @param  var  variable
+         * @param  lo   lower bound for floating point values (inclusive)
+         * @param  hi   upper bound for floating point values (inclusive)
+         * @param  loLong  lower bound for integer values (inclusive)
+         * @param  hiLong  upper bound for integer values (inclusive)
+         * @param  fill  floating point value to exclude, or NaN for none
+         * @param  hasFillLong  whether an integer value is excluded
+         * @param  fillLong  integer value to exclude if hasFillLong is set
+         */
+        NumericCondition( Variable var, double lo, double hi,
+                          long loLong, long hiLong, double fill,
+                          boolean hasFillLong, long fillLong ) {
+            super( var );
+            lo_ = lo;
+            hi_ = hi;
+            fill_ = fill;
+            hasFill_ = ! Double.isNaN( fill );
+            loLong_ = loLong;
+            hiLong_ = hiLong;
+            fillLong_ = fillLong;
+            hasFillLong_ = hasFillLong;
+        }
+
+        boolean matches( Object array, int off, int nel ) {
+            int end = off + nel;
+            if ( array instanceof double[] ) {
+                double[] a = (double[]) array;
+                if ( var_.getDataType() == DataType.EPOCH16 ) {
+                    for ( int i = off; i < end; i += 2 ) {
+                        if ( matchesDouble( a[ i ] + a[ i + 1 ] * 1e-12 ) ) {
+                            return true;
+                        }
+                    }
+                }
+                else {
+                    for ( int i = off; i < end; i++ ) {
+                        if ( matchesDouble( a[ i ] ) ) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            else if ( array instanceof float[] ) {
+                float[] a = (float[]) array;
+                for ( int i = off; i < end; i++ ) {
+                    if ( matchesDouble( a[ i ] ) ) {
+                        return true;
+                    }
+                }
+            }
+            else if ( array instanceof long[] ) {
+                long[] a = (long[]) array;
+                for ( int i = off; i < end; i++ ) {
+                    if ( matchesLong( a[ i ] ) ) {
+                        return true;
+                    }
+                }
+            }
+            else if ( array instanceof int[] ) {
+                int[] a = (int[]) array;
+                for ( int i = off; i < end; i++ ) {
+                    if ( matchesLong( a[ i ] ) ) {
+                        return true;
+                    }
+                }
+            }
+            else if ( array instanceof short[] ) {
+                short[] a = (short[]) array;
+                for ( int i = off; i < end; i++ ) {
+                    if ( matchesLong( a[ i ] ) ) {
+                        return true;
+                    }
+                }
+            }
+            else if ( array instanceof byte[] ) {
+                byte[] a = (byte[]) array;
+                for ( int i = off; i < end; i++ ) {
+                    if ( matchesLong( a[ i ] ) ) {
+                        return true;
+                    }
+                }
+            }
+            else {
+                throw new IllegalArgumentException( "Not numeric array" );
+            }
+            return false;
+        }
+
+        /**
+         * Tests a floating point value.
+         *
+         * @param  v  value
+         * @return  true iff it satisfies this condition
+         */
+        private boolean matchesDouble( double v ) {
+            return v >= lo_ && v <= hi_ && ! ( hasFill_ && v == fill_ );
+        }
+
+        /**
+         * Tests an integer value.
+         *
+         * @param  v  value
+         * @return  true iff it satisfies this condition
+         */
+        private boolean matchesLong( long v ) {
+            return v >= loLong_ && v <= hiLong_
+                && ! ( hasFillLong_ && v == fillLong_ );
+        }
+    }
+
+    /**
+     * Condition that a string value is equal to a given one.
+     */
+    private static class StringCondition extends Condition {
+
+        private final String value_;
+
+        /**
+         * Constructor.
+         *
+         * @param  var  variable
+         * @param  value  required value
+         */
+        StringCondition( Variable var, String value ) {
+            super( var );
+            value_ = value;
+        }
+
+        boolean matches( Object array, int off, int nel ) {
+            Object[] a = (Object[]) array;
+            for ( int i = off; i < off + nel; i++ ) {
+                if ( value_.equals( a[ i ] ) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
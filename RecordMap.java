@@ -31,7 +31,9 @@ public class RecordMap {
     private final Buf[] bufs_;
     private final long[] offsets_;
     private final int recSize_;
-    private Block lastBlock_;
+    private final Buf buf_;
+    private volatile Block lastBlock_;
+    private Tail tail_;
 
     /**
      * Constructor.
@@ -39,9 +41,11 @@ public class RecordMap {
      * @param   array of entries containing stored variable record blocks,
      *          need not be sorted
      * @param   recSize   size of each variable record in bytes
+     * @param   buf   file data buffer from which the entries were read
      */
-    private RecordMap( Entry[] entries, int recSize ) {
+    private RecordMap( Entry[] entries, int recSize, Buf buf ) {
         recSize_ = recSize;
+        buf_ = buf;
 
         // Sort entries into order of record data.
         Arrays.sort( entries );
@@ -65,6 +69,45 @@ public class RecordMap {
                                : new Block( -1, -1, -1 );
     }
 
+    /**
+     * Constructs a map by appending entries to those of an existing map.
+     * The new entries must be sorted and must all follow the retained
+     * entries of the base map.
+     * The retained entries are re-pointed at the given file buffer,
+     * so that the base map's buffer is not kept alive by this one.
+     *
+     * @param  base  map supplying initial entries
+     * @param  nkeep  number of initial entries of base to retain
+     * @param  entries  sorted entries to append
+     * @param  recSize   size of each variable record in bytes
+     * @param  buf   file data buffer from which the new entries were read
+     */
+    private RecordMap( RecordMap base, int nkeep, Entry[] entries,
+                       int recSize, Buf buf ) {
+        recSize_ = recSize;
+        buf_ = buf;
+        nent_ = nkeep + entries.length;
+        firsts_ = new int[ nent_ ];
+        lasts_ = new int[ nent_ ];
+        bufs_ = new Buf[ nent_ ];
+        offsets_ = new long[ nent_ ];
+        System.arraycopy( base.firsts_, 0, firsts_, 0, nkeep );
+        System.arraycopy( base.lasts_, 0, lasts_, 0, nkeep );
+        System.arraycopy( base.offsets_, 0, offsets_, 0, nkeep );
+        for ( int ie = 0; ie < nkeep; ie++ ) {
+            bufs_[ ie ] = base.repointBuf( base.bufs_[ ie ], buf );
+        }
+        for ( int ie = 0; ie < entries.length; ie++ ) {
+            Entry entry = entries[ ie ];
+            firsts_[ nkeep + ie ] = entry.first_;
+            lasts_[ nkeep + ie ] = entry.last_;
+            bufs_[ nkeep + ie ] = entry.buf_;
+            offsets_[ nkeep + ie ] = entry.offset_;
+        }
+        lastBlock_ = nent_ > 0 ? calculateBlock( 0 )
+                               : new Block( -1, -1, -1 );
+    }
+
     /**
      * Returns the number of entries managed by this map.
      *
@@ -90,17 +133,47 @@ public class RecordMap {
      * @return  index of entry covering <code>irec</code>, or a negative
      *          value if no entry covers it
      */
-    public synchronized int getEntryIndex( int irec ) {
+    public int getEntryIndex( int irec ) {
 
         // There's a good chance that the answer is the same as the last
         // time somebody asked, so first of all do the cheap test to find
         // out if that's the case.  If so, return the cached one.
         // Otherwise, do the work to find out the right answer.
-        if ( ! lastBlock_.contains( irec ) ) {
-            lastBlock_ = calculateBlock( irec );
+        // Blocks are immutable, so no locking is required; if several
+        // threads are reading different parts of the map the cached
+        // block may just get recalculated more often.
+        Block block = lastBlock_;
+        boolean isHit = block.contains( irec );
+        if ( ! isHit ) {
+            block = calculateBlock( irec );
+            lastBlock_ = block;
         }
-        assert lastBlock_.contains( irec );
-        return lastBlock_.ient_;
+        CdfMetrics metrics = Metrics.getInstance();
+        if ( metrics != null ) {
+            metrics.recordMapLookup( isHit );
+        }
+        assert block.contains( irec );
+        return block.ient_;
+    }
+
+    /**
+     * Returns the index of the first record in a given entry.
+     *
+     * @param  ient  non-negative entry index
+     * @return  first record index (inclusive)
+     */
+    public int getFirstRecord( int ient ) {
+        return firsts_[ ient ];
+    }
+
+    /**
+     * Returns the index of the last record in a given entry.
+     *
+     * @param  ient  non-negative entry index
+     * @return  last record index (inclusive)
+     */
+    public int getLastRecord( int ient ) {
+        return lasts_[ ient ];
     }
 
     /**
@@ -130,7 +203,8 @@ public class RecordMap {
      */
     public long getOffset( int ient, int irec ) {
         assert irec >= firsts_[ ient ] && irec <= lasts_[ ient ];
-        return offsets_[ ient ] + ( irec - firsts_[ ient ] ) * recSize_;
+        return offsets_[ ient ]
+             + ( irec - firsts_[ ient ] ) * (long) recSize_;
     }
 
     /**
@@ -141,7 +215,7 @@ public class RecordMap {
      */
     public long getFinalOffsetInEntry( int ient ) {
         return offsets_[ ient ]
-             + ( lasts_[ ient ] - firsts_[ ient ] + 1 ) * recSize_;
+             + ( lasts_[ ient ] - firsts_[ ient ] ) * (long) recSize_;
     }
 
     /**
@@ -228,17 +302,136 @@ public class RecordMap {
 
         // Walk the entry linked list to assemble a list of entries.
         List<Entry> entryList = new ArrayList<Entry>();
+        Tail tail = null;
         for ( long vxrOffset = vdr.vxrHead; vxrOffset != 0; ) {
             VariableIndexRecord vxr =
                 recFact.createRecord( buf, vxrOffset,
                                       VariableIndexRecord.class );
-            readEntries( vxr, buf, recFact, recSize, compress, entryList );
+            boolean isFlat = readEntries( vxr, 0, buf, recFact, recSize,
+                                          compress, entryList );
+            tail = new Tail( vxrOffset, vxr, isFlat );
             vxrOffset = vxr.vxrNext;
         }
         Entry[] entries = entryList.toArray( new Entry[ 0 ] );
 
         // Make a RecordMap out of it.
-        return new RecordMap( entries, recSize );
+        RecordMap recMap = new RecordMap( entries, recSize, buf );
+        recMap.tail_ = tail;
+        return recMap;
+    }
+
+    /**
+     * Returns a record map for a variable whose data may have been
+     * extended since an earlier map was created.
+     * This is intended for use with files that are being appended to.
+     * Where possible, only the final VXR examined by the base map and
+     * any VXRs linked after it are read, so the cost is proportional
+     * to the amount of new data rather than to the size of the variable.
+     * If the index structure has changed in a way that cannot be
+     * handled incrementally, a new map is created from scratch.
+     *
+     * @param  base   record map previously created for the same variable
+     * @param  vdr  current variable descriptor record
+     * @param  recFact  record factory
+     * @param  recSize  size in bytes of each variable value record
+     * @return  record map, which may be <code>base</code> if nothing
+     *          has changed
+     */
+    public static RecordMap extendRecordMap( RecordMap base,
+                                             VariableDescriptorRecord vdr,
+                                             RecordFactory recFact,
+                                             int recSize )
+            throws IOException {
+        Tail tail = base.tail_;
+        if ( tail == null || ! tail.isFlat_ || recSize != base.recSize_ ) {
+            return createRecordMap( vdr, recFact, recSize );
+        }
+        Compression compress = getCompression( vdr, recFact );
+        Buf buf = vdr.getBuf();
+
+        // Re-read the previous final VXR, and check that the entry
+        // previously read last is still where it was.
+        VariableIndexRecord vxr =
+            recFact.createRecord( buf, tail.vxrOffset_,
+                                  VariableIndexRecord.class );
+        int nused = tail.nUsed_;
+        if ( vxr.nUsedEntries < nused ||
+             ( nused > 0 &&
+               vxr.offset[ nused - 1 ] != tail.lastEntryOffset_ ) ) {
+            return createRecordMap( vdr, recFact, recSize );
+        }
+
+        // Writers may extend the final entry in place, in which case
+        // it needs to be read again.
+        boolean redoLast = nused > 0
+                        && vxr.last[ nused - 1 ] != tail.lastEntryLast_;
+        int ient0 = redoLast ? nused - 1 : nused;
+
+        // Read new entries from the previous final VXR and any
+        // that have been linked after it.
+        List<Entry> entryList = new ArrayList<Entry>();
+        long vxrOffset = tail.vxrOffset_;
+        boolean isFlat = readEntries( vxr, ient0, buf, recFact, recSize,
+                                      compress, entryList );
+        while ( vxr.vxrNext != 0 ) {
+            vxrOffset = vxr.vxrNext;
+            vxr = recFact.createRecord( buf, vxrOffset,
+                                        VariableIndexRecord.class );
+            isFlat = readEntries( vxr, 0, buf, recFact, recSize, compress,
+                                  entryList );
+        }
+        if ( entryList.isEmpty() && buf == base.buf_ ) {
+            return base;
+        }
+        Entry[] entries = entryList.toArray( new Entry[ 0 ] );
+        Arrays.sort( entries );
+
+        // Append the new entries to the retained old ones if possible,
+        // otherwise (unlikely) merge and sort them all.
+        int nkeep = base.nent_ - ( redoLast ? 1 : 0 );
+        final RecordMap recMap;
+        if ( entries.length == 0 || nkeep == 0 ||
+             entries[ 0 ].first_ > base.lasts_[ nkeep - 1 ] ) {
+            recMap = new RecordMap( base, nkeep, entries, recSize, buf );
+        }
+        else {
+            Entry[] allEntries = new Entry[ nkeep + entries.length ];
+            for ( int ie = 0; ie < nkeep; ie++ ) {
+                Buf entryBuf = base.repointBuf( base.bufs_[ ie ], buf );
+                allEntries[ ie ] = new Entry( base.firsts_[ ie ],
+                                              base.lasts_[ ie ], entryBuf,
+                                              base.offsets_[ ie ] );
+            }
+            System.arraycopy( entries, 0, allEntries, nkeep, entries.length );
+            recMap = new RecordMap( allEntries, recSize, buf );
+        }
+        recMap.tail_ = new Tail( vxrOffset, vxr, isFlat );
+        return recMap;
+    }
+
+    /**
+     * Returns a buffer with the same content as one of this map's
+     * entry buffers, but which reads from a given file buffer
+     * instead of the one this map was read from.
+     * Each refresh of a growing file supplies a new file buffer,
+     * and without this the buffers of all earlier refreshes would
+     * be retained by the entries carried forward.
+     *
+     * @param  entryBuf  buffer of one of this map's entries
+     * @param  buf   file buffer superseding this map's one
+     * @return  buffer to use for the entry
+     */
+    private Buf repointBuf( Buf entryBuf, Buf buf ) {
+        if ( entryBuf == buf_ ) {
+            return buf;
+        }
+        else if ( entryBuf instanceof LazyUncompressBuf &&
+                  ((LazyUncompressBuf) entryBuf).getInputBuf() == buf_ ) {
+            return ((LazyUncompressBuf) entryBuf).withInputBuf( buf );
+        }
+        else {
+            return entryBuf;
+        }
     }
 
     /**
@@ -268,15 +461,19 @@ public class RecordMap {
      * into a supplied list.
      *
      * @param  vxr  variable index record
+     * @param  ient0  index of first entry in the VXR to read
      * @param  buf  data buffer containing vxr
      * @param  recFact  record factory
      * @param  recSize  size in bytes of each variable value record
      * @param  compress  compression type
      * @param   list  list into which any entries found are added
+     * @return  true iff none of the entries read refers to a
+     *          subordinate VXR
      */
-    private static void readEntries( VariableIndexRecord vxr, Buf buf,
-                                     RecordFactory recFact, int recSize,
-                                     Compression compress, List<Entry> list )
+    private static boolean readEntries( VariableIndexRecord vxr, int ient0,
+                                        Buf buf, RecordFactory recFact,
+                                        int recSize, Compression compress,
+                                        List<Entry> list )
             throws IOException {
 
         // Go through each entry in the VXR.
@@ -287,7 +484,8 @@ public class RecordMap {
         // the record type value for each one (the RecordFactory takes
         // care of this by creating the right class).
         int nent = vxr.nUsedEntries;
-        for ( int ie = 0; ie < nent; ie++ ) {
+        boolean isFlat = true;
+        for ( int ie = ient0; ie < nent; ie++ ) {
             int first = vxr.first[ ie ];
             int last = vxr.last[ ie ];
             Record rec = recFact.createRecord( buf, vxr.offset[ ie ] );
@@ -299,13 +497,16 @@ public class RecordMap {
                                      vvr.getRecordsOffset() ) );
             }
 
-            // CVVR: uncompress and turn it into a new Entry and add to list.
+            // CVVR: turn it into a new Entry and add to list.
+            // The data is only uncompressed when it is first read,
+            // so that entries which are never used are never uncompressed.
             else if ( rec instanceof CompressedVariableValuesRecord ) {
                 CompressedVariableValuesRecord cvvr =
                     (CompressedVariableValuesRecord) rec;
                 int uncompressedSize = ( last - first + 1 ) * recSize;
-                Buf cBuf = Bufs.uncompress( compress, buf, cvvr.getDataOffset(),
-                                            uncompressedSize );
+                Buf cBuf = new LazyUncompressBuf( compress, buf,
+                                                  cvvr.getDataOffset(),
+                                                  uncompressedSize );
                 list.add( new Entry( first, last, cBuf, 0L ) );
             }
 
@@ -320,12 +521,14 @@ public class RecordMap {
                 // seen at least one file where it happens
                 // (STEREO_STA_L1_MAG_20070708_V03.cdf).
                 VariableIndexRecord subVxr = (VariableIndexRecord) rec;
-                readEntries( subVxr, buf, recFact, recSize, compress, list );
+                isFlat = false;
+                readEntries( subVxr, 0, buf, recFact, recSize, compress,
+                             list );
                 for ( long nextVxrOff = subVxr.vxrNext; nextVxrOff != 0; ) {
                     VariableIndexRecord nextVxr =
                         recFact.createRecord( buf, nextVxrOff,
                                               VariableIndexRecord.class );
-                    readEntries( nextVxr, buf, recFact, recSize, compress,
+                    readEntries( nextVxr, 0, buf, recFact, recSize, compress,
                                  list );
                     nextVxrOff = nextVxr.vxrNext;
                 }
@@ -341,6 +544,7 @@ public class RecordMap {
                 throw new CdfFormatException( msg );
             }
         }
+        return isFlat;
     }
 
     /**
@@ -382,6 +586,35 @@ public class RecordMap {
         }
     }
 
+    /**
+     * Records the state of the final VXR in a variable's top-level
+     * VXR list at the time a map was created, so that the map can
+     * later be extended if the file grows.
+     */
+    private static class Tail {
+        final long vxrOffset_;
+        final int nUsed_;
+        final long lastEntryOffset_;
+        final int lastEntryLast_;
+        final boolean isFlat_;
+
+        /**
+         * Constructor.
+         *
+         * @param  vxrOffset  file offset of the VXR
+         * @param  vxr   the VXR
+         * @param  isFlat  true iff none of the VXR's entries refers to
+         *                 a subordinate VXR
+         */
+        Tail( long vxrOffset, VariableIndexRecord vxr, boolean isFlat ) {
+            vxrOffset_ = vxrOffset;
+            nUsed_ = vxr.nUsedEntries;
+            lastEntryOffset_ = nUsed_ > 0 ? vxr.offset[ nUsed_ - 1 ] : -1L;
+            lastEntryLast_ = nUsed_ > 0 ? vxr.last[ nUsed_ - 1 ] : -1;
+            isFlat_ = isFlat;
+        }
+    }
+
     /**
      * Represents a block of records, that is a contiguous sequence of records.
      * This may corrrespond to an actual data-bearing Entry, or it may
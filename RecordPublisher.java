@@ -0,0 +1,394 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the records of a variable as a sequence of batches
+ * to asynchronous subscribers, honouring their demand.
+ *
+ * <p>The {@link Subscriber} and {@link Subscription} interfaces
+ * follow the Reactive Streams contract, as used by
+ * <code>java.util.concurrent.Flow</code> in later Java versions:
+ * a subscriber is given a subscription, and receives no more
+ * batches than it has requested using
+ * {@link Subscription#request Subscription.request}.
+ * A thin adapter is all that is needed to present this class as
+ * a <code>Flow.Publisher</code>.
+ *
+ * <p>All reading, and any uncompression, is done by tasks run on
+ * an executor supplied at construction time, and the subscriber's
+ * <code>onNext</code>, <code>onError</code> and
+ * <code>onComplete</code> methods are called from those tasks,
+ * never concurrently.  No thread is blocked waiting for demand.
+ * Each batch holds its own arrays, which are not reused,
+ * so the memory held in flight is bounded by the subscriber's
+ * outstanding demand multiplied by the batch size.
+ *
+ * <p>Each subscription reads the record range independently
+ * from the start.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class RecordPublisher {
+
+    private final Variable var_;
+    private final int start_;
+    private final int end_;
+    private final int batchSize_;
+    private final Executor executor_;
+
+    private static final Logger logger_ =
+        Logger.getLogger( RecordPublisher.class.getName() );
+
+    /**
+     * Constructs a publisher for all the records of a variable.
+     *
+     * @param  var  variable
+     * @param  batchSize  maximum number of records in a batch
+     * @param  executor  executor on which reads are performed
+     */
+    public RecordPublisher( Variable var, int batchSize, Executor executor ) {
+        this( var, 0, var.getRecordCount(), batchSize, executor );
+    }
+
+    /**
+     * Constructs a publisher for a range of records of a variable.
+     *
+     * @param  var  variable
+     * @param  irec  index of first record
+     * @param  nrec  number of records
+     * @param  batchSize  maximum number of records in a batch
+     * @param  executor  executor on which reads are performed
+     */
+    public RecordPublisher( Variable var, int irec, int nrec, int batchSize,
+                            Executor executor ) {
+        if ( batchSize < 1 ) {
+            throw new IllegalArgumentException( "Bad batch size "
+                                              + batchSize );
+        }
+        if ( irec < 0 || nrec < 0 ) {
+            throw new IllegalArgumentException( "Bad record range" );
+        }
+        var_ = var;
+        start_ = irec;
+        end_ = irec + nrec;
+        batchSize_ = batchSize;
+        executor_ = executor;
+    }
+
+    /**
+     * Returns the variable whose records are published.
+     *
+     * @return  variable
+     */
+    public Variable getVariable() {
+        return var_;
+    }
+
+    /**
+     * Returns the maximum number of records in a batch.
+     *
+     * @return  batch size
+     */
+    public int getBatchSize() {
+        return batchSize_;
+    }
+
+    /**
+     * Adds a subscriber.  Its <code>onSubscribe</code> method is
+     * called from the current thread before this method returns,
+     * and no batches are read until it requests some.
+     *
+     * @param  subscriber  subscriber
+     */
+    public void subscribe( Subscriber subscriber ) {
+        if ( subscriber == null ) {
+            throw new NullPointerException();
+        }
+        BatchSubscription subscription = new BatchSubscription( subscriber );
+        subscriber.onSubscribe( subscription );
+
+        // Schedule a pass so that an empty range completes
+        // without any demand.
+        subscription.schedule();
+    }
+
+    /**
+     * Receives batches from a publisher.
+     */
+    public interface Subscriber {
+
+        /**
+         * Called once when the subscription is made.
+         *
+         * @param  subscription  subscription for requesting batches
+         */
+        void onSubscribe( Subscription subscription );
+
+        /**
+         * Called with each batch, in record order.
+         *
+         * @param  batch  next batch
+         */
+        void onNext( Batch batch );
+
+        /**
+         * Called if reading fails.  No further calls follow.
+         *
+         * @param  error  failure
+         */
+        void onError( Throwable error );
+
+        /**
+         * Called when all the records have been published.
+         * No further calls follow.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Link between a publisher and one subscriber.
+     */
+    public interface Subscription {
+
+        /**
+         * Requests up to a given number of further batches.
+         * Demand accumulates over calls;
+         * <code>Long.MAX_VALUE</code> means unbounded.
+         *
+         * @param  n  number of batches, greater than zero
+         */
+        void request( long n );
+
+        /**
+         * Stops publication.  Some calls to the subscriber may still
+         * be made after this method returns.
+         */
+        void cancel();
+    }
+
+    /**
+     * Contiguous run of records published as a unit.
+     */
+    public static class Batch {
+
+        private final int start_;
+        private final int nrec_;
+        private final Object raw_;
+        private final boolean[] present_;
+
+        /**
+         * Constructor.
+         *
+         * @param  start  index of first record
+         * @param  nrec  number of records
+         * @param  raw  raw values of all the records, one after another
+         * @param  present  flags indicating file-based records
+         */
+        Batch( int start, int nrec, Object raw, boolean[] present ) {
+            start_ = start;
+            nrec_ = nrec;
+            raw_ = raw;
+            present_ = present;
+        }
+
+        /**
+         * Returns the index of the first record in this batch.
+         *
+         * @return  first record index
+         */
+        public int getStart() {
+            return start_;
+        }
+
+        /**
+         * Returns the number of records in this batch.
+         *
+         * @return  record count
+         */
+        public int getRecordCount() {
+            return nrec_;
+        }
+
+        /**
+         * Returns the raw values of the records in this batch.
+         * The values for record <code>getStart()+i</code> start at
+         * element <code>i</code> times the raw value array length of
+         * a single record.
+         *
+         * @return  raw value array as created by
+         *          {@link Variable#createRawValueArray(int)}
+         */
+        public Object getRawArray() {
+            return raw_;
+        }
+
+        /**
+         * Indicates whether a record in this batch has a file-based value,
+         * rather than a pad or previous value.
+         *
+         * @param  i  index of record within this batch
+         * @return  true iff the record is stored in the file
+         */
+        public boolean hasRecord( int i ) {
+            return present_[ i ];
+        }
+    }
+
+    /**
+     * Subscription implementation.
+     * Publication is done by a drain loop run on the executor;
+     * a work-in-progress counter ensures that only one such loop
+     * runs at a time, so that calls to the subscriber are serialized.
+     */
+    private class BatchSubscription implements Subscription {
+
+        private final Subscriber subscriber_;
+        private final AtomicLong demand_;
+        private final AtomicInteger wip_;
+        private final Runnable drainer_;
+        private volatile boolean cancelled_;
+        private volatile Throwable error_;
+        private boolean done_;
+        private int next_;
+        private Object work_;
+
+        /**
+         * Constructor.
+         *
+         * @param  subscriber  subscriber
+         */
+        BatchSubscription( Subscriber subscriber ) {
+            subscriber_ = subscriber;
+            demand_ = new AtomicLong();
+            wip_ = new AtomicInteger();
+            drainer_ = new Runnable() {
+                public void run() {
+                    drain();
+                }
+            };
+            next_ = start_;
+        }
+
+        public void request( long n ) {
+            if ( n <= 0 ) {
+                error_ = new IllegalArgumentException( "Non-positive request "
+                                                     + n );
+                schedule();
+                return;
+            }
+            while ( true ) {
+                long d = demand_.get();
+                long d1 = d + n < 0 ? Long.MAX_VALUE : d + n;
+                if ( demand_.compareAndSet( d, d1 ) ) {
+                    break;
+                }
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            cancelled_ = true;
+        }
+
+        /**
+         * Arranges for the drain loop to run on the executor,
+         * unless it is already running.
+         */
+        void schedule() {
+            if ( wip_.getAndIncrement() == 0 ) {
+                try {
+                    executor_.execute( drainer_ );
+                }
+                catch ( RejectedExecutionException e ) {
+                    cancelled_ = true;
+                    subscriber_.onError( e );
+                }
+            }
+        }
+
+        /**
+         * Publishes batches while there is demand.
+         */
+        private void drain() {
+            int missed = 1;
+            while ( true ) {
+                if ( ! cancelled_ && ! done_ && error_ != null ) {
+                    done_ = true;
+                    subscriber_.onError( error_ );
+                }
+                while ( ! cancelled_ && ! done_ && next_ < end_ &&
+                        demand_.get() > 0 ) {
+                    Batch batch;
+                    try {
+                        batch = readBatch();
+                    }
+                    catch ( Throwable e ) {
+                        done_ = true;
+                        subscriber_.onError( e );
+                        break;
+                    }
+                    if ( demand_.get() != Long.MAX_VALUE ) {
+                        demand_.decrementAndGet();
+                    }
+                    try {
+                        subscriber_.onNext( batch );
+                    }
+                    catch ( RuntimeException e ) {
+                        logger_.log( Level.WARNING,
+                                     "Subscriber failed - cancelling", e );
+                        cancelled_ = true;
+                    }
+                }
+                if ( ! cancelled_ && ! done_ && next_ >= end_ ) {
+                    done_ = true;
+                    subscriber_.onComplete();
+                }
+                missed = wip_.addAndGet( -missed );
+                if ( missed == 0 ) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Reads the next batch of records.
+         *
+         * @return  new batch
+         */
+        private Batch readBatch() throws IOException {
+            int irec0 = next_;
+            int nrec = Math.min( batchSize_, end_ - irec0 );
+            boolean isVar = var_.getRecordVariance();
+            Object raw = var_.createRawValueArray( nrec );
+            int nel = Array.getLength( raw ) / nrec;
+            boolean[] present = new boolean[ nrec ];
+            int nr = 0;
+            while ( nr < nrec ) {
+                int irec = irec0 + nr;
+
+                // Runs after the first may need a workspace, which is
+                // kept for use by later batches.
+                if ( nr > 0 && work_ == null ) {
+                    work_ = var_.createRawValueArray( batchSize_ );
+                }
+                int nread = var_.readRawRecords( irec, nrec - nr, raw,
+                                                 nr * nel, work_ );
+                Arrays.fill( present, nr, nr + nread,
+                             ! isVar || var_.hasRecord( irec ) );
+                nr += nread;
+            }
+            next_ = irec0 + nrec;
+            return new Batch( irec0, nrec, raw, present );
+        }
+    }
+}
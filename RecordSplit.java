@@ -0,0 +1,251 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import uk.ac.bristol.star.cdf.record.RecordMap;
+
+/**
+ * Contiguous range of the records of a variable which can be divided
+ * for parallel processing.
+ *
+ * <p>Splits are made preferentially at the boundaries between blocks
+ * of records stored contiguously in the file (VVRs or CVVRs),
+ * so that when the parts are processed by different threads,
+ * each block is read, and if necessary uncompressed, by only one of them.
+ * Each split reads its records in bulk into its own workspace array,
+ * so splits can be processed concurrently without contention.
+ * A block is only divided if there is no block boundary in the range.
+ *
+ * <p>The {@link #split split} method divides a variable into a given
+ * number of parts ready to be handed to an
+ * {@link java.util.concurrent.ExecutorService}.
+ * Instances of this class are not themselves thread-safe,
+ * but different instances can be used from different threads.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class RecordSplit {
+
+    private final Variable var_;
+    private final int[] boundaries_;
+    private int start_;
+    private final int end_;
+
+    /** Maximum number of values read in a single chunk. */
+    private static final int READ_CHUNK = 64 * 1024;
+
+    /**
+     * Constructs a split covering all the records of a variable.
+     *
+     * @param  var  variable
+     */
+    public RecordSplit( Variable var ) throws IOException {
+        this( var, getBoundaries( var ), 0, var.getRecordCount() );
+    }
+
+    /**
+     * Constructs a split covering a given range of records.
+     *
+     * @param  var  variable
+     * @param  boundaries  sorted array of record indices at which
+     *                     stored blocks start or end
+     * @param  start  first record index (inclusive)
+     * @param  end   last record index (exclusive)
+     */
+    private RecordSplit( Variable var, int[] boundaries, int start,
+                         int end ) {
+        var_ = var;
+        boundaries_ = boundaries;
+        start_ = start;
+        end_ = end;
+    }
+
+    /**
+     * Returns the variable whose records this split covers.
+     *
+     * @return  variable
+     */
+    public Variable getVariable() {
+        return var_;
+    }
+
+    /**
+     * Returns the index of the first record covered by this split.
+     *
+     * @return  first record index (inclusive)
+     */
+    public int getStart() {
+        return start_;
+    }
+
+    /**
+     * Returns the index after the last record covered by this split.
+     *
+     * @return  last record index (exclusive)
+     */
+    public int getEnd() {
+        return end_;
+    }
+
+    /**
+     * Returns the number of records covered by this split.
+     *
+     * @return  record count
+     */
+    public int getRecordCount() {
+        return end_ - start_;
+    }
+
+    /**
+     * Attempts to divide this split in two.
+     * If successful, the first part of the range is returned as a new
+     * split, and this split is reduced to cover the rest.
+     * The division is made at the block boundary nearest the middle
+     * of the range, or at the middle if there is no boundary.
+     *
+     * @return  new split covering the first part of this one's records,
+     *          or null if this split covers fewer than two records
+     */
+    public RecordSplit trySplit() {
+        if ( end_ - start_ < 2 ) {
+            return null;
+        }
+        int mid = start_ + ( end_ - start_ ) / 2;
+        int ib = Arrays.binarySearch( boundaries_, mid );
+        int isplit;
+        if ( ib >= 0 ) {
+            isplit = mid;
+        }
+        else {
+            int ip = -ib - 1;
+            int below = ip > 0 ? boundaries_[ ip - 1 ] : Integer.MIN_VALUE;
+            int above = ip < boundaries_.length ? boundaries_[ ip ]
+                                                : Integer.MAX_VALUE;
+            boolean hasBelow = below > start_;
+            boolean hasAbove = above < end_;
+            if ( hasBelow && hasAbove ) {
+                isplit = (long) mid - below <= (long) above - mid ? below
+                                                                   : above;
+            }
+            else if ( hasBelow ) {
+                isplit = below;
+            }
+            else if ( hasAbove ) {
+                isplit = above;
+            }
+            else {
+                isplit = mid;
+            }
+        }
+        RecordSplit prefix =
+            new RecordSplit( var_, boundaries_, start_, isplit );
+        start_ = isplit;
+        return prefix;
+    }
+
+    /**
+     * Reads all the records covered by this split in bulk,
+     * passing each run to a handler.
+     * Each run lies within a single stored block or sparse region.
+     * A single workspace array is used for all the runs,
+     * so the handler must not retain it.
+     *
+     * @param  handler  handler for record data
+     */
+    public void forEachBlock( BlockHandler handler ) throws IOException {
+        int nel = Array.getLength( var_.createRawValueArray() );
+        int maxrec = Math.max( 1, READ_CHUNK / Math.max( 1, nel ) );
+        int nwork = Math.max( 1, Math.min( maxrec, end_ - start_ ) );
+        Object work = var_.createRawValueArray( nwork );
+        for ( int irec = start_; irec < end_; ) {
+            int n = var_.readRawRecords( irec, Math.min( nwork, end_ - irec ),
+                                         work );
+            handler.handleBlock( irec, n, work, var_.hasRecord( irec ) );
+            irec += n;
+        }
+    }
+
+    /**
+     * Divides all the records of a variable into a given number of
+     * splits of roughly equal size, divided where possible at
+     * block boundaries.  Fewer splits may be returned if the variable
+     * has few records.
+     *
+     * @param  var  variable
+     * @param  nsplit  required number of splits
+     * @return  non-overlapping splits covering all records in order
+     */
+    public static RecordSplit[] split( Variable var, int nsplit )
+            throws IOException {
+        List<RecordSplit> splits = new ArrayList<RecordSplit>();
+        splits.add( new RecordSplit( var ) );
+        while ( splits.size() < nsplit ) {
+            int ibig = 0;
+            for ( int is = 1; is < splits.size(); is++ ) {
+                if ( splits.get( is ).getRecordCount() >
+                     splits.get( ibig ).getRecordCount() ) {
+                    ibig = is;
+                }
+            }
+            RecordSplit prefix = splits.get( ibig ).trySplit();
+            if ( prefix == null ) {
+                break;
+            }
+            splits.add( ibig, prefix );
+        }
+        return splits.toArray( new RecordSplit[ 0 ] );
+    }
+
+    /**
+     * Returns the record indices at which a variable's stored blocks
+     * start or end.
+     *
+     * @param  var  variable
+     * @return  sorted array of distinct record indices
+     */
+    private static int[] getBoundaries( Variable var ) throws IOException {
+        RecordMap recMap = var.readRecordMap();
+        int nent = recMap.getEntryCount();
+        int[] bounds = new int[ nent * 2 ];
+        for ( int ient = 0; ient < nent; ient++ ) {
+            bounds[ 2 * ient ] = recMap.getFirstRecord( ient );
+            bounds[ 2 * ient + 1 ] = recMap.getLastRecord( ient ) + 1;
+        }
+        Arrays.sort( bounds );
+        int n = 0;
+        for ( int i = 0; i < bounds.length; i++ ) {
+            if ( n == 0 || bounds[ i ] != bounds[ n - 1 ] ) {
+                bounds[ n++ ] = bounds[ i ];
+            }
+        }
+        int[] result = new int[ n ];
+        System.arraycopy( bounds, 0, result, 0, n );
+        return result;
+    }
+
+    /**
+     * Receives runs of records read by a split.
+     */
+    public interface BlockHandler {
+
+        /**
+         * Processes a run of records.
+         *
+         * @param  irec  index of first record in run
+         * @param  nrec  number of records in run
+         * @param  rawValueArray  workspace array containing the raw values
+         *                        for the records, one after another,
+         *                        starting at element zero
+         * @param  isStored  true if the records are file-based,
+         *                   false if they are sparse (pad or previous)
+         *                   values
+         */
+        void handleBlock( int irec, int nrec, Object rawValueArray,
+                          boolean isStored )
+            throws IOException;
+    }
+}
@@ -0,0 +1,150 @@
+package uk.ac.bristol.star.cdf.record;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Buf wrapper implementation that keeps track of which byte ranges
+ * of the base buf have been read.
+ * Reads made using the pointer-based methods and the
+ * <code>readData*</code> methods are recorded.
+ * Streams acquired from {@link #createInputStream createInputStream}
+ * are not tracked.
+ *
+ * <p>This can be used to find out which parts of a file are required
+ * to read its metadata.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class RecordingBuf extends WrapperBuf {
+
+    private final List<long[]> ranges_;
+
+    /**
+     * Constructor.
+     *
+     * @param  base  base buf
+     */
+    public RecordingBuf( Buf base ) {
+        super( base );
+        ranges_ = new ArrayList<long[]>();
+    }
+
+    /**
+     * Returns the byte ranges that have been read so far.
+     * The result is sorted by start position, and overlapping or
+     * adjacent ranges are merged.
+     *
+     * @return  array of (start, end) pairs, where end is exclusive
+     */
+    public synchronized long[][] getRanges() {
+        List<long[]> ranges = new ArrayList<long[]>( ranges_ );
+        Collections.sort( ranges, new Comparator<long[]>() {
+            public int compare( long[] r1, long[] r2 ) {
+                return r1[ 0 ] < r2[ 0 ] ? -1 : ( r1[ 0 ] > r2[ 0 ] ? 1 : 0 );
+            }
+        } );
+        List<long[]> merged = new ArrayList<long[]>();
+        long[] current = null;
+        for ( long[] range : ranges ) {
+            if ( current != null && range[ 0 ] <= current[ 1 ] ) {
+                current[ 1 ] = Math.max( current[ 1 ], range[ 1 ] );
+            }
+            else {
+                current = new long[] { range[ 0 ], range[ 1 ] };
+                merged.add( current );
+            }
+        }
+        return merged.toArray( new long[ 0 ][] );
+    }
+
+    public int readUnsignedByte( Pointer ptr ) throws IOException {
+        long pos = ptr.get();
+        int value = super.readUnsignedByte( ptr );
+        record( pos, ptr.get() );
+        return value;
+    }
+
+    public int readInt( Pointer ptr ) throws IOException {
+        long pos = ptr.get();
+        int value = super.readInt( ptr );
+        record( pos, ptr.get() );
+        return value;
+    }
+
+    public long readOffset( Pointer ptr ) throws IOException {
+        long pos = ptr.get();
+        long value = super.readOffset( ptr );
+        record( pos, ptr.get() );
+        return value;
+    }
+
+    public String readAsciiString( Pointer ptr, int nbyte ) throws IOException {
+        long pos = ptr.get();
+        String value = super.readAsciiString( ptr, nbyte );
+        record( pos, ptr.get() );
+        return value;
+    }
+
+    public void readDataBytes( long offset, int count, byte[] array )
+            throws IOException {
+        super.readDataBytes( offset, count, array );
+        record( offset, offset + count );
+    }
+
+    public void readDataShorts( long offset, int count, short[] array )
+            throws IOException {
+        super.readDataShorts( offset, count, array );
+        record( offset, offset + count * 2L );
+    }
+
+    public void readDataInts( long offset, int count, int[] array )
+            throws IOException {
+        super.readDataInts( offset, count, array );
+        record( offset, offset + count * 4L );
+    }
+
+    public void readDataLongs( long offset, int count, long[] array )
+            throws IOException {
+        super.readDataLongs( offset, count, array );
+        record( offset, offset + count * 8L );
+    }
+
+    public void readDataFloats( long offset, int count, float[] array )
+            throws IOException {
+        super.readDataFloats( offset, count, array );
+        record( offset, offset + count * 4L );
+    }
+
+    public void readDataDoubles( long offset, int count, double[] array )
+            throws IOException {
+        super.readDataDoubles( offset, count, array );
+        record( offset, offset + count * 8L );
+    }
+
+    /**
+     * Notes that a given byte range has been read.
+     *
+     * @param  start  offset of first byte read
+     * @param  end   offset after last byte read
+     */
+    private synchronized void record( long start, long end ) {
+        if ( end > start ) {
+            int n = ranges_.size();
+            long[] last = n > 0 ? ranges_.get( n - 1 ) : null;
+
+            // Most reads follow on directly from the previous one,
+            // so coalesce those here to keep the list short.
+            if ( last != null && start >= last[ 0 ] && start <= last[ 1 ] ) {
+                last[ 1 ] = Math.max( last[ 1 ], end );
+            }
+            else {
+                ranges_.add( new long[] { start, end } );
+            }
+        }
+    }
+}
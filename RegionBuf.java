@@ -0,0 +1,248 @@
+package uk.ac.bristol.star.cdf.record;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Buf implementation that serves reads from a set of in-memory copies
+ * of selected byte ranges of a base buf, and delegates any other reads
+ * to the base buf.
+ * Reads are served from memory only if they fall entirely within
+ * one of the supplied ranges.
+ *
+ * <p>This can be used to avoid scattered reads from a slow file
+ * when its metadata has been cached elsewhere.
+ * The caller is responsible for ensuring that the cached bytes
+ * match the content of the base buf.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class RegionBuf implements Buf {
+
+    private final Buf base_;
+    private final long[] starts_;
+    private final long[] ends_;
+    private final int[] cacheOffs_;
+    private final ByteBuffer cacheBuf_;
+    private final ByteBuffer dataBuf_;
+    private boolean isBit64_;
+    private boolean isBigendian_;
+
+    /**
+     * Constructor.
+     * The cache buffer contains the bytes of each range in sequence.
+     *
+     * @param  base  base buf
+     * @param  ranges  array of (start, end) pairs giving the base buf
+     *                 byte ranges held in the cache; these must be sorted
+     *                 and non-overlapping, and end is exclusive
+     * @param  cache   buffer containing the concatenated bytes of all
+     *                 the ranges
+     */
+    public RegionBuf( Buf base, long[][] ranges, ByteBuffer cache ) {
+        base_ = base;
+        int nr = ranges.length;
+        starts_ = new long[ nr ];
+        ends_ = new long[ nr ];
+        cacheOffs_ = new int[ nr ];
+        long off = 0;
+        for ( int ir = 0; ir < nr; ir++ ) {
+            starts_[ ir ] = ranges[ ir ][ 0 ];
+            ends_[ ir ] = ranges[ ir ][ 1 ];
+            cacheOffs_[ ir ] = (int) off;
+            off += ends_[ ir ] - starts_[ ir ];
+            if ( ir > 0 && starts_[ ir ] < ends_[ ir - 1 ] ) {
+                throw new IllegalArgumentException( "Ranges not sorted" );
+            }
+        }
+        if ( off > cache.capacity() ) {
+            throw new IllegalArgumentException( "Cache too short" );
+        }
+        cacheBuf_ = cache.duplicate();
+        cacheBuf_.order( ByteOrder.BIG_ENDIAN );
+        dataBuf_ = cache.duplicate();
+        isBit64_ = base.isBit64();
+        setEncoding( base.isBigendian() );
+    }
+
+    public long getLength() {
+        return base_.getLength();
+    }
+
+    public int readUnsignedByte( Pointer ptr ) throws IOException {
+        int ir = regionIndex( ptr.get(), 1 );
+        if ( ir >= 0 ) {
+            int pos = cachePos( ir, ptr.getAndIncrement( 1 ) );
+            return cacheBuf_.get( pos ) & 0xff;
+        }
+        else {
+            return base_.readUnsignedByte( ptr );
+        }
+    }
+
+    public int readInt( Pointer ptr ) throws IOException {
+        int ir = regionIndex( ptr.get(), 4 );
+        return ir >= 0
+             ? cacheBuf_.getInt( cachePos( ir, ptr.getAndIncrement( 4 ) ) )
+             : base_.readInt( ptr );
+    }
+
+    public long readOffset( Pointer ptr ) throws IOException {
+        int nbyte = isBit64_ ? 8 : 4;
+        int ir = regionIndex( ptr.get(), nbyte );
+        if ( ir >= 0 ) {
+            int pos = cachePos( ir, ptr.getAndIncrement( nbyte ) );
+            return isBit64_ ? cacheBuf_.getLong( pos )
+                            : (long) cacheBuf_.getInt( pos );
+        }
+        else {
+            return base_.readOffset( ptr );
+        }
+    }
+
+    public String readAsciiString( Pointer ptr, int nbyte )
+            throws IOException {
+        int ir = regionIndex( ptr.get(), nbyte );
+        return ir >= 0
+             ? Bufs.readAsciiString( cacheBuf_,
+                                     cachePos( ir,
+                                               ptr.getAndIncrement( nbyte ) ),
+                                     nbyte )
+             : base_.readAsciiString( ptr, nbyte );
+    }
+
+    public synchronized void setBit64( boolean isBit64 ) {
+        isBit64_ = isBit64;
+        base_.setBit64( isBit64 );
+    }
+
+    public boolean isBit64() {
+        return isBit64_;
+    }
+
+    public synchronized void setEncoding( boolean isBigendian ) {
+        dataBuf_.order( isBigendian ? ByteOrder.BIG_ENDIAN
+                                    : ByteOrder.LITTLE_ENDIAN );
+        isBigendian_ = isBigendian;
+        base_.setEncoding( isBigendian );
+    }
+
+    public boolean isBigendian() {
+        return isBigendian_;
+    }
+
+    public void readDataBytes( long offset, int count, byte[] array )
+            throws IOException {
+        int ir = regionIndex( offset, count );
+        if ( ir >= 0 ) {
+            Bufs.readBytes( dataBuf_, cachePos( ir, offset ), count, array );
+        }
+        else {
+            base_.readDataBytes( offset, count, array );
+        }
+    }
+
+    public void readDataShorts( long offset, int count, short[] array )
+            throws IOException {
+        int ir = regionIndex( offset, count * 2L );
+        if ( ir >= 0 ) {
+            Bufs.readShorts( dataBuf_, cachePos( ir, offset ), count, array );
+        }
+        else {
+            base_.readDataShorts( offset, count, array );
+        }
+    }
+
+    public void readDataInts( long offset, int count, int[] array )
+            throws IOException {
+        int ir = regionIndex( offset, count * 4L );
+        if ( ir >= 0 ) {
+            Bufs.readInts( dataBuf_, cachePos( ir, offset ), count, array );
+        }
+        else {
+            base_.readDataInts( offset, count, array );
+        }
+    }
+
+    public void readDataLongs( long offset, int count, long[] array )
+            throws IOException {
+        int ir = regionIndex( offset, count * 8L );
+        if ( ir >= 0 ) {
+            Bufs.readLongs( dataBuf_, cachePos( ir, offset ), count, array );
+        }
+        else {
+            base_.readDataLongs( offset, count, array );
+        }
+    }
+
+    public void readDataFloats( long offset, int count, float[] array )
+            throws IOException {
+        int ir = regionIndex( offset, count * 4L );
+        if ( ir >= 0 ) {
+            Bufs.readFloats( dataBuf_, cachePos( ir, offset ), count, array );
+        }
+        else {
+            base_.readDataFloats( offset, count, array );
+        }
+    }
+
+    public void readDataDoubles( long offset, int count, double[] array )
+            throws IOException {
+        int ir = regionIndex( offset, count * 8L );
+        if ( ir >= 0 ) {
+            Bufs.readDoubles( dataBuf_, cachePos( ir, offset ), count, array );
+        }
+        else {
+            base_.readDataDoubles( offset, count, array );
+        }
+    }
+
+    public InputStream createInputStream( long offset ) {
+        return base_.createInputStream( offset );
+    }
+
+    public Buf fillNewBuf( long count, InputStream in ) throws IOException {
+        return base_.fillNewBuf( count, in );
+    }
+
+    /**
+     * Returns the position in the cache buffer corresponding to
+     * an offset in the base buf.
+     *
+     * @param  ir  index of region containing offset
+     * @param  offset  offset in base buf
+     * @return  position in cache buffer
+     */
+    private int cachePos( int ir, long offset ) {
+        return cacheOffs_[ ir ] + (int) ( offset - starts_[ ir ] );
+    }
+
+    /**
+     * Determines whether a given byte range is held in the cache.
+     *
+     * @param  offset  start of range in base buf
+     * @param  nbyte   number of bytes in range
+     * @return  index of the cached region containing the range,
+     *          or -1 if the range is not cached
+     */
+    private int regionIndex( long offset, long nbyte ) {
+        int lo = 0;
+        int hi = starts_.length - 1;
+        while ( lo <= hi ) {
+            int mid = ( lo + hi ) >>> 1;
+            if ( starts_[ mid ] > offset ) {
+                hi = mid - 1;
+            }
+            else if ( ends_[ mid ] <= offset ) {
+                lo = mid + 1;
+            }
+            else {
+                return offset + nbyte <= ends_[ mid ] ? mid : -1;
+            }
+        }
+        return -1;
+    }
+}
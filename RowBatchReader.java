@@ -0,0 +1,379 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Reads the records of several variables together, a batch of rows
+ * at a time, for consumers that view a CDF as a table with one column
+ * per variable and one row per record.
+ *
+ * <p>Each call to {@link #next} fills a columnar batch of up to a fixed
+ * number of rows using bulk reads for each variable, and the values
+ * can then be retrieved cell by cell using the typed accessors.
+ * The batch arrays are allocated once and reused, so reading
+ * a whole table allocates nothing per row.
+ *
+ * <p>Row indices used by the accessors are relative to the start of
+ * the current batch.  Element indices refer to positions in the raw
+ * value array for a single record, as for
+ * {@link Variable#readRawRecord Variable.readRawRecord}.
+ *
+ * <p>The table has as many rows as the longest record-varying
+ * variable.  Cells beyond the end of a shorter variable,
+ * and cells for records with no file-based value, are marked as
+ * absent by {@link #hasValue hasValue}; the values of absent cells
+ * are undefined.  Non-record-varying variables have the same value
+ * in every row.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class RowBatchReader {
+
+    private final Column[] columns_;
+    private final int batchSize_;
+    private final int nrow_;
+    private int batchStart_;
+    private int batchRows_;
+
+    /**
+     * Constructor.
+     *
+     * @param  vars  variables, one for each column
+     * @param  batchSize  maximum number of rows in a batch
+     */
+    public RowBatchReader( Variable[] vars, int batchSize ) {
+        if ( batchSize < 1 ) {
+            throw new IllegalArgumentException( "Bad batch size "
+                                              + batchSize );
+        }
+        batchSize_ = batchSize;
+        columns_ = new Column[ vars.length ];
+        int nrow = 0;
+        for ( int ic = 0; ic < vars.length; ic++ ) {
+            Variable var = vars[ ic ];
+            columns_[ ic ] = new Column( var, batchSize );
+            nrow = Math.max( nrow, var.getRecordVariance()
+                                 ? var.getRecordCount()
+                                 : 1 );
+        }
+        nrow_ = nrow;
+        batchStart_ = 0;
+        batchRows_ = 0;
+    }
+
+    /**
+     * Constructs a reader for named variables from a CDF.
+     *
+     * @param  content  CDF content
+     * @param  varNames  names of variables, one for each column
+     * @param  batchSize  maximum number of rows in a batch
+     * @throws  IllegalArgumentException  if a named variable is not present
+     */
+    public RowBatchReader( CdfContent content, String[] varNames,
+                           int batchSize ) {
+        this( getVariables( content, varNames ), batchSize );
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return  column count
+     */
+    public int getColumnCount() {
+        return columns_.length;
+    }
+
+    /**
+     * Returns the variable supplying a given column.
+     *
+     * @param  icol  column index
+     * @return  variable
+     */
+    public Variable getVariable( int icol ) {
+        return columns_[ icol ].var_;
+    }
+
+    /**
+     * Returns the total number of rows in the table.
+     *
+     * @return  row count
+     */
+    public int getRowCount() {
+        return nrow_;
+    }
+
+    /**
+     * Returns the maximum number of rows in a batch.
+     *
+     * @return  batch size
+     */
+    public int getBatchSize() {
+        return batchSize_;
+    }
+
+    /**
+     * Reads the batch following the current one.
+     *
+     * @return  true if a batch was read, false if there are no more rows
+     */
+    public boolean next() throws IOException {
+        return readBatch( batchStart_ + batchRows_ );
+    }
+
+    /**
+     * Reads the batch starting at a given row.
+     *
+     * @param  irow  index of first row in the batch
+     * @return  true if a batch was read, false if <code>irow</code>
+     *          is beyond the end of the table
+     */
+    public boolean readBatch( int irow ) throws IOException {
+        int nr = Math.max( 0, Math.min( batchSize_, nrow_ - irow ) );
+        for ( Column col : columns_ ) {
+            col.read( irow, nr );
+        }
+        batchStart_ = irow;
+        batchRows_ = nr;
+        return nr > 0;
+    }
+
+    /**
+     * Returns the table row index of the first row in the current batch.
+     *
+     * @return  batch start row
+     */
+    public int getBatchStart() {
+        return batchStart_;
+    }
+
+    /**
+     * Returns the number of rows in the current batch.
+     *
+     * @return  batch row count
+     */
+    public int getBatchRowCount() {
+        return batchRows_;
+    }
+
+    /**
+     * Returns the number of raw value array elements per row for
+     * a given column.
+     *
+     * @param  icol  column index
+     * @return  elements per row
+     */
+    public int getElementCount( int icol ) {
+        return columns_[ icol ].rvaleng_;
+    }
+
+    /**
+     * Indicates whether a cell in the current batch has a file-based value.
+     *
+     * @param  icol  column index
+     * @param  irow  row index within the current batch
+     * @return  true iff a real value is present
+     */
+    public boolean hasValue( int icol, int irow ) {
+        return columns_[ icol ].present_[ irow ];
+    }
+
+    /**
+     * Returns the array holding the raw values for a column of the
+     * current batch.  The values for row <code>irow</code> start at
+     * element <code>irow*getElementCount(icol)</code>.
+     * The array is reused by subsequent batches.
+     *
+     * @param  icol  column index
+     * @return  raw value array for the current batch
+     */
+    public Object getRawArray( int icol ) {
+        return columns_[ icol ].raw_;
+    }
+
+    /**
+     * Returns a numeric raw value element as a double.
+     *
+     * @param  icol  column index
+     * @param  irow  row index within the current batch
+     * @param  iel   element index within the row's raw values
+     * @return  numeric value
+     * @throws  ClassCastException  if the column is not numeric
+     */
+    public double getDouble( int icol, int irow, int iel ) {
+        Column col = columns_[ icol ];
+        Object raw = col.raw_;
+        int i = irow * col.rvaleng_ + iel;
+        if ( raw instanceof double[] ) {
+            return ((double[]) raw)[ i ];
+        }
+        else if ( raw instanceof float[] ) {
+            return ((float[]) raw)[ i ];
+        }
+        else if ( raw instanceof long[] ) {
+            return ((long[]) raw)[ i ];
+        }
+        else if ( raw instanceof int[] ) {
+            return ((int[]) raw)[ i ];
+        }
+        else if ( raw instanceof short[] ) {
+            return ((short[]) raw)[ i ];
+        }
+        else if ( raw instanceof byte[] ) {
+            return ((byte[]) raw)[ i ];
+        }
+        else {
+            throw new ClassCastException( "Not numeric" );
+        }
+    }
+
+    /**
+     * Returns an integer raw value element as a long.
+     * This is exact for all integer types, including
+     * the widened unsigned types and TT2000.
+     *
+     * @param  icol  column index
+     * @param  irow  row index within the current batch
+     * @param  iel   element index within the row's raw values
+     * @return  integer value
+     * @throws  ClassCastException  if the column is not of integer type
+     */
+    public long getLong( int icol, int irow, int iel ) {
+        Column col = columns_[ icol ];
+        Object raw = col.raw_;
+        int i = irow * col.rvaleng_ + iel;
+        if ( raw instanceof long[] ) {
+            return ((long[]) raw)[ i ];
+        }
+        else if ( raw instanceof int[] ) {
+            return ((int[]) raw)[ i ];
+        }
+        else if ( raw instanceof short[] ) {
+            return ((short[]) raw)[ i ];
+        }
+        else if ( raw instanceof byte[] ) {
+            return ((byte[]) raw)[ i ];
+        }
+        else {
+            throw new ClassCastException( "Not integer" );
+        }
+    }
+
+    /**
+     * Returns a character raw value element.
+     *
+     * @param  icol  column index
+     * @param  irow  row index within the current batch
+     * @param  iel   element index within the row's raw values
+     * @return  string value
+     * @throws  ClassCastException  if the column is not of character type
+     */
+    public String getString( int icol, int irow, int iel ) {
+        Column col = columns_[ icol ];
+        return ((String[]) col.raw_)[ irow * col.rvaleng_ + iel ];
+    }
+
+    /**
+     * Returns the shaped value of a cell, as would be returned by
+     * {@link Variable#readShapedRecord Variable.readShapedRecord}.
+     *
+     * @param  icol  column index
+     * @param  irow  row index within the current batch
+     * @param  rowMajor  required majority of output array;
+     *                   true for row major, false for column major
+     * @param  shapedArray  destination array, or null
+     * @return  shaped value; <code>shapedArray</code> if it was used,
+     *          otherwise a new object
+     */
+    public Object getShapedValue( int icol, int irow, boolean rowMajor,
+                                  Object shapedArray ) {
+        Column col = columns_[ icol ];
+        System.arraycopy( col.raw_, irow * col.rvaleng_, col.rowWork_, 0,
+                          col.rvaleng_ );
+        return col.var_.getShaper().shape( col.rowWork_, rowMajor,
+                                           shapedArray );
+    }
+
+    /**
+     * Looks up variables by name.
+     *
+     * @param  content  CDF content
+     * @param  varNames  variable names
+     * @return  variables in the same order as the names
+     */
+    private static Variable[] getVariables( CdfContent content,
+                                            String[] varNames ) {
+        Variable[] allVars = content.getVariables();
+        Variable[] vars = new Variable[ varNames.length ];
+        for ( int iv = 0; iv < varNames.length; iv++ ) {
+            for ( Variable var : allVars ) {
+                if ( var.getName().equals( varNames[ iv ] ) ) {
+                    vars[ iv ] = var;
+                }
+            }
+            if ( vars[ iv ] == null ) {
+                throw new IllegalArgumentException( "No variable "
+                                                  + varNames[ iv ] );
+            }
+        }
+        return vars;
+    }
+
+    /**
+     * Holds the batch data for one variable.
+     */
+    private static class Column {
+
+        final Variable var_;
+        final int rvaleng_;
+        final Object raw_;
+        final Object work_;
+        final Object rowWork_;
+        final boolean[] present_;
+
+        /**
+         * Constructor.
+         *
+         * @param  var  variable
+         * @param  batchSize  maximum number of rows per batch
+         */
+        Column( Variable var, int batchSize ) {
+            var_ = var;
+            rowWork_ = var.createRawValueArray();
+            rvaleng_ = Array.getLength( rowWork_ );
+            raw_ = var.createRawValueArray( batchSize );
+            work_ = var.createRawValueArray( batchSize );
+            present_ = new boolean[ batchSize ];
+        }
+
+        /**
+         * Reads the values for a batch of rows.
+         *
+         * @param  irow0  first row index
+         * @param  nrow   number of rows
+         */
+        void read( int irow0, int nrow ) throws IOException {
+            boolean isVar = var_.getRecordVariance();
+            int nrec = var_.getRecordCount();
+            int nr = 0;
+            while ( nr < nrow ) {
+                int irec = irow0 + nr;
+                if ( isVar && irec >= nrec ) {
+                    Arrays.fill( present_, nr, nrow, false );
+                    nr = nrow;
+                }
+                else {
+                    int nread = var_.readRawRecords( irec, nrow - nr, raw_,
+                                                     nr * rvaleng_, work_ );
+                    Arrays.fill( present_, nr, nr + nread,
+                                 ! isVar || var_.hasRecord( irec ) );
+                    nr += nread;
+                }
+            }
+        }
+    }
+}
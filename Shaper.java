@@ -77,6 +77,37 @@ public abstract class Shaper {
      */
     public abstract Object shape( Object rawValue, boolean rowMajor );
 
+    /**
+     * Takes a raw value array and turns it into an object of the
+     * notional shape for this shaper, writing the result into a
+     * caller-supplied array where possible.
+     * If <code>shapedArray</code> is an array as returned by
+     * {@link #createShapedArray}, it is filled with the shaped values
+     * and returned; this avoids allocation if the same destination array
+     * is re-used for many records.
+     * If it is null, or if this shaper represents scalar values,
+     * the result is as for {@link #shape(Object,boolean)}.
+     *
+     * @param   rawValue  input raw value array
+     * @param   rowMajor  required majority for result;
+     *                    true for row major, false for column major
+     * @param   shapedArray  destination array, or null
+     * @return  shaped value; this is <code>shapedArray</code> if it was
+     *          used, otherwise a new object
+     */
+    public abstract Object shape( Object rawValue, boolean rowMajor,
+                                  Object shapedArray );
+
+    /**
+     * Creates an array suitable for use as the destination argument
+     * of the {@link #shape(Object,boolean,Object)} method.
+     * If this shaper represents scalar values, there is no such array,
+     * and null is returned.
+     *
+     * @return   new array of type {@link #getShapeClass}, or null
+     */
+    public abstract Object createShapedArray();
+
     /**
      * Returns the index into the raw value array at which the value for
      * the given element of the notional array can be found.
@@ -153,6 +184,13 @@ public abstract class Shaper {
         public Object shape( Object rawValue, boolean rowMajor ) {
             return dataType_.getScalar( rawValue, 0 );
         }
+        public Object shape( Object rawValue, boolean rowMajor,
+                             Object shapedArray ) {
+            return shape( rawValue, rowMajor );
+        }
+        public Object createShapedArray() {
+            return null;
+        }
         public int getArrayIndex( int[] coords ) {
             for ( int i = 0; i < coords.length; i++ ) {
                 if ( coords[ i ] != 0 ) {
@@ -198,12 +236,21 @@ public abstract class Shaper {
             return shapeClass_;
         }
         public Object shape( Object rawValue, boolean rowMajor ) {
-            Object out = Array.newInstance( dataType_.getArrayElementClass(),
-                                            itemCount_ );
 
             // Contract requires that we return a new object.
-            System.arraycopy( rawValue, 0, out, 0, itemCount_ );
-            return out;
+            return shape( rawValue, rowMajor, createShapedArray() );
+        }
+        public Object shape( Object rawValue, boolean rowMajor,
+                             Object shapedArray ) {
+            if ( shapedArray == null ) {
+                return shape( rawValue, rowMajor );
+            }
+            System.arraycopy( rawValue, 0, shapedArray, 0, itemCount_ * step_ );
+            return shapedArray;
+        }
+        public Object createShapedArray() {
+            return Array.newInstance( dataType_.getArrayElementClass(),
+                                      itemCount_ * step_ );
         }
         public int getArrayIndex( int[] coords ) {
             return coords[ 0 ] * step_;
@@ -225,7 +272,9 @@ public abstract class Shaper {
         private final int[] strides_;
         private final int itemSize_;
         private final Class<?> shapeClass_;
-        
+        private volatile int[] rowMajorPlan_;
+        private volatile int[] colMajorPlan_;
+
         /**
          * Constructor.
          *
@@ -285,22 +334,77 @@ public abstract class Shaper {
         }
 
         public Object shape( Object rawValue, boolean rowMajor ) {
-            Object out = Array.newInstance( dataType_.getArrayElementClass(),
-                                            shapedItemCount_ * itemSize_ );
+            return shape( rawValue, rowMajor, createShapedArray() );
+        }
+
+        public Object shape( Object rawValue, boolean rowMajor,
+                             Object shapedArray ) {
+            if ( shapedArray == null ) {
+                return shape( rawValue, rowMajor );
+            }
+            gather( rawValue, getIndexPlan( rowMajor ), itemSize_,
+                    shapedArray );
+            return shapedArray;
+        }
+
+        public Object createShapedArray() {
+            return Array.newInstance( dataType_.getArrayElementClass(),
+                                      shapedItemCount_ * itemSize_ );
+        }
+
+        /**
+         * Returns a lookup table giving, for each item of the shaped
+         * array in the requested majority, the index into the raw value
+         * array at which its value can be found.
+         * This is calculated once per majority and cached, so that
+         * shaping a record does not need to perform any coordinate
+         * arithmetic.  Only the first call for each majority takes
+         * the lock, so that concurrent shaping does not contend.
+         *
+         * @param  rowMajor  majority of shaped array
+         * @return  shapedItemCount-element array of raw array indices
+         */
+        private int[] getIndexPlan( boolean rowMajor ) {
+            int[] plan = rowMajor ? rowMajorPlan_ : colMajorPlan_;
+            if ( plan == null ) {
+                synchronized ( this ) {
+                    plan = rowMajor ? rowMajorPlan_ : colMajorPlan_;
+                    if ( plan == null ) {
+                        plan = createIndexPlan( rowMajor );
+                        if ( rowMajor ) {
+                            rowMajorPlan_ = plan;
+                        }
+                        else {
+                            colMajorPlan_ = plan;
+                        }
+                    }
+                }
+            }
+            return plan;
+        }
+
+        /**
+         * Calculates the lookup table returned by {@link #getIndexPlan}.
+         *
+         * @param  rowMajor  majority of shaped array
+         * @return  shapedItemCount-element array of raw array indices
+         */
+        private int[] createIndexPlan( boolean rowMajor ) {
+            int[] plan = new int[ shapedItemCount_ ];
             int[] coords = new int[ ndim_ ];
             Arrays.fill( coords, -1 );
             for ( int ix = 0; ix < shapedItemCount_; ix++ ) {
                 for ( int idim = 0; idim < ndim_; idim++ ) {
                     int jdim = rowMajor ? ndim_ - idim - 1 : idim;
-                    coords[ jdim ] = ( coords[ jdim ] + 1 ) % dimSizes_[ jdim ];
+                    coords[ jdim ] = ( coords[ jdim ] + 1 )
+                                   % dimSizes_[ jdim ];
                     if ( coords[ jdim ] != 0 ) {
                         break;
                     }
                 }
-                System.arraycopy( rawValue, getArrayIndex( coords ),
-                                  out, ix * itemSize_, itemSize_ );
+                plan[ ix ] = getArrayIndex( coords );
             }
-            return out;
+            return plan;
         }
     }
 
@@ -310,7 +414,6 @@ public abstract class Shaper {
      */
     private static class SimpleArrayShaper extends GeneralShaper {
 
-        private final DataType dataType_;
         private final boolean rowMajor_;
 
         /**
@@ -325,25 +428,24 @@ public abstract class Shaper {
                                   boolean rowMajor ) {
             super( dataType, dimSizes, trueArray( dimSizes.length ),
                    rowMajor );
-            dataType_ = dataType;
             rowMajor_ = rowMajor;
         }
 
-        public Object shape( Object rawValue, boolean rowMajor ) {
-            if ( rowMajor == rowMajor_ ) {
-                int count = Array.getLength( rawValue );
-                Object out =
-                    Array.newInstance( dataType_.getArrayElementClass(),
-                                       count );
-                System.arraycopy( rawValue, 0, out, 0, count );
-                return out;
+        @Override
+        public Object shape( Object rawValue, boolean rowMajor,
+                             Object shapedArray ) {
+            if ( shapedArray != null && rowMajor == rowMajor_ ) {
+                System.arraycopy( rawValue, 0, shapedArray, 0,
+                                  Array.getLength( rawValue ) );
+                return shapedArray;
             }
             else {
-                // Probably there's a more efficient way to do this -
-                // it's an n-dimensional generalisation of transposing
-                // a matrix (though don't forget to keep units of
-                // groupSize intact).
-                return super.shape( rawValue, rowMajor );
+
+                // Otherwise it's an n-dimensional generalisation of
+                // transposing a matrix, which the superclass handles
+                // using a precomputed index plan
+                // (keeping units of groupSize intact).
+                return super.shape( rawValue, rowMajor, shapedArray );
             }
         }
 
@@ -361,6 +463,86 @@ public abstract class Shaper {
         }
     }
 
+    /**
+     * Copies items from a raw value array to a shaped array
+     * as directed by a lookup table.
+     * Common primitive element types with a group size of 1 are handled
+     * by typed loops, which are much faster than per-item
+     * <code>System.arraycopy</code> calls.
+     *
+     * @param  in   input raw value array
+     * @param  indexPlan  for each output item, index of its first
+     *                    element in the input array
+     * @param  itemSize   number of array elements per item
+     * @param  out   output array
+     */
+    private static void gather( Object in, int[] indexPlan, int itemSize,
+                                Object out ) {
+        int n = indexPlan.length;
+        if ( itemSize == 1 ) {
+            if ( in instanceof double[] ) {
+                double[] din = (double[]) in;
+                double[] dout = (double[]) out;
+                for ( int i = 0; i < n; i++ ) {
+                    dout[ i ] = din[ indexPlan[ i ] ];
+                }
+                return;
+            }
+            else if ( in instanceof float[] ) {
+                float[] fin = (float[]) in;
+                float[] fout = (float[]) out;
+                for ( int i = 0; i < n; i++ ) {
+                    fout[ i ] = fin[ indexPlan[ i ] ];
+                }
+                return;
+            }
+            else if ( in instanceof long[] ) {
+                long[] lin = (long[]) in;
+                long[] lout = (long[]) out;
+                for ( int i = 0; i < n; i++ ) {
+                    lout[ i ] = lin[ indexPlan[ i ] ];
+                }
+                return;
+            }
+            else if ( in instanceof int[] ) {
+                int[] iin = (int[]) in;
+                int[] iout = (int[]) out;
+                for ( int i = 0; i < n; i++ ) {
+                    iout[ i ] = iin[ indexPlan[ i ] ];
+                }
+                return;
+            }
+            else if ( in instanceof short[] ) {
+                short[] sin = (short[]) in;
+                short[] sout = (short[]) out;
+                for ( int i = 0; i < n; i++ ) {
+                    sout[ i ] = sin[ indexPlan[ i ] ];
+                }
+                return;
+            }
+            else if ( in instanceof byte[] ) {
+                byte[] bin = (byte[]) in;
+                byte[] bout = (byte[]) out;
+                for ( int i = 0; i < n; i++ ) {
+                    bout[ i ] = bin[ indexPlan[ i ] ];
+                }
+                return;
+            }
+            else if ( in instanceof Object[] ) {
+                Object[] oin = (Object[]) in;
+                Object[] oout = (Object[]) out;
+                for ( int i = 0; i < n; i++ ) {
+                    oout[ i ] = oin[ indexPlan[ i ] ];
+                }
+                return;
+            }
+        }
+        for ( int i = 0; i < n; i++ ) {
+            System.arraycopy( in, indexPlan[ i ], out, i * itemSize,
+                              itemSize );
+        }
+    }
+
     /**
      * Returns the array class corresponding to a given scalar class.
      *
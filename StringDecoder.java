@@ -0,0 +1,163 @@
+package uk.ac.bristol.star.cdf;
+
+/**
+ * Turns the fixed-length byte sequences used to store CHAR and UCHAR
+ * data into Strings, optionally re-using String instances for
+ * repeated values.
+ *
+ * <p>Variables containing per-record labels or status flags typically
+ * have only a few distinct values, but decoding them with
+ * {@link DataType#readValues DataType.readValues} creates a new String
+ * for every item read.  An instance of this class with a non-zero
+ * cache size keeps a small, bounded, direct-mapped table of recently
+ * decoded values; if the bytes for an item match a cached entry, the
+ * cached String is returned and no allocation takes place.
+ * Used together with {@link Variable#readRawBytes Variable.readRawBytes}
+ * and a re-used byte array, this allows character variables
+ * to be scanned with very little garbage generation.
+ *
+ * <p>Instances of this class are not safe for use from multiple threads
+ * concurrently.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class StringDecoder {
+
+    private final int mask_;
+    private final byte[][] keys_;
+    private final String[] values_;
+    private long nHit_;
+    private long nMiss_;
+
+    /**
+     * Constructor.
+     * The cache size is rounded up to a power of two.
+     * A size of zero means that no caching is done, and every call
+     * creates a new String.
+     *
+     * @param  cacheSize  maximum number of distinct strings cached
+     */
+    public StringDecoder( int cacheSize ) {
+        if ( cacheSize < 0 ) {
+            throw new IllegalArgumentException( "Negative cache size" );
+        }
+        int nslot = 0;
+        if ( cacheSize > 0 ) {
+            nslot = 1;
+            while ( nslot < cacheSize ) {
+                nslot <<= 1;
+            }
+        }
+        mask_ = nslot - 1;
+        keys_ = new byte[ nslot ][];
+        values_ = new String[ nslot ];
+    }
+
+    /**
+     * Decodes a run of bytes as a string.
+     * The bytes are interpreted in the same way as by
+     * {@link DataType#readValues DataType.readValues} for character data.
+     *
+     * @param  bytes  byte array
+     * @param  off   offset into <code>bytes</code> of first character
+     * @param  leng  number of bytes in string
+     * @return   string value, possibly a cached instance
+     */
+    public String decode( byte[] bytes, int off, int leng ) {
+        if ( keys_.length == 0 ) {
+            return createString( bytes, off, leng );
+        }
+        int h = 0x811c9dc5;
+        for ( int i = 0; i < leng; i++ ) {
+            h = ( h ^ bytes[ off + i ] ) * 0x01000193;
+        }
+        int islot = ( h ^ ( h >>> 16 ) ) & mask_;
+        byte[] key = keys_[ islot ];
+        if ( key != null && rangeEquals( key, bytes, off, leng ) ) {
+            nHit_++;
+            return values_[ islot ];
+        }
+        else {
+            nMiss_++;
+            key = new byte[ leng ];
+            System.arraycopy( bytes, off, key, 0, leng );
+            String value = createString( bytes, off, leng );
+            keys_[ islot ] = key;
+            values_[ islot ] = value;
+            return value;
+        }
+    }
+
+    /**
+     * Decodes a sequence of fixed-length strings from a byte array,
+     * as read for instance by
+     * {@link Variable#readRawBytes Variable.readRawBytes}.
+     *
+     * @param  bytes  byte array containing concatenated strings
+     * @param  nelPerItem  number of bytes per string
+     *                     (the numElems value for the variable)
+     * @param  values   array into which strings are written,
+     *                  starting at element 0
+     * @param  nitem   number of strings to decode
+     */
+    public void decodeItems( byte[] bytes, int nelPerItem, String[] values,
+                             int nitem ) {
+        for ( int i = 0; i < nitem; i++ ) {
+            values[ i ] = decode( bytes, i * nelPerItem, nelPerItem );
+        }
+    }
+
+    /**
+     * Returns the number of decode calls satisfied from the cache.
+     *
+     * @return  cache hit count
+     */
+    public long getHitCount() {
+        return nHit_;
+    }
+
+    /**
+     * Returns the number of decode calls that required a new String.
+     * Calls made when caching is disabled are not counted.
+     *
+     * @return  cache miss count
+     */
+    public long getMissCount() {
+        return nMiss_;
+    }
+
+    /**
+     * Creates a new string from a run of bytes.
+     *
+     * @param  bytes  byte array
+     * @param  off   offset of first character
+     * @param  leng  number of bytes
+     * @return   new string
+     */
+    private static String createString( byte[] bytes, int off, int leng ) {
+        return new String( bytes, off, leng );
+    }
+
+    /**
+     * Indicates whether a key array has the same content as a run of bytes.
+     *
+     * @param  key   key array
+     * @param  bytes  byte array
+     * @param  off   offset into bytes
+     * @param  leng  number of bytes
+     * @return  true iff key has length leng and matches the bytes
+     */
+    private static boolean rangeEquals( byte[] key, byte[] bytes, int off,
+                                        int leng ) {
+        if ( key.length != leng ) {
+            return false;
+        }
+        for ( int i = 0; i < leng; i++ ) {
+            if ( key[ i ] != bytes[ off + i ] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,383 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.IOException;
+
+/**
+ * Resamples several variables, each with its own time variable,
+ * onto a common grid of target times.
+ *
+ * <p>In ISTP-style CDFs each data variable names the time variable
+ * it depends on using its <code>DEPEND_0</code> attribute,
+ * and different variables may have different time variables and
+ * record counts.  This class reads each data variable together with
+ * its time variable in bulk chunks and merges them with the target
+ * times, which are supplied in non-decreasing order in one or more
+ * calls to {@link #align align}.
+ * Since both the source and target times are sorted,
+ * each source record is visited once and no searching is required,
+ * and only one chunk of each source variable is held in memory.
+ *
+ * <p>Source values which are NaN, equal to the variable's
+ * <code>FILLVAL</code>, or outside its
+ * <code>VALIDMIN</code>..<code>VALIDMAX</code> range are ignored,
+ * as are records with no file-based value,
+ * and records whose time is equal to the time variable's
+ * <code>FILLVAL</code> (or for TIME_TT2000 the special fill and pad
+ * values).
+ * Results for which no suitable source values exist are NaN.
+ *
+ * <p>Time values are as read from the time variables,
+ * except that EPOCH16 values are converted to seconds
+ * (the first element plus the second multiplied by 1e-12);
+ * all the time variables must have the same data type,
+ * and the target times must be in the same units.
+ * Source times, apart from fill values, are assumed to be
+ * non-decreasing.
+ *
+ * <p>Instances of this class are not thread-safe.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class TimeAlignment {
+
+    private final Cursor[] cursors_;
+    private final Method method_;
+    private final double maxGap_;
+    private double lastTarget_;
+
+    /** Maximum number of records read in a single chunk. */
+    private static final int READ_CHUNK = 16 * 1024;
+
+    /**
+     * Constructor.
+     *
+     * @param  dataVars  scalar numeric data variables
+     * @param  timeVars  time variable for each data variable
+     * @param  vatts   variable attributes from the same CDF
+     * @param  method  resampling method
+     * @param  maxGap  maximum distance in time units between a target
+     *                 time and the source values used for it;
+     *                 for {@link Method#LINEAR LINEAR} this is the maximum
+     *                 interval between the two source values
+     */
+    public TimeAlignment( Variable[] dataVars, Variable[] timeVars,
+                          VariableAttribute[] vatts, Method method,
+                          double maxGap ) {
+        int nv = dataVars.length;
+        if ( timeVars.length != nv ) {
+            throw new IllegalArgumentException( "Array length mismatch" );
+        }
+        cursors_ = new Cursor[ nv ];
+        for ( int iv = 0; iv < nv; iv++ ) {
+            Variable dataVar = dataVars[ iv ];
+            Variable timeVar = timeVars[ iv ];
+            if ( ! isScalarNumeric( dataVar ) ) {
+                throw new IllegalArgumentException( "Not scalar numeric: "
+                                                  + dataVar.getName() );
+            }
+            if ( ! isScalarNumeric( timeVar ) &&
+                 timeVar.getDataType() != DataType.EPOCH16 ) {
+                throw new IllegalArgumentException( "Not a time variable: "
+                                                  + timeVar.getName() );
+            }
+            if ( timeVar.getDataType() != timeVars[ 0 ].getDataType() ) {
+                throw new IllegalArgumentException( "Time variable types "
+                                                  + "differ" );
+            }
+            VariableStats validity =
+                VariableStats.createAccumulator( dataVar, vatts );
+            cursors_[ iv ] = new Cursor( dataVar, timeVar, vatts, validity );
+        }
+        method_ = method;
+        maxGap_ = maxGap;
+        lastTarget_ = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Constructs an alignment for variables from a CDF, using the time
+     * variable named by each one's <code>DEPEND_0</code> attribute.
+     *
+     * @param  content  CDF content
+     * @param  dataVars  scalar numeric data variables
+     * @param  method  resampling method
+     * @param  maxGap  maximum distance in time units between a target
+     *                 time and the source values used for it
+     * @return  new alignment
+     * @throws  IllegalArgumentException  if a variable has no usable
+     *                                    <code>DEPEND_0</code>
+     */
+    public static TimeAlignment createAlignment( CdfContent content,
+                                                 Variable[] dataVars,
+                                                 Method method,
+                                                 double maxGap ) {
+        Variable[] timeVars = new Variable[ dataVars.length ];
+        for ( int iv = 0; iv < dataVars.length; iv++ ) {
+            timeVars[ iv ] = getDependVariable( content, dataVars[ iv ] );
+            if ( timeVars[ iv ] == null ) {
+                throw new IllegalArgumentException( "No DEPEND_0 for "
+                                                  + dataVars[ iv ].getName() );
+            }
+        }
+        return new TimeAlignment( dataVars, timeVars,
+                                  content.getVariableAttributes(),
+                                  method, maxGap );
+    }
+
+    /**
+     * Returns the variable named by a variable's <code>DEPEND_0</code>
+     * attribute.
+     *
+     * @param  content  CDF content
+     * @param  var  variable
+     * @return  time variable, or null if there is none
+     */
+    public static Variable getDependVariable( CdfContent content,
+                                              Variable var ) {
+        for ( VariableAttribute vatt : content.getVariableAttributes() ) {
+            if ( "DEPEND_0".equals( vatt.getName() ) ) {
+                AttributeEntry entry = vatt.getEntry( var );
+                Object value = entry == null ? null : entry.getShapedValue();
+                if ( value instanceof String ) {
+                    String name = ((String) value).trim();
+                    for ( Variable v : content.getVariables() ) {
+                        if ( v.getName().equals( name ) ) {
+                            return v;
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of variables aligned.
+     *
+     * @return  variable count
+     */
+    public int getVariableCount() {
+        return cursors_.length;
+    }
+
+    /**
+     * Calculates the values of each variable at a sequence of
+     * target times.  This method may be called repeatedly to process
+     * a long target grid in chunks, as long as the target times are
+     * non-decreasing over all calls.
+     *
+     * @param  targetTimes  target times, non-decreasing;
+     *                      NaN values give NaN results
+     * @param  n  number of target times
+     * @param  results  array with an element for each variable,
+     *                  each with room for <code>n</code> values,
+     *                  into which the resampled values are written
+     * @throws  IllegalArgumentException  if the target times decrease
+     */
+    public void align( double[] targetTimes, int n, double[][] results )
+            throws IOException {
+        for ( int it = 0; it < n; it++ ) {
+            double t = targetTimes[ it ];
+            if ( Double.isNaN( t ) ) {
+                for ( int iv = 0; iv < cursors_.length; iv++ ) {
+                    results[ iv ][ it ] = Double.NaN;
+                }
+            }
+            else {
+                if ( t < lastTarget_ ) {
+                    throw new IllegalArgumentException( "Target times "
+                                                      + "not sorted" );
+                }
+                lastTarget_ = t;
+                for ( int iv = 0; iv < cursors_.length; iv++ ) {
+                    Cursor cursor = cursors_[ iv ];
+                    cursor.advance( t );
+                    results[ iv ][ it ] = cursor.getValue( t );
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a variable has scalar numeric values.
+     *
+     * @param  var  variable
+     * @return  true iff var is numeric and has one item per record
+     */
+    private static boolean isScalarNumeric( Variable var ) {
+        return VariableStats.isNumeric( var )
+            && var.getShaper().getRawItemCount() == 1;
+    }
+
+    /**
+     * Resampling method.
+     */
+    public static enum Method {
+
+        /** Value of the source sample closest in time. */
+        NEAREST,
+
+        /** Value of the latest source sample not later than the target. */
+        PREVIOUS,
+
+        /** Linear interpolation between the source samples either side. */
+        LINEAR;
+    }
+
+    /**
+     * Keeps track of the source samples either side of the current
+     * target time for one variable.
+     */
+    private class Cursor {
+
+        private final Variable dataVar_;
+        private final Variable timeVar_;
+        private final VariableStats validity_;
+        private final TimeReader trdr_;
+        private final Object dwork_;
+        private final double[] times_;
+        private final double[] values_;
+        private final int nrec_;
+        private int nextRec_;
+        private int nchunk_;
+        private int ichunk_;
+        private boolean isStored_;
+        private boolean isStarted_;
+        private boolean hasPrev_;
+        private double prevTime_;
+        private double prevValue_;
+        private boolean hasNext_;
+        private double nextTime_;
+        private double nextValue_;
+
+        /**
+         * Constructor.
+         *
+         * @param  dataVar  data variable
+         * @param  timeVar  time variable
+         * @param  vatts   variable attributes, used to determine
+         *                 the time variable's fill value
+         * @param  validity  accumulator used to test value validity
+         */
+        Cursor( Variable dataVar, Variable timeVar,
+                VariableAttribute[] vatts, VariableStats validity ) {
+            dataVar_ = dataVar;
+            timeVar_ = timeVar;
+            validity_ = validity;
+            nrec_ = Math.min( dataVar.getRecordCount(),
+                              timeVar.getRecordCount() );
+            int nwork = Math.max( 1, Math.min( READ_CHUNK, nrec_ ) );
+            trdr_ = new TimeReader( timeVar, vatts, nwork );
+            dwork_ = dataVar.createRawValueArray( nwork );
+            times_ = new double[ nwork ];
+            values_ = new double[ nwork ];
+        }
+
+        /**
+         * Moves through the source samples so that the previous sample
+         * is the latest one not later than a given time, and the next
+         * sample is the one after that.
+         *
+         * @param  t  target time, not less than any previous value
+         */
+        void advance( double t ) throws IOException {
+            if ( ! isStarted_ ) {
+                isStarted_ = true;
+                readNext();
+            }
+            while ( hasNext_ && nextTime_ <= t ) {
+                hasPrev_ = true;
+                prevTime_ = nextTime_;
+                prevValue_ = nextValue_;
+                readNext();
+            }
+        }
+
+        /**
+         * Returns the resampled value at a target time.
+         * Must be called after {@link #advance advance} for the same time.
+         *
+         * @param  t  target time
+         * @return  resampled value, or NaN
+         */
+        double getValue( double t ) {
+            double dPrev = hasPrev_ ? t - prevTime_ : Double.NaN;
+            double dNext = hasNext_ ? nextTime_ - t : Double.NaN;
+            switch ( method_ ) {
+                case PREVIOUS:
+                    return dPrev <= maxGap_ ? prevValue_ : Double.NaN;
+                case NEAREST:
+                    if ( hasPrev_ && ! ( dNext < dPrev ) ) {
+                        return dPrev <= maxGap_ ? prevValue_ : Double.NaN;
+                    }
+                    else {
+                        return dNext <= maxGap_ ? nextValue_ : Double.NaN;
+                    }
+                case LINEAR:
+                    if ( dPrev == 0 ) {
+                        return prevValue_;
+                    }
+                    else if ( hasPrev_ && hasNext_ &&
+                              nextTime_ - prevTime_ <= maxGap_ ) {
+                        double frac = dPrev / ( nextTime_ - prevTime_ );
+                        return prevValue_
+                             + frac * ( nextValue_ - prevValue_ );
+                    }
+                    else {
+                        return Double.NaN;
+                    }
+                default:
+                    throw new AssertionError( method_ );
+            }
+        }
+
+        /**
+         * Sets the next sample to the following valid source value,
+         * reading more data if required.
+         * If there are no more, the next sample is marked absent.
+         */
+        private void readNext() throws IOException {
+            hasNext_ = false;
+            while ( true ) {
+                if ( ichunk_ >= nchunk_ ) {
+                    if ( nextRec_ >= nrec_ ) {
+                        return;
+                    }
+                    readChunk();
+                }
+                int i = ichunk_++;
+
+                // Fill times are read as NaN.
+                double t = times_[ i ];
+                double v = values_[ i ];
+                if ( isStored_ && ! Double.isNaN( t ) &&
+                     validity_.isValid( v ) ) {
+                    hasNext_ = true;
+                    nextTime_ = t;
+                    nextValue_ = v;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Reads the next chunk of times and values.
+         * The time and data variables may have different block
+         * boundaries, in which case the shorter run is used.
+         */
+        private void readChunk() throws IOException {
+            int irec = nextRec_;
+            int nt = trdr_.readTimes( irec,
+                                      Math.min( times_.length,
+                                                nrec_ - irec ),
+                                      times_ );
+            int n = dataVar_.readRawRecords( irec, nt, dwork_ );
+            TimeReader.toDoubles( dwork_, n, values_ );
+            isStored_ = dataVar_.hasRecord( irec )
+                     && timeVar_.hasRecord( irec );
+            nextRec_ = irec + n;
+            nchunk_ = n;
+            ichunk_ = 0;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.IOException;
+
+/**
+ * Reads time values from a time variable as doubles.
+ * EPOCH16 values are converted to seconds (the first element plus
+ * the second multiplied by 1e-12); other types are used as they are.
+ *
+ * <p>Values equal to the variable's <code>FILLVAL</code>, if any,
+ * and for TIME_TT2000 the special fill and pad values
+ * (see {@link Tt2kConverter#isFill}), are read as NaN.
+ * Long-typed fill values are compared before conversion to double,
+ * so that nearby real times are not mistaken for fill.
+ *
+ * <p>Instances are not thread-safe.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+class TimeReader {
+
+    private final Variable var_;
+    private final boolean isEpoch16_;
+    private final boolean isTt2000_;
+    private final Object work_;
+    private final double[] times_;
+    private final double fill_;
+    private final long fillLong_;
+    private final boolean hasFillLong_;
+
+    /**
+     * Constructor.
+     *
+     * @param  var  time variable
+     * @param  vatts  variable attributes from the same CDF,
+     *                used to determine the fill value
+     * @param  nwork  maximum number of records read at once
+     */
+    TimeReader( Variable var, VariableAttribute[] vatts, int nwork ) {
+        var_ = var;
+        isEpoch16_ = var.getDataType() == DataType.EPOCH16;
+        isTt2000_ = var.getDataType().getName()
+                   .equals( DataType.TIME_TT2000.getName() );
+        work_ = var.createRawValueArray( nwork );
+        times_ = new double[ nwork ];
+        AttributeEntry fillEntry = null;
+        for ( VariableAttribute vatt : vatts ) {
+            if ( "FILLVAL".equals( vatt.getName() ) ) {
+                fillEntry = vatt.getEntry( var );
+            }
+        }
+        Object fillRaw = fillEntry == null ? null : fillEntry.getRawValue();
+        double[] fill1 = new double[] { Double.NaN };
+        if ( fillRaw instanceof long[] && ((long[]) fillRaw).length == 1 ) {
+            fillLong_ = ((long[]) fillRaw)[ 0 ];
+            hasFillLong_ = true;
+            toDoubles( fillRaw, 1, fill1 );
+        }
+        else {
+            fillLong_ = 0;
+            hasFillLong_ = false;
+            if ( isEpoch16_ ) {
+                if ( fillRaw instanceof double[] &&
+                     ((double[]) fillRaw).length == 2 ) {
+                    toTime( fillRaw, fill1 );
+                }
+            }
+            else if ( fillEntry != null && fillEntry.getItemCount() == 1 &&
+                      fillEntry.getItem( 0 ) instanceof Number ) {
+                fill1[ 0 ] = ( (Number) fillEntry.getItem( 0 ) )
+                            .doubleValue();
+            }
+        }
+        fill_ = fill1[ 0 ];
+    }
+
+    /**
+     * Reads a run of consecutive time values.
+     *
+     * @param  irec  first record
+     * @param  nrec  maximum number of records to read,
+     *               no more than the workspace size
+     * @param  times  output array
+     * @return  number of records read
+     */
+    int readTimes( int irec, int nrec, double[] times )
+            throws IOException {
+        int n = var_.readRawRecords( irec, nrec, work_ );
+        if ( isEpoch16_ ) {
+            double[] a = (double[]) work_;
+            for ( int i = 0; i < n; i++ ) {
+                times[ i ] = a[ 2 * i ] + a[ 2 * i + 1 ] * 1e-12;
+            }
+        }
+        else {
+            toDoubles( work_, n, times );
+        }
+        if ( work_ instanceof long[] ) {
+            long[] a = (long[]) work_;
+            for ( int i = 0; i < n; i++ ) {
+                long t = a[ i ];
+                if ( ( hasFillLong_ && t == fillLong_ ) ||
+                     ( isTt2000_ && Tt2kConverter.isFill( t ) ) ) {
+                    times[ i ] = Double.NaN;
+                }
+            }
+        }
+        else if ( ! Double.isNaN( fill_ ) ) {
+            for ( int i = 0; i < n; i++ ) {
+                if ( times[ i ] == fill_ ) {
+                    times[ i ] = Double.NaN;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the index of the first record whose time is not
+     * less than a given value, assuming the non-fill times are
+     * non-decreasing.  Records with fill times are ignored,
+     * so that all the non-fill times before the returned index
+     * are less than <code>t</code>, and all those from it on are not.
+     *
+     * @param  t  time value
+     * @param  nrec  number of records
+     * @return  record index in the range 0..nrec
+     */
+    int search( double t, int nrec ) throws IOException {
+        int lo = 0;
+        int hi = nrec;
+        while ( lo < hi ) {
+            int mid = ( lo + hi ) >>> 1;
+
+            // Use the first non-fill time at or after the midpoint.
+            // If there is none before the upper bound, the records
+            // from the midpoint on can be discounted.
+            int irec = mid;
+            double tmid = Double.NaN;
+            while ( irec < hi && Double.isNaN( tmid ) ) {
+                int n = readTimes( irec, Math.min( times_.length, hi - irec ),
+                                   times_ );
+                int i = 0;
+                while ( i < n && Double.isNaN( times_[ i ] ) ) {
+                    i++;
+                }
+                if ( i < n ) {
+                    tmid = times_[ i ];
+                }
+                irec += i;
+            }
+            if ( Double.isNaN( tmid ) || ! ( tmid < t ) ) {
+                hi = mid;
+            }
+            else {
+                lo = irec + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Converts a single raw time value to a double.
+     *
+     * @param  raw  raw value array for one record
+     * @param  time1  one-element output array
+     */
+    private void toTime( Object raw, double[] time1 ) {
+        if ( isEpoch16_ ) {
+            double[] a = (double[]) raw;
+            time1[ 0 ] = a[ 0 ] + a[ 1 ] * 1e-12;
+        }
+        else {
+            toDoubles( raw, 1, time1 );
+        }
+    }
+
+    /**
+     * Copies the first few elements of a primitive numeric array
+     * into a double array.
+     *
+     * @param  array  primitive numeric array
+     * @param  n   number of elements
+     * @param  out  output array
+     */
+    static void toDoubles( Object array, int n, double[] out ) {
+        if ( array instanceof double[] ) {
+            System.arraycopy( array, 0, out, 0, n );
+        }
+        else if ( array instanceof float[] ) {
+            float[] a = (float[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                out[ i ] = a[ i ];
+            }
+        }
+        else if ( array instanceof long[] ) {
+            long[] a = (long[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                out[ i ] = a[ i ];
+            }
+        }
+        else if ( array instanceof int[] ) {
+            int[] a = (int[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                out[ i ] = a[ i ];
+            }
+        }
+        else if ( array instanceof short[] ) {
+            short[] a = (short[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                out[ i ] = a[ i ];
+            }
+        }
+        else if ( array instanceof byte[] ) {
+            byte[] a = (byte[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                out[ i ] = a[ i ];
+            }
+        }
+        else {
+            throw new IllegalArgumentException( "Not numeric array" );
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package uk.ac.bristol.star.cdf;
+
+/**
+ * Converts CDF TIME_TT2000 values to Unix time.
+ * The conversion uses the ordered list of {@link TtScaler}s,
+ * and remembers the most recently used one, since successive
+ * values are usually close together.
+ *
+ * <p>Times during a leap second are converted to the Unix time of
+ * the following second, as for {@link TtScaler#tt2kToUnixMillis}.
+ * The special TIME_TT2000 fill and pad values are not treated specially;
+ * see {@link #isFill}.
+ *
+ * <p>Instances of this class are not thread-safe.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class Tt2kConverter {
+
+    private final TtScaler[] scalers_;
+    private int iScaler_;
+
+    /**
+     * Constructor.
+     */
+    public Tt2kConverter() {
+        scalers_ = TtScaler.getTtScalers();
+        iScaler_ = -1;
+    }
+
+    /**
+     * Converts a TIME_TT2000 value to Unix milliseconds,
+     * including the sub-millisecond part.
+     *
+     * @param  tt2k  TIME_TT2000 value in nanoseconds
+     * @return   milliseconds since the Unix epoch
+     */
+    public double toUnixMillis( long tt2k ) {
+        long tt2kMillis = getTt2kMillis( tt2k );
+        return getScaler( tt2kMillis ).tt2kToUnixMillis( tt2kMillis )
+             + getPlusNanos( tt2k ) * 1e-6;
+    }
+
+    /**
+     * Converts a TIME_TT2000 value to Unix nanoseconds.
+     *
+     * @param  tt2k  TIME_TT2000 value in nanoseconds
+     * @return   nanoseconds since the Unix epoch
+     */
+    public long toUnixNanos( long tt2k ) {
+        long tt2kMillis = getTt2kMillis( tt2k );
+        long unixMillis =
+            (long) getScaler( tt2kMillis ).tt2kToUnixMillis( tt2kMillis );
+        return unixMillis * 1000000 + getPlusNanos( tt2k );
+    }
+
+    /**
+     * Returns the index into the {@link TtScaler#getTtScalers} array
+     * of the scaler that is valid for a given time.
+     *
+     * @param  tt2kMillis  TT time since J2000 in milliseconds
+     * @return  scaler index
+     */
+    public int getScalerIndex( long tt2kMillis ) {
+        iScaler_ = TtScaler.getScalerIndex( tt2kMillis, scalers_, iScaler_ );
+        return iScaler_;
+    }
+
+    /**
+     * Returns the scaler that is valid for a given time.
+     *
+     * @param  tt2kMillis  TT time since J2000 in milliseconds
+     * @return  scaler
+     */
+    public TtScaler getScaler( long tt2kMillis ) {
+        return scalers_[ getScalerIndex( tt2kMillis ) ];
+    }
+
+    /**
+     * Returns the whole milliseconds part of a TIME_TT2000 value,
+     * rounding down.
+     *
+     * @param  tt2k  TIME_TT2000 value in nanoseconds
+     * @return  TT time since J2000 in milliseconds
+     */
+    public static long getTt2kMillis( long tt2k ) {
+        long tt2kMillis = tt2k / 1000000;
+        return tt2k % 1000000 < 0 ? tt2kMillis - 1 : tt2kMillis;
+    }
+
+    /**
+     * Returns the nanoseconds part of a TIME_TT2000 value
+     * following its whole milliseconds part.
+     *
+     * @param  tt2k  TIME_TT2000 value in nanoseconds
+     * @return  nanosecond adjustment in the range 0..999999
+     * @see   #getTt2kMillis
+     */
+    public static int getPlusNanos( long tt2k ) {
+        int plusNanos = (int) ( tt2k % 1000000 );
+        return plusNanos < 0 ? plusNanos + 1000000 : plusNanos;
+    }
+
+    /**
+     * Indicates whether a TIME_TT2000 value is one of the special values
+     * used for fill or pad, which do not represent real times.
+     *
+     * @param  tt2k  TIME_TT2000 value
+     * @return  true for the fill value (the most negative long)
+     *          and the pad value (one more than that)
+     */
+    public static boolean isFill( long tt2k ) {
+        return tt2k == Long.MIN_VALUE || tt2k == Long.MIN_VALUE + 1;
+    }
+}
@@ -6,7 +6,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import uk.ac.bristol.star.cdf.record.Buf;
+import uk.ac.bristol.star.cdf.record.CdfMetrics;
 import uk.ac.bristol.star.cdf.record.DataReader;
+import uk.ac.bristol.star.cdf.record.Metrics;
 import uk.ac.bristol.star.cdf.record.Record;
 import uk.ac.bristol.star.cdf.record.RecordFactory;
 import uk.ac.bristol.star.cdf.record.RecordMap;
@@ -25,6 +27,9 @@ import uk.ac.bristol.star.cdf.record.VariableDescriptorRecord;
  * {@link #readRawRecord readRawRecord} (which should be fairly efficient) or
  * {@link #readShapedRecord readShapedRecord} (which may have to copy and
  * possibly re-order the array, and may not be so efficient).
+ * If many records are to be shaped, a destination array from
+ * {@link #createShapedValueArray} can be supplied to avoid
+ * allocating a new array for each one.
  *
  * @author   Mark Taylor
  * @since    20 Jun 2013
@@ -40,11 +45,14 @@ public class Variable {
     private final int rvaleng_;
     private final DataType dataType_;
     private final DataReader dataReader_;
+    private final DataReader byteReader_;
     private final Object padRawValueArray_;
+    private final byte[] padRawBytes_;
     private final Object shapedPadValueRowMajor_;
     private final Object shapedPadValueColumnMajor_;
     private final String summaryTxt_;
-    private RecordReader recordReader_;
+    private volatile RecordReader recordReader_;
+    private RecordMap recordMap_;
 
     /**
      * Constructor.
@@ -55,6 +63,21 @@ public class Variable {
      */
     public Variable( VariableDescriptorRecord vdr, CdfInfo cdfInfo,
                      RecordFactory recFact ) throws IOException {
+        this( vdr, cdfInfo, recFact, null );
+    }
+
+    /**
+     * Constructs a variable which may reuse the record map of an
+     * earlier instance representing the same variable in a file
+     * that has since been appended to.
+     *
+     * @param   vdr   variable descriptor record for the variable
+     * @param   cdfInfo  global CDF information
+     * @param   recFact  record factory
+     * @param   previous  earlier instance of the same variable, or null
+     */
+    Variable( VariableDescriptorRecord vdr, CdfInfo cdfInfo,
+              RecordFactory recFact, Variable previous ) throws IOException {
 
         // Prepare state for reading data.
         vdr_ = vdr;
@@ -74,11 +97,14 @@ public class Variable {
         shaper_ =
             Shaper.createShaper( dataType_, dimSizes, dimVarys, rowMajor );
         int nraw = shaper_.getRawItemCount();
-        dataReader_ = new DataReader( dataType_, numElems, nraw );
+        dataReader_ = new MeteredDataReader( dataType_, numElems, nraw );
         rvaleng_ = Array.getLength( dataReader_.createValueArray() );
+        int recSize = dataReader_.getRecordSize();
+        byteReader_ = new MeteredDataReader( DataType.INT1, 1, recSize );
 
         // Read pad value if present.
         long padOffset = vdr.getPadValueOffset();
+        padRawBytes_ = new byte[ recSize ];
         if ( padOffset >= 0 ) {
             DataReader padReader = new DataReader( dataType_, numElems, 1 );
             assert vdr.getPadValueSize() == padReader.getRecordSize();
@@ -93,6 +119,13 @@ public class Variable {
             shapedPadValueRowMajor_ = shaper_.shape( padRawValueArray_, true );
             shapedPadValueColumnMajor_ =
                 shaper_.shape( padRawValueArray_, false );
+            int padSize = vdr.getPadValueSize();
+            byte[] padBytes = new byte[ padSize ];
+            buf_.readDataBytes( padOffset, padSize, padBytes );
+            for ( int i = 0; i < nraw; i++ ) {
+                System.arraycopy( padBytes, 0, padRawBytes_, i * padSize,
+                                  padSize );
+            }
         }
         else if ( vdr_.sRecords != 0 ) {
             Object padValueArray = dataType_.getDefaultPadValueArray();
@@ -136,6 +169,10 @@ public class Variable {
             .append( '/' )
             .append( varyTxt )
             .toString();
+
+        // If there is an earlier version of this variable, arrange to
+        // extend its record map rather than building one from scratch.
+        recordMap_ = previous == null ? null : previous.getRecordMap();
     }
 
     /**
@@ -236,6 +273,30 @@ public class Variable {
         return dataReader_.createValueArray();
     }
 
+    /**
+     * Creates a workspace array big enough to hold the raw values
+     * of a given number of records, suitable for use with the
+     * {@link #readRawRecords readRawRecords} method.
+     *
+     * @param  nrec  number of records
+     * @return  workspace array for bulk data reading
+     */
+    public Object createRawValueArray( int nrec ) {
+        return Array.newInstance( dataType_.getArrayElementClass(),
+                                  nrec * rvaleng_ );
+    }
+
+    /**
+     * Creates a workspace byte array suitable for use with the
+     * {@link #readRawBytes readRawBytes} method.
+     * Its length is the number of bytes used to store a single record.
+     *
+     * @return  workspace byte array for raw byte reading
+     */
+    public byte[] createRawByteArray() {
+        return new byte[ byteReader_.getRecordSize() ];
+    }
+
     /**
      * Indicates whether a real distinct file-based record exists for
      * the given index.
@@ -249,6 +310,36 @@ public class Variable {
         return getRecordReader().hasRecord( irec );
     }
 
+    /**
+     * Returns the ranges of record indices for which real file-based
+     * records exist, that is those for which {@link #hasRecord hasRecord}
+     * returns true.
+     * This is taken directly from the record index, so it is much
+     * cheaper than probing each record in turn, and can be used to skip
+     * the gaps in sparse variables.
+     * Adjacent blocks of stored records are merged into a single range.
+     *
+     * @return  array of (first, last) record index pairs, both inclusive,
+     *          in ascending order
+     */
+    public int[][] getRecordRanges() throws IOException {
+        return getRecordReader().getRecordRanges();
+    }
+
+    /**
+     * Returns the number of records for which real file-based records
+     * exist.
+     *
+     * @return  number of stored records
+     */
+    public int getStoredRecordCount() throws IOException {
+        int count = 0;
+        for ( int[] range : getRecordRanges() ) {
+            count += range[ 1 ] - range[ 0 ] + 1;
+        }
+        return count;
+    }
+
     /**
      * Reads the data from a single record into a supplied raw value array.
      * The values are read into the supplied array in the order in which
@@ -265,6 +356,122 @@ public class Variable {
          getRecordReader().readRawRecord( irec, rawValueArray );
     }
 
+    /**
+     * Reads the raw data for a run of consecutive records into a
+     * supplied array.
+     * The values for each record are laid out as for
+     * {@link #readRawRecord readRawRecord}, one record after another,
+     * starting at element zero of the array.
+     *
+     * <p>Reading may stop before <code>nrec</code> records have been read,
+     * at the boundary of a block of records stored contiguously in
+     * the file, or of a sparse region, so that each call can be
+     * satisfied with a single bulk read (or fill) operation.
+     * The return value gives the number of records actually read;
+     * it is at least one if <code>nrec</code> is positive.
+     * All the records read by a single call are either file-based
+     * or not, so calling {@link #hasRecord hasRecord} for the first one
+     * gives the answer for all of them.
+     * Callers wanting a fixed number of records should call this
+     * method in a loop.
+     *
+     * @param  irec  index of first record to read
+     * @param  nrec  maximum number of records to read
+     * @param  rawValueArray  workspace array, as created by the
+     *                        <code>createRawValueArray(int)</code> method
+     *                        with an argument of at least
+     *                        <code>nrec</code>
+     * @return  number of records read
+     */
+    public int readRawRecords( int irec, int nrec, Object rawValueArray )
+            throws IOException {
+        return readRawRecords( irec, nrec, rawValueArray, 0, null );
+    }
+
+    /**
+     * Reads the data for a run of consecutive records into a supplied
+     * array starting at a given element.
+     * This behaves like {@link #readRawRecords(int,int,Object)},
+     * except that the values are written starting at element
+     * <code>off</code> of the array rather than element zero,
+     * which allows a run of records to be assembled in a single array
+     * by calling this method in a loop.
+     * Pad and repeated values are written in place, but file data
+     * can only be read to the start of an array, so file-based records
+     * read to a non-zero offset are read via the supplied workspace.
+     * Callers reading many runs should reuse the same workspace.
+     *
+     * @param  irec  index of first record to read
+     * @param  nrec  maximum number of records to read
+     * @param  rawValueArray  array of the type created by the
+     *                        <code>createRawValueArray(int)</code> method,
+     *                        with room for <code>nrec</code> records
+     *                        following element <code>off</code>
+     * @param  off   index of array element at which to start writing
+     * @param  work  workspace array, as created by the
+     *               <code>createRawValueArray(int)</code> method
+     *               with an argument of at least <code>nrec</code>;
+     *               may be null if <code>off</code> is zero
+     * @return  number of records read
+     */
+    public int readRawRecords( int irec, int nrec, Object rawValueArray,
+                               int off, Object work )
+            throws IOException {
+        return nrec > 0
+             ? getRecordReader().readRawRecords( irec, nrec, rawValueArray,
+                                                 off, work )
+             : 0;
+    }
+
+    /**
+     * Reads a rectangular selection of the values of a regular sequence
+     * of records.  Only the selected values are read from the file.
+     * See {@link Hyperslab} for details.
+     *
+     * @param  recStart  index of first record
+     * @param  recCount  number of records
+     * @param  recStride  step between record indices, at least 1
+     * @param  dimStarts  index of first selected item in each dimension
+     * @param  dimCounts  number of selected items in each dimension
+     * @return  raw value array containing the selected values for each
+     *          record in sequence
+     */
+    public Object readHyperslab( int recStart, int recCount, int recStride,
+                                 int[] dimStarts, int[] dimCounts )
+            throws IOException {
+        Hyperslab slab = new Hyperslab( this, dimStarts, dimCounts );
+        Object array = slab.createValueArray( recCount );
+        slab.readRecords( recStart, recCount, recStride, array );
+        return array;
+    }
+
+    /**
+     * Reads the bytes of a single record, as stored in the data stream,
+     * into a supplied byte array.
+     * No decoding is performed, so the content is subject to the
+     * CDF's data encoding and majority.
+     * This is mainly useful for character data, where the
+     * <code>readRawRecord</code> method creates a new String for each
+     * item; for CHAR and UCHAR variables item <code>i</code> occupies
+     * bytes <code>i*numElems</code> to <code>(i+1)*numElems-1</code>,
+     * where <code>numElems</code> is the value of that
+     * {@link #getDescriptor descriptor} field.
+     * A {@link StringDecoder} can be used to turn the result into
+     * Strings with little or no allocation.
+     *
+     * <p>For records with no file-based value, the array is filled with
+     * the stored bytes of the applicable pad or previous value;
+     * if the file declares no pad value, zero bytes are used.
+     *
+     * @param  irec  record index
+     * @param  byteArray  workspace array, as created by the
+     *                    <code>createRawByteArray</code> method
+     */
+    public void readRawBytes( int irec, byte[] byteArray )
+            throws IOException {
+        getRecordReader().readRawBytes( irec, byteArray );
+    }
+
     /**
      * Reads the data from a single record and returns it as an object
      * of a suitable type for this variable.
@@ -294,7 +501,57 @@ public class Variable {
                                     Object rawValueArrayWorkspace )
              throws IOException {
          return getRecordReader()
-               .readShapedRecord( irec, rowMajor, rawValueArrayWorkspace );
+               .readShapedRecord( irec, rowMajor, rawValueArrayWorkspace,
+                                  null );
+    }
+
+    /**
+     * Reads the data from a single record and writes it into a
+     * caller-supplied shaped array.
+     * This behaves like
+     * {@link #readShapedRecord(int,boolean,Object) readShapedRecord},
+     * except that for array-valued variables the result is written into
+     * <code>shapedArray</code> rather than into a newly allocated object.
+     * Re-using the same destination array for many records avoids
+     * per-record allocation.
+     *
+     * <p>The destination array is as obtained from
+     * {@link #createShapedValueArray}.  For scalar variables that
+     * method returns null, and in that case the return value is a
+     * wrapper object as for <code>readShapedRecord</code>.
+     *
+     * @param  irec  record index
+     * @param  rowMajor  required majority of output array; true for row major,
+     *                   false for column major; only has an effect for
+     *                   dimensionality &gt;=2
+     * @param  rawValueArrayWorkspace  workspace array, as created by the
+     *                                 <code>createRawValueArray</code> method
+     * @param  shapedArray  destination array, as created by the
+     *                      <code>createShapedValueArray</code> method,
+     *                      or null
+     * @return   the shaped result; this is <code>shapedArray</code>
+     *           if it is non-null, except that null may be returned
+     *           for records beyond the end of a non-sparse variable
+     */
+    public Object readShapedRecord( int irec, boolean rowMajor,
+                                    Object rawValueArrayWorkspace,
+                                    Object shapedArray )
+             throws IOException {
+         return getRecordReader()
+               .readShapedRecord( irec, rowMajor, rawValueArrayWorkspace,
+                                  shapedArray );
+    }
+
+    /**
+     * Creates a destination array suitable for use with the
+     * {@link #readShapedRecord(int,boolean,Object,Object) readShapedRecord}
+     * method that writes into a caller-supplied array.
+     * For scalar variables there is no such array, and null is returned.
+     *
+     * @return  shaped value array for data reading, or null
+     */
+    public Object createShapedValueArray() {
+        return shaper_.createShapedArray();
     }
 
     /**
@@ -302,14 +559,54 @@ public class Variable {
      * Constructing it requires reading maps of where the record values
      * are stored, which might in principle involve a bit of work,
      * so do it lazily.
+     * Once it has been created no locking is required,
+     * so concurrent readers do not contend here.
      *
      * @return  record reader
      */
-    private synchronized RecordReader getRecordReader() throws IOException {
-        if ( recordReader_ == null ) {
-            recordReader_ = createRecordReader();
+    private RecordReader getRecordReader() throws IOException {
+        RecordReader reader = recordReader_;
+        if ( reader == null ) {
+            synchronized ( this ) {
+                if ( recordReader_ == null ) {
+                    recordReader_ = createRecordReader();
+                }
+                reader = recordReader_;
+            }
         }
-        return recordReader_;
+        return reader;
+    }
+
+    /**
+     * Ensures that the structures required to read record data,
+     * in particular the record map, have been constructed.
+     * This is not normally required, since they are built when first
+     * needed, but it can be used to force the relevant parts of the
+     * file to be read.
+     */
+    void prepareRecords() throws IOException {
+        getRecordReader();
+    }
+
+    /**
+     * Returns the record map giving the locations of this variable's
+     * stored records, reading it from the file if required.
+     *
+     * @return   record map
+     */
+    RecordMap readRecordMap() throws IOException {
+        getRecordReader();
+        return getRecordMap();
+    }
+
+    /**
+     * Returns the record map used by this variable's record reader,
+     * if it has been created, or the record map it will be based on.
+     *
+     * @return   record map, or null
+     */
+    private synchronized RecordMap getRecordMap() {
+        return recordMap_;
     }
 
     /**
@@ -318,9 +615,12 @@ public class Variable {
      * @return  new record reader
      */
     private RecordReader createRecordReader() throws IOException {
+        int recSize = dataReader_.getRecordSize();
         RecordMap recMap =
-            RecordMap.createRecordMap( vdr_, recFact_,
-                                       dataReader_.getRecordSize() );
+              recordMap_ == null
+            ? RecordMap.createRecordMap( vdr_, recFact_, recSize )
+            : RecordMap.extendRecordMap( recordMap_, vdr_, recFact_, recSize );
+        recordMap_ = recMap;
         if ( ! recordVariance_ ) {
             return new NoVaryRecordReader( recMap );
         }
@@ -349,6 +649,146 @@ public class Variable {
         }
     }
 
+    /**
+     * Returns the ranges of records covered by the entries of a record map,
+     * truncated to this variable's record count.
+     *
+     * @param  recMap  record map
+     * @return  array of (first, last) inclusive record index pairs,
+     *          with adjacent ranges merged
+     */
+    private int[][] getEntryRanges( RecordMap recMap ) {
+        int nrec = getRecordCount();
+        List<int[]> ranges = new ArrayList<int[]>();
+        int[] range = null;
+        int nent = recMap.getEntryCount();
+        for ( int ient = 0; ient < nent; ient++ ) {
+            int first = recMap.getFirstRecord( ient );
+            int last = Math.min( recMap.getLastRecord( ient ), nrec - 1 );
+            if ( first <= last ) {
+                if ( range != null && range[ 1 ] + 1 == first ) {
+                    range[ 1 ] = last;
+                }
+                else {
+                    range = new int[] { first, last };
+                    ranges.add( range );
+                }
+            }
+        }
+        return ranges.toArray( new int[ 0 ][] );
+    }
+
+    /**
+     * Returns a fixed shaped value, copying it into a supplied
+     * destination array if there is one.
+     *
+     * @param  shapedValue  fixed shaped value, may be null
+     * @param  shapedArray  destination array, or null
+     * @return  <code>shapedArray</code> populated with the content of
+     *          <code>shapedValue</code>, or <code>shapedValue</code>
+     *          itself if no copy is appropriate
+     */
+    private static Object copyShapedValue( Object shapedValue,
+                                           Object shapedArray ) {
+        if ( shapedArray != null && shapedValue != null &&
+             shapedValue.getClass().isArray() ) {
+            System.arraycopy( shapedValue, 0, shapedArray, 0,
+                              Array.getLength( shapedValue ) );
+            return shapedArray;
+        }
+        else {
+            return shapedValue;
+        }
+    }
+
+    /**
+     * Copies the raw values of a single record repeatedly into
+     * a multi-record raw value array.
+     *
+     * @param  recValue  array containing raw values for one record
+     * @param  recOff   index of the record's first element in recValue
+     * @param  nrec   number of copies required
+     * @param  rawValueArray  destination array
+     * @param  off   index of first element written in rawValueArray
+     */
+    private void fillRecords( Object recValue, int recOff, int nrec,
+                              Object rawValueArray, int off ) {
+        System.arraycopy( recValue, recOff, rawValueArray, off, rvaleng_ );
+
+        // Double the filled region on each step to keep the number of
+        // arraycopy calls small.
+        int nfill = 1;
+        while ( nfill < nrec ) {
+            int ncopy = Math.min( nfill, nrec - nfill );
+            System.arraycopy( rawValueArray, off, rawValueArray,
+                              off + nfill * rvaleng_, ncopy * rvaleng_ );
+            nfill += ncopy;
+        }
+    }
+
+    /**
+     * Reads the values of a run of records stored contiguously in a buf
+     * into a raw value array starting at a given element.
+     *
+     * @param  buf  data buffer
+     * @param  offset  byte offset into buf of first record start
+     * @param  nrec  number of records
+     * @param  rawValueArray  destination array
+     * @param  off   index of first element written in rawValueArray
+     * @param  work  workspace with room for nrec records,
+     *               used if off is non-zero
+     */
+    private void readValues( Buf buf, long offset, int nrec,
+                             Object rawValueArray, int off, Object work )
+            throws IOException {
+
+        // Buf reads fill arrays from the start, so a non-zero offset
+        // needs to go via the workspace.
+        if ( off == 0 ) {
+            dataReader_.readValues( buf, offset, nrec, rawValueArray );
+        }
+        else {
+            dataReader_.readValues( buf, offset, nrec, work );
+            System.arraycopy( work, 0, rawValueArray, off, nrec * rvaleng_ );
+        }
+    }
+
+    /**
+     * Returns the index of the last record in the block containing
+     * a record with a given entry index.
+     * The block is either a stored entry or a sparse gap between entries.
+     *
+     * @param  recMap  record map
+     * @param  ient  entry index as returned by
+     *               <code>recMap.getEntryIndex</code>
+     * @return  index of last record in the same block (inclusive)
+     */
+    private static int getBlockEnd( RecordMap recMap, int ient ) {
+        if ( ient >= 0 ) {
+            return recMap.getLastRecord( ient );
+        }
+        else {
+            int iNextEnt = -ient - 1;
+            return iNextEnt < recMap.getEntryCount()
+                 ? recMap.getFirstRecord( iNextEnt ) - 1
+                 : Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Returns the number of records that can be read in one go from
+     * a given starting point.
+     *
+     * @param  irec  first record index
+     * @param  nrec  maximum number of records required
+     * @param  lastRec  index of last record available (inclusive)
+     * @return  number of records to read, at least 1
+     */
+    private static int runLength( int irec, int nrec, int lastRec ) {
+        return (int) Math.max( 1, Math.min( (long) nrec,
+                                            (long) lastRec - irec + 1 ) );
+    }
+
     /**
      * Object which can read record values for this variable.
      * This provides the implementations of several of the Variable methods.
@@ -364,6 +804,14 @@ public class Variable {
          */
         boolean hasRecord( int irec );
 
+        /**
+         * Returns the ranges of record indices for which
+         * <code>hasRecord</code> returns true.
+         *
+         * @return  array of (first, last) inclusive record index pairs
+         */
+        int[][] getRecordRanges();
+
         /**
          * Reads the data from a single record into a supplied raw value array.
          *
@@ -373,6 +821,29 @@ public class Variable {
         void readRawRecord( int irec, Object rawValueArray )
             throws IOException;
 
+        /**
+         * Reads the data for a run of records into a supplied raw value
+         * array, stopping at the first block boundary.
+         *
+         * @param  irec  first record index
+         * @param  nrec  maximum number of records to read, greater than zero
+         * @param  rawValueArray  workspace array
+         * @param  off   index of first element written in rawValueArray
+         * @param  work  workspace for file reads at non-zero offset
+         * @return  number of records read
+         */
+        int readRawRecords( int irec, int nrec, Object rawValueArray,
+                            int off, Object work )
+            throws IOException;
+
+        /**
+         * Reads the stored bytes for a single record into a byte array.
+         *
+         * @param  irec  record index
+         * @param  byteArray  workspace array
+         */
+        void readRawBytes( int irec, byte[] byteArray ) throws IOException;
+
         /**
          * Reads the data from a single record and returns it as an object
          * of a suitable type for this variable.
@@ -380,10 +851,13 @@ public class Variable {
          * @param  irec  record index
          * @param  rowMajor  required majority of output array
          * @param  rawValueArrayWorkspace  workspace array
-         * @return   a new object containing shaped result
+         * @param  shapedArray  destination array, or null
+         * @return   shaped result; <code>shapedArray</code> if non-null,
+         *           otherwise a new object
          */
         Object readShapedRecord( int irec, boolean rowMajor,
-                                 Object rawValueArrayWorkspace )
+                                 Object rawValueArrayWorkspace,
+                                 Object shapedArray )
             throws IOException;
     }
 
@@ -392,6 +866,7 @@ public class Variable {
      */
     private class NoVaryRecordReader implements RecordReader {
         private final Object rawValue_;
+        private final byte[] rawBytes_;
         private final Object rowMajorValue_;
         private final Object colMajorValue_;
 
@@ -409,18 +884,33 @@ public class Variable {
             RecordReader rt = new UnsparseRecordReader( recMap );
             rawValue_ = createRawValueArray();
             rt.readRawRecord( 0, rawValue_ );
+            rawBytes_ = createRawByteArray();
+            rt.readRawBytes( 0, rawBytes_ );
             rowMajorValue_ = shaper_.shape( rawValue_, true );
             colMajorValue_ = shaper_.shape( rawValue_, false );
         }
         public boolean hasRecord( int irec ) {
             return false;
         }
+        public int[][] getRecordRanges() {
+            return new int[ 0 ][];
+        }
         public void readRawRecord( int irec, Object rawValueArray ) {
             System.arraycopy( rawValue_, 0, rawValueArray, 0, rvaleng_ );
         }
+        public int readRawRecords( int irec, int nrec, Object rawValueArray,
+                                   int off, Object work ) {
+            fillRecords( rawValue_, 0, nrec, rawValueArray, off );
+            return nrec;
+        }
+        public void readRawBytes( int irec, byte[] byteArray ) {
+            System.arraycopy( rawBytes_, 0, byteArray, 0, rawBytes_.length );
+        }
         public Object readShapedRecord( int irec, boolean rowMajor,
-                                        Object work ) {
-            return rowMajor ? rowMajorValue_ : colMajorValue_;
+                                        Object work, Object shapedArray ) {
+            return copyShapedValue( rowMajor ? rowMajorValue_
+                                             : colMajorValue_,
+                                    shapedArray );
         }
     }
 
@@ -445,6 +935,10 @@ public class Variable {
         public boolean hasRecord( int irec ) {
             return irec < nrec_;
         }
+        public int[][] getRecordRanges() {
+            return nrec_ > 0 ? new int[][] { { 0, nrec_ - 1 } }
+                             : new int[ 0 ][];
+        }
         public void readRawRecord( int irec, Object rawValueArray )
                 throws IOException {
             if ( hasRecord( irec ) ) {
@@ -457,15 +951,45 @@ public class Variable {
                 System.arraycopy( zeros_, 0, rawValueArray, 0, rvaleng_ );
             }
         }
+        public int readRawRecords( int irec, int nrec, Object rawValueArray,
+                                   int off, Object work )
+                throws IOException {
+            if ( hasRecord( irec ) ) {
+                int ient = recMap_.getEntryIndex( irec );
+                int n = runLength( irec, nrec,
+                                   Math.min( recMap_.getLastRecord( ient ),
+                                             nrec_ - 1 ) );
+                readValues( recMap_.getBuf( ient ),
+                            recMap_.getOffset( ient, irec ),
+                            n, rawValueArray, off, work );
+                return n;
+            }
+            else {
+                fillRecords( zeros_, 0, nrec, rawValueArray, off );
+                return nrec;
+            }
+        }
+        public void readRawBytes( int irec, byte[] byteArray )
+                throws IOException {
+            if ( hasRecord( irec ) ) {
+                int ient = recMap_.getEntryIndex( irec );
+                byteReader_.readValue( recMap_.getBuf( ient ),
+                                       recMap_.getOffset( ient, irec ),
+                                       byteArray );
+            }
+            else {
+                Arrays.fill( byteArray, (byte) 0 );
+            }
+        }
         public Object readShapedRecord( int irec, boolean rowMajor,
-                                        Object work )
+                                        Object work, Object shapedArray )
                 throws IOException {
             if ( hasRecord( irec ) ) {
                 int ient = recMap_.getEntryIndex( irec );
                 dataReader_.readValue( recMap_.getBuf( ient ),
                                        recMap_.getOffset( ient, irec ),
                                        work );
-                return shaper_.shape( work, rowMajor );
+                return shaper_.shape( work, rowMajor, shapedArray );
             }
             else {
                 return null;
@@ -491,6 +1015,9 @@ public class Variable {
         public boolean hasRecord( int irec ) {
             return hasRecord( irec, recMap_.getEntryIndex( irec ) );
         }
+        public int[][] getRecordRanges() {
+            return getEntryRanges( recMap_ );
+        }
         public void readRawRecord( int irec, Object rawValueArray )
                 throws IOException {
             int ient = recMap_.getEntryIndex( irec );
@@ -504,19 +1031,54 @@ public class Variable {
                                   rvaleng_ );
             }
         }
+        public int readRawRecords( int irec, int nrec, Object rawValueArray,
+                                   int off, Object work )
+                throws IOException {
+            int ient = recMap_.getEntryIndex( irec );
+            if ( hasRecord( irec, ient ) ) {
+                int n = runLength( irec, nrec,
+                                   Math.min( recMap_.getLastRecord( ient ),
+                                             getRecordCount() - 1 ) );
+                readValues( recMap_.getBuf( ient ),
+                            recMap_.getOffset( ient, irec ),
+                            n, rawValueArray, off, work );
+                return n;
+            }
+            else {
+                int n = irec < getRecordCount() && ient < 0
+                      ? runLength( irec, nrec, getBlockEnd( recMap_, ient ) )
+                      : nrec;
+                fillRecords( padRawValueArray_, 0, n, rawValueArray, off );
+                return n;
+            }
+        }
+        public void readRawBytes( int irec, byte[] byteArray )
+                throws IOException {
+            int ient = recMap_.getEntryIndex( irec );
+            if ( hasRecord( irec, ient ) ) {
+                byteReader_.readValue( recMap_.getBuf( ient ),
+                                       recMap_.getOffset( ient, irec ),
+                                       byteArray );
+            }
+            else {
+                System.arraycopy( padRawBytes_, 0, byteArray, 0,
+                                  padRawBytes_.length );
+            }
+        }
         public Object readShapedRecord( int irec, boolean rowMajor,
-                                        Object work )
+                                        Object work, Object shapedArray )
                 throws IOException {
             int ient = recMap_.getEntryIndex( irec );
             if ( hasRecord( irec, ient ) ) {
                 dataReader_.readValue( recMap_.getBuf( ient ),
                                        recMap_.getOffset( ient, irec ),
                                        work );
-                return shaper_.shape( work, rowMajor );
+                return shaper_.shape( work, rowMajor, shapedArray );
             }
             else {
-                return rowMajor ? shapedPadValueRowMajor_
-                                : shapedPadValueColumnMajor_;
+                return copyShapedValue( rowMajor ? shapedPadValueRowMajor_
+                                                 : shapedPadValueColumnMajor_,
+                                        shapedArray );
             }
         }
         private boolean hasRecord( int irec, int ient ) {
@@ -547,6 +1109,9 @@ public class Variable {
             return recMap_.getEntryIndex( irec ) >= 0
                 && irec < getRecordCount();
         }
+        public int[][] getRecordRanges() {
+            return getEntryRanges( recMap_ );
+        }
         public void readRawRecord( int irec, Object rawValueArray )
                 throws IOException {
             int ient = recMap_.getEntryIndex( irec );
@@ -566,27 +1131,118 @@ public class Variable {
                                        rawValueArray );
             }
         }
+        public int readRawRecords( int irec, int nrec, Object rawValueArray,
+                                   int off, Object work )
+                throws IOException {
+            int ient = recMap_.getEntryIndex( irec );
+            if ( ient >= 0 ) {
+                int n = runLength( irec, nrec, recMap_.getLastRecord( ient ) );
+                readValues( recMap_.getBuf( ient ),
+                            recMap_.getOffset( ient, irec ),
+                            n, rawValueArray, off, work );
+                return n;
+            }
+            else {
+                int n = runLength( irec, nrec, getBlockEnd( recMap_, ient ) );
+                if ( ient == -1 ) {
+                    fillRecords( padRawValueArray_, 0, n, rawValueArray, off );
+                }
+                else {
+                    int iPrevEnt = -ient - 2;
+                    long offset = recMap_.getFinalOffsetInEntry( iPrevEnt );
+                    readValues( recMap_.getBuf( iPrevEnt ), offset, 1,
+                                rawValueArray, off, work );
+                    fillRecords( rawValueArray, off, n, rawValueArray, off );
+                }
+                return n;
+            }
+        }
+        public void readRawBytes( int irec, byte[] byteArray )
+                throws IOException {
+            int ient = recMap_.getEntryIndex( irec );
+            if ( ient >= 0 ) {
+                byteReader_.readValue( recMap_.getBuf( ient ),
+                                       recMap_.getOffset( ient, irec ),
+                                       byteArray );
+            }
+            else if ( ient == -1 ) {
+                System.arraycopy( padRawBytes_, 0, byteArray, 0,
+                                  padRawBytes_.length );
+            }
+            else {
+                int iPrevEnt = -ient - 2;
+                long offset = recMap_.getFinalOffsetInEntry( iPrevEnt );
+                byteReader_.readValue( recMap_.getBuf( iPrevEnt ), offset,
+                                       byteArray );
+            }
+        }
         public Object readShapedRecord( int irec, boolean rowMajor,
-                                        Object work )
+                                        Object work, Object shapedArray )
                 throws IOException {
             int ient = recMap_.getEntryIndex( irec );
             if ( ient >= 0 ) {
                 dataReader_.readValue( recMap_.getBuf( ient ),
                                        recMap_.getOffset( ient, irec ),
                                        work );
-                return shaper_.shape( work, rowMajor );
+                return shaper_.shape( work, rowMajor, shapedArray );
             }
             else if ( ient == -1 ) {
-                return rowMajor ? shapedPadValueRowMajor_
-                                : shapedPadValueColumnMajor_;
+                return copyShapedValue( rowMajor ? shapedPadValueRowMajor_
+                                                 : shapedPadValueColumnMajor_,
+                                        shapedArray );
             }
             else {
                 int iPrevEnt = -ient - 2;
                 long offset = recMap_.getFinalOffsetInEntry( iPrevEnt );
-                dataReader_.readValue( recMap_.getBuf( ient ),
-                                       recMap_.getOffset( ient, irec ),
+                dataReader_.readValue( recMap_.getBuf( iPrevEnt ), offset,
                                        work );
-                return shaper_.shape( work, rowMajor );
+                return shaper_.shape( work, rowMajor, shapedArray );
+            }
+        }
+    }
+
+    /**
+     * DataReader that reports the data it reads to any installed metrics.
+     */
+    private class MeteredDataReader extends DataReader {
+        private final int recSize_;
+
+        /**
+         * Constructor.
+         *
+         * @param   dataType  data type
+         * @param   nelPerItem  number of dataType elements per read item
+         * @param   nItem   number of items of given data type in the array
+         */
+        MeteredDataReader( DataType dataType, int nelPerItem, int nItem ) {
+            super( dataType, nelPerItem, nItem );
+            recSize_ = getRecordSize();
+        }
+
+        @Override
+        public void readValue( Buf buf, long offset, Object valueArray )
+                throws IOException {
+            super.readValue( buf, offset, valueArray );
+            report( 1 );
+        }
+
+        @Override
+        public void readValues( Buf buf, long offset, int nrec,
+                                Object valueArray )
+                throws IOException {
+            super.readValues( buf, offset, nrec, valueArray );
+            report( nrec );
+        }
+
+        /**
+         * Reports a read to the metrics instance if there is one.
+         *
+         * @param  nrec  number of records read
+         */
+        private void report( int nrec ) {
+            CdfMetrics metrics = Metrics.getInstance();
+            if ( metrics != null ) {
+                metrics.variableRead( vdr_.name, nrec * (long) recSize_ );
             }
         }
     }
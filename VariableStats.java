@@ -0,0 +1,491 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Summary statistics for the values of a numeric variable.
+ *
+ * <p>Instances are obtained from the static <code>calculate</code>
+ * methods, which read all the stored records of a variable using
+ * bulk primitive reads, without boxing individual values.
+ * Each element of each array-valued record contributes separately.
+ * Records which have no stored value (virtual or pad records)
+ * are not included.  The single stored value of a non-record-varying
+ * variable is counted once.
+ *
+ * <p>Values are classified as follows, in this order:
+ * NaN values; values equal to the fill value;
+ * values outside the valid range; and valid values.
+ * Only valid values contribute to the minimum, maximum and mean.
+ * The fill value and valid range are usually taken from the ISTP
+ * <code>FILLVAL</code>, <code>VALIDMIN</code> and <code>VALIDMAX</code>
+ * attributes.
+ *
+ * <p>Statistics for different ranges of records can be calculated
+ * separately and combined using the {@link #merge merge} method;
+ * this is how the calculation is parallelised.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class VariableStats {
+
+    private final double fill_;
+    private final double validMin_;
+    private final double validMax_;
+    private long count_;
+    private long nanCount_;
+    private long fillCount_;
+    private long invalidCount_;
+    private double min_;
+    private double max_;
+    private double sum_;
+
+    /** Number of values read at once by each reading thread. */
+    private static final int READ_CHUNK = 64 * 1024;
+
+    /**
+     * Constructs an empty accumulator.
+     *
+     * @param  fill  fill value, or NaN for none
+     * @param  validMin  minimum valid value
+     * @param  validMax  maximum valid value
+     */
+    public VariableStats( double fill, double validMin, double validMax ) {
+        fill_ = fill;
+        validMin_ = validMin;
+        validMax_ = validMax;
+        min_ = Double.NaN;
+        max_ = Double.NaN;
+    }
+
+    /**
+     * Returns the fill value excluded by this accumulator.
+     *
+     * @return  fill value, or NaN for none
+     */
+    public double getFill() {
+        return fill_;
+    }
+
+    /**
+     * Returns the minimum valid value.
+     *
+     * @return  lower bound of valid range
+     */
+    public double getValidMin() {
+        return validMin_;
+    }
+
+    /**
+     * Returns the maximum valid value.
+     *
+     * @return  upper bound of valid range
+     */
+    public double getValidMax() {
+        return validMax_;
+    }
+
+    /**
+     * Returns the number of valid values.
+     *
+     * @return  count of values that are not NaN, fill or out of range
+     */
+    public long getCount() {
+        return count_;
+    }
+
+    /**
+     * Returns the number of NaN values.
+     *
+     * @return  NaN count
+     */
+    public long getNanCount() {
+        return nanCount_;
+    }
+
+    /**
+     * Returns the number of values equal to the fill value.
+     *
+     * @return  fill count
+     */
+    public long getFillCount() {
+        return fillCount_;
+    }
+
+    /**
+     * Returns the number of non-fill values outside the valid range.
+     *
+     * @return  out of range count
+     */
+    public long getInvalidCount() {
+        return invalidCount_;
+    }
+
+    /**
+     * Returns the minimum valid value.
+     *
+     * @return  minimum, or NaN if there are no valid values
+     */
+    public double getMin() {
+        return min_;
+    }
+
+    /**
+     * Returns the maximum valid value.
+     *
+     * @return  maximum, or NaN if there are no valid values
+     */
+    public double getMax() {
+        return max_;
+    }
+
+    /**
+     * Returns the mean of the valid values.
+     *
+     * @return  mean, or NaN if there are no valid values
+     */
+    public double getMean() {
+        return count_ > 0 ? sum_ / count_ : Double.NaN;
+    }
+
+    /**
+     * Indicates whether a value would be counted as valid by this
+     * accumulator, that is not NaN, not fill and within the valid range.
+     *
+     * @param  value  value
+     * @return  true iff value is valid
+     */
+    public boolean isValid( double value ) {
+        return value >= validMin_ && value <= validMax_ && value != fill_;
+    }
+
+    /**
+     * Adds a single value to this accumulator.
+     *
+     * @param  value  value
+     */
+    public void add( double value ) {
+        if ( Double.isNaN( value ) ) {
+            nanCount_++;
+        }
+        else if ( value == fill_ ) {
+            fillCount_++;
+        }
+        else if ( value < validMin_ || value > validMax_ ) {
+            invalidCount_++;
+        }
+        else {
+            if ( count_ == 0 ) {
+                min_ = value;
+                max_ = value;
+            }
+            else if ( value < min_ ) {
+                min_ = value;
+            }
+            else if ( value > max_ ) {
+                max_ = value;
+            }
+            count_++;
+            sum_ += value;
+        }
+    }
+
+    /**
+     * Adds the contents of another accumulator to this one.
+     * The other one should have the same fill value and valid range.
+     *
+     * @param  other  accumulator to merge into this one
+     */
+    public void merge( VariableStats other ) {
+        if ( other.count_ > 0 ) {
+            if ( count_ == 0 ) {
+                min_ = other.min_;
+                max_ = other.max_;
+            }
+            else {
+                min_ = Math.min( min_, other.min_ );
+                max_ = Math.max( max_, other.max_ );
+            }
+        }
+        count_ += other.count_;
+        nanCount_ += other.nanCount_;
+        fillCount_ += other.fillCount_;
+        invalidCount_ += other.invalidCount_;
+        sum_ += other.sum_;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuffer()
+            .append( "count=" )
+            .append( count_ )
+            .append( ", nan=" )
+            .append( nanCount_ )
+            .append( ", fill=" )
+            .append( fillCount_ )
+            .append( ", invalid=" )
+            .append( invalidCount_ )
+            .append( ", min=" )
+            .append( min_ )
+            .append( ", max=" )
+            .append( max_ )
+            .append( ", mean=" )
+            .append( getMean() )
+            .toString();
+    }
+
+    /**
+     * Indicates whether statistics can be calculated for a variable.
+     * This is the case for variables with a scalar numeric data type.
+     *
+     * @param  var  variable
+     * @return  true iff <code>calculate</code> can be used on var
+     */
+    public static boolean isNumeric( Variable var ) {
+        DataType dtype = var.getDataType();
+        return dtype.getArrayElementClass().isPrimitive()
+            && dtype.getGroupSize() == 1
+            && ! dtype.hasMultipleElementsPerItem();
+    }
+
+    /**
+     * Calculates statistics for a variable, using its
+     * <code>FILLVAL</code>, <code>VALIDMIN</code> and <code>VALIDMAX</code>
+     * attribute values if present.
+     *
+     * @param  var  numeric variable
+     * @param  vatts  variable attributes from the same CDF
+     * @param  nthread  number of threads to use
+     * @return  statistics
+     * @throws  IllegalArgumentException  if the variable is not numeric
+     */
+    public static VariableStats calculate( Variable var,
+                                           VariableAttribute[] vatts,
+                                           int nthread )
+            throws IOException {
+        VariableStats limits = createAccumulator( var, vatts );
+        return calculate( var, limits.fill_, limits.validMin_,
+                          limits.validMax_, nthread );
+    }
+
+    /**
+     * Calculates statistics for a variable with a given fill value
+     * and valid range.
+     *
+     * <p>If more than one thread is requested, the records are divided
+     * into contiguous ranges, split where possible at the boundaries
+     * of stored blocks (see {@link RecordSplit}), which are read
+     * concurrently, and the results merged.
+     *
+     * @param  var  numeric variable
+     * @param  fill  fill value, or NaN for none
+     * @param  validMin  minimum valid value
+     * @param  validMax  maximum valid value
+     * @param  nthread  number of threads to use
+     * @return  statistics
+     * @throws  IllegalArgumentException  if the variable is not numeric
+     */
+    public static VariableStats calculate( final Variable var,
+                                           final double fill,
+                                           final double validMin,
+                                           final double validMax,
+                                           int nthread )
+            throws IOException {
+        if ( ! isNumeric( var ) ) {
+            throw new IllegalArgumentException( "Variable " + var.getName()
+                                              + " not numeric" );
+        }
+        int nrec = var.getRecordCount();
+        int nchunk = nthread <= 1 ? 1 : Math.min( nrec, nthread * 4 );
+        if ( nchunk <= 1 ) {
+            VariableStats stats =
+                new VariableStats( fill, validMin, validMax );
+            accumulate( var, 0, nrec, stats );
+            return stats;
+        }
+        List<Callable<VariableStats>> tasks =
+            new ArrayList<Callable<VariableStats>>();
+        for ( RecordSplit split : RecordSplit.split( var, nchunk ) ) {
+            final int irec0 = split.getStart();
+            final int irec1 = split.getEnd();
+            tasks.add( new Callable<VariableStats>() {
+                public VariableStats call() throws IOException {
+                    VariableStats stats =
+                        new VariableStats( fill, validMin, validMax );
+                    accumulate( var, irec0, irec1, stats );
+                    return stats;
+                }
+            } );
+        }
+        ExecutorService executor = Executors.newFixedThreadPool( nthread );
+        try {
+            VariableStats stats =
+                new VariableStats( fill, validMin, validMax );
+            List<Future<VariableStats>> futures = executor.invokeAll( tasks );
+            for ( Future<VariableStats> future : futures ) {
+                stats.merge( future.get() );
+            }
+            return stats;
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw (IOException)
+                  new IOException( "Interrupted" ).initCause( e );
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            else {
+                throw (IOException) new IOException( "Stats failed" )
+                                   .initCause( cause );
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Accumulates the stored values from a range of records
+     * into a given accumulator.
+     * A non-record-varying variable has a single stored value,
+     * which is accumulated once by any range that includes record zero.
+     *
+     * @param  var  numeric variable
+     * @param  irec0  first record index (inclusive)
+     * @param  irec1  last record index (exclusive)
+     * @param  stats  accumulator
+     */
+    static void accumulate( Variable var, int irec0, int irec1,
+                            VariableStats stats )
+            throws IOException {
+        int nel = var.getShaper().getRawItemCount();
+        if ( ! var.getRecordVariance() ) {
+            if ( irec0 == 0 && irec1 > 0 ) {
+                Object work = var.createRawValueArray();
+                var.readRawRecord( 0, work );
+                stats.addArray( work, nel );
+            }
+            return;
+        }
+        int maxrec = Math.max( 1, READ_CHUNK / Math.max( 1, nel ) );
+        int nwork = Math.min( maxrec, Math.max( 1, irec1 - irec0 ) );
+        Object work = var.createRawValueArray( nwork );
+        for ( int irec = irec0; irec < irec1; ) {
+            int n = var.readRawRecords( irec, Math.min( nwork, irec1 - irec ),
+                                        work );
+            if ( var.hasRecord( irec ) ) {
+                stats.addArray( work, n * nel );
+            }
+            irec += n;
+        }
+    }
+
+    /**
+     * Adds the first few elements of a primitive array to this accumulator.
+     *
+     * @param  array  primitive numeric array
+     * @param  n   number of elements to add
+     */
+    private void addArray( Object array, int n ) {
+        if ( array instanceof double[] ) {
+            double[] a = (double[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                add( a[ i ] );
+            }
+        }
+        else if ( array instanceof float[] ) {
+            float[] a = (float[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                add( a[ i ] );
+            }
+        }
+        else if ( array instanceof long[] ) {
+            long[] a = (long[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                add( a[ i ] );
+            }
+        }
+        else if ( array instanceof int[] ) {
+            int[] a = (int[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                add( a[ i ] );
+            }
+        }
+        else if ( array instanceof short[] ) {
+            short[] a = (short[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                add( a[ i ] );
+            }
+        }
+        else if ( array instanceof byte[] ) {
+            byte[] a = (byte[]) array;
+            for ( int i = 0; i < n; i++ ) {
+                add( a[ i ] );
+            }
+        }
+        else {
+            throw new IllegalArgumentException( "Not numeric array" );
+        }
+    }
+
+    /**
+     * Returns an empty accumulator for a variable, using its
+     * <code>FILLVAL</code>, <code>VALIDMIN</code> and <code>VALIDMAX</code>
+     * attribute values if present.
+     *
+     * @param  var  variable
+     * @param  vatts  variable attributes from the same CDF
+     * @return  new accumulator
+     */
+    public static VariableStats
+            createAccumulator( Variable var, VariableAttribute[] vatts ) {
+        double fill = Double.NaN;
+        double validMin = Double.NEGATIVE_INFINITY;
+        double validMax = Double.POSITIVE_INFINITY;
+        for ( VariableAttribute vatt : vatts ) {
+            String name = vatt.getName();
+            if ( "FILLVAL".equals( name ) ) {
+                fill = getNumericValue( vatt.getEntry( var ), fill );
+            }
+            else if ( "VALIDMIN".equals( name ) ) {
+                validMin = getNumericValue( vatt.getEntry( var ), validMin );
+            }
+            else if ( "VALIDMAX".equals( name ) ) {
+                validMax = getNumericValue( vatt.getEntry( var ), validMax );
+            }
+        }
+        return new VariableStats( fill, validMin, validMax );
+    }
+
+    /**
+     * Returns the numeric value of a scalar attribute entry.
+     *
+     * @param  entry  attribute entry, may be null
+     * @param  dflt   value to return if the entry is absent or not numeric
+     * @return  numeric value
+     */
+    private static double getNumericValue( AttributeEntry entry,
+                                           double dflt ) {
+        if ( entry != null && entry.getItemCount() == 1 ) {
+            Object item = entry.getItem( 0 );
+            if ( item instanceof Number ) {
+                return ( (Number) item ).doubleValue();
+            }
+        }
+        return dflt;
+    }
+}
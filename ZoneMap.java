@@ -0,0 +1,384 @@
+package uk.ac.bristol.star.cdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.ArrayList;
+import java.util.List;
+import uk.ac.bristol.star.cdf.record.RecordMap;
+
+/**
+ * Index of the minimum and maximum values in each block of stored
+ * records of a numeric variable.
+ *
+ * <p>The records of a variable are stored in the file in a number of
+ * contiguous blocks (VVRs or compressed CVVRs), each covering a range of
+ * record indices.  A zone map records the range of valid values present
+ * in each block, so that a range predicate on the variable's values
+ * can be evaluated first against the zone map, and blocks which
+ * cannot contain matching values need not be read or uncompressed at all.
+ * This is most effective for monotonic quantities such as epoch variables,
+ * for which a time interval typically corresponds to a few blocks.
+ *
+ * <p>Building a zone map requires reading all the data of the variable,
+ * so it is worth keeping; zone maps can be held in memory or saved to
+ * a sidecar file using {@link #writeZoneMaps writeZoneMaps} and
+ * restored using {@link #readZoneMaps readZoneMaps}.
+ *
+ * <p>Only records actually stored in the file are covered.
+ * Virtual records of sparse variables, which fall between blocks,
+ * are never reported as candidates.
+ *
+ * <p>The zone map file format is a big-endian sequence of:
+ * an 8-byte magic number, a 4-byte format version,
+ * the 8-byte length and modification time of the CDF file,
+ * a 4-byte count of zone maps, and for each one the variable name
+ * (as written by <code>DataOutput.writeUTF</code>), a 4-byte count of
+ * zones, and for each zone the 4-byte first and last record indices
+ * and the 8-byte minimum and maximum values.
+ *
+ * @author   Mark Taylor
+ * @since    19 Oct 2026
+ */
+public class ZoneMap {
+
+    private final String varName_;
+    private final int[] firsts_;
+    private final int[] lasts_;
+    private final double[] mins_;
+    private final double[] maxs_;
+
+    private static final byte[] MAGIC =
+        new byte[] { 'j', 'c', 'd', 'f', 'z', 'm', 'p', 0 };
+    private static final int VERSION = 1;
+    private static final int ZONE_LENG = 4 + 4 + 8 + 8;
+
+    /** Filename suffix used for default zone map files. */
+    public static final String ZONEMAP_SUFFIX = ".jcdfzmap";
+
+    /**
+     * Constructor.
+     *
+     * @param  varName  variable name
+     * @param  firsts   first record index of each zone
+     * @param  lasts    last record index (inclusive) of each zone
+     * @param  mins     minimum valid value in each zone,
+     *                  NaN if there are none
+     * @param  maxs     maximum valid value in each zone,
+     *                  NaN if there are none
+     */
+    public ZoneMap( String varName, int[] firsts, int[] lasts,
+                    double[] mins, double[] maxs ) {
+        int nz = firsts.length;
+        if ( lasts.length != nz || mins.length != nz || maxs.length != nz ) {
+            throw new IllegalArgumentException( "Array length mismatch" );
+        }
+        varName_ = varName;
+        firsts_ = firsts.clone();
+        lasts_ = lasts.clone();
+        mins_ = mins.clone();
+        maxs_ = maxs.clone();
+    }
+
+    /**
+     * Builds a zone map for a variable, using its
+     * <code>FILLVAL</code>, <code>VALIDMIN</code> and <code>VALIDMAX</code>
+     * attribute values if present to exclude invalid values.
+     * All of the variable's stored data is read.
+     *
+     * @param  var  numeric variable
+     * @param  vatts  variable attributes from the same CDF
+     * @return  new zone map
+     * @throws  IllegalArgumentException  if the variable is not numeric
+     */
+    public static ZoneMap createZoneMap( Variable var,
+                                         VariableAttribute[] vatts )
+            throws IOException {
+        if ( ! VariableStats.isNumeric( var ) ) {
+            throw new IllegalArgumentException( "Variable " + var.getName()
+                                              + " not numeric" );
+        }
+        RecordMap recMap = var.readRecordMap();
+        int nz = recMap.getEntryCount();
+        int[] firsts = new int[ nz ];
+        int[] lasts = new int[ nz ];
+        double[] mins = new double[ nz ];
+        double[] maxs = new double[ nz ];
+        for ( int iz = 0; iz < nz; iz++ ) {
+            int first = recMap.getFirstRecord( iz );
+            int last = recMap.getLastRecord( iz );
+            VariableStats stats =
+                VariableStats.createAccumulator( var, vatts );
+            VariableStats.accumulate( var, first, last + 1, stats );
+            firsts[ iz ] = first;
+            lasts[ iz ] = last;
+            mins[ iz ] = stats.getMin();
+            maxs[ iz ] = stats.getMax();
+        }
+        return new ZoneMap( var.getName(), firsts, lasts, mins, maxs );
+    }
+
+    /**
+     * Returns the name of the variable this zone map describes.
+     *
+     * @return  variable name
+     */
+    public String getVariableName() {
+        return varName_;
+    }
+
+    /**
+     * Returns the number of zones.
+     *
+     * @return  zone count
+     */
+    public int getZoneCount() {
+        return firsts_.length;
+    }
+
+    /**
+     * Returns the index of the first record in a given zone.
+     *
+     * @param  iz  zone index
+     * @return  first record index
+     */
+    public int getFirstRecord( int iz ) {
+        return firsts_[ iz ];
+    }
+
+    /**
+     * Returns the index of the last record in a given zone.
+     *
+     * @param  iz  zone index
+     * @return  last record index (inclusive)
+     */
+    public int getLastRecord( int iz ) {
+        return lasts_[ iz ];
+    }
+
+    /**
+     * Returns the minimum valid value in a given zone.
+     *
+     * @param  iz  zone index
+     * @return  minimum, or NaN if the zone has no valid values
+     */
+    public double getMin( int iz ) {
+        return mins_[ iz ];
+    }
+
+    /**
+     * Returns the maximum valid value in a given zone.
+     *
+     * @param  iz  zone index
+     * @return  maximum, or NaN if the zone has no valid values
+     */
+    public double getMax( int iz ) {
+        return maxs_[ iz ];
+    }
+
+    /**
+     * Indicates whether a given zone may contain valid values
+     * within a given range.
+     *
+     * @param  iz  zone index
+     * @param  lo  lower bound of range (inclusive)
+     * @param  hi  upper bound of range (inclusive)
+     * @return  false if the zone definitely has no values in range
+     */
+    public boolean canMatch( int iz, double lo, double hi ) {
+        return mins_[ iz ] <= hi && maxs_[ iz ] >= lo;
+    }
+
+    /**
+     * Returns the ranges of records which may contain valid values
+     * within a given range.  Records outside the returned ranges
+     * definitely do not.  Adjacent candidate zones are merged.
+     *
+     * <p>Since the result is in terms of record indices, it can be used
+     * to restrict reads of other variables in the same CDF as well
+     * as of this one, for instance using the zone map of an epoch
+     * variable to select the records of data variables in a given
+     * time interval.
+     *
+     * @param  lo  lower bound of range (inclusive)
+     * @param  hi  upper bound of range (inclusive)
+     * @return   array of (start, end) record index pairs, with start
+     *           inclusive and end exclusive, in ascending order
+     */
+    public int[][] getCandidateRanges( double lo, double hi ) {
+        List<int[]> ranges = new ArrayList<int[]>();
+        int[] range = null;
+        for ( int iz = 0; iz < firsts_.length; iz++ ) {
+            if ( canMatch( iz, lo, hi ) ) {
+                if ( range != null && range[ 1 ] == firsts_[ iz ] ) {
+                    range[ 1 ] = lasts_[ iz ] + 1;
+                }
+                else {
+                    range = new int[] { firsts_[ iz ], lasts_[ iz ] + 1 };
+                    ranges.add( range );
+                }
+            }
+        }
+        return ranges.toArray( new int[ 0 ][] );
+    }
+
+    /**
+     * Indicates whether this zone map has the same zones as the
+     * stored record blocks of a given variable.
+     * If not, it was presumably built from a different file
+     * and should not be used.
+     *
+     * @param  var  variable
+     * @return  true iff the zones match the variable's record blocks
+     */
+    public boolean matches( Variable var ) throws IOException {
+        if ( ! varName_.equals( var.getName() ) ) {
+            return false;
+        }
+        RecordMap recMap = var.readRecordMap();
+        int nz = firsts_.length;
+        if ( recMap.getEntryCount() != nz ) {
+            return false;
+        }
+        for ( int iz = 0; iz < nz; iz++ ) {
+            if ( recMap.getFirstRecord( iz ) != firsts_[ iz ] ||
+                 recMap.getLastRecord( iz ) != lasts_[ iz ] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the default location of the zone map file for a given
+     * CDF file.  This is in the same directory with
+     * {@link #ZONEMAP_SUFFIX} appended to the filename.
+     *
+     * @param  cdfFile  CDF file
+     * @return   default zone map file
+     */
+    public static File getDefaultZoneMapFile( File cdfFile ) {
+        return new File( cdfFile.getPath() + ZONEMAP_SUFFIX );
+    }
+
+    /**
+     * Writes a zone map file containing zone maps for variables in
+     * a given CDF file.
+     *
+     * @param  cdfFile  CDF file from which the zone maps were built
+     * @param  zmaps   zone maps
+     * @param  zmapFile  destination file
+     */
+    public static void writeZoneMaps( File cdfFile, ZoneMap[] zmaps,
+                                      File zmapFile )
+            throws IOException {
+        DataOutputStream out =
+            new DataOutputStream(
+                new BufferedOutputStream( new FileOutputStream( zmapFile ) ) );
+        try {
+            out.write( MAGIC );
+            out.writeInt( VERSION );
+            out.writeLong( cdfFile.length() );
+            out.writeLong( cdfFile.lastModified() );
+            out.writeInt( zmaps.length );
+            for ( int im = 0; im < zmaps.length; im++ ) {
+                ZoneMap zmap = zmaps[ im ];
+                int nz = zmap.getZoneCount();
+                out.writeUTF( zmap.varName_ );
+                out.writeInt( nz );
+                for ( int iz = 0; iz < nz; iz++ ) {
+                    out.writeInt( zmap.firsts_[ iz ] );
+                    out.writeInt( zmap.lasts_[ iz ] );
+                    out.writeDouble( zmap.mins_[ iz ] );
+                    out.writeDouble( zmap.maxs_[ iz ] );
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the zone maps from a zone map file, if it is applicable
+     * to a given CDF file.  The file is only used if the length and
+     * modification time of the CDF file match those recorded when it
+     * was written.
+     *
+     * @param  cdfFile  CDF file
+     * @param  zmapFile  zone map file
+     * @return   zone maps, or null if the file does not exist,
+     *           does not match the CDF file, or is truncated or corrupt
+     */
+    public static ZoneMap[] readZoneMaps( File cdfFile, File zmapFile )
+            throws IOException {
+        if ( ! zmapFile.exists() ) {
+            return null;
+        }
+        DataInputStream in =
+            new DataInputStream(
+                new BufferedInputStream( new FileInputStream( zmapFile ) ) );
+        try {
+            byte[] magic = new byte[ MAGIC.length ];
+            in.readFully( magic );
+            for ( int i = 0; i < magic.length; i++ ) {
+                if ( magic[ i ] != MAGIC[ i ] ) {
+                    return null;
+                }
+            }
+            if ( in.readInt() != VERSION ||
+                 in.readLong() != cdfFile.length() ||
+                 in.readLong() != cdfFile.lastModified() ) {
+                return null;
+            }
+
+            // Check counts against the remaining file length before
+            // allocating arrays, so that corrupt files are rejected
+            // cheaply.  Each name is at least 2+nchar bytes long.
+            long remain = zmapFile.length()
+                        - ( MAGIC.length + 4 + 8 + 8 + 4 );
+            int nmap = in.readInt();
+            if ( nmap < 0 || nmap > remain / ( 2 + 4 ) ) {
+                return null;
+            }
+            ZoneMap[] zmaps = new ZoneMap[ nmap ];
+            for ( int im = 0; im < nmap; im++ ) {
+                String varName = in.readUTF();
+                int nz = in.readInt();
+                remain -= 2 + varName.length() + 4;
+                if ( nz < 0 || nz > remain / ZONE_LENG ) {
+                    return null;
+                }
+                remain -= nz * (long) ZONE_LENG;
+                int[] firsts = new int[ nz ];
+                int[] lasts = new int[ nz ];
+                double[] mins = new double[ nz ];
+                double[] maxs = new double[ nz ];
+                for ( int iz = 0; iz < nz; iz++ ) {
+                    firsts[ iz ] = in.readInt();
+                    lasts[ iz ] = in.readInt();
+                    mins[ iz ] = in.readDouble();
+                    maxs[ iz ] = in.readDouble();
+                }
+                zmaps[ im ] = new ZoneMap( varName, firsts, lasts, mins, maxs );
+            }
+            return zmaps;
+        }
+        catch ( EOFException e ) {
+            return null;
+        }
+        catch ( UTFDataFormatException e ) {
+            return null;
+        }
+        finally {
+            in.close();
+        }
+    }
+}